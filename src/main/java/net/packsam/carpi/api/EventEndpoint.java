@@ -55,6 +55,11 @@ public class EventEndpoint {
 	 */
 	final static ObjectMapper objectMapper = new ObjectMapper().setVisibility(PropertyAccessor.FIELD, Visibility.NON_PRIVATE);
 
+	/**
+	 * Key of the session property containing the zoom level of the map for receiving the simplified track.
+	 */
+	final static String TRACK_ZOOM = "TRACK_ZOOM";
+
 	/**
 	 * Handler for opening the session.
 	 * 
@@ -104,6 +109,7 @@ public class EventEndpoint {
 			return;
 		}
 		String event;
+		String zoom;
 		if (StringUtils.isNotEmpty(event = msg.get("SUBSCRIBE"))) {
 			synchronized (subscriptions) {
 				List<Session> eventSubscriptions = subscriptions.get(event);
@@ -122,6 +128,12 @@ public class EventEndpoint {
 					eventSubscriptions.remove(session);
 				}
 			}
+		} else if (StringUtils.isNotEmpty(zoom = msg.get(TRACK_ZOOM))) {
+			try {
+				session.getUserProperties().put(TRACK_ZOOM, Integer.valueOf(zoom));
+			} catch (NumberFormatException e) {
+				log.log(Level.INFO, "Invalid zoom level " + zoom, e);
+			}
 		}
 	}
 
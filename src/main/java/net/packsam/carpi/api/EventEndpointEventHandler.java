@@ -1,7 +1,10 @@
 package net.packsam.carpi.api;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -19,7 +22,10 @@ import net.packsam.carpi.event.GPSMetaInfoChangeEvent;
 import net.packsam.carpi.event.GPSPositionChangeEvent;
 import net.packsam.carpi.event.GPSTrackChangeEvent;
 import net.packsam.carpi.event.HealthStatusChangeEvent;
+import net.packsam.carpi.event.MapConfigurationChangeEvent;
+import net.packsam.carpi.event.ProximityAlertEvent;
 import net.packsam.carpi.model.EventMessage;
+import net.packsam.carpi.model.GPSTrack;
 
 /**
  * CDI event handler for dispatching the change events to all websocket clients.
@@ -155,7 +161,20 @@ public class EventEndpointEventHandler {
 	 *            change event
 	 */
 	public void onGPSTrackChanged(@Observes GPSTrackChangeEvent e) {
-		sendEventToClients(e);
+		synchronized (EventEndpoint.subscriptions) {
+			List<Session> subscriptions = EventEndpoint.subscriptions.get(GPSTrackChangeEvent.class.getSimpleName());
+			if (subscriptions == null) {
+				return;
+			}
+
+			// send the track matching the zoom level of the client, encode every track only once
+			Map<GPSTrack, List<Session>> clients = new IdentityHashMap<>();
+			for (Session s : subscriptions) {
+				GPSTrack track = e.getTrack((Integer) s.getUserProperties().get(EventEndpoint.TRACK_ZOOM));
+				clients.computeIfAbsent(track, t -> new ArrayList<>()).add(s);
+			}
+			clients.forEach((track, sessions) -> sendEventToClients(sessions, new GPSTrackChangeEvent(track)));
+		}
 	}
 
 	/**
@@ -168,4 +187,24 @@ public class EventEndpointEventHandler {
 		sendEventToClients(e);
 	}
 
+	/**
+	 * Event handler when the map configuration has been changed.
+	 * 
+	 * @param e
+	 *            change event
+	 */
+	public void onMapConfigurationChanged(@Observes MapConfigurationChangeEvent e) {
+		sendEventToClients(e);
+	}
+
+	/**
+	 * Event handler when a GeoJson point feature is approached.
+	 * 
+	 * @param e
+	 *            alert event
+	 */
+	public void onProximityAlert(@Observes ProximityAlertEvent e) {
+		sendEventToClients(e);
+	}
+
 }
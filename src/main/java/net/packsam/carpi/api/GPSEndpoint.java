@@ -8,6 +8,7 @@ import javax.inject.Inject;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
@@ -43,16 +44,19 @@ public class GPSEndpoint {
 	private TrackingService trackingService;
 
 	/**
-	 * Returns the last found GPS data.
+	 * Returns the last found GPS data. Clients showing the track on a map can request the track simplified for the zoom level of the map, so it can be continued with the
+	 * track changes of that zoom level.
 	 * 
+	 * @param zoom
+	 *            zoom level of the map, optional
 	 * @return GPS data
 	 */
 	@GET
-	public GPSData getCurrentData() {
+	public GPSData getCurrentData(@QueryParam("zoom") Integer zoom) {
 		GPSData ret = new GPSData();
 		ret.setPosition(gpsService.getLastPosition());
 		ret.setMeta(gpsService.getLastMetaInfo());
-		ret.setTrack(trackingService.getCurrentPath());
+		ret.setTrack(zoom != null ? trackingService.getCurrentPath(zoom, 0) : trackingService.getCurrentPath());
 		return ret;
 	}
 
@@ -79,14 +83,23 @@ public class GPSEndpoint {
 	}
 
 	/**
-	 * Return the current track.
+	 * Return the current track. Clients that missed a track change event can request only the path elements from the given sequence number on. Clients showing the track on
+	 * a map can request the track simplified for the zoom level of the map.
 	 * 
+	 * @param sinceSeq
+	 *            sequence number of the first path element to return, optional
+	 * @param zoom
+	 *            zoom level of the map, optional
 	 * @return list of path elements
 	 */
 	@GET
 	@Path("/track")
-	public GPSTrack getCurrentTrack() {
-		return trackingService.getCurrentPath();
+	public GPSTrack getCurrentTrack(@QueryParam("sinceSeq") Integer sinceSeq, @QueryParam("zoom") Integer zoom) {
+		int seq = sinceSeq != null ? sinceSeq : 0;
+		if (zoom != null) {
+			return trackingService.getCurrentPath(zoom, seq);
+		}
+		return trackingService.getCurrentPath(seq);
 	}
 
 	/**
@@ -1,21 +1,41 @@
 package net.packsam.carpi.api;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
+import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
+import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
 
-import org.geojson.FeatureCollection;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
 
 import net.packsam.carpi.model.MapConfiguration;
+import net.packsam.carpi.model.MapFileStatus;
 import net.packsam.carpi.model.StreamedResource;
+import net.packsam.carpi.model.TileBatchRequest;
+import net.packsam.carpi.model.TileReference;
+import net.packsam.carpi.model.TileStatistics;
 import net.packsam.carpi.service.MapService;
 
 /**
@@ -27,6 +47,36 @@ import net.packsam.carpi.service.MapService;
 @Path("/map")
 @ApplicationScoped
 public class MapEndpoint extends StreamingEndpoint {
+	/**
+	 * MIME type of tile bundles.
+	 */
+	public static final String TILE_BUNDLE_MIME_TYPE = "application/x-carpi-tiles";
+
+	/**
+	 * Maximum number of tiles per bundle.
+	 */
+	private static final int MAX_BUNDLE_TILES = 256;
+
+	/**
+	 * Maximum zoom level of tiles in a bundle.
+	 */
+	private static final int MAX_BUNDLE_ZOOM = 30;
+
+	/**
+	 * Status of a bundle entry: tile data follows.
+	 */
+	private static final int BUNDLE_STATUS_OK = 0;
+
+	/**
+	 * Status of a bundle entry: client already has the current tile.
+	 */
+	private static final int BUNDLE_STATUS_NOT_MODIFIED = 1;
+
+	/**
+	 * Status of a bundle entry: tile does not exist.
+	 */
+	private static final int BUNDLE_STATUS_NOT_FOUND = 2;
+
 	/**
 	 * Service for reading map tiles.
 	 */
@@ -46,15 +96,89 @@ public class MapEndpoint extends StreamingEndpoint {
 	}
 
 	/**
-	 * Returns the GeoJson file for the track.
+	 * Returns the loading status of all map files.
+	 * 
+	 * @return loading status of map files
+	 */
+	@GET
+	@Path("/status")
+	@Produces(MediaType.APPLICATION_JSON)
+	public List<MapFileStatus> getMapFileStatus() {
+		return mapService.getMapFileStatus();
+	}
+
+	/**
+	 * Returns the statistics of the tile requests. They show if slow tile requests are caused by the map files, waiting for database connections or the tiles cache.
 	 * 
+	 * @return tile statistics
+	 */
+	@GET
+	@Path("/stats")
+	@Produces(MediaType.APPLICATION_JSON)
+	public TileStatistics getTileStatistics() {
+		return mapService.getTileStatistics();
+	}
+
+	/**
+	 * Returns the GeoJson file for the track. If a bounding box is given, only the features intersecting it will be returned. Otherwise the feature collection serialized on
+	 * loading will be sent, so clients can revalidate it by its entity tag.
+	 * 
+	 * @param bbox
+	 *            optional bounding box as <code>minLon,minLat,maxLon,maxLat</code>
+	 * @param zoom
+	 *            optional zoom level for skipping features by their <code>minzoom</code> and <code>maxzoom</code> properties
+	 * @param request
+	 * @param headers
 	 * @return GeoJson file
 	 */
 	@GET
 	@Path("/geojson")
 	@Produces(MediaType.APPLICATION_JSON)
-	public FeatureCollection getGeoJson() {
-		return mapService.getGeoJsonFeatures();
+	public Response getGeoJson(@QueryParam("bbox") String bbox, @QueryParam("zoom") Integer zoom, @Context Request request, @Context HttpHeaders headers) {
+		if (StringUtils.isEmpty(bbox)) {
+			// serve the serialized feature collection
+			StreamedResource resource = mapService.getGeoJson();
+			return resource != null ? createResponse(resource, request, headers, false) : Response.noContent().build();
+		}
+
+		String[] values = bbox.split(",");
+		if (values.length != 4) {
+			return Response.status(Status.BAD_REQUEST).build();
+		}
+		double[] b = new double[4];
+		try {
+			for (int i = 0; i < 4; i++) {
+				b[i] = Double.parseDouble(values[i].trim());
+			}
+		} catch (NumberFormatException e) {
+			return Response.status(Status.BAD_REQUEST).build();
+		}
+		return Response.ok(mapService.getGeoJsonFeatures(b[0], b[1], b[2], b[3], zoom)).build();
+	}
+
+	/**
+	 * Returns the GeoJson features of the given tile. The geometries are clipped to the tile and simplified for the zoom level.
+	 * 
+	 * @param z
+	 *            zoom level
+	 * @param x
+	 *            x coordinate
+	 * @param y
+	 *            y coordinate
+	 * @param request
+	 * @param headers
+	 * @return GeoJson feature collection
+	 */
+	@GET
+	@Path("/geojson/{z}/{x}/{y}")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response getGeoJsonTile(@PathParam("z") int z, @PathParam("x") int x, @PathParam("y") int y, @Context Request request, @Context HttpHeaders headers) {
+		StreamedResource resource = mapService.getGeoJsonTile(z, x, y);
+		if (resource != null) {
+			return createResponse(resource, request, headers, false);
+		} else {
+			return Response.status(Status.NOT_FOUND).build();
+		}
 	}
 
 	/**
@@ -67,19 +191,177 @@ public class MapEndpoint extends StreamingEndpoint {
 	 * @param y
 	 *            y coordinate
 	 * @param request
+	 * @param headers
 	 * @return response
 	 */
 	@GET
 	@Path("{z}/{x}/{y}")
-	public Response getTile(@PathParam("z") int z, @PathParam("x") int x, @PathParam("y") int y, @Context Request request) {
+	public Response getTile(@PathParam("z") int z, @PathParam("x") int x, @PathParam("y") int y, @Context Request request, @Context HttpHeaders headers) {
 		// try to get file
 		StreamedResource resource = mapService.getTile(z, x, y);
 
 		if (resource != null) {
 			// send resource to client
-			return createResponse(resource, request, false);
+			return createResponse(resource, request, headers, false);
 		} else {
 			return Response.status(Status.NOT_FOUND).build();
 		}
 	}
+
+	/**
+	 * Returns multiple map tiles in a single binary bundle. The bundle is a stream of big endian values:
+	 * <ul>
+	 * <li>number of entries (int)</li>
+	 * <li>for each requested tile: zoom level (byte), x (int), y (int), status (byte: 0 = ok, 1 = not modified, 2 = not found)</li>
+	 * <li>for status ok: entity tag, MIME type and content coding (each as modified UTF-8 string with short length prefix, empty if unknown), data length (int), tile data</li>
+	 * </ul>
+	 * Tiles whose entity tag matches the one sent by the client are returned as "not modified" without data. Encoded tiles (e.g. gzip compressed vector tiles) are sent as
+	 * stored, the client has to decode them.
+	 * 
+	 * @param batch
+	 *            requested tiles
+	 * @return response
+	 */
+	@POST
+	@Path("/tiles")
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(TILE_BUNDLE_MIME_TYPE)
+	public Response getTiles(TileBatchRequest batch) {
+		if (batch == null) {
+			return Response.status(Status.BAD_REQUEST).build();
+		}
+
+		List<TileReference> tiles = new ArrayList<>();
+		if (batch.getTiles() != null) {
+			tiles.addAll(batch.getTiles());
+		}
+		if (batch.getZ() != null && batch.getMinX() != null && batch.getMinY() != null && batch.getMaxX() != null && batch.getMaxY() != null) {
+			long size = ((long) batch.getMaxX() - batch.getMinX() + 1) * ((long) batch.getMaxY() - batch.getMinY() + 1);
+			if (size <= 0 || tiles.size() + size > MAX_BUNDLE_TILES || !isValidTile(batch.getZ(), batch.getMinX(), batch.getMinY())
+					|| !isValidTile(batch.getZ(), batch.getMaxX(), batch.getMaxY())) {
+				return Response.status(Status.BAD_REQUEST).build();
+			}
+			for (int y = batch.getMinY(); y <= batch.getMaxY(); y++) {
+				for (int x = batch.getMinX(); x <= batch.getMaxX(); x++) {
+					TileReference t = new TileReference();
+					t.setZ(batch.getZ());
+					t.setX(x);
+					t.setY(y);
+					t.setETag(batch.getETag());
+					tiles.add(t);
+				}
+			}
+		}
+		if (tiles.size() > MAX_BUNDLE_TILES || !tiles.stream().allMatch(t -> t != null && isValidTile(t.getZ(), t.getX(), t.getY()))) {
+			return Response.status(Status.BAD_REQUEST).build();
+		}
+
+		StreamingOutput out = new StreamingOutput() {
+			@Override
+			public void write(OutputStream output) throws IOException, WebApplicationException {
+				DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(output));
+				dos.writeInt(tiles.size());
+				for (TileReference t : tiles) {
+					writeBundleEntry(dos, t);
+				}
+				dos.flush();
+			}
+		};
+		return Response.ok(out, TILE_BUNDLE_MIME_TYPE).build();
+	}
+
+	/**
+	 * Checks if the given tile has a zoom level of 0..{@value #MAX_BUNDLE_ZOOM} and coordinates within this zoom level.
+	 * 
+	 * @param z
+	 *            zoom level
+	 * @param x
+	 *            x coordinate
+	 * @param y
+	 *            y coordinate
+	 * @return <code>true</code> if the tile can be part of a bundle
+	 */
+	private static boolean isValidTile(int z, int x, int y) {
+		if (z < 0 || z > MAX_BUNDLE_ZOOM) {
+			return false;
+		}
+		int max = (1 << z) - 1;
+		return x >= 0 && x <= max && y >= 0 && y <= max;
+	}
+
+	/**
+	 * Writes a single tile into the tile bundle.
+	 * 
+	 * @param dos
+	 *            bundle output
+	 * @param t
+	 *            requested tile
+	 * @throws IOException
+	 */
+	private void writeBundleEntry(DataOutputStream dos, TileReference t) throws IOException {
+		dos.writeByte(t.getZ());
+		dos.writeInt(t.getX());
+		dos.writeInt(t.getY());
+
+		StreamedResource resource = mapService.getTile(t.getZ(), t.getX(), t.getY());
+		String eTag = resource != null ? resource.getETag() : null;
+		if (eTag != null && eTag.equals(unquoteETag(t.getETag()))) {
+			dos.writeByte(BUNDLE_STATUS_NOT_MODIFIED);
+			return;
+		}
+
+		ByteBuffer content = null;
+		String mimeType = null;
+		String contentEncoding = null;
+		if (resource != null) {
+			try {
+				content = resource.getContent();
+				if (content == null) {
+					try (InputStream in = resource.getInputStream()) {
+						content = ByteBuffer.wrap(IOUtils.toByteArray(in));
+					}
+				}
+				mimeType = resource.getMimeType();
+				contentEncoding = resource.getContentEncoding();
+			} catch (IOException e) {
+				// a single unreadable tile must not abort the bundle
+				content = null;
+			}
+		}
+		if (content == null) {
+			dos.writeByte(BUNDLE_STATUS_NOT_FOUND);
+			return;
+		}
+
+		dos.writeByte(BUNDLE_STATUS_OK);
+		dos.writeUTF(StringUtils.defaultString(eTag));
+		dos.writeUTF(StringUtils.defaultString(mimeType));
+		dos.writeUTF(StringUtils.defaultString(contentEncoding));
+		dos.writeInt(content.remaining());
+		if (content.hasArray()) {
+			dos.write(content.array(), content.arrayOffset() + content.position(), content.remaining());
+		} else {
+			byte[] buffer = new byte[Math.min(content.remaining(), 8192)];
+			while (content.hasRemaining()) {
+				int len = Math.min(buffer.length, content.remaining());
+				content.get(buffer, 0, len);
+				dos.write(buffer, 0, len);
+			}
+		}
+	}
+
+	/**
+	 * Removes the quotes and the weak prefix from the given entity tag.
+	 * 
+	 * @param eTag
+	 *            entity tag sent by client
+	 * @return entity tag value or <code>null</code>
+	 */
+	private String unquoteETag(String eTag) {
+		if (eTag == null) {
+			return null;
+		}
+		String value = StringUtils.removeStart(eTag.trim(), "W/");
+		return StringUtils.removeEnd(StringUtils.removeStart(value, "\""), "\"");
+	}
 }
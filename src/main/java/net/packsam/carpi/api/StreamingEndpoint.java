@@ -3,11 +3,18 @@ package net.packsam.carpi.api;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.util.Date;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.CacheControl;
 import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.ResponseBuilder;
@@ -25,6 +32,10 @@ import net.packsam.carpi.model.StreamedResource;
  * 
  */
 abstract public class StreamingEndpoint {
+	/**
+	 * Content codings that can be decoded while streaming.
+	 */
+	private static final String[] CONTENT_ENCODINGS = { "gzip", "deflate" };
 
 	/**
 	 * Creates a response that streams the given resource or answers with "not modified".
@@ -37,14 +48,29 @@ abstract public class StreamingEndpoint {
 	 *            flag if the file should be downloaded by client
 	 */
 	protected Response createResponse(StreamedResource resource, Request request, boolean download) {
-		// load the cache check values
+		return createResponse(resource, request, null, download);
+	}
+
+	/**
+	 * Creates a response that streams the given resource or answers with "not modified". Encoded content will be sent as it is if the client accepts the encoding, otherwise
+	 * it will be decoded while streaming.
+	 * 
+	 * @param resource
+	 *            resource to be streamed
+	 * @param request
+	 *            http request
+	 * @param headers
+	 *            http request headers or <code>null</code> if unknown
+	 * @param download
+	 *            flag if the file should be downloaded by client
+	 */
+	protected Response createResponse(StreamedResource resource, Request request, HttpHeaders headers, boolean download) {
+		// load the cache check values without touching the content
 		Date lastModified = resource.getLastModified();
+		String eTagValue = resource.getETag();
 		ResponseBuilder builder = null;
-		EntityTag eTag = null;
 		CacheControl cc = null;
-		if (lastModified != null) {
-			eTag = new EntityTag(Long.toHexString(lastModified.getTime()));
-
+		if (lastModified != null || eTagValue != null) {
 			// live time of response
 			if (resource.getMaxCachingAge() != null) {
 				cc = new CacheControl();
@@ -52,36 +78,60 @@ abstract public class StreamingEndpoint {
 				cc.setMustRevalidate(true);
 			}
 
-			// check 'if modified' request
-			builder = request.evaluatePreconditions(lastModified, eTag);
+			// check 'if modified' request, the content coding is not known before loading the content -> the tag of every variant is valid
+			builder = evaluatePreconditions(request, lastModified, eTagValue);
+			for (int i = 0; builder == null && eTagValue != null && i < CONTENT_ENCODINGS.length; i++) {
+				builder = evaluatePreconditions(request, lastModified, getEncodedETag(eTagValue, CONTENT_ENCODINGS[i]));
+			}
 		}
 
 		// cached resource did change -> serve updated content
 		if (builder == null) {
 			try {
-				// create output stream for fast file streaming
-				final InputStream in = resource.getInputStream();
-				StreamingOutput out = new StreamingOutput() {
-					@Override
-					public void write(OutputStream output) throws IOException, WebApplicationException {
-						try {
-							IOUtils.copy(in, output);
-						} catch (Exception e) {
-							// ignore exceptions as client may hung up
-						} finally {
-							IOUtils.closeQuietly(in);
-						}
-					}
-				};
+				StreamingOutput out;
+				long contentLength = -1;
+				String contentEncoding = resource.getContentEncoding();
+				boolean decode = contentEncoding != null && !isEncodingAccepted(headers, contentEncoding);
+				ByteBuffer content = decode ? resource.getDecodedContent() : resource.getContent();
+				if (decode && content == null) {
+					// client does not accept the encoding -> decode while streaming
+					out = createStreamOutput(createDecodingStream(resource.getInputStream(), contentEncoding));
+				} else if (content != null) {
+					// write buffer in one call
+					contentLength = content.remaining();
+					out = createBufferOutput(content);
+				} else {
+					// create output stream for fast file streaming
+					out = createStreamOutput(resource.getInputStream());
+				}
 
 				// build response
 				builder = Response.ok(out, resource.getMimeType());
-				if (eTag != null) {
-					builder.tag(eTag);
+				if (eTagValue != null) {
+					// encoded and decoded content are different representations and must not share a strong entity tag
+					builder.tag(contentEncoding != null && !decode ? getEncodedETag(eTagValue, contentEncoding) : eTagValue);
+				}
+				if (lastModified != null) {
+					builder.lastModified(lastModified);
 				}
 				if (cc != null) {
 					builder.cacheControl(cc);
 				}
+				if (contentLength >= 0) {
+					builder.header(HttpHeaders.CONTENT_LENGTH, contentLength);
+				}
+				if (contentEncoding != null) {
+					builder.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+					if (!decode) {
+						builder.header(HttpHeaders.CONTENT_ENCODING, contentEncoding);
+					}
+				}
+
+				if (download) {
+					builder.header("Content-Disposition", "attachment; filename=" + resource.getFileName());
+				} else {
+					builder.header("Content-Disposition", "inline; filename=" + resource.getFileName());
+				}
 			} catch (IOException e) {
 				builder = Response.status(Status.NOT_FOUND);
 			}
@@ -94,12 +144,145 @@ abstract public class StreamingEndpoint {
 			}
 		}
 
-		if (download) {
-			builder.header("Content-Disposition", "attachment; filename=" + resource.getFileName());
+		return builder.build();
+	}
+
+	/**
+	 * Evaluates the preconditions of the request.
+	 * 
+	 * @param request
+	 *            http request
+	 * @param lastModified
+	 *            last modified date or <code>null</code>
+	 * @param eTagValue
+	 *            entity tag or <code>null</code>
+	 * @return response builder for "not modified" or "precondition failed" or <code>null</code> if the content has to be sent
+	 */
+	private ResponseBuilder evaluatePreconditions(Request request, Date lastModified, String eTagValue) {
+		if (lastModified != null && eTagValue != null) {
+			return request.evaluatePreconditions(lastModified, new EntityTag(eTagValue));
+		} else if (lastModified != null) {
+			return request.evaluatePreconditions(lastModified);
 		} else {
-			builder.header("Content-Disposition", "inline; filename=" + resource.getFileName());
+			return request.evaluatePreconditions(new EntityTag(eTagValue));
 		}
+	}
 
-		return builder.build();
+	/**
+	 * Returns the entity tag of the encoded content.
+	 * 
+	 * @param eTagValue
+	 *            entity tag of the decoded content
+	 * @param encoding
+	 *            content coding
+	 * @return entity tag with the content coding as suffix
+	 */
+	private String getEncodedETag(String eTagValue, String encoding) {
+		return eTagValue + "-" + encoding.toLowerCase();
+	}
+
+	/**
+	 * Checks if the client accepts the given content coding.
+	 * 
+	 * @param headers
+	 *            http request headers or <code>null</code>
+	 * @param encoding
+	 *            content coding
+	 * @return <code>true</code> if the client accepts the content coding
+	 */
+	private boolean isEncodingAccepted(HttpHeaders headers, String encoding) {
+		if (headers == null) {
+			return false;
+		}
+		List<String> acceptEncodings = headers.getRequestHeader(HttpHeaders.ACCEPT_ENCODING);
+		if (acceptEncodings == null) {
+			return false;
+		}
+		for (String acceptEncoding : acceptEncodings) {
+			for (String coding : acceptEncoding.split(",")) {
+				String[] params = coding.split(";");
+				String name = params[0].trim();
+				if (name.equalsIgnoreCase(encoding) || name.equals("*")) {
+					// check for "q=0"
+					for (int i = 1; i < params.length; i++) {
+						if (params[i].trim().matches("[qQ]\\s*=\\s*0(\\.0*)?")) {
+							return false;
+						}
+					}
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Creates a stream that decodes the given stream.
+	 * 
+	 * @param in
+	 *            encoded input stream
+	 * @param encoding
+	 *            content coding
+	 * @return decoded input stream
+	 * @throws IOException
+	 */
+	private InputStream createDecodingStream(InputStream in, String encoding) throws IOException {
+		if (encoding.equalsIgnoreCase("gzip")) {
+			return new GZIPInputStream(in);
+		} else if (encoding.equalsIgnoreCase("deflate")) {
+			return new InflaterInputStream(in);
+		} else {
+			IOUtils.closeQuietly(in);
+			throw new IOException("Unsupported content coding: " + encoding);
+		}
+	}
+
+	/**
+	 * Creates the output that writes the given buffer.
+	 * 
+	 * @param content
+	 *            content to write
+	 * @return streaming output
+	 */
+	private StreamingOutput createBufferOutput(ByteBuffer content) {
+		return new StreamingOutput() {
+			@Override
+			public void write(OutputStream output) throws IOException, WebApplicationException {
+				try {
+					if (content.hasArray()) {
+						output.write(content.array(), content.arrayOffset() + content.position(), content.remaining());
+					} else {
+						WritableByteChannel channel = Channels.newChannel(output);
+						while (content.hasRemaining()) {
+							channel.write(content);
+						}
+					}
+				} catch (Exception e) {
+					// ignore exceptions as client may hung up
+				}
+			}
+		};
+	}
+
+	/**
+	 * Creates the output that copies the given input stream.
+	 * 
+	 * @param in
+	 *            input stream to copy
+	 * @return streaming output
+	 */
+	private StreamingOutput createStreamOutput(InputStream in) {
+		return new StreamingOutput() {
+			@Override
+			public void write(OutputStream output) throws IOException, WebApplicationException {
+				try {
+					IOUtils.copy(in, output);
+				} catch (Exception e) {
+					// ignore exceptions as client may hung up
+				} finally {
+					IOUtils.closeQuietly(in);
+				}
+			}
+		};
 	}
 }
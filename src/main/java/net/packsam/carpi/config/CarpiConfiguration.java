@@ -12,6 +12,7 @@ import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
 
 /**
  * Bean for configuring the application.
@@ -75,11 +76,136 @@ public class CarpiConfiguration {
 	 */
 	private static final String PROP_MBTILES_FILES = "mbtiles.files";
 
+	/**
+	 * Property key for the size of the in-memory map tiles cache in bytes.
+	 */
+	private static final String PROP_MBTILES_CACHE_SIZE = "mbtiles.cache.size";
+
+	/**
+	 * Property key for the number of read connections per MBTiles file.
+	 */
+	private static final String PROP_MBTILES_POOL_SIZE = "mbtiles.pool.size";
+
+	/**
+	 * Property key for the SQLite memory map size in bytes of MBTiles read connections.
+	 */
+	private static final String PROP_MBTILES_SQLITE_MMAP_SIZE = "mbtiles.sqlite.mmap-size";
+
+	/**
+	 * Property key for the SQLite page cache size of MBTiles read connections.
+	 */
+	private static final String PROP_MBTILES_SQLITE_CACHE_SIZE = "mbtiles.sqlite.cache-size";
+
+	/**
+	 * Property key for the flag if MBTiles read connections should be query only.
+	 */
+	private static final String PROP_MBTILES_SQLITE_QUERY_ONLY = "mbtiles.sqlite.query-only";
+
+	/**
+	 * Property key for the time in s to look ahead when prefetching map tiles.
+	 */
+	private static final String PROP_MBTILES_PREFETCH_TIME = "mbtiles.prefetch.time";
+
+	/**
+	 * Property key for the maximum number of map tiles to load per prefetch run.
+	 */
+	private static final String PROP_MBTILES_PREFETCH_MAX_TILES = "mbtiles.prefetch.max-tiles";
+
+	/**
+	 * Property key for the maximum duration in ms of a prefetch run.
+	 */
+	private static final String PROP_MBTILES_PREFETCH_MAX_DURATION = "mbtiles.prefetch.max-duration";
+
+	/**
+	 * Property key for the maximum number of missing map tiles to remember.
+	 */
+	private static final String PROP_MBTILES_NEGATIVE_CACHE_SIZE = "mbtiles.negative-cache.size";
+
+	/**
+	 * Property key for the number of zoom levels raster tiles will be synthesized above the max zoom level of the map files.
+	 */
+	private static final String PROP_MBTILES_OVERZOOM_LEVELS = "mbtiles.overzoom.levels";
+
+	/**
+	 * Property key for the size in bytes of the cache for synthesized raster tiles.
+	 */
+	private static final String PROP_MBTILES_OVERZOOM_CACHE_SIZE = "mbtiles.overzoom.cache.size";
+
+	/**
+	 * Property key for the zoom levels of the tiles to load into the cache at startup.
+	 */
+	private static final String PROP_MBTILES_WARMUP_ZOOM_LEVELS = "mbtiles.warmup.zoom-levels";
+
+	/**
+	 * Property key for the radius in tiles around the last position to load into the cache at startup.
+	 */
+	private static final String PROP_MBTILES_WARMUP_RADIUS = "mbtiles.warmup.radius";
+
+	/**
+	 * Property key for the maximum duration in ms of loading tiles into the cache at startup.
+	 */
+	private static final String PROP_MBTILES_WARMUP_MAX_DURATION = "mbtiles.warmup.max-duration";
+
+	/**
+	 * Property key for the maximum size in bytes of tiles to load into the cache at startup.
+	 */
+	private static final String PROP_MBTILES_WARMUP_MAX_SIZE = "mbtiles.warmup.max-size";
+
+	/**
+	 * Property key for the file to store the last position in.
+	 */
+	private static final String PROP_POSITION_FILE = "position.file";
+
+	/**
+	 * Property key for the flag if map files and GeoJson files should be reloaded when they change.
+	 */
+	private static final String PROP_MAP_WATCH = "map.watch";
+
+	/**
+	 * Property key for the time in ms a changed map file must stay unchanged before it will be reloaded.
+	 */
+	private static final String PROP_MAP_WATCH_DELAY = "map.watch.delay";
+
 	/**
 	 * Property key for the GeoJson files to use for the map.
 	 */
 	private static final String PROP_GEOJSON_FILES = "geojson.files";
 
+	/**
+	 * Property key for the size in bytes of the GeoJson tiles cache.
+	 */
+	private static final String PROP_GEOJSON_TILES_CACHE_SIZE = "geojson.tiles.cache.size";
+
+	/**
+	 * Property key for the simplification tolerance of GeoJson tiles in pixels.
+	 */
+	private static final String PROP_GEOJSON_TILES_TOLERANCE = "geojson.tiles.tolerance";
+
+	/**
+	 * Property key for the filter of the GeoJson point features to raise proximity alerts for.
+	 */
+	private static final String PROP_PROXIMITY_FILTER = "proximity.filter";
+
+	/**
+	 * Property key for the time in s a proximity alert should be raised before reaching a point feature.
+	 */
+	private static final String PROP_PROXIMITY_TIME = "proximity.time";
+
+	/**
+	 * Property key for the minimum alert distance in m.
+	 */
+	private static final String PROP_PROXIMITY_DISTANCE_MIN = "proximity.distance.min";
+
+	/**
+	 * Property key for the maximum alert distance in m.
+	 */
+	private static final String PROP_PROXIMITY_DISTANCE_MAX = "proximity.distance.max";
+
+	/**
+	 * Property key for the maximum angle in degrees between heading and direction to a point feature.
+	 */
+	private static final String PROP_PROXIMITY_ANGLE = "proximity.angle";
+
 	/**
 	 * Property key for the error threshold for latitude/longitude in m.
 	 */
@@ -105,6 +231,11 @@ public class CarpiConfiguration {
 	 */
 	private static final String PROP_TRACKING_TARGET_DIR = "tracks.dir";
 
+	/**
+	 * Property key for the tolerance in pixels for simplifying the track for lower zoom levels.
+	 */
+	private static final String PROP_TRACK_SIMPLIFICATION_TOLERANCE = "tracks.simplification.tolerance";
+
 	/**
 	 * Property key for the OBD2 WLAN dongle host name / IP.
 	 */
@@ -239,7 +370,7 @@ public class CarpiConfiguration {
 	}
 
 	/**
-	 * Returns the path to the mbtiles files. Multiple files will be separated by ','.
+	 * Returns the path to the map files (MBTiles files or tile archives). Multiple files will be separated by ','.
 	 * 
 	 * @return mbtiles paths
 	 */
@@ -247,6 +378,174 @@ public class CarpiConfiguration {
 		return properties.getProperty(PROP_MBTILES_FILES, "carpi.mbtiles");
 	}
 
+	/**
+	 * Returns the size of the in-memory map tiles cache in bytes. A size of 0 disables the cache.
+	 * 
+	 * @return cache size in bytes
+	 */
+	public long getMBTilesCacheSize() {
+		return Long.parseLong(properties.getProperty(PROP_MBTILES_CACHE_SIZE, "33554432"), 10);
+	}
+
+	/**
+	 * Returns the number of read connections that will be opened per MBTiles file.
+	 * 
+	 * @return number of read connections
+	 */
+	public int getMBTilesPoolSize() {
+		return Integer.parseInt(properties.getProperty(PROP_MBTILES_POOL_SIZE, "4"), 10);
+	}
+
+	/**
+	 * Returns the SQLite memory map size in bytes for MBTiles read connections (PRAGMA mmap_size). A size of 0 disables memory mapped I/O.
+	 * 
+	 * @return memory map size in bytes
+	 */
+	public long getMBTilesSQLiteMmapSize() {
+		return Long.parseLong(properties.getProperty(PROP_MBTILES_SQLITE_MMAP_SIZE, "67108864"), 10);
+	}
+
+	/**
+	 * Returns the SQLite page cache size for MBTiles read connections (PRAGMA cache_size). Positive values are pages, negative values are KiB.
+	 * 
+	 * @return cache size
+	 */
+	public int getMBTilesSQLiteCacheSize() {
+		return Integer.parseInt(properties.getProperty(PROP_MBTILES_SQLITE_CACHE_SIZE, "-2000"), 10);
+	}
+
+	/**
+	 * Returns the flag if MBTiles read connections should be query only (PRAGMA query_only).
+	 * 
+	 * @return query only flag
+	 */
+	public boolean isMBTilesSQLiteQueryOnly() {
+		return Boolean.parseBoolean(properties.getProperty(PROP_MBTILES_SQLITE_QUERY_ONLY, "true"));
+	}
+
+	/**
+	 * Returns the time in s to look ahead along the current course when prefetching map tiles. A time of 0 disables prefetching.
+	 * 
+	 * @return look ahead time in s
+	 */
+	public int getMBTilesPrefetchTime() {
+		return Integer.parseInt(properties.getProperty(PROP_MBTILES_PREFETCH_TIME, "30"), 10);
+	}
+
+	/**
+	 * Returns the maximum number of map tiles to load from the map files per prefetch run.
+	 * 
+	 * @return maximum number of tiles
+	 */
+	public int getMBTilesPrefetchMaxTiles() {
+		return Integer.parseInt(properties.getProperty(PROP_MBTILES_PREFETCH_MAX_TILES, "24"), 10);
+	}
+
+	/**
+	 * Returns the maximum duration in ms of a single prefetch run.
+	 * 
+	 * @return maximum duration in ms
+	 */
+	public long getMBTilesPrefetchMaxDuration() {
+		return Long.parseLong(properties.getProperty(PROP_MBTILES_PREFETCH_MAX_DURATION, "500"), 10);
+	}
+
+	/**
+	 * Returns the maximum number of missing map tiles to remember, so requests for these tiles can be answered without querying the map files.
+	 * 
+	 * @return maximum number of missing tiles
+	 */
+	public int getMBTilesNegativeCacheSize() {
+		return Integer.parseInt(properties.getProperty(PROP_MBTILES_NEGATIVE_CACHE_SIZE, "16384"), 10);
+	}
+
+	/**
+	 * Returns the number of zoom levels raster tiles will be synthesized above the max zoom level of the map files by upscaling the tiles of the max zoom level.
+	 * 
+	 * @return number of zoom levels, 0 disables overzooming
+	 */
+	public int getMBTilesOverzoomLevels() {
+		return Integer.parseInt(properties.getProperty(PROP_MBTILES_OVERZOOM_LEVELS, "2"), 10);
+	}
+
+	/**
+	 * Returns the size in bytes of the cache for synthesized raster tiles.
+	 * 
+	 * @return cache size in bytes
+	 */
+	public long getMBTilesOverzoomCacheSize() {
+		return Long.parseLong(properties.getProperty(PROP_MBTILES_OVERZOOM_CACHE_SIZE, "8388608"), 10);
+	}
+
+	/**
+	 * Returns the comma separated zoom levels of the tiles to load into the cache at startup. If empty, the last requested zoom level and its neighbours will be loaded.
+	 * 
+	 * @return zoom levels
+	 */
+	public String getMBTilesWarmupZoomLevels() {
+		return properties.getProperty(PROP_MBTILES_WARMUP_ZOOM_LEVELS);
+	}
+
+	/**
+	 * Returns the radius in tiles around the last position to load into the cache at startup. 0 disables loading tiles at startup.
+	 * 
+	 * @return radius in tiles
+	 */
+	public int getMBTilesWarmupRadius() {
+		return Integer.parseInt(properties.getProperty(PROP_MBTILES_WARMUP_RADIUS, "3"), 10);
+	}
+
+	/**
+	 * Returns the maximum duration in ms of loading tiles into the cache at startup.
+	 * 
+	 * @return maximum duration in ms
+	 */
+	public long getMBTilesWarmupMaxDuration() {
+		return Long.parseLong(properties.getProperty(PROP_MBTILES_WARMUP_MAX_DURATION, "15000"), 10);
+	}
+
+	/**
+	 * Returns the maximum size in bytes of tiles to load into the cache at startup.
+	 * 
+	 * @return maximum size in bytes
+	 */
+	public long getMBTilesWarmupMaxSize() {
+		return Long.parseLong(properties.getProperty(PROP_MBTILES_WARMUP_MAX_SIZE, "8388608"), 10);
+	}
+
+	/**
+	 * Returns the file to store the last position in. By default it will be stored in the tracking target directory, so it does not depend on the working directory of the
+	 * servlet container.
+	 * 
+	 * @return file name or an empty string if the position should not be stored
+	 */
+	public String getPositionFile() {
+		String fileName = properties.getProperty(PROP_POSITION_FILE);
+		if (fileName != null) {
+			return fileName;
+		}
+		String dir = StringUtils.defaultIfEmpty(getTrackingTargetDirecory(), System.getProperty("user.dir"));
+		return new File(dir, "carpi-position.properties").getPath();
+	}
+
+	/**
+	 * Returns the flag if map files and GeoJson files should be reloaded when they change on disk.
+	 * 
+	 * @return watch flag
+	 */
+	public boolean isMapWatch() {
+		return Boolean.parseBoolean(properties.getProperty(PROP_MAP_WATCH, "true"));
+	}
+
+	/**
+	 * Returns the time in ms a changed map file or GeoJson file must stay unchanged before it will be reloaded. This prevents reloading files that are still being copied.
+	 * 
+	 * @return delay in ms
+	 */
+	public long getMapWatchDelay() {
+		return Long.parseLong(properties.getProperty(PROP_MAP_WATCH_DELAY, "5000"), 10);
+	}
+
 	/**
 	 * Returns the path to the geojson files. Multiple files will be separated by ','.
 	 * 
@@ -256,6 +555,70 @@ public class CarpiConfiguration {
 		return properties.getProperty(PROP_GEOJSON_FILES);
 	}
 
+	/**
+	 * Returns the size in bytes of the cache for generated GeoJson tiles.
+	 * 
+	 * @return cache size
+	 */
+	public long getGeoJsonTilesCacheSize() {
+		return Long.parseLong(properties.getProperty(PROP_GEOJSON_TILES_CACHE_SIZE, "8388608"), 10);
+	}
+
+	/**
+	 * Returns the tolerance in pixels for simplifying the geometries of GeoJson tiles. Points closer than this to the simplified line will be removed.
+	 * 
+	 * @return tolerance in pixels
+	 */
+	public double getGeoJsonTilesTolerance() {
+		return Double.parseDouble(properties.getProperty(PROP_GEOJSON_TILES_TOLERANCE, "1"));
+	}
+
+	/**
+	 * Returns the filter of the GeoJson point features to raise proximity alerts for. The filter is a property key (e.g. <code>camera</code>) or a property key and value
+	 * (e.g. <code>type=camera</code>), an empty filter selects all point features.
+	 * 
+	 * @return filter or <code>null</code>
+	 */
+	public String getProximityFilter() {
+		return properties.getProperty(PROP_PROXIMITY_FILTER);
+	}
+
+	/**
+	 * Returns the time in s a proximity alert should be raised before reaching a point feature at the current speed. Setting it to 0 disables proximity alerts.
+	 * 
+	 * @return time in s
+	 */
+	public double getProximityTime() {
+		return Double.parseDouble(properties.getProperty(PROP_PROXIMITY_TIME, "20"));
+	}
+
+	/**
+	 * Returns the minimum alert distance in m, used when driving slowly.
+	 * 
+	 * @return distance in m
+	 */
+	public double getProximityDistanceMin() {
+		return Double.parseDouble(properties.getProperty(PROP_PROXIMITY_DISTANCE_MIN, "100"));
+	}
+
+	/**
+	 * Returns the maximum alert distance in m, used when driving fast.
+	 * 
+	 * @return distance in m
+	 */
+	public double getProximityDistanceMax() {
+		return Double.parseDouble(properties.getProperty(PROP_PROXIMITY_DISTANCE_MAX, "1000"));
+	}
+
+	/**
+	 * Returns the maximum angle in degrees between the heading and the direction to a point feature for raising an alert.
+	 * 
+	 * @return angle in degrees
+	 */
+	public double getProximityAngle() {
+		return Double.parseDouble(properties.getProperty(PROP_PROXIMITY_ANGLE, "30"));
+	}
+
 	/**
 	 * Returns the error threshold for latitude or longitude.
 	 * 
@@ -301,6 +664,15 @@ public class CarpiConfiguration {
 		return properties.getProperty(PROP_TRACKING_TARGET_DIR);
 	}
 
+	/**
+	 * Returns the tolerance in pixels for simplifying the track for lower zoom levels. Track points closer than this to the simplified track will be removed.
+	 * 
+	 * @return tolerance in pixels
+	 */
+	public double getTrackSimplificationTolerance() {
+		return Double.parseDouble(properties.getProperty(PROP_TRACK_SIMPLIFICATION_TOLERANCE, "1"));
+	}
+
 	/**
 	 * Returns the host name of the OBD2 WLAN dongle.
 	 * 
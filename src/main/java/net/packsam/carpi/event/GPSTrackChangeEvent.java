@@ -1,12 +1,14 @@
 package net.packsam.carpi.event;
 
-import java.util.List;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
 
-import net.packsam.carpi.model.GPSPathElement;
+import net.packsam.carpi.model.GPSPath;
 import net.packsam.carpi.model.GPSTrack;
 
 /**
- * Event when the GPS track changed.
+ * Event when the GPS track changed. The track contains only the path elements appended since the last event, starting at the sequence number of the track. Simplified
+ * tracks may also replace their last path element.
  * 
  * @author osterrath
  *
@@ -18,9 +20,19 @@ public class GPSTrackChangeEvent {
 	private GPSTrack track;
 
 	/**
-	 * Raw GPS path.
+	 * Snapshot of the raw GPS path.
 	 */
-	private List<GPSPathElement> path;
+	private GPSPath path;
+
+	/**
+	 * Sequence number of the first appended path element.
+	 */
+	private int seq;
+
+	/**
+	 * Changes of the simplified tracks by zoom level.
+	 */
+	private NavigableMap<Integer, GPSTrack> simplifiedTracks;
 
 	/**
 	 * 
@@ -38,11 +50,17 @@ public class GPSTrackChangeEvent {
 	 * Ctor.
 	 *
 	 * @param path
-	 *            raw path elements
+	 *            snapshot of the raw path
+	 * @param seq
+	 *            sequence number of the first appended path element
+	 * @param simplifiedTracks
+	 *            changes of the simplified tracks by zoom level
 	 */
-	public GPSTrackChangeEvent(List<GPSPathElement> path) {
+	public GPSTrackChangeEvent(GPSPath path, int seq, NavigableMap<Integer, GPSTrack> simplifiedTracks) {
 		super();
 		this.path = path;
+		this.seq = seq;
+		this.simplifiedTracks = simplifiedTracks;
 	}
 
 	/**
@@ -52,9 +70,26 @@ public class GPSTrackChangeEvent {
 	 */
 	public GPSTrack getTrack() {
 		if (track == null && path != null) {
-			track = new GPSTrack(path);
+			track = new GPSTrack(path, seq);
 		}
 		return track;
 	}
 
+	/**
+	 * Returns the track change for a map with the given zoom level.
+	 *
+	 * @param zoom
+	 *            zoom level of the map, <code>null</code> for the whole track
+	 * @return the track
+	 */
+	public GPSTrack getTrack(Integer zoom) {
+		if (zoom != null && simplifiedTracks != null) {
+			Entry<Integer, GPSTrack> e = simplifiedTracks.ceilingEntry(zoom);
+			if (e != null) {
+				return e.getValue();
+			}
+		}
+		return getTrack();
+	}
+
 }
@@ -0,0 +1,37 @@
+package net.packsam.carpi.event;
+
+import net.packsam.carpi.model.MapConfiguration;
+
+/**
+ * Event when the map configuration changed, e.g. because a map file became ready.
+ * 
+ * @author osterrath
+ *
+ */
+public class MapConfigurationChangeEvent {
+	/**
+	 * Current map configuration.
+	 */
+	private final MapConfiguration configuration;
+
+	/**
+	 * Ctor.
+	 *
+	 * @param configuration
+	 *            new map configuration
+	 */
+	public MapConfigurationChangeEvent(MapConfiguration configuration) {
+		super();
+		this.configuration = configuration;
+	}
+
+	/**
+	 * Getter method for the field "configuration".
+	 *
+	 * @return the configuration
+	 */
+	public MapConfiguration getConfiguration() {
+		return configuration;
+	}
+
+}
@@ -0,0 +1,54 @@
+package net.packsam.carpi.event;
+
+import org.geojson.Feature;
+
+/**
+ * Event when the vehicle approaches a GeoJson point feature (e.g. a speed camera).
+ * 
+ * @author osterrath
+ *
+ */
+public class ProximityAlertEvent {
+	/**
+	 * Approached point feature.
+	 */
+	private final Feature feature;
+
+	/**
+	 * Distance to the feature in m.
+	 */
+	private final double distance;
+
+	/**
+	 * Ctor.
+	 *
+	 * @param feature
+	 *            approached point feature
+	 * @param distance
+	 *            distance to the feature in m
+	 */
+	public ProximityAlertEvent(Feature feature, double distance) {
+		super();
+		this.feature = feature;
+		this.distance = distance;
+	}
+
+	/**
+	 * Getter method for the field "feature".
+	 *
+	 * @return the feature
+	 */
+	public Feature getFeature() {
+		return feature;
+	}
+
+	/**
+	 * Getter method for the field "distance".
+	 *
+	 * @return the distance
+	 */
+	public double getDistance() {
+		return distance;
+	}
+
+}
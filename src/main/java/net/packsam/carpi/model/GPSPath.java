@@ -0,0 +1,346 @@
+package net.packsam.carpi.model;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+
+/**
+ * Columnar store for the elements of a GPS path. Every value of the path elements is kept in its own primitive array, so appending an element creates no objects. The
+ * arrays will only be appended to and replaced when growing, so a snapshot can share them with the path and read its elements while new elements are appended. A
+ * snapshot may start at any element of the path, indices of the snapshot are relative to its first element. The path will be serialized as JSON array of elements with
+ * longitude, latitude and altitude.
+ *
+ * @author osterrath
+ *
+ */
+public class GPSPath implements JsonSerializable {
+	/**
+	 * Initial number of elements to allocate.
+	 */
+	private static final int INITIAL_CAPACITY = 1024;
+
+	/**
+	 * Timestamps (UTC).
+	 */
+	private long[] timestamps;
+
+	/**
+	 * Longitudes in degrees.
+	 */
+	private double[] longitudes;
+
+	/**
+	 * Latitudes in degrees.
+	 */
+	private double[] latitudes;
+
+	/**
+	 * Altitudes in m.
+	 */
+	private float[] altitudes;
+
+	/**
+	 * Distances to the last path element in m.
+	 */
+	private float[] distancesToLast;
+
+	/**
+	 * Index of the first element in the arrays.
+	 */
+	private int offset;
+
+	/**
+	 * Number of elements in the arrays.
+	 */
+	private int size;
+
+	/**
+	 * Sum of all distances in m.
+	 */
+	private double distance;
+
+	/**
+	 * Flag if the path is a snapshot sharing the arrays with another path.
+	 */
+	private final boolean readOnly;
+
+	/**
+	 * Ctor.
+	 *
+	 */
+	public GPSPath() {
+		this(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Ctor.
+	 *
+	 * @param capacity
+	 *            initial number of elements to allocate
+	 */
+	public GPSPath(int capacity) {
+		super();
+		int n = Math.max(1, capacity);
+		timestamps = new long[n];
+		longitudes = new double[n];
+		latitudes = new double[n];
+		altitudes = new float[n];
+		distancesToLast = new float[n];
+		readOnly = false;
+	}
+
+	/**
+	 * Ctor.
+	 *
+	 * @param path
+	 *            path to share the elements with
+	 * @param from
+	 *            index of the first element of the path to share
+	 */
+	private GPSPath(GPSPath path, int from) {
+		super();
+		timestamps = path.timestamps;
+		longitudes = path.longitudes;
+		latitudes = path.latitudes;
+		altitudes = path.altitudes;
+		distancesToLast = path.distancesToLast;
+		offset = path.offset + from;
+		size = path.size;
+		readOnly = true;
+		if (from == 0) {
+			distance = path.distance;
+		} else {
+			for (int i = offset; i < size; i++) {
+				distance += distancesToLast[i];
+			}
+		}
+	}
+
+	/**
+	 * Appends an element to the path.
+	 *
+	 * @param timestamp
+	 *            timestamp (UTC)
+	 * @param longitude
+	 *            longitude in degrees
+	 * @param latitude
+	 *            latitude in degrees
+	 * @param altitude
+	 *            altitude in m
+	 * @param distanceToLast
+	 *            distance to the last path element in m
+	 */
+	public synchronized void append(long timestamp, double longitude, double latitude, double altitude, double distanceToLast) {
+		if (readOnly) {
+			throw new UnsupportedOperationException("Cannot append to snapshot");
+		}
+		if (size == timestamps.length) {
+			int capacity = size * 2;
+			timestamps = Arrays.copyOf(timestamps, capacity);
+			longitudes = Arrays.copyOf(longitudes, capacity);
+			latitudes = Arrays.copyOf(latitudes, capacity);
+			altitudes = Arrays.copyOf(altitudes, capacity);
+			distancesToLast = Arrays.copyOf(distancesToLast, capacity);
+		}
+		timestamps[size] = timestamp;
+		longitudes[size] = longitude;
+		latitudes[size] = latitude;
+		altitudes[size] = (float) altitude;
+		distancesToLast[size] = (float) distanceToLast;
+		size++;
+		distance += distanceToLast;
+	}
+
+	/**
+	 * Creates a read-only view of the current elements. The view shares the arrays with this path, so it can be created for every change.
+	 *
+	 * @return snapshot of the path
+	 */
+	public synchronized GPSPath snapshot() {
+		return new GPSPath(this, 0);
+	}
+
+	/**
+	 * Creates a read-only view of the current elements starting at the given element.
+	 *
+	 * @param from
+	 *            index of the first element
+	 * @return snapshot of the path starting at the given element
+	 */
+	public synchronized GPSPath snapshot(int from) {
+		if (from < 0 || from > size - offset) {
+			throw new IndexOutOfBoundsException("Invalid index " + from + " for " + (size - offset) + " elements");
+		}
+		return new GPSPath(this, from);
+	}
+
+	/**
+	 * Returns the number of elements.
+	 *
+	 * @return number of elements
+	 */
+	public int size() {
+		return size - offset;
+	}
+
+	/**
+	 * Checks if the path has no elements.
+	 *
+	 * @return <code>true</code> if there are no elements
+	 */
+	public boolean isEmpty() {
+		return size == offset;
+	}
+
+	/**
+	 * Returns the sum of all distances.
+	 *
+	 * @return distance in m
+	 */
+	public double getDistance() {
+		return distance;
+	}
+
+	/**
+	 * Returns the timestamp of the given element.
+	 *
+	 * @param index
+	 *            element index
+	 * @return timestamp (UTC)
+	 */
+	public long getTimestamp(int index) {
+		return timestamps[checkIndex(index)];
+	}
+
+	/**
+	 * Returns the longitude of the given element.
+	 *
+	 * @param index
+	 *            element index
+	 * @return longitude in degrees
+	 */
+	public double getLongitude(int index) {
+		return longitudes[checkIndex(index)];
+	}
+
+	/**
+	 * Returns the latitude of the given element.
+	 *
+	 * @param index
+	 *            element index
+	 * @return latitude in degrees
+	 */
+	public double getLatitude(int index) {
+		return latitudes[checkIndex(index)];
+	}
+
+	/**
+	 * Returns the altitude of the given element.
+	 *
+	 * @param index
+	 *            element index
+	 * @return altitude in m
+	 */
+	public double getAltitude(int index) {
+		return altitudes[checkIndex(index)];
+	}
+
+	/**
+	 * Returns the distance of the given element to the last element.
+	 *
+	 * @param index
+	 *            element index
+	 * @return distance in m
+	 */
+	public double getDistanceToLast(int index) {
+		return distancesToLast[checkIndex(index)];
+	}
+
+	/**
+	 * Passes the elements of the given range to the given consumer.
+	 *
+	 * @param from
+	 *            index of the first element (inclusive)
+	 * @param to
+	 *            index of the last element (exclusive)
+	 * @param consumer
+	 *            element consumer
+	 */
+	public void forEach(int from, int to, ElementConsumer consumer) {
+		if (from < 0 || to > size() || from > to) {
+			throw new IndexOutOfBoundsException("Invalid range " + from + " - " + to + " for " + size() + " elements");
+		}
+		for (int i = offset + from; i < offset + to; i++) {
+			consumer.accept(timestamps[i], longitudes[i], latitudes[i], altitudes[i]);
+		}
+	}
+
+	/**
+	 * Checks if the given element index is valid.
+	 *
+	 * @param index
+	 *            element index
+	 * @return array index of the element
+	 */
+	private int checkIndex(int index) {
+		if (index < 0 || index >= size()) {
+			throw new IndexOutOfBoundsException("Invalid index " + index + " for " + size() + " elements");
+		}
+		return offset + index;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.fasterxml.jackson.databind.JsonSerializable#serialize(com.fasterxml.jackson.core.JsonGenerator, com.fasterxml.jackson.databind.SerializerProvider)
+	 */
+	@Override
+	public void serialize(JsonGenerator gen, SerializerProvider serializers) throws IOException {
+		gen.writeStartArray();
+		for (int i = offset; i < size; i++) {
+			gen.writeStartObject();
+			gen.writeNumberField("longitude", longitudes[i]);
+			gen.writeNumberField("latitude", latitudes[i]);
+			gen.writeNumberField("altitude", altitudes[i]);
+			gen.writeEndObject();
+		}
+		gen.writeEndArray();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.fasterxml.jackson.databind.JsonSerializable#serializeWithType(com.fasterxml.jackson.core.JsonGenerator, com.fasterxml.jackson.databind.SerializerProvider,
+	 * com.fasterxml.jackson.databind.jsontype.TypeSerializer)
+	 */
+	@Override
+	public void serializeWithType(JsonGenerator gen, SerializerProvider serializers, TypeSerializer typeSer) throws IOException {
+		serialize(gen, serializers);
+	}
+
+	/**
+	 * Consumer for the values of path elements.
+	 *
+	 * @author osterrath
+	 *
+	 */
+	public interface ElementConsumer {
+		/**
+		 * Accepts the values of a path element.
+		 *
+		 * @param timestamp
+		 *            timestamp (UTC)
+		 * @param longitude
+		 *            longitude in degrees
+		 * @param latitude
+		 *            latitude in degrees
+		 * @param altitude
+		 *            altitude in m
+		 */
+		void accept(long timestamp, double longitude, double latitude, double altitude);
+	}
+}
@@ -47,6 +47,10 @@ public class GPSPosition {
 	 * Climb rate error in m/s.
 	 */
 	private Double climbRateError;
+	/**
+	 * Course over ground in degrees from true north.
+	 */
+	private Double course;
 	/**
 	 * Current timestamp.
 	 */
@@ -242,6 +246,25 @@ public class GPSPosition {
 		this.climbRateError = climbRateError;
 	}
 
+	/**
+	 * Getter method for the field "course".
+	 *
+	 * @return the course
+	 */
+	public Double getCourse() {
+		return course;
+	}
+
+	/**
+	 * Setter method for the field "course".
+	 *
+	 * @param course
+	 *            the course to set
+	 */
+	public void setCourse(Double course) {
+		this.course = course;
+	}
+
 	/**
 	 * Getter method for the field "timestamp".
 	 *
@@ -1,9 +1,5 @@
 package net.packsam.carpi.model;
 
-import java.util.Collection;
-import java.util.List;
-import java.util.stream.Collectors;
-
 /**
  * Model class for a GPS track.
  * 
@@ -22,10 +18,20 @@ public class GPSTrack {
 	 */
 	private long distance;
 
+	/**
+	 * Sequence number (index in the whole track) of the first path element.
+	 */
+	private int seq;
+
+	/**
+	 * Zoom level the path has been simplified for, <code>null</code> for the whole path.
+	 */
+	private Integer zoom;
+
 	/**
 	 * Path of GPS track.
 	 */
-	private List<Element> path;
+	private GPSPath path;
 
 	/**
 	 * Ctor.
@@ -39,25 +45,35 @@ public class GPSTrack {
 	 * Ctor.
 	 * 
 	 * @param path
-	 *            GPS path elements
+	 *            snapshot of the GPS path
+	 */
+	public GPSTrack(GPSPath path) {
+		this(path, 0);
+	}
+
+	/**
+	 * Ctor.
+	 * 
+	 * @param path
+	 *            snapshot of the whole GPS path
+	 * @param seq
+	 *            sequence number of the first path element to contain, the whole path will be contained if it is out of range
 	 */
-	public GPSTrack(Collection<GPSPathElement> path) {
+	public GPSTrack(GPSPath path, int seq) {
 		super();
 		if (!path.isEmpty()) {
-			start = path.iterator().next().getTimestamp();
-			this.path = path.stream() //
-					.map(e -> new Element(e)) //
-					.collect(Collectors.toList());
-			distance = Math.round(//
-					path.stream() //
-							.collect(Collectors.summarizingDouble(GPSPathElement::getDistanceToLast)) //
-							.getSum() //
-					);
+			start = path.getTimestamp(0);
+			distance = Math.round(path.getDistance());
+			if (seq > 0 && seq <= path.size()) {
+				this.seq = seq;
+				this.path = path.snapshot(seq);
+			} else {
+				this.path = path;
+			}
 		} else {
 			start = System.currentTimeMillis();
 			distance = 0;
 		}
-
 	}
 
 	/**
@@ -99,119 +115,59 @@ public class GPSTrack {
 	}
 
 	/**
-	 * Getter method for the field "path".
+	 * Getter method for the field "seq".
 	 *
-	 * @return the path
+	 * @return the seq
 	 */
-	public List<Element> getPath() {
-		return path;
+	public int getSeq() {
+		return seq;
 	}
 
 	/**
-	 * Setter method for the field "path".
+	 * Setter method for the field "seq".
 	 *
-	 * @param path
-	 *            the path to set
+	 * @param seq
+	 *            the seq to set
 	 */
-	public void setPath(List<Element> path) {
-		this.path = path;
+	public void setSeq(int seq) {
+		this.seq = seq;
 	}
 
 	/**
-	 * Model class for a GPS track element.
-	 * 
-	 * @author osterrath
+	 * Getter method for the field "zoom".
 	 *
+	 * @return the zoom
 	 */
-	protected static class Element {
-		/**
-		 * Longitude in degrees.
-		 */
-		private double longitude;
-		/**
-		 * Latitude in degrees.
-		 */
-		private double latitude;
-		/**
-		 * Altitude in m.
-		 */
-		private double altitude;
-
-		/**
-		 * Ctor.
-		 *
-		 */
-		public Element() {
-			super();
-		}
-
-		/**
-		 * Ctor.
-		 *
-		 */
-		public Element(GPSPathElement e) {
-			super();
-			longitude = e.getLongitude();
-			latitude = e.getLatitude();
-			altitude = e.getAltitude();
-		}
-
-		/**
-		 * Getter method for the field "longitude".
-		 *
-		 * @return the longitude
-		 */
-		public double getLongitude() {
-			return longitude;
-		}
-
-		/**
-		 * Setter method for the field "longitude".
-		 *
-		 * @param longitude
-		 *            the longitude to set
-		 */
-		public void setLongitude(double longitude) {
-			this.longitude = longitude;
-		}
-
-		/**
-		 * Getter method for the field "latitude".
-		 *
-		 * @return the latitude
-		 */
-		public double getLatitude() {
-			return latitude;
-		}
-
-		/**
-		 * Setter method for the field "latitude".
-		 *
-		 * @param latitude
-		 *            the latitude to set
-		 */
-		public void setLatitude(double latitude) {
-			this.latitude = latitude;
-		}
+	public Integer getZoom() {
+		return zoom;
+	}
 
-		/**
-		 * Getter method for the field "altitude".
-		 *
-		 * @return the altitude
-		 */
-		public double getAltitude() {
-			return altitude;
-		}
+	/**
+	 * Setter method for the field "zoom".
+	 *
+	 * @param zoom
+	 *            the zoom to set
+	 */
+	public void setZoom(Integer zoom) {
+		this.zoom = zoom;
+	}
 
-		/**
-		 * Setter method for the field "altitude".
-		 *
-		 * @param altitude
-		 *            the altitude to set
-		 */
-		public void setAltitude(double altitude) {
-			this.altitude = altitude;
-		}
+	/**
+	 * Getter method for the field "path".
+	 *
+	 * @return the path
+	 */
+	public GPSPath getPath() {
+		return path;
+	}
 
+	/**
+	 * Setter method for the field "path".
+	 *
+	 * @param path
+	 *            the path to set
+	 */
+	public void setPath(GPSPath path) {
+		this.path = path;
 	}
 }
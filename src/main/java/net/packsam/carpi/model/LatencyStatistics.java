@@ -0,0 +1,177 @@
+package net.packsam.carpi.model;
+
+/**
+ * Model class for the latency statistics of a measured operation. Percentiles are estimated from the histogram buckets.
+ * 
+ * @author osterrath
+ *
+ */
+public class LatencyStatistics {
+	/**
+	 * Number of measured operations.
+	 */
+	private long count;
+
+	/**
+	 * Mean latency in ms.
+	 */
+	private double mean;
+
+	/**
+	 * Maximum latency in ms.
+	 */
+	private double max;
+
+	/**
+	 * Estimated median latency in ms.
+	 */
+	private double p50;
+
+	/**
+	 * Estimated 95th percentile of the latency in ms.
+	 */
+	private double p95;
+
+	/**
+	 * Estimated 99th percentile of the latency in ms.
+	 */
+	private double p99;
+
+	/**
+	 * Number of operations per histogram bucket, see {@link TileStatistics#getBucketLimits()} for the bucket limits.
+	 */
+	private long[] buckets;
+
+	/**
+	 * Getter method for the field "count".
+	 *
+	 * @return the count
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Setter method for the field "count".
+	 *
+	 * @param count
+	 *            the count to set
+	 */
+	public void setCount(long count) {
+		this.count = count;
+	}
+
+	/**
+	 * Getter method for the field "mean".
+	 *
+	 * @return the mean
+	 */
+	public double getMean() {
+		return mean;
+	}
+
+	/**
+	 * Setter method for the field "mean".
+	 *
+	 * @param mean
+	 *            the mean to set
+	 */
+	public void setMean(double mean) {
+		this.mean = mean;
+	}
+
+	/**
+	 * Getter method for the field "max".
+	 *
+	 * @return the max
+	 */
+	public double getMax() {
+		return max;
+	}
+
+	/**
+	 * Setter method for the field "max".
+	 *
+	 * @param max
+	 *            the max to set
+	 */
+	public void setMax(double max) {
+		this.max = max;
+	}
+
+	/**
+	 * Getter method for the field "p50".
+	 *
+	 * @return the p50
+	 */
+	public double getP50() {
+		return p50;
+	}
+
+	/**
+	 * Setter method for the field "p50".
+	 *
+	 * @param p50
+	 *            the p50 to set
+	 */
+	public void setP50(double p50) {
+		this.p50 = p50;
+	}
+
+	/**
+	 * Getter method for the field "p95".
+	 *
+	 * @return the p95
+	 */
+	public double getP95() {
+		return p95;
+	}
+
+	/**
+	 * Setter method for the field "p95".
+	 *
+	 * @param p95
+	 *            the p95 to set
+	 */
+	public void setP95(double p95) {
+		this.p95 = p95;
+	}
+
+	/**
+	 * Getter method for the field "p99".
+	 *
+	 * @return the p99
+	 */
+	public double getP99() {
+		return p99;
+	}
+
+	/**
+	 * Setter method for the field "p99".
+	 *
+	 * @param p99
+	 *            the p99 to set
+	 */
+	public void setP99(double p99) {
+		this.p99 = p99;
+	}
+
+	/**
+	 * Getter method for the field "buckets".
+	 *
+	 * @return the buckets
+	 */
+	public long[] getBuckets() {
+		return buckets;
+	}
+
+	/**
+	 * Setter method for the field "buckets".
+	 *
+	 * @param buckets
+	 *            the buckets to set
+	 */
+	public void setBuckets(long[] buckets) {
+		this.buckets = buckets;
+	}
+}
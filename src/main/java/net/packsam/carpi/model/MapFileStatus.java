@@ -0,0 +1,106 @@
+package net.packsam.carpi.model;
+
+/**
+ * Model class for the loading status of a map file.
+ * 
+ * @author osterrath
+ *
+ */
+public class MapFileStatus {
+	/**
+	 * Name of the map file.
+	 */
+	private String fileName;
+
+	/**
+	 * Loading state.
+	 */
+	private State state;
+
+	/**
+	 * Progress of the current loading state (0 to 1).
+	 */
+	private double progress;
+
+	/**
+	 * Getter method for the field "fileName".
+	 *
+	 * @return the fileName
+	 */
+	public String getFileName() {
+		return fileName;
+	}
+
+	/**
+	 * Setter method for the field "fileName".
+	 *
+	 * @param fileName
+	 *            the fileName to set
+	 */
+	public void setFileName(String fileName) {
+		this.fileName = fileName;
+	}
+
+	/**
+	 * Getter method for the field "state".
+	 *
+	 * @return the state
+	 */
+	public State getState() {
+		return state;
+	}
+
+	/**
+	 * Setter method for the field "state".
+	 *
+	 * @param state
+	 *            the state to set
+	 */
+	public void setState(State state) {
+		this.state = state;
+	}
+
+	/**
+	 * Getter method for the field "progress".
+	 *
+	 * @return the progress
+	 */
+	public double getProgress() {
+		return progress;
+	}
+
+	/**
+	 * Setter method for the field "progress".
+	 *
+	 * @param progress
+	 *            the progress to set
+	 */
+	public void setProgress(double progress) {
+		this.progress = progress;
+	}
+
+	/**
+	 * Loading state of a map file.
+	 * 
+	 * @author osterrath
+	 *
+	 */
+	public static enum State {
+		/**
+		 * Map file is being opened.
+		 */
+		OPENING,
+		/**
+		 * Map file is being indexed in background, tiles can not be served yet.
+		 */
+		INDEXING,
+		/**
+		 * Map file is ready for serving tiles.
+		 */
+		READY,
+		/**
+		 * Map file could not be opened.
+		 */
+		FAILED
+	}
+}
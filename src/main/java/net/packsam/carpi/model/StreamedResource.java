@@ -2,22 +2,35 @@ package net.packsam.carpi.model;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.Date;
 
 /**
- * Interface for a streamed resource that can be sent to client.
+ * Interface for a streamed resource that can be sent to client. The cache validators ({@link #getLastModified()}, {@link #getETag()}) will be evaluated before the content is
+ * requested, so implementations should load the content lazily in {@link #getInputStream()} or {@link #getContent()}.<br/>
+ * If the content is available in memory, it will be written in a single call with a content length, otherwise the input stream will be copied and sent chunked.
  * 
  * @author osterrath
  * 
  */
 public interface StreamedResource {
 	/**
-	 * Returns the input stream for this resource.
+	 * Returns the input stream for this resource. Like {@link #getContent()} the stream returns the content encoded with the {@link #getContentEncoding() content coding}, it
+	 * will be decoded while streaming for clients that do not accept the content coding.
 	 * 
 	 * @return input stream
 	 */
 	public InputStream getInputStream() throws IOException;
 
+	/**
+	 * Returns the complete content of this resource if it is already available in memory. The content will be written from the current position to the limit of the buffer.
+	 * 
+	 * @return content or <code>null</code> if the content is not available in memory
+	 */
+	public default ByteBuffer getContent() throws IOException {
+		return null;
+	}
+
 	/**
 	 * Returns the file name of the file.
 	 * 
@@ -39,6 +52,36 @@ public interface StreamedResource {
 	 */
 	public Date getLastModified();
 
+	/**
+	 * Returns the entity tag for this resource. By default it will be derived from the last modified date.
+	 * 
+	 * @return entity tag or <code>null</code>
+	 */
+	public default String getETag() {
+		Date lastModified = getLastModified();
+		return lastModified != null ? Long.toHexString(lastModified.getTime()) : null;
+	}
+
+	/**
+	 * Returns the decoded content of this resource if it is available in memory besides the encoded content. It will be sent to clients that do not accept the content coding
+	 * instead of decoding the content while streaming.
+	 * 
+	 * @return decoded content or <code>null</code> if the decoded content is not available in memory
+	 */
+	public default ByteBuffer getDecodedContent() throws IOException {
+		return null;
+	}
+
+	/**
+	 * Returns the content coding (e.g. <code>gzip</code>) the content of this resource is already encoded with. If the client does not accept <code>gzip</code> or
+	 * <code>deflate</code> encoded content it will be decoded while streaming.
+	 * 
+	 * @return content coding or <code>null</code> if the content is not encoded
+	 */
+	public default String getContentEncoding() throws IOException {
+		return null;
+	}
+
 	/**
 	 * Returns the MIME type for the resource.
 	 * 
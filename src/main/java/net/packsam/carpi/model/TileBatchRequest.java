@@ -0,0 +1,179 @@
+package net.packsam.carpi.model;
+
+import java.util.List;
+
+/**
+ * Model class for requesting multiple map tiles at once. The tiles can be given as list and/or as bounding box of tile positions on a single zoom level.
+ * 
+ * @author osterrath
+ *
+ */
+public class TileBatchRequest {
+	/**
+	 * Requested tiles.
+	 */
+	private List<TileReference> tiles;
+
+	/**
+	 * Zoom level of the bounding box.
+	 */
+	private Integer z;
+
+	/**
+	 * Minimum x position of the bounding box.
+	 */
+	private Integer minX;
+
+	/**
+	 * Minimum y position of the bounding box.
+	 */
+	private Integer minY;
+
+	/**
+	 * Maximum x position of the bounding box.
+	 */
+	private Integer maxX;
+
+	/**
+	 * Maximum y position of the bounding box.
+	 */
+	private Integer maxY;
+
+	/**
+	 * Entity tag the client already has for the tiles of the bounding box or <code>null</code>.
+	 */
+	private String eTag;
+
+	/**
+	 * Getter method for the field "tiles".
+	 *
+	 * @return the tiles
+	 */
+	public List<TileReference> getTiles() {
+		return tiles;
+	}
+
+	/**
+	 * Setter method for the field "tiles".
+	 *
+	 * @param tiles
+	 *            the tiles to set
+	 */
+	public void setTiles(List<TileReference> tiles) {
+		this.tiles = tiles;
+	}
+
+	/**
+	 * Getter method for the field "z".
+	 *
+	 * @return the z
+	 */
+	public Integer getZ() {
+		return z;
+	}
+
+	/**
+	 * Setter method for the field "z".
+	 *
+	 * @param z
+	 *            the z to set
+	 */
+	public void setZ(Integer z) {
+		this.z = z;
+	}
+
+	/**
+	 * Getter method for the field "minX".
+	 *
+	 * @return the minX
+	 */
+	public Integer getMinX() {
+		return minX;
+	}
+
+	/**
+	 * Setter method for the field "minX".
+	 *
+	 * @param minX
+	 *            the minX to set
+	 */
+	public void setMinX(Integer minX) {
+		this.minX = minX;
+	}
+
+	/**
+	 * Getter method for the field "minY".
+	 *
+	 * @return the minY
+	 */
+	public Integer getMinY() {
+		return minY;
+	}
+
+	/**
+	 * Setter method for the field "minY".
+	 *
+	 * @param minY
+	 *            the minY to set
+	 */
+	public void setMinY(Integer minY) {
+		this.minY = minY;
+	}
+
+	/**
+	 * Getter method for the field "maxX".
+	 *
+	 * @return the maxX
+	 */
+	public Integer getMaxX() {
+		return maxX;
+	}
+
+	/**
+	 * Setter method for the field "maxX".
+	 *
+	 * @param maxX
+	 *            the maxX to set
+	 */
+	public void setMaxX(Integer maxX) {
+		this.maxX = maxX;
+	}
+
+	/**
+	 * Getter method for the field "maxY".
+	 *
+	 * @return the maxY
+	 */
+	public Integer getMaxY() {
+		return maxY;
+	}
+
+	/**
+	 * Setter method for the field "maxY".
+	 *
+	 * @param maxY
+	 *            the maxY to set
+	 */
+	public void setMaxY(Integer maxY) {
+		this.maxY = maxY;
+	}
+
+	/**
+	 * Getter method for the field "eTag".
+	 *
+	 * @return the eTag
+	 */
+	public String getETag() {
+		return eTag;
+	}
+
+	/**
+	 * Setter method for the field "eTag".
+	 *
+	 * @param eTag
+	 *            the eTag to set
+	 */
+	public void setETag(String eTag) {
+		this.eTag = eTag;
+	}
+}
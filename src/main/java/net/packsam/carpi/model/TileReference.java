@@ -0,0 +1,105 @@
+package net.packsam.carpi.model;
+
+/**
+ * Model class for a reference to a single map tile.
+ * 
+ * @author osterrath
+ *
+ */
+public class TileReference {
+	/**
+	 * Zoom level.
+	 */
+	private int z;
+
+	/**
+	 * X position.
+	 */
+	private int x;
+
+	/**
+	 * Y position.
+	 */
+	private int y;
+
+	/**
+	 * Entity tag of the tile the client already has or <code>null</code>.
+	 */
+	private String eTag;
+
+	/**
+	 * Getter method for the field "z".
+	 *
+	 * @return the z
+	 */
+	public int getZ() {
+		return z;
+	}
+
+	/**
+	 * Setter method for the field "z".
+	 *
+	 * @param z
+	 *            the z to set
+	 */
+	public void setZ(int z) {
+		this.z = z;
+	}
+
+	/**
+	 * Getter method for the field "x".
+	 *
+	 * @return the x
+	 */
+	public int getX() {
+		return x;
+	}
+
+	/**
+	 * Setter method for the field "x".
+	 *
+	 * @param x
+	 *            the x to set
+	 */
+	public void setX(int x) {
+		this.x = x;
+	}
+
+	/**
+	 * Getter method for the field "y".
+	 *
+	 * @return the y
+	 */
+	public int getY() {
+		return y;
+	}
+
+	/**
+	 * Setter method for the field "y".
+	 *
+	 * @param y
+	 *            the y to set
+	 */
+	public void setY(int y) {
+		this.y = y;
+	}
+
+	/**
+	 * Getter method for the field "eTag".
+	 *
+	 * @return the eTag
+	 */
+	public String getETag() {
+		return eTag;
+	}
+
+	/**
+	 * Setter method for the field "eTag".
+	 *
+	 * @param eTag
+	 *            the eTag to set
+	 */
+	public void setETag(String eTag) {
+		this.eTag = eTag;
+	}
+}
@@ -0,0 +1,396 @@
+package net.packsam.carpi.model;
+
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Model class for the statistics of the map tiles service.
+ * 
+ * @author osterrath
+ *
+ */
+public class TileStatistics {
+	/**
+	 * Date when the statistics have been started.
+	 */
+	private Date since;
+
+	/**
+	 * Number of tile requests.
+	 */
+	private long requests;
+
+	/**
+	 * Tile requests per second during the last minute.
+	 */
+	private double requestRate;
+
+	/**
+	 * Number of tile bytes served.
+	 */
+	private long bytesServed;
+
+	/**
+	 * Number of tiles served from the tiles cache.
+	 */
+	private long cacheHits;
+
+	/**
+	 * Number of tiles that had to be read from the map files.
+	 */
+	private long cacheMisses;
+
+	/**
+	 * Number of tiles evicted from the tiles cache.
+	 */
+	private long cacheEvictions;
+
+	/**
+	 * Current size in bytes of the tiles cache.
+	 */
+	private long cacheSize;
+
+	/**
+	 * Number of requests answered by the known missing tiles.
+	 */
+	private long negativeHits;
+
+	/**
+	 * Number of prefetched tiles.
+	 */
+	private long prefetchedTiles;
+
+	/**
+	 * Number of prefetched tiles that have been requested.
+	 */
+	private long prefetchHits;
+
+	/**
+	 * Upper limits in ms of the latency histogram buckets. The last bucket has no upper limit.
+	 */
+	private double[] bucketLimits;
+
+	/**
+	 * Latency of tile requests by result (<code>hit</code>, <code>miss</code> and <code>negative</code>).
+	 */
+	private Map<String, LatencyStatistics> latencies;
+
+	/**
+	 * Latency of tile reads by map file name.
+	 */
+	private Map<String, LatencyStatistics> fileLatencies;
+
+	/**
+	 * Time waiting for a free database connection by map file name.
+	 */
+	private Map<String, LatencyStatistics> lockWaits;
+
+	/**
+	 * Number of tile loads by number of probed map files. The last entry counts all loads with this or more probed files.
+	 */
+	private long[] filesProbed;
+
+	/**
+	 * Getter method for the field "since".
+	 *
+	 * @return the since
+	 */
+	public Date getSince() {
+		return since;
+	}
+
+	/**
+	 * Setter method for the field "since".
+	 *
+	 * @param since
+	 *            the since to set
+	 */
+	public void setSince(Date since) {
+		this.since = since;
+	}
+
+	/**
+	 * Getter method for the field "requests".
+	 *
+	 * @return the requests
+	 */
+	public long getRequests() {
+		return requests;
+	}
+
+	/**
+	 * Setter method for the field "requests".
+	 *
+	 * @param requests
+	 *            the requests to set
+	 */
+	public void setRequests(long requests) {
+		this.requests = requests;
+	}
+
+	/**
+	 * Getter method for the field "requestRate".
+	 *
+	 * @return the requestRate
+	 */
+	public double getRequestRate() {
+		return requestRate;
+	}
+
+	/**
+	 * Setter method for the field "requestRate".
+	 *
+	 * @param requestRate
+	 *            the requestRate to set
+	 */
+	public void setRequestRate(double requestRate) {
+		this.requestRate = requestRate;
+	}
+
+	/**
+	 * Getter method for the field "bytesServed".
+	 *
+	 * @return the bytesServed
+	 */
+	public long getBytesServed() {
+		return bytesServed;
+	}
+
+	/**
+	 * Setter method for the field "bytesServed".
+	 *
+	 * @param bytesServed
+	 *            the bytesServed to set
+	 */
+	public void setBytesServed(long bytesServed) {
+		this.bytesServed = bytesServed;
+	}
+
+	/**
+	 * Getter method for the field "cacheHits".
+	 *
+	 * @return the cacheHits
+	 */
+	public long getCacheHits() {
+		return cacheHits;
+	}
+
+	/**
+	 * Setter method for the field "cacheHits".
+	 *
+	 * @param cacheHits
+	 *            the cacheHits to set
+	 */
+	public void setCacheHits(long cacheHits) {
+		this.cacheHits = cacheHits;
+	}
+
+	/**
+	 * Getter method for the field "cacheMisses".
+	 *
+	 * @return the cacheMisses
+	 */
+	public long getCacheMisses() {
+		return cacheMisses;
+	}
+
+	/**
+	 * Setter method for the field "cacheMisses".
+	 *
+	 * @param cacheMisses
+	 *            the cacheMisses to set
+	 */
+	public void setCacheMisses(long cacheMisses) {
+		this.cacheMisses = cacheMisses;
+	}
+
+	/**
+	 * Getter method for the field "cacheEvictions".
+	 *
+	 * @return the cacheEvictions
+	 */
+	public long getCacheEvictions() {
+		return cacheEvictions;
+	}
+
+	/**
+	 * Setter method for the field "cacheEvictions".
+	 *
+	 * @param cacheEvictions
+	 *            the cacheEvictions to set
+	 */
+	public void setCacheEvictions(long cacheEvictions) {
+		this.cacheEvictions = cacheEvictions;
+	}
+
+	/**
+	 * Getter method for the field "cacheSize".
+	 *
+	 * @return the cacheSize
+	 */
+	public long getCacheSize() {
+		return cacheSize;
+	}
+
+	/**
+	 * Setter method for the field "cacheSize".
+	 *
+	 * @param cacheSize
+	 *            the cacheSize to set
+	 */
+	public void setCacheSize(long cacheSize) {
+		this.cacheSize = cacheSize;
+	}
+
+	/**
+	 * Getter method for the field "negativeHits".
+	 *
+	 * @return the negativeHits
+	 */
+	public long getNegativeHits() {
+		return negativeHits;
+	}
+
+	/**
+	 * Setter method for the field "negativeHits".
+	 *
+	 * @param negativeHits
+	 *            the negativeHits to set
+	 */
+	public void setNegativeHits(long negativeHits) {
+		this.negativeHits = negativeHits;
+	}
+
+	/**
+	 * Getter method for the field "prefetchedTiles".
+	 *
+	 * @return the prefetchedTiles
+	 */
+	public long getPrefetchedTiles() {
+		return prefetchedTiles;
+	}
+
+	/**
+	 * Setter method for the field "prefetchedTiles".
+	 *
+	 * @param prefetchedTiles
+	 *            the prefetchedTiles to set
+	 */
+	public void setPrefetchedTiles(long prefetchedTiles) {
+		this.prefetchedTiles = prefetchedTiles;
+	}
+
+	/**
+	 * Getter method for the field "prefetchHits".
+	 *
+	 * @return the prefetchHits
+	 */
+	public long getPrefetchHits() {
+		return prefetchHits;
+	}
+
+	/**
+	 * Setter method for the field "prefetchHits".
+	 *
+	 * @param prefetchHits
+	 *            the prefetchHits to set
+	 */
+	public void setPrefetchHits(long prefetchHits) {
+		this.prefetchHits = prefetchHits;
+	}
+
+	/**
+	 * Getter method for the field "bucketLimits".
+	 *
+	 * @return the bucketLimits
+	 */
+	public double[] getBucketLimits() {
+		return bucketLimits;
+	}
+
+	/**
+	 * Setter method for the field "bucketLimits".
+	 *
+	 * @param bucketLimits
+	 *            the bucketLimits to set
+	 */
+	public void setBucketLimits(double[] bucketLimits) {
+		this.bucketLimits = bucketLimits;
+	}
+
+	/**
+	 * Getter method for the field "latencies".
+	 *
+	 * @return the latencies
+	 */
+	public Map<String, LatencyStatistics> getLatencies() {
+		return latencies;
+	}
+
+	/**
+	 * Setter method for the field "latencies".
+	 *
+	 * @param latencies
+	 *            the latencies to set
+	 */
+	public void setLatencies(Map<String, LatencyStatistics> latencies) {
+		this.latencies = latencies;
+	}
+
+	/**
+	 * Getter method for the field "fileLatencies".
+	 *
+	 * @return the fileLatencies
+	 */
+	public Map<String, LatencyStatistics> getFileLatencies() {
+		return fileLatencies;
+	}
+
+	/**
+	 * Setter method for the field "fileLatencies".
+	 *
+	 * @param fileLatencies
+	 *            the fileLatencies to set
+	 */
+	public void setFileLatencies(Map<String, LatencyStatistics> fileLatencies) {
+		this.fileLatencies = fileLatencies;
+	}
+
+	/**
+	 * Getter method for the field "lockWaits".
+	 *
+	 * @return the lockWaits
+	 */
+	public Map<String, LatencyStatistics> getLockWaits() {
+		return lockWaits;
+	}
+
+	/**
+	 * Setter method for the field "lockWaits".
+	 *
+	 * @param lockWaits
+	 *            the lockWaits to set
+	 */
+	public void setLockWaits(Map<String, LatencyStatistics> lockWaits) {
+		this.lockWaits = lockWaits;
+	}
+
+	/**
+	 * Getter method for the field "filesProbed".
+	 *
+	 * @return the filesProbed
+	 */
+	public long[] getFilesProbed() {
+		return filesProbed;
+	}
+
+	/**
+	 * Setter method for the field "filesProbed".
+	 *
+	 * @param filesProbed
+	 *            the filesProbed to set
+	 */
+	public void setFilesProbed(long[] filesProbed) {
+		this.filesProbed = filesProbed;
+	}
+}
@@ -0,0 +1,257 @@
+package net.packsam.carpi.service;
+
+import java.io.File;
+import java.util.Date;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.lang3.StringUtils;
+
+import net.packsam.carpi.model.MapFileStatus;
+
+/**
+ * Base class for map files.
+ * 
+ * @author osterrath
+ *
+ */
+abstract class AbstractMapFile implements MapFile {
+	/**
+	 * Class logger.
+	 */
+	protected final Logger log = Logger.getLogger(getClass().getName());
+
+	/**
+	 * Map file on disk.
+	 */
+	protected final File file;
+
+	/**
+	 * Date when the map file has been created.
+	 */
+	protected Date mapFileDate;
+
+	/**
+	 * Mime type of tiles.
+	 */
+	protected String tilesMimeType;
+
+	/**
+	 * File extension of tiles.
+	 */
+	protected String tilesFileExtension;
+
+	/**
+	 * Minimum value of Z in tiles file.
+	 */
+	protected int minZ;
+
+	/**
+	 * Maximum value of Z in tiles file.
+	 */
+	protected int maxZ;
+
+	/**
+	 * Geographic bounds (min longitude, min latitude, max longitude, max latitude) of the tiles or <code>null</code> if unknown.
+	 */
+	protected double[] bounds;
+
+	/**
+	 * Current loading state.
+	 */
+	private volatile MapFileStatus.State state = MapFileStatus.State.OPENING;
+
+	/**
+	 * Progress of the current loading state.
+	 */
+	private volatile double progress;
+
+	/**
+	 * Ctor.
+	 *
+	 * @param file
+	 *            map file on disk
+	 */
+	protected AbstractMapFile(File file) {
+		super();
+		this.file = file;
+		this.mapFileDate = new Date(file.lastModified());
+	}
+
+	/**
+	 * Sets the loading state and its progress.
+	 * 
+	 * @param state
+	 *            loading state
+	 * @param progress
+	 *            progress of the loading state (0 to 1)
+	 */
+	protected void setState(MapFileStatus.State state, double progress) {
+		if (this.state != state) {
+			log.log(Level.INFO, "Map file {0}: {1}", new Object[] { file.getName(), state });
+		}
+		this.progress = progress;
+		this.state = state;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.packsam.carpi.service.MapFile#isReady()
+	 */
+	@Override
+	public boolean isReady() {
+		return state == MapFileStatus.State.READY;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.packsam.carpi.service.MapFile#getStatus()
+	 */
+	@Override
+	public MapFileStatus getStatus() {
+		MapFileStatus status = new MapFileStatus();
+		status.setFileName(file.getName());
+		status.setState(state);
+		status.setProgress(progress);
+		return status;
+	}
+
+	/**
+	 * Sets the geographic bounds from the given MBTiles bounds value ("left,bottom,right,top").
+	 * 
+	 * @param value
+	 *            bounds value
+	 */
+	protected void setBounds(String value) {
+		if (StringUtils.isBlank(value)) {
+			return;
+		}
+		String[] parts = value.split(",");
+		if (parts.length != 4) {
+			log.log(Level.WARNING, "Invalid MBTiles bounds: {0}", value);
+			return;
+		}
+		try {
+			double[] b = new double[4];
+			for (int i = 0; i < 4; i++) {
+				b[i] = Double.parseDouble(parts[i].trim());
+			}
+			if (b[0] < b[2] && b[1] < b[3]) {
+				bounds = b;
+			} else {
+				log.log(Level.WARNING, "Invalid MBTiles bounds: {0}", value);
+			}
+		} catch (NumberFormatException e) {
+			log.log(Level.WARNING, "Invalid MBTiles bounds: {0}", value);
+		}
+	}
+
+	/**
+	 * Checks if the given tile intersects the geographic bounds of the map file.
+	 * 
+	 * @param z
+	 *            zoom level
+	 * @param x
+	 *            x position
+	 * @param y
+	 *            y position (XYZ)
+	 * @return <code>true</code> if the tile intersects the bounds or the bounds are unknown
+	 */
+	protected boolean isInBounds(int z, int x, int y) {
+		double[] b = bounds;
+		if (b == null) {
+			return true;
+		}
+		double n = 1 << z;
+		double west = x / n * 360.0 - 180.0;
+		double east = (x + 1) / n * 360.0 - 180.0;
+		double north = Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2 * y / n))));
+		double south = Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2 * (y + 1) / n))));
+		return east > b[0] && west < b[2] && north > b[1] && south < b[3];
+	}
+
+	/**
+	 * Sets mime type and file extension of the tiles from the given MBTiles format name.
+	 * 
+	 * @param format
+	 *            tiles format
+	 */
+	protected void setTilesFormat(String format) {
+		if (StringUtils.equalsIgnoreCase(format, "png")) {
+			tilesMimeType = "image/png";
+			tilesFileExtension = ".png";
+		} else if (StringUtils.equalsAnyIgnoreCase(format, "jpg", "jpeg")) {
+			tilesMimeType = "image/jpeg";
+			tilesFileExtension = ".jpg";
+		} else if (StringUtils.equalsIgnoreCase(format, "pbf")) {
+			tilesMimeType = VECTOR_TILES_MIME_TYPE;
+			tilesFileExtension = ".pbf";
+		} else {
+			log.log(Level.WARNING, "Unknown MBTiles format: {0}", format);
+			tilesMimeType = "application/octet-stream";
+			tilesFileExtension = "";
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.packsam.carpi.service.MapFile#getFile()
+	 */
+	@Override
+	public File getFile() {
+		return file;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.packsam.carpi.service.MapFile#getMapFileDate()
+	 */
+	@Override
+	public Date getMapFileDate() {
+		return mapFileDate;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.packsam.carpi.service.MapFile#getTilesMimeType()
+	 */
+	@Override
+	public String getTilesMimeType() {
+		return tilesMimeType;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.packsam.carpi.service.MapFile#getTilesFileExtension()
+	 */
+	@Override
+	public String getTilesFileExtension() {
+		return tilesFileExtension;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.packsam.carpi.service.MapFile#getMinZ()
+	 */
+	@Override
+	public int getMinZ() {
+		return minZ;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.packsam.carpi.service.MapFile#getMaxZ()
+	 */
+	@Override
+	public int getMaxZ() {
+		return maxZ;
+	}
+}
@@ -183,6 +183,7 @@ public class GPSdGPSService implements GPSService {
 				lastPosition.setAltitudeError(mapValue(tpv.getAltitudeError()));
 				lastPosition.setSpeedError(mapValue(tpv.getSpeedError()));
 				lastPosition.setClimbRateError(mapValue(tpv.getClimbRateError()));
+				lastPosition.setCourse(mapValue(tpv.getCourse()));
 				lastPosition.setTimestamp(mapValue(tpv.getTimestamp()));
 			}
 
@@ -0,0 +1,263 @@
+package net.packsam.carpi.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Static R-tree over the bounding boxes of GeoJson features for answering bounding box queries without checking every feature. The tree will be packed once with the
+ * Sort-Tile-Recursive algorithm: the features are sorted into vertical slices by longitude, each slice by latitude and packed into full leaf nodes. The upper levels group
+ * consecutive nodes of the level below. All nodes are stored in flat arrays, so the tree needs no objects per node.
+ *
+ * @author osterrath
+ *
+ */
+class GeoJsonIndex {
+	/**
+	 * Maximum number of children per node.
+	 */
+	private static final int NODE_SIZE = 16;
+
+	/**
+	 * Store of the indexed features.
+	 */
+	private final GeoJsonStore store;
+
+	/**
+	 * Feature numbers in the order of the leaf level.
+	 */
+	private final int[] order;
+
+	/**
+	 * Bounding boxes of the features in the order of the leaf level (min longitude, min latitude, max longitude, max latitude).
+	 */
+	private final double[] featureBounds;
+
+	/**
+	 * Bounding boxes of the nodes per level, level 0 are the leaf nodes and the last level contains only the root node. Node <code>i</code> contains the entries
+	 * <code>i * {@value #NODE_SIZE}</code> to <code>(i + 1) * {@value #NODE_SIZE} - 1</code> of the level below.
+	 */
+	private final double[][] nodeBounds;
+
+	/**
+	 * Ctor.
+	 *
+	 * @param store
+	 *            features to index
+	 */
+	GeoJsonIndex(GeoJsonStore store) {
+		super();
+		this.store = store;
+
+		int n = store.size();
+		double[] bounds = new double[n * 4];
+		for (int i = 0; i < n; i++) {
+			double[] b = store.getBounds(i);
+			System.arraycopy(b, 0, bounds, i * 4, 4);
+		}
+
+		// sort features into vertical slices and each slice by latitude
+		int leafCount = (n + NODE_SIZE - 1) / NODE_SIZE;
+		int sliceSize = (int) Math.ceil(Math.sqrt(leafCount)) * NODE_SIZE;
+		long[] sorted = new long[n];
+		for (int i = 0; i < n; i++) {
+			sorted[i] = sortKey((bounds[i * 4] + bounds[i * 4 + 2]) / 2, 180, i);
+		}
+		Arrays.sort(sorted);
+		for (int start = 0; start < n; start += sliceSize) {
+			int end = Math.min(n, start + sliceSize);
+			for (int j = start; j < end; j++) {
+				int i = (int) sorted[j];
+				sorted[j] = sortKey((bounds[i * 4 + 1] + bounds[i * 4 + 3]) / 2, 90, i);
+			}
+			Arrays.sort(sorted, start, end);
+		}
+
+		order = new int[n];
+		featureBounds = new double[n * 4];
+		for (int i = 0; i < n; i++) {
+			order[i] = (int) sorted[i];
+			System.arraycopy(bounds, order[i] * 4, featureBounds, i * 4, 4);
+		}
+
+		// pack levels until there is only the root node left
+		List<double[]> levels = new ArrayList<>();
+		double[] entries = featureBounds;
+		int count = n;
+		do {
+			int nodes = Math.max(1, (count + NODE_SIZE - 1) / NODE_SIZE);
+			double[] level = new double[nodes * 4];
+			for (int node = 0; node < nodes; node++) {
+				double[] b = new double[] { Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY };
+				for (int e = node * NODE_SIZE; e < Math.min(count, (node + 1) * NODE_SIZE); e++) {
+					extend(b, entries, e);
+				}
+				System.arraycopy(b, 0, level, node * 4, 4);
+			}
+			levels.add(level);
+			entries = level;
+			count = nodes;
+		} while (count > 1);
+		nodeBounds = levels.toArray(new double[levels.size()][]);
+	}
+
+	/**
+	 * Creates a sort key of the given coordinate and feature number. Sorting the keys sorts by the coordinate, the feature number can be restored from the lower 32 bits.
+	 *
+	 * @param coordinate
+	 *            longitude or latitude
+	 * @param range
+	 *            maximum absolute value of the coordinate
+	 * @param feature
+	 *            feature number
+	 * @return sort key
+	 */
+	private static long sortKey(double coordinate, double range, int feature) {
+		// features without geometry have no valid coordinate
+		double c = Double.isNaN(coordinate) ? range : Math.max(-range, Math.min(range, coordinate));
+		long quantized = (long) ((c + range) / (2 * range) * Integer.MAX_VALUE);
+		return (quantized << 32) | feature;
+	}
+
+	/**
+	 * Returns the store of the indexed features.
+	 *
+	 * @return feature store
+	 */
+	GeoJsonStore getStore() {
+		return store;
+	}
+
+	/**
+	 * Searches all features whose bounding box intersects the given bounding box. A bounding box crossing the antimeridian (min longitude greater than max longitude) will be
+	 * split into two queries, features found by both queries will only be returned once.
+	 *
+	 * @param minLon
+	 *            minimum longitude
+	 * @param minLat
+	 *            minimum latitude
+	 * @param maxLon
+	 *            maximum longitude
+	 * @param maxLat
+	 *            maximum latitude
+	 * @return feature numbers in ascending order
+	 */
+	int[] query(double minLon, double minLat, double maxLon, double maxLat) {
+		if (order.length == 0) {
+			return new int[0];
+		}
+		IntList result = new IntList();
+		if (minLon > maxLon) {
+			query(minLon, minLat, 180, maxLat, result);
+			query(-180, minLat, maxLon, maxLat, result);
+		} else {
+			query(minLon, minLat, maxLon, maxLat, result);
+		}
+		int[] found = result.toArray();
+		Arrays.sort(found);
+		if (minLon > maxLon) {
+			// features spanning both parts have been found twice
+			return unique(found);
+		}
+		return found;
+	}
+
+	/**
+	 * Removes duplicates from the given sorted feature numbers.
+	 *
+	 * @param sorted
+	 *            feature numbers in ascending order
+	 * @return feature numbers in ascending order without duplicates
+	 */
+	private static int[] unique(int[] sorted) {
+		int size = 0;
+		for (int i = 0; i < sorted.length; i++) {
+			if (size == 0 || sorted[i] != sorted[size - 1]) {
+				sorted[size++] = sorted[i];
+			}
+		}
+		return size == sorted.length ? sorted : Arrays.copyOf(sorted, size);
+	}
+
+	/**
+	 * Traverses the tree and adds all features intersecting the given bounding box.
+	 *
+	 * @param minLon
+	 *            minimum longitude
+	 * @param minLat
+	 *            minimum latitude
+	 * @param maxLon
+	 *            maximum longitude
+	 * @param maxLat
+	 *            maximum latitude
+	 * @param result
+	 *            list of found feature numbers
+	 */
+	private void query(double minLon, double minLat, double maxLon, double maxLat, IntList result) {
+		// stack of level and node number
+		IntList stack = new IntList();
+		stack.add(nodeBounds.length - 1);
+		stack.add(0);
+		while (stack.size() > 0) {
+			int node = stack.pop();
+			int level = stack.pop();
+			if (!intersects(nodeBounds[level], node, minLon, minLat, maxLon, maxLat)) {
+				continue;
+			}
+			int start = node * NODE_SIZE;
+			if (level == 0) {
+				for (int e = start; e < Math.min(order.length, start + NODE_SIZE); e++) {
+					if (intersects(featureBounds, e, minLon, minLat, maxLon, maxLat)) {
+						result.add(order[e]);
+					}
+				}
+			} else {
+				int children = nodeBounds[level - 1].length / 4;
+				for (int child = start; child < Math.min(children, start + NODE_SIZE); child++) {
+					stack.add(level - 1);
+					stack.add(child);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks if the entry with the given number intersects the given bounding box.
+	 *
+	 * @param bounds
+	 *            bounding boxes of all entries
+	 * @param entry
+	 *            entry number
+	 * @param minLon
+	 *            minimum longitude
+	 * @param minLat
+	 *            minimum latitude
+	 * @param maxLon
+	 *            maximum longitude
+	 * @param maxLat
+	 *            maximum latitude
+	 * @return <code>true</code> if the bounding boxes intersect
+	 */
+	private static boolean intersects(double[] bounds, int entry, double minLon, double minLat, double maxLon, double maxLat) {
+		int i = entry * 4;
+		return bounds[i] <= maxLon && bounds[i + 1] <= maxLat && bounds[i + 2] >= minLon && bounds[i + 3] >= minLat;
+	}
+
+	/**
+	 * Extends the bounding box by the entry with the given number.
+	 *
+	 * @param b
+	 *            bounding box to extend
+	 * @param bounds
+	 *            bounding boxes of all entries
+	 * @param entry
+	 *            entry number
+	 */
+	private static void extend(double[] b, double[] bounds, int entry) {
+		int i = entry * 4;
+		b[0] = Math.min(b[0], bounds[i]);
+		b[1] = Math.min(b[1], bounds[i + 1]);
+		b[2] = Math.max(b[2], bounds[i + 2]);
+		b[3] = Math.max(b[3], bounds[i + 3]);
+	}
+}
@@ -0,0 +1,703 @@
+package net.packsam.carpi.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.geojson.Feature;
+import org.geojson.GeoJsonObject;
+import org.geojson.GeometryCollection;
+import org.geojson.LineString;
+import org.geojson.LngLatAlt;
+import org.geojson.MultiLineString;
+import org.geojson.MultiPoint;
+import org.geojson.MultiPolygon;
+import org.geojson.Point;
+import org.geojson.Polygon;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Packed in-memory store of GeoJson features. The files will be read with the streaming parser of Jackson without creating an object per coordinate:
+ * <ul>
+ * <li>coordinates of all features are stored in a single int array as fixed point longitudes and latitudes (1e-7 degree, the precision of OpenStreetMap), the coordinates of a
+ * feature are stored consecutively</li>
+ * <li>the structure of the geometries (type, number of parts, number of coordinates per part) is stored in another int array</li>
+ * <li>property keys and values are stored once in dictionaries and referenced by their number</li>
+ * </ul>
+ * Features will only be converted back to GeoJson objects on output. Altitudes of the coordinates and unknown members of the GeoJson objects will be dropped.
+ *
+ * @author osterrath
+ *
+ */
+class GeoJsonStore {
+	/**
+	 * Factor for converting degrees to fixed point coordinates.
+	 */
+	private static final double SCALE = 1e7;
+
+	/**
+	 * Geometry type codes, the index is stored in the structure.
+	 */
+	private static final String[] TYPES = { null, "Point", "MultiPoint", "LineString", "MultiLineString", "Polygon", "MultiPolygon", "GeometryCollection" };
+
+	/**
+	 * Nesting depth of the coordinates per geometry type code.
+	 */
+	private static final int[] DEPTHS = { 0, 1, 2, 2, 3, 3, 4, 0 };
+
+	/**
+	 * Type code of points.
+	 */
+	private static final int POINT = 1;
+
+	/**
+	 * Type code of multi points.
+	 */
+	private static final int MULTI_POINT = 2;
+
+	/**
+	 * Type code of line strings.
+	 */
+	private static final int LINE_STRING = 3;
+
+	/**
+	 * Type code of multi line strings.
+	 */
+	private static final int MULTI_LINE_STRING = 4;
+
+	/**
+	 * Type code of polygons.
+	 */
+	private static final int POLYGON = 5;
+
+	/**
+	 * Type code of multi polygons.
+	 */
+	private static final int MULTI_POLYGON = 6;
+
+	/**
+	 * Type code of geometry collections.
+	 */
+	private static final int GEOMETRY_COLLECTION = 7;
+
+	/**
+	 * Factory for the streaming parsers.
+	 */
+	private final JsonFactory jsonFactory;
+
+	/**
+	 * Number of features.
+	 */
+	private int size;
+
+	/**
+	 * Fixed point longitudes and latitudes alternating.
+	 */
+	private final IntList coordinates = new IntList(1024);
+
+	/**
+	 * Geometry structures: type code followed by the part counts of the type (see {@link #readGeometry(JsonParser)}).
+	 */
+	private final IntList structure = new IntList(256);
+
+	/**
+	 * Index of the first coordinate value per feature, followed by the end of the last feature.
+	 */
+	private final IntList coordinateOffsets = new IntList();
+
+	/**
+	 * Index of the geometry structure per feature or -1 for features without geometry.
+	 */
+	private final IntList geometryOffsets = new IntList();
+
+	/**
+	 * Index of the first property per feature, followed by the end of the last feature.
+	 */
+	private final IntList propertyOffsets = new IntList();
+
+	/**
+	 * Key numbers of the properties.
+	 */
+	private final IntList propertyKeys = new IntList();
+
+	/**
+	 * Value numbers of the properties.
+	 */
+	private final IntList propertyValues = new IntList();
+
+	/**
+	 * Feature ids, mostly <code>null</code>.
+	 */
+	private final ArrayList<String> ids = new ArrayList<>();
+
+	/**
+	 * Dictionary of the property keys.
+	 */
+	private final ArrayList<String> keys = new ArrayList<>();
+
+	/**
+	 * Dictionary of the property values.
+	 */
+	private final ArrayList<Object> values = new ArrayList<>();
+
+	/**
+	 * Numbers of the property keys while reading files.
+	 */
+	private Map<String, Integer> keyNumbers = new HashMap<>();
+
+	/**
+	 * Numbers of the property values while reading files.
+	 */
+	private Map<Object, Integer> valueNumbers = new HashMap<>();
+
+	/**
+	 * Ctor.
+	 *
+	 * @param jsonFactory
+	 *            factory for the streaming parsers, must have a codec for reading property values
+	 */
+	GeoJsonStore(JsonFactory jsonFactory) {
+		super();
+		this.jsonFactory = jsonFactory;
+		coordinateOffsets.add(0);
+		propertyOffsets.add(0);
+	}
+
+	/**
+	 * Reads the features of the given GeoJson file containing a feature collection and appends them to the store. If the file could not be read, none of its features will be
+	 * added.
+	 *
+	 * @param file
+	 *            GeoJson file
+	 * @throws IOException
+	 *             if the file could not be read or is no valid GeoJson feature collection
+	 */
+	void read(File file) throws IOException {
+		int sizeMark = size;
+		int coordinatesMark = coordinates.size();
+		int structureMark = structure.size();
+		int propertiesMark = propertyKeys.size();
+		try (JsonParser p = jsonFactory.createParser(file)) {
+			if (p.nextToken() != JsonToken.START_OBJECT) {
+				throw new JsonParseException(p, "GeoJson file must contain an object");
+			}
+			String type = null;
+			while (p.nextToken() == JsonToken.FIELD_NAME) {
+				String name = p.getCurrentName();
+				JsonToken t = p.nextToken();
+				if ("type".equals(name)) {
+					type = p.getValueAsString();
+				} else if ("features".equals(name) && t == JsonToken.START_ARRAY) {
+					while ((t = p.nextToken()) != JsonToken.END_ARRAY) {
+						if (t == JsonToken.START_OBJECT) {
+							readFeature(p);
+						} else {
+							p.skipChildren();
+						}
+					}
+				} else {
+					p.skipChildren();
+				}
+			}
+			if (!"FeatureCollection".equals(type)) {
+				throw new JsonParseException(p, "GeoJson file must contain a FeatureCollection");
+			}
+		} catch (IOException | RuntimeException e) {
+			// remove the features of this file
+			size = sizeMark;
+			coordinates.truncate(coordinatesMark);
+			structure.truncate(structureMark);
+			coordinateOffsets.truncate(sizeMark + 1);
+			geometryOffsets.truncate(sizeMark);
+			propertyOffsets.truncate(sizeMark + 1);
+			propertyKeys.truncate(propertiesMark);
+			propertyValues.truncate(propertiesMark);
+			ids.subList(sizeMark, ids.size()).clear();
+			throw e;
+		}
+	}
+
+	/**
+	 * Reads a single feature and appends it to the store.
+	 *
+	 * @param p
+	 *            parser positioned at the start of the feature object
+	 * @throws IOException
+	 */
+	private void readFeature(JsonParser p) throws IOException {
+		int geometry = -1;
+		String id = null;
+		while (p.nextToken() == JsonToken.FIELD_NAME) {
+			String name = p.getCurrentName();
+			JsonToken t = p.nextToken();
+			if ("id".equals(name) && t.isScalarValue()) {
+				id = t == JsonToken.VALUE_NULL ? null : p.getValueAsString();
+			} else if ("geometry".equals(name) && t == JsonToken.START_OBJECT && geometry < 0) {
+				IntList g = readGeometry(p);
+				geometry = structure.size();
+				structure.addAll(g);
+			} else if ("properties".equals(name) && t == JsonToken.START_OBJECT) {
+				readProperties(p);
+			} else {
+				p.skipChildren();
+			}
+		}
+
+		ids.add(id);
+		geometryOffsets.add(geometry);
+		coordinateOffsets.add(coordinates.size());
+		propertyOffsets.add(propertyKeys.size());
+		size++;
+	}
+
+	/**
+	 * Reads the properties of a feature and stores their dictionary numbers.
+	 *
+	 * @param p
+	 *            parser positioned at the start of the properties object
+	 * @throws IOException
+	 */
+	private void readProperties(JsonParser p) throws IOException {
+		while (p.nextToken() == JsonToken.FIELD_NAME) {
+			String key = p.getCurrentName();
+			p.nextToken();
+			Object value = p.readValueAs(Object.class);
+
+			Integer k = keyNumbers.get(key);
+			if (k == null) {
+				k = keys.size();
+				keys.add(key);
+				keyNumbers.put(key, k);
+			}
+			Integer v = valueNumbers.get(value);
+			if (v == null) {
+				v = values.size();
+				values.add(value);
+				valueNumbers.put(value, v);
+			}
+			propertyKeys.add(k);
+			propertyValues.add(v);
+		}
+	}
+
+	/**
+	 * Reads a geometry, appends its coordinates and returns its structure. The structure starts with the type code followed by the counts depending on the type:
+	 * <ul>
+	 * <li>Point: nothing</li>
+	 * <li>MultiPoint, LineString: number of coordinates</li>
+	 * <li>MultiLineString, Polygon: number of parts, number of coordinates per part</li>
+	 * <li>MultiPolygon: number of polygons, for each polygon the number of rings and the number of coordinates per ring</li>
+	 * <li>GeometryCollection: number of geometries, structure per geometry</li>
+	 * </ul>
+	 *
+	 * @param p
+	 *            parser positioned at the start of the geometry object
+	 * @return geometry structure
+	 * @throws IOException
+	 */
+	private IntList readGeometry(JsonParser p) throws IOException {
+		String type = null;
+		IntList counts = null;
+		int depth = 0;
+		IntList geometries = null;
+		int geometryCount = 0;
+		while (p.nextToken() == JsonToken.FIELD_NAME) {
+			String name = p.getCurrentName();
+			JsonToken t = p.nextToken();
+			if ("type".equals(name)) {
+				type = p.getValueAsString();
+			} else if ("coordinates".equals(name) && t == JsonToken.START_ARRAY && counts == null) {
+				counts = new IntList(16);
+				depth = readCoordinates(p, counts);
+			} else if ("geometries".equals(name) && t == JsonToken.START_ARRAY && geometries == null) {
+				geometries = new IntList(16);
+				while ((t = p.nextToken()) != JsonToken.END_ARRAY) {
+					if (t == JsonToken.START_OBJECT) {
+						geometries.addAll(readGeometry(p));
+						geometryCount++;
+					} else {
+						p.skipChildren();
+					}
+				}
+			} else {
+				p.skipChildren();
+			}
+		}
+
+		int code = 0;
+		for (int i = 1; i < TYPES.length; i++) {
+			if (TYPES[i].equals(type)) {
+				code = i;
+			}
+		}
+		IntList result = new IntList(counts != null ? counts.size() + 2 : geometries != null ? geometries.size() + 2 : 2);
+		result.add(code);
+		if (code == GEOMETRY_COLLECTION) {
+			result.add(geometryCount);
+			if (geometries != null) {
+				result.addAll(geometries);
+			}
+		} else if (code > 0 && counts != null && (depth == DEPTHS[code] || (depth < 0 && -depth <= DEPTHS[code]))) {
+			result.addAll(counts);
+		} else {
+			throw new JsonParseException(p, "Invalid GeoJson geometry of type " + type);
+		}
+		return result;
+	}
+
+	/**
+	 * Reads a coordinates array of any depth. Positions will be appended to the coordinates, for arrays of arrays the number of entries will be added to the counts.
+	 *
+	 * @param p
+	 *            parser positioned at the start of the array
+	 * @param counts
+	 *            counts of the geometry structure
+	 * @return nesting depth of the array (1 for a position) or the negated minimum depth for empty arrays
+	 * @throws IOException
+	 */
+	private int readCoordinates(JsonParser p, IntList counts) throws IOException {
+		JsonToken t = p.nextToken();
+		if (t == JsonToken.VALUE_NUMBER_INT || t == JsonToken.VALUE_NUMBER_FLOAT) {
+			double lon = p.getDoubleValue();
+			t = p.nextToken();
+			if (t != JsonToken.VALUE_NUMBER_INT && t != JsonToken.VALUE_NUMBER_FLOAT) {
+				throw new JsonParseException(p, "Invalid GeoJson position");
+			}
+			double lat = p.getDoubleValue();
+			// skip altitude and additional elements
+			while ((t = p.nextToken()) != JsonToken.END_ARRAY) {
+				p.skipChildren();
+			}
+			coordinates.add((int) Math.round(lon * SCALE));
+			coordinates.add((int) Math.round(lat * SCALE));
+			return 1;
+		}
+
+		int countIndex = counts.size();
+		counts.add(0);
+		int count = 0;
+		int depth = 0;
+		int minDepth = 0;
+		while (t != JsonToken.END_ARRAY) {
+			if (t != JsonToken.START_ARRAY) {
+				throw new JsonParseException(p, "Invalid GeoJson coordinates");
+			}
+			int d = readCoordinates(p, counts);
+			if (d > 0) {
+				if (depth > 0 && depth != d) {
+					throw new JsonParseException(p, "Invalid GeoJson coordinates");
+				}
+				depth = d;
+			} else {
+				minDepth = Math.max(minDepth, -d);
+			}
+			count++;
+			t = p.nextToken();
+		}
+		counts.set(countIndex, count);
+
+		if (depth > 0) {
+			if (depth < minDepth) {
+				throw new JsonParseException(p, "Invalid GeoJson coordinates");
+			}
+			return depth + 1;
+		}
+		// empty arrays contain at least positions
+		return -(Math.max(minDepth, 1) + 1);
+	}
+
+	/**
+	 * Frees the memory only needed for reading files. No more files can be read afterwards.
+	 */
+	void compact() {
+		coordinates.trimToSize();
+		structure.trimToSize();
+		coordinateOffsets.trimToSize();
+		geometryOffsets.trimToSize();
+		propertyOffsets.trimToSize();
+		propertyKeys.trimToSize();
+		propertyValues.trimToSize();
+		ids.trimToSize();
+		keys.trimToSize();
+		values.trimToSize();
+		keyNumbers = null;
+		valueNumbers = null;
+	}
+
+	/**
+	 * Returns the number of features.
+	 *
+	 * @return number of features
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of coordinates of all features.
+	 *
+	 * @return number of coordinates
+	 */
+	int getCoordinateCount() {
+		return coordinates.size() / 2;
+	}
+
+	/**
+	 * Checks if the geometry of the given feature is a single point.
+	 *
+	 * @param feature
+	 *            feature number
+	 * @return <code>true</code> if the feature is a point
+	 */
+	boolean isPoint(int feature) {
+		int offset = geometryOffsets.get(feature);
+		return offset >= 0 && structure.get(offset) == POINT;
+	}
+
+	/**
+	 * Calculates the bounding box of the given feature. Features without geometry get an empty bounding box that never intersects.
+	 *
+	 * @param feature
+	 *            feature number
+	 * @return bounding box as array of min longitude, min latitude, max longitude and max latitude
+	 */
+	double[] getBounds(int feature) {
+		double[] b = new double[] { Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY };
+		int end = coordinateOffsets.get(feature + 1);
+		for (int i = coordinateOffsets.get(feature); i < end; i += 2) {
+			double lon = coordinates.get(i) / SCALE;
+			double lat = coordinates.get(i + 1) / SCALE;
+			b[0] = Math.min(b[0], lon);
+			b[1] = Math.min(b[1], lat);
+			b[2] = Math.max(b[2], lon);
+			b[3] = Math.max(b[3], lat);
+		}
+		return b;
+	}
+
+	/**
+	 * Returns the value of a property of the given feature.
+	 *
+	 * @param feature
+	 *            feature number
+	 * @param key
+	 *            property key
+	 * @return property value or <code>null</code>
+	 */
+	Object getProperty(int feature, String key) {
+		int end = propertyOffsets.get(feature + 1);
+		for (int i = propertyOffsets.get(feature); i < end; i++) {
+			if (keys.get(propertyKeys.get(i)).equals(key)) {
+				return values.get(propertyValues.get(i));
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Checks if the given feature should be shown on the given zoom level by its optional <code>minzoom</code> and <code>maxzoom</code> properties.
+	 *
+	 * @param feature
+	 *            feature number
+	 * @param zoom
+	 *            zoom level
+	 * @return <code>true</code> if the feature is visible
+	 */
+	boolean isVisible(int feature, int zoom) {
+		Object minZoom = getProperty(feature, "minzoom");
+		Object maxZoom = getProperty(feature, "maxzoom");
+		return !(minZoom instanceof Number && zoom < ((Number) minZoom).doubleValue()) && !(maxZoom instanceof Number && zoom > ((Number) maxZoom).doubleValue());
+	}
+
+	/**
+	 * Creates the GeoJson feature of the given feature number.
+	 *
+	 * @param feature
+	 *            feature number
+	 * @return GeoJson feature
+	 */
+	Feature getFeature(int feature) {
+		return getFeature(feature, getGeometry(feature));
+	}
+
+	/**
+	 * Creates the GeoJson feature of the given feature number with another geometry (like a clipped one).
+	 *
+	 * @param feature
+	 *            feature number
+	 * @param geometry
+	 *            geometry of the created feature
+	 * @return GeoJson feature
+	 */
+	Feature getFeature(int feature, GeoJsonObject geometry) {
+		Feature f = new Feature();
+		f.setId(ids.get(feature));
+		f.setProperties(getProperties(feature));
+		f.setGeometry(geometry);
+		return f;
+	}
+
+	/**
+	 * Creates the properties of the given feature.
+	 *
+	 * @param feature
+	 *            feature number
+	 * @return properties
+	 */
+	Map<String, Object> getProperties(int feature) {
+		int start = propertyOffsets.get(feature);
+		int end = propertyOffsets.get(feature + 1);
+		Map<String, Object> properties = new LinkedHashMap<>(Math.max(4, (end - start) * 2));
+		for (int i = start; i < end; i++) {
+			properties.put(keys.get(propertyKeys.get(i)), values.get(propertyValues.get(i)));
+		}
+		return properties;
+	}
+
+	/**
+	 * Creates the GeoJson geometry of the given feature.
+	 *
+	 * @param feature
+	 *            feature number
+	 * @return geometry or <code>null</code> if the feature has no geometry
+	 */
+	GeoJsonObject getGeometry(int feature) {
+		int offset = geometryOffsets.get(feature);
+		if (offset < 0) {
+			return null;
+		}
+		return toGeometry(new Cursor(offset, coordinateOffsets.get(feature)));
+	}
+
+	/**
+	 * Creates the geometry at the cursor position.
+	 *
+	 * @param c
+	 *            cursor in structure and coordinates
+	 * @return geometry
+	 */
+	private GeoJsonObject toGeometry(Cursor c) {
+		int type = structure.get(c.structure++);
+		switch (type) {
+		case POINT:
+			return new Point(toLngLatAlt(c));
+		case MULTI_POINT:
+			MultiPoint mp = new MultiPoint();
+			mp.setCoordinates(toPositions(c));
+			return mp;
+		case LINE_STRING:
+			LineString ls = new LineString();
+			ls.setCoordinates(toPositions(c));
+			return ls;
+		case MULTI_LINE_STRING:
+			MultiLineString mls = new MultiLineString();
+			mls.setCoordinates(toParts(c));
+			return mls;
+		case POLYGON:
+			Polygon polygon = new Polygon();
+			polygon.setCoordinates(toParts(c));
+			return polygon;
+		case MULTI_POLYGON:
+			int polygons = structure.get(c.structure++);
+			List<List<List<LngLatAlt>>> coordinates = new ArrayList<>(polygons);
+			for (int i = 0; i < polygons; i++) {
+				coordinates.add(toParts(c));
+			}
+			MultiPolygon mpolygon = new MultiPolygon();
+			mpolygon.setCoordinates(coordinates);
+			return mpolygon;
+		default:
+			int geometries = structure.get(c.structure++);
+			GeometryCollection gc = new GeometryCollection();
+			for (int i = 0; i < geometries; i++) {
+				gc.add(toGeometry(c));
+			}
+			return gc;
+		}
+	}
+
+	/**
+	 * Creates the parts (lines or rings) at the cursor position.
+	 *
+	 * @param c
+	 *            cursor in structure and coordinates
+	 * @return parts
+	 */
+	private List<List<LngLatAlt>> toParts(Cursor c) {
+		int parts = structure.get(c.structure++);
+		List<List<LngLatAlt>> result = new ArrayList<>(parts);
+		for (int i = 0; i < parts; i++) {
+			result.add(toPositions(c));
+		}
+		return result;
+	}
+
+	/**
+	 * Creates the positions at the cursor position.
+	 *
+	 * @param c
+	 *            cursor in structure and coordinates
+	 * @return positions
+	 */
+	private List<LngLatAlt> toPositions(Cursor c) {
+		int count = structure.get(c.structure++);
+		List<LngLatAlt> result = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			result.add(toLngLatAlt(c));
+		}
+		return result;
+	}
+
+	/**
+	 * Creates the position at the cursor position.
+	 *
+	 * @param c
+	 *            cursor in structure and coordinates
+	 * @return position
+	 */
+	private LngLatAlt toLngLatAlt(Cursor c) {
+		LngLatAlt position = new LngLatAlt(coordinates.get(c.coordinate) / SCALE, coordinates.get(c.coordinate + 1) / SCALE);
+		c.coordinate += 2;
+		return position;
+	}
+
+	/**
+	 * Read position in the structure and the coordinates.
+	 *
+	 * @author osterrath
+	 *
+	 */
+	private static class Cursor {
+		/**
+		 * Index in the structure.
+		 */
+		private int structure;
+
+		/**
+		 * Index in the coordinates.
+		 */
+		private int coordinate;
+
+		/**
+		 * Ctor.
+		 *
+		 * @param structure
+		 *            index in the structure
+		 * @param coordinate
+		 *            index in the coordinates
+		 */
+		private Cursor(int structure, int coordinate) {
+			super();
+			this.structure = structure;
+			this.coordinate = coordinate;
+		}
+	}
+}
@@ -0,0 +1,580 @@
+package net.packsam.carpi.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.geojson.FeatureCollection;
+import org.geojson.GeoJsonObject;
+import org.geojson.GeometryCollection;
+import org.geojson.LineString;
+import org.geojson.LngLatAlt;
+import org.geojson.MultiLineString;
+import org.geojson.MultiPoint;
+import org.geojson.MultiPolygon;
+import org.geojson.Point;
+import org.geojson.Polygon;
+
+/**
+ * Cuts GeoJson features into tiles like the map tiles. The geometries of each tile will be clipped to the tile extended by a small buffer (so lines do not end visibly at the
+ * tile borders) and simplified with the Douglas-Peucker algorithm by a tolerance in pixels of the tile's zoom level. All calculations are done in Web Mercator coordinates
+ * scaled to 0..1, the resulting features have rounded longitudes and latitudes again. Points will only be added to the tile containing them, so they are never duplicated.
+ *
+ * @author osterrath
+ *
+ */
+class GeoJsonTiler {
+	/**
+	 * Size of a tile in pixels.
+	 */
+	private static final int TILE_SIZE = 256;
+
+	/**
+	 * Buffer around a tile in pixels.
+	 */
+	private static final double BUFFER = 16;
+
+	/**
+	 * Precision of the resulting coordinates as fractions of a pixel.
+	 */
+	private static final int PRECISION = 8;
+
+	/**
+	 * Maximum zoom level for tiles.
+	 */
+	static final int MAX_ZOOM = 24;
+
+	/**
+	 * Spatial index of the GeoJson features.
+	 */
+	private final GeoJsonIndex index;
+
+	/**
+	 * Simplification tolerance in pixels.
+	 */
+	private final double tolerance;
+
+	/**
+	 * Ctor.
+	 *
+	 * @param index
+	 *            spatial index of the GeoJson features
+	 * @param tolerance
+	 *            simplification tolerance in pixels
+	 */
+	GeoJsonTiler(GeoJsonIndex index, double tolerance) {
+		super();
+		this.index = index;
+		this.tolerance = tolerance;
+	}
+
+	/**
+	 * Creates the tile with the given coordinates. Features with a <code>minzoom</code> or <code>maxzoom</code> property outside of the zoom level will be skipped.
+	 *
+	 * @param z
+	 *            zoom level
+	 * @param x
+	 *            x position
+	 * @param y
+	 *            y position
+	 * @return clipped and simplified features of the tile
+	 */
+	FeatureCollection getTile(int z, int x, int y) {
+		Clip clip = new Clip(z, x, y);
+		FeatureCollection fc = new FeatureCollection();
+		GeoJsonStore store = index.getStore();
+		for (int i : index.query(unprojectX(clip.minX), unprojectY(clip.maxY), unprojectX(clip.maxX), unprojectY(clip.minY))) {
+			if (!store.isVisible(i, z)) {
+				continue;
+			}
+			GeoJsonObject geometry = clip.clipGeometry(store.getGeometry(i));
+			if (geometry != null) {
+				fc.add(store.getFeature(i, geometry));
+			}
+		}
+		return fc;
+	}
+
+	/**
+	 * Projects the given longitude to the Web Mercator x coordinate.
+	 *
+	 * @param lon
+	 *            longitude
+	 * @return x coordinate (0..1)
+	 */
+	private static double projectX(double lon) {
+		return lon / 360 + 0.5;
+	}
+
+	/**
+	 * Projects the given latitude to the Web Mercator y coordinate.
+	 *
+	 * @param lat
+	 *            latitude
+	 * @return y coordinate (0..1), 0 is north
+	 */
+	private static double projectY(double lat) {
+		double sin = Math.sin(Math.toRadians(lat));
+		double y = 0.5 - 0.25 * Math.log((1 + sin) / (1 - sin)) / Math.PI;
+		return Math.max(0, Math.min(1, y));
+	}
+
+	/**
+	 * Converts the given Web Mercator x coordinate to the longitude.
+	 *
+	 * @param x
+	 *            x coordinate (0..1)
+	 * @return longitude
+	 */
+	private static double unprojectX(double x) {
+		return Math.max(-180, Math.min(180, (x - 0.5) * 360));
+	}
+
+	/**
+	 * Converts the given Web Mercator y coordinate to the latitude.
+	 *
+	 * @param y
+	 *            y coordinate (0..1), 0 is north
+	 * @return latitude
+	 */
+	private static double unprojectY(double y) {
+		return Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2 * Math.max(0, Math.min(1, y))))));
+	}
+
+	/**
+	 * Clipping and simplification of geometries for a single tile.
+	 *
+	 * @author osterrath
+	 *
+	 */
+	private class Clip {
+		/**
+		 * Bounds of the tile in Web Mercator coordinates.
+		 */
+		private final double tileMinX, tileMinY, tileMaxX, tileMaxY;
+
+		/**
+		 * Bounds of the tile including the buffer in Web Mercator coordinates.
+		 */
+		private final double minX, minY, maxX, maxY;
+
+		/**
+		 * Squared simplification tolerance in Web Mercator coordinates.
+		 */
+		private final double sqTolerance;
+
+		/**
+		 * Factor for rounding the resulting coordinates.
+		 */
+		private final double rounding;
+
+		/**
+		 * Ctor.
+		 *
+		 * @param z
+		 *            zoom level
+		 * @param x
+		 *            x position
+		 * @param y
+		 *            y position
+		 */
+		private Clip(int z, int x, int y) {
+			super();
+			double tiles = Math.pow(2, z);
+			double pixel = 1 / (tiles * TILE_SIZE);
+			tileMinX = x / tiles;
+			tileMinY = y / tiles;
+			tileMaxX = (x + 1) / tiles;
+			tileMaxY = (y + 1) / tiles;
+			minX = tileMinX - BUFFER * pixel;
+			minY = tileMinY - BUFFER * pixel;
+			maxX = tileMaxX + BUFFER * pixel;
+			maxY = tileMaxY + BUFFER * pixel;
+			sqTolerance = tolerance * pixel * tolerance * pixel;
+
+			// decimal places for a precision of a fraction of a pixel at the equator
+			rounding = Math.pow(10, Math.max(0, Math.ceil(Math.log10(PRECISION / (pixel * 360)))));
+		}
+
+		/**
+		 * Clips and simplifies the given geometry.
+		 *
+		 * @param geometry
+		 *            geometry
+		 * @return clipped geometry or <code>null</code> if nothing of the geometry is left in the tile
+		 */
+		private GeoJsonObject clipGeometry(GeoJsonObject geometry) {
+			if (geometry instanceof Point) {
+				LngLatAlt c = ((Point) geometry).getCoordinates();
+				return isInTile(c) ? new Point(toLngLatAlt(projectX(c.getLongitude()), projectY(c.getLatitude()))) : null;
+			} else if (geometry instanceof LineString) {
+				List<List<LngLatAlt>> lines = clipLine(((LineString) geometry).getCoordinates());
+				if (lines.isEmpty()) {
+					return null;
+				} else if (lines.size() == 1) {
+					LineString ls = new LineString();
+					ls.setCoordinates(lines.get(0));
+					return ls;
+				}
+				MultiLineString mls = new MultiLineString();
+				mls.setCoordinates(lines);
+				return mls;
+			} else if (geometry instanceof MultiPoint) {
+				List<LngLatAlt> points = new ArrayList<>();
+				for (LngLatAlt c : ((MultiPoint) geometry).getCoordinates()) {
+					if (isInTile(c)) {
+						points.add(toLngLatAlt(projectX(c.getLongitude()), projectY(c.getLatitude())));
+					}
+				}
+				if (points.isEmpty()) {
+					return null;
+				}
+				MultiPoint mp = new MultiPoint();
+				mp.setCoordinates(points);
+				return mp;
+			} else if (geometry instanceof MultiLineString) {
+				List<List<LngLatAlt>> lines = new ArrayList<>();
+				for (List<LngLatAlt> line : ((MultiLineString) geometry).getCoordinates()) {
+					lines.addAll(clipLine(line));
+				}
+				if (lines.isEmpty()) {
+					return null;
+				}
+				MultiLineString mls = new MultiLineString();
+				mls.setCoordinates(lines);
+				return mls;
+			} else if (geometry instanceof Polygon) {
+				List<List<LngLatAlt>> rings = clipPolygon(((Polygon) geometry).getCoordinates());
+				if (rings == null) {
+					return null;
+				}
+				Polygon p = new Polygon();
+				p.setCoordinates(rings);
+				return p;
+			} else if (geometry instanceof MultiPolygon) {
+				List<List<List<LngLatAlt>>> polygons = new ArrayList<>();
+				for (List<List<LngLatAlt>> polygon : ((MultiPolygon) geometry).getCoordinates()) {
+					List<List<LngLatAlt>> rings = clipPolygon(polygon);
+					if (rings != null) {
+						polygons.add(rings);
+					}
+				}
+				if (polygons.isEmpty()) {
+					return null;
+				}
+				MultiPolygon mp = new MultiPolygon();
+				mp.setCoordinates(polygons);
+				return mp;
+			} else if (geometry instanceof GeometryCollection) {
+				GeometryCollection gc = new GeometryCollection();
+				for (GeoJsonObject g : ((GeometryCollection) geometry).getGeometries()) {
+					GeoJsonObject clipped = clipGeometry(g);
+					if (clipped != null) {
+						gc.add(clipped);
+					}
+				}
+				return gc.getGeometries().isEmpty() ? null : gc;
+			}
+			return null;
+		}
+
+		/**
+		 * Checks if the given point lies in the tile without the buffer.
+		 *
+		 * @param c
+		 *            point
+		 * @return <code>true</code> if the point lies in the tile
+		 */
+		private boolean isInTile(LngLatAlt c) {
+			double x = projectX(c.getLongitude());
+			double y = projectY(c.getLatitude());
+			return x >= tileMinX && x < tileMaxX && y >= tileMinY && y < tileMaxY;
+		}
+
+		/**
+		 * Clips the given line to the tile bounds and simplifies the remaining parts.
+		 *
+		 * @param line
+		 *            line coordinates
+		 * @return remaining parts of the line
+		 */
+		private List<List<LngLatAlt>> clipLine(List<LngLatAlt> line) {
+			List<List<LngLatAlt>> result = new ArrayList<>();
+			double[] points = project(line);
+			int n = points.length / 2;
+			double[] part = null;
+			int partSize = 0;
+			double[] t = new double[2];
+			for (int i = 0; i < n - 1; i++) {
+				double ax = points[i * 2], ay = points[i * 2 + 1];
+				double bx = points[i * 2 + 2], by = points[i * 2 + 3];
+				if (!clipSegment(ax, ay, bx, by, t)) {
+					partSize = addPart(result, part, partSize, false);
+					part = null;
+					continue;
+				}
+				if (part == null || t[0] > 0) {
+					partSize = addPart(result, part, partSize, false);
+					part = new double[(n - i) * 2];
+					part[0] = ax + (bx - ax) * t[0];
+					part[1] = ay + (by - ay) * t[0];
+					partSize = 1;
+				}
+				part[partSize * 2] = ax + (bx - ax) * t[1];
+				part[partSize * 2 + 1] = ay + (by - ay) * t[1];
+				partSize++;
+				if (t[1] < 1) {
+					partSize = addPart(result, part, partSize, false);
+					part = null;
+				}
+			}
+			addPart(result, part, partSize, false);
+			return result;
+		}
+
+		/**
+		 * Clips the segment from a to b to the tile bounds with the Liang-Barsky algorithm.
+		 *
+		 * @param ax
+		 *            x coordinate of a
+		 * @param ay
+		 *            y coordinate of a
+		 * @param bx
+		 *            x coordinate of b
+		 * @param by
+		 *            y coordinate of b
+		 * @param t
+		 *            receives the parameters of the start and end of the clipped segment (0 = a, 1 = b)
+		 * @return <code>false</code> if the segment lies outside of the tile
+		 */
+		private boolean clipSegment(double ax, double ay, double bx, double by, double[] t) {
+			double dx = bx - ax;
+			double dy = by - ay;
+			double[] p = { -dx, dx, -dy, dy };
+			double[] q = { ax - minX, maxX - ax, ay - minY, maxY - ay };
+			t[0] = 0;
+			t[1] = 1;
+			for (int i = 0; i < 4; i++) {
+				if (p[i] == 0) {
+					if (q[i] < 0) {
+						return false;
+					}
+				} else {
+					double r = q[i] / p[i];
+					if (p[i] < 0) {
+						t[0] = Math.max(t[0], r);
+					} else {
+						t[1] = Math.min(t[1], r);
+					}
+				}
+			}
+			return t[0] <= t[1];
+		}
+
+		/**
+		 * Clips the rings of the given polygon to the tile bounds and simplifies them.
+		 *
+		 * @param polygon
+		 *            exterior ring and interior rings
+		 * @return remaining rings or <code>null</code> if nothing of the exterior ring is left
+		 */
+		private List<List<LngLatAlt>> clipPolygon(List<List<LngLatAlt>> polygon) {
+			List<List<LngLatAlt>> result = new ArrayList<>();
+			for (List<LngLatAlt> ring : polygon) {
+				double[] points = project(ring);
+				points = clipRing(points, 0, minX, false);
+				points = clipRing(points, 0, maxX, true);
+				points = clipRing(points, 1, minY, false);
+				points = clipRing(points, 1, maxY, true);
+				int size = addPart(result, points, points.length / 2, true);
+				if (size < 0 && result.isEmpty()) {
+					// exterior ring vanished
+					return null;
+				}
+			}
+			return result;
+		}
+
+		/**
+		 * Clips the given ring at a single tile border with the Sutherland-Hodgman algorithm.
+		 *
+		 * @param points
+		 *            ring coordinates (x and y alternating), the ring does not need to be closed
+		 * @param axis
+		 *            0 for clipping at a x border, 1 for a y border
+		 * @param border
+		 *            border coordinate
+		 * @param max
+		 *            <code>true</code> if the border is the maximum of the axis
+		 * @return clipped ring coordinates
+		 */
+		private double[] clipRing(double[] points, int axis, double border, boolean max) {
+			int n = points.length / 2;
+			double[] result = new double[n * 4];
+			int size = 0;
+			for (int i = 0; i < n; i++) {
+				int j = (i + 1) % n;
+				double a = points[i * 2 + axis];
+				double b = points[j * 2 + axis];
+				boolean aInside = max ? a <= border : a >= border;
+				boolean bInside = max ? b <= border : b >= border;
+				if (aInside) {
+					result[size * 2] = points[i * 2];
+					result[size * 2 + 1] = points[i * 2 + 1];
+					size++;
+				}
+				if (aInside != bInside) {
+					double t = (border - a) / (b - a);
+					result[size * 2] = points[i * 2] + (points[j * 2] - points[i * 2]) * t;
+					result[size * 2 + 1] = points[i * 2 + 1] + (points[j * 2 + 1] - points[i * 2 + 1]) * t;
+					size++;
+				}
+			}
+			return Arrays.copyOf(result, size * 2);
+		}
+
+		/**
+		 * Simplifies the given part of a line or ring and adds it to the result if enough points are left.
+		 *
+		 * @param result
+		 *            resulting parts
+		 * @param points
+		 *            coordinates (x and y alternating) or <code>null</code>
+		 * @param size
+		 *            number of points
+		 * @param ring
+		 *            <code>true</code> if the part is a ring
+		 * @return number of added points or -1 if the part has not been added
+		 */
+		private int addPart(List<List<LngLatAlt>> result, double[] points, int size, boolean ring) {
+			if (points == null || size < (ring ? 3 : 2)) {
+				return -1;
+			}
+			if (ring) {
+				// close ring for simplification
+				points = Arrays.copyOf(points, (size + 1) * 2);
+				points[size * 2] = points[0];
+				points[size * 2 + 1] = points[1];
+				size++;
+			}
+
+			boolean[] keep = simplify(points, size);
+			List<LngLatAlt> part = new ArrayList<>();
+			for (int i = 0; i < size; i++) {
+				if (keep[i]) {
+					part.add(toLngLatAlt(points[i * 2], points[i * 2 + 1]));
+				}
+			}
+			if (part.size() < (ring ? 4 : 2)) {
+				return -1;
+			}
+			result.add(part);
+			return part.size();
+		}
+
+		/**
+		 * Simplifies the given points with the Douglas-Peucker algorithm. The first and the last point will always be kept.
+		 *
+		 * @param points
+		 *            coordinates (x and y alternating)
+		 * @param size
+		 *            number of points
+		 * @return flags for the points to keep
+		 */
+		private boolean[] simplify(double[] points, int size) {
+			boolean[] keep = new boolean[size];
+			keep[0] = true;
+			keep[size - 1] = true;
+
+			// stack of first and last point of the ranges to simplify
+			int[] stack = new int[size * 2];
+			int top = 0;
+			stack[top++] = 0;
+			stack[top++] = size - 1;
+			while (top > 0) {
+				int last = stack[--top];
+				int first = stack[--top];
+				double maxDistance = sqTolerance;
+				int index = -1;
+				for (int i = first + 1; i < last; i++) {
+					double d = getSqSegmentDistance(points, i, first, last);
+					if (d > maxDistance) {
+						maxDistance = d;
+						index = i;
+					}
+				}
+				if (index >= 0) {
+					keep[index] = true;
+					stack[top++] = first;
+					stack[top++] = index;
+					stack[top++] = index;
+					stack[top++] = last;
+				}
+			}
+			return keep;
+		}
+
+		/**
+		 * Calculates the squared distance of a point to a segment.
+		 *
+		 * @param points
+		 *            coordinates (x and y alternating)
+		 * @param p
+		 *            number of the point
+		 * @param a
+		 *            number of the first point of the segment
+		 * @param b
+		 *            number of the last point of the segment
+		 * @return squared distance
+		 */
+		private double getSqSegmentDistance(double[] points, int p, int a, int b) {
+			double x = points[a * 2];
+			double y = points[a * 2 + 1];
+			double dx = points[b * 2] - x;
+			double dy = points[b * 2 + 1] - y;
+			if (dx != 0 || dy != 0) {
+				double t = ((points[p * 2] - x) * dx + (points[p * 2 + 1] - y) * dy) / (dx * dx + dy * dy);
+				if (t > 1) {
+					x = points[b * 2];
+					y = points[b * 2 + 1];
+				} else if (t > 0) {
+					x += dx * t;
+					y += dy * t;
+				}
+			}
+			dx = points[p * 2] - x;
+			dy = points[p * 2 + 1] - y;
+			return dx * dx + dy * dy;
+		}
+
+		/**
+		 * Projects the given coordinates to Web Mercator coordinates.
+		 *
+		 * @param coordinates
+		 *            coordinates
+		 * @return x and y alternating
+		 */
+		private double[] project(List<LngLatAlt> coordinates) {
+			double[] points = new double[coordinates.size() * 2];
+			for (int i = 0; i < coordinates.size(); i++) {
+				LngLatAlt c = coordinates.get(i);
+				points[i * 2] = projectX(c.getLongitude());
+				points[i * 2 + 1] = projectY(c.getLatitude());
+			}
+			return points;
+		}
+
+		/**
+		 * Converts the given Web Mercator coordinates to a rounded position.
+		 *
+		 * @param x
+		 *            x coordinate
+		 * @param y
+		 *            y coordinate
+		 * @return position
+		 */
+		private LngLatAlt toLngLatAlt(double x, double y) {
+			return new LngLatAlt(Math.round(unprojectX(x) * rounding) / rounding, Math.round(unprojectY(y) * rounding) / rounding);
+		}
+	}
+}
@@ -0,0 +1,135 @@
+package net.packsam.carpi.service;
+
+import java.util.Arrays;
+
+/**
+ * Growing list of primitive int values.
+ *
+ * @author osterrath
+ *
+ */
+class IntList {
+	/**
+	 * Values.
+	 */
+	private int[] values;
+
+	/**
+	 * Number of values.
+	 */
+	private int size;
+
+	/**
+	 * Ctor.
+	 */
+	IntList() {
+		this(64);
+	}
+
+	/**
+	 * Ctor.
+	 *
+	 * @param capacity
+	 *            initial capacity
+	 */
+	IntList(int capacity) {
+		super();
+		values = new int[Math.max(1, capacity)];
+	}
+
+	/**
+	 * Adds the given value.
+	 *
+	 * @param value
+	 *            value to add
+	 */
+	void add(int value) {
+		if (size == values.length) {
+			values = Arrays.copyOf(values, size * 2);
+		}
+		values[size++] = value;
+	}
+
+	/**
+	 * Adds all values of the given list.
+	 *
+	 * @param list
+	 *            values to add
+	 */
+	void addAll(IntList list) {
+		if (size + list.size > values.length) {
+			values = Arrays.copyOf(values, Math.max(size * 2, size + list.size));
+		}
+		System.arraycopy(list.values, 0, values, size, list.size);
+		size += list.size;
+	}
+
+	/**
+	 * Returns the value at the given index.
+	 *
+	 * @param index
+	 *            index
+	 * @return value
+	 */
+	int get(int index) {
+		return values[index];
+	}
+
+	/**
+	 * Replaces the value at the given index.
+	 *
+	 * @param index
+	 *            index
+	 * @param value
+	 *            new value
+	 */
+	void set(int index, int value) {
+		values[index] = value;
+	}
+
+	/**
+	 * Removes and returns the last value.
+	 *
+	 * @return last value
+	 */
+	int pop() {
+		return values[--size];
+	}
+
+	/**
+	 * Returns the number of values.
+	 *
+	 * @return number of values
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Removes all values after the given size.
+	 *
+	 * @param newSize
+	 *            new number of values
+	 */
+	void truncate(int newSize) {
+		size = Math.min(size, newSize);
+	}
+
+	/**
+	 * Shrinks the capacity to the number of values.
+	 */
+	void trimToSize() {
+		if (values.length > size) {
+			values = Arrays.copyOf(values, Math.max(1, size));
+		}
+	}
+
+	/**
+	 * Returns the values as array.
+	 *
+	 * @return values
+	 */
+	int[] toArray() {
+		return Arrays.copyOf(values, size);
+	}
+}
@@ -0,0 +1,137 @@
+package net.packsam.carpi.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import net.packsam.carpi.model.LatencyStatistics;
+
+/**
+ * Lock free latency histogram with exponential buckets. Bucket <code>i</code> counts all latencies up to 2<sup>i</sup> * {@value #FIRST_BUCKET_LIMIT} ns, the last bucket counts
+ * all larger latencies. Recording a latency only needs a few atomic increments, so it can be used on the hot path of tile requests.
+ *
+ * @author osterrath
+ *
+ */
+class LatencyHistogram {
+	/**
+	 * Upper limit in ns of the first bucket.
+	 */
+	private static final long FIRST_BUCKET_LIMIT = 16000;
+
+	/**
+	 * Number of buckets (16µs to approx. 16s and above).
+	 */
+	static final int BUCKETS = 22;
+
+	/**
+	 * Number of recorded latencies per bucket.
+	 */
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+	/**
+	 * Sum of recorded latencies in ns.
+	 */
+	private final AtomicLong total = new AtomicLong();
+
+	/**
+	 * Maximum recorded latency in ns.
+	 */
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records the given latency.
+	 *
+	 * @param nanos
+	 *            latency in ns
+	 */
+	void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		int bucket = 0;
+		long limit = FIRST_BUCKET_LIMIT;
+		while (nanos > limit && bucket < BUCKETS - 1) {
+			bucket++;
+			limit <<= 1;
+		}
+		buckets.incrementAndGet(bucket);
+		total.addAndGet(nanos);
+		long m;
+		while (nanos > (m = max.get()) && !max.compareAndSet(m, nanos)) {
+		}
+	}
+
+	/**
+	 * Returns the upper limits in ms of all buckets except the last one.
+	 *
+	 * @return bucket limits in ms
+	 */
+	static double[] getBucketLimits() {
+		double[] limits = new double[BUCKETS - 1];
+		for (int i = 0; i < limits.length; i++) {
+			limits[i] = toMillis(FIRST_BUCKET_LIMIT << i);
+		}
+		return limits;
+	}
+
+	/**
+	 * Creates a snapshot of the recorded latencies. The snapshot is not atomic, so the numbers may differ slightly if latencies are recorded concurrently.
+	 *
+	 * @return latency statistics
+	 */
+	LatencyStatistics toStatistics() {
+		long[] b = new long[BUCKETS];
+		long n = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			b[i] = buckets.get(i);
+			n += b[i];
+		}
+
+		LatencyStatistics s = new LatencyStatistics();
+		s.setCount(n);
+		s.setMean(n > 0 ? toMillis(total.get()) / n : 0);
+		s.setMax(toMillis(max.get()));
+		s.setP50(getPercentile(b, n, 0.5));
+		s.setP95(getPercentile(b, n, 0.95));
+		s.setP99(getPercentile(b, n, 0.99));
+		s.setBuckets(b);
+		return s;
+	}
+
+	/**
+	 * Estimates the given percentile by the upper limit of the bucket that contains it.
+	 *
+	 * @param b
+	 *            bucket counts
+	 * @param n
+	 *            number of recorded latencies
+	 * @param percentile
+	 *            percentile (0 to 1)
+	 * @return estimated latency in ms
+	 */
+	private double getPercentile(long[] b, long n, double percentile) {
+		if (n == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(n * percentile);
+		long sum = 0;
+		for (int i = 0; i < BUCKETS - 1; i++) {
+			sum += b[i];
+			if (sum >= rank) {
+				return Math.min(toMillis(FIRST_BUCKET_LIMIT << i), toMillis(max.get()));
+			}
+		}
+		return toMillis(max.get());
+	}
+
+	/**
+	 * Converts the given ns into ms.
+	 *
+	 * @param nanos
+	 *            time in ns
+	 * @return time in ms
+	 */
+	private static double toMillis(long nanos) {
+		return nanos / 1000000.0;
+	}
+}
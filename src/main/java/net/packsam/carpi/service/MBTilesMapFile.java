@@ -0,0 +1,765 @@
+package net.packsam.carpi.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.StringUtils;
+import org.sqlite.ProgressHandler;
+import org.sqlite.SQLiteConfig;
+
+import net.packsam.carpi.config.CarpiConfiguration;
+import net.packsam.carpi.model.LatencyStatistics;
+import net.packsam.carpi.model.MapFileStatus;
+
+/**
+ * Map file that reads the tiles from a MBTiles SQLite database.
+ *
+ * @author osterrath
+ *
+ */
+class MBTilesMapFile extends AbstractMapFile {
+	/**
+	 * Regexp pattern to extract index columns.
+	 */
+	private static final Pattern INDEX_COLUMNS = Pattern.compile(".+ ON .+ \\((.+)\\).*", Pattern.CASE_INSENSITIVE);
+
+	/**
+	 * Number of SQLite VM instructions between checks for aborting long running statements.
+	 */
+	private static final int PROGRESS_INTERVAL = 100000;
+
+	/**
+	 * Maximum time in s to wait for a free read connection.
+	 */
+	private static final long READER_TIMEOUT = 10;
+
+	/**
+	 * Lock object to access {@link MBTilesMapFile#runningReads}, {@link MBTilesMapFile#backgroundThread} and {@link MBTilesMapFile#closed}.
+	 */
+	private final Object READS_LOCK = new Object();
+
+	/**
+	 * Application configuration.
+	 */
+	private final CarpiConfiguration config;
+
+	/**
+	 * SQL connection to MBTiles file for maintenance tasks.
+	 */
+	private Connection sqlConnection;
+
+	/**
+	 * Pool of read connections for loading tile data.
+	 */
+	private BlockingQueue<TileReader> tileReaders;
+
+	/**
+	 * Number of running tile reads. The read connections will be closed by the last running read after the map file has been closed.
+	 */
+	private int runningReads;
+
+	/**
+	 * Thread running the background tasks on the maintenance connection or <code>null</code> if none is running. The maintenance connection will be closed by the background
+	 * task if the map file has been closed while it was running.
+	 */
+	private Thread backgroundThread;
+
+	/**
+	 * Time tile reads waited for a free read connection.
+	 */
+	private final LatencyHistogram lockWaits = new LatencyHistogram();
+
+	/**
+	 * Flag if the map file has been closed.
+	 */
+	private boolean closed;
+
+	/**
+	 * Index of existing tiles or <code>null</code> if not loaded yet.
+	 */
+	private volatile TileIndex tileIndex;
+
+	/**
+	 * Tiles format from the metadata table.
+	 */
+	private String formatValue;
+
+	/**
+	 * Bounds from the metadata table.
+	 */
+	private String boundsValue;
+
+	/**
+	 * Flag if the tiles table has an index on the zoom level.
+	 */
+	private volatile boolean hasZoomIndex;
+
+	/**
+	 * Flag if the tiles table has an index on the tile coordinates.
+	 */
+	private volatile boolean hasTileIndex;
+
+	/**
+	 * Fingerprint (file key, size and modification timestamp) of the MBTiles file after opening it and after the own writes of the background tasks or <code>null</code> if
+	 * unknown.
+	 */
+	private volatile List<Object> fingerprint;
+
+	/**
+	 * Ctor.
+	 *
+	 * @param file
+	 *            MBTiles file
+	 * @param config
+	 *            application configuration
+	 */
+	MBTilesMapFile(File file, CarpiConfiguration config) {
+		super(file);
+		this.config = config;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.packsam.carpi.service.MapFile#open()
+	 */
+	@Override
+	public void open() throws IOException {
+		try {
+			Class.forName("org.sqlite.JDBC");
+		} catch (ClassNotFoundException e) {
+			throw new IOException("JDBC driver not found", e);
+		}
+
+		// sidecar of unchanged file contains everything we need, so we can skip all scans
+		MBTilesSidecar sidecar = null;
+		try {
+			sidecar = MBTilesSidecar.read(file);
+		} catch (IOException e) {
+			log.log(Level.WARNING, "Could not read MBTiles sidecar", e);
+		}
+
+		try {
+			sqlConnection = DriverManager.getConnection("jdbc:sqlite:" + file.getPath());
+
+			if (sidecar != null) {
+				applySidecar(sidecar);
+			} else {
+				// read tiles type from metadata table
+				readMetadata();
+
+				// check indices, missing indices will be created in background
+				checkIndices();
+
+				if (hasZoomIndex) {
+					// read min and max values from tiles table, this only reads the zoom level index
+					readMinMaxValues();
+				}
+			}
+
+			// open read connections for concurrent tile reads
+			int size = Math.max(1, config.getMBTilesPoolSize());
+			tileReaders = new ArrayBlockingQueue<>(size);
+			for (int i = 0; i < size; i++) {
+				tileReaders.add(openTileReader());
+			}
+		} catch (SQLException e) {
+			throw new IOException("Could not open MBTiles file " + file.getPath(), e);
+		}
+
+		fingerprint = readFingerprint();
+
+		if (hasZoomIndex && hasTileIndex) {
+			setState(MapFileStatus.State.READY, 1);
+		} else {
+			setState(MapFileStatus.State.INDEXING, 0);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.packsam.carpi.service.MapFile#openInBackground()
+	 */
+	@Override
+	public void openInBackground() {
+		synchronized (READS_LOCK) {
+			if (closed) {
+				return;
+			}
+			backgroundThread = Thread.currentThread();
+		}
+		try {
+			// closing the map file interrupts the background tasks, so abort long running statements
+			ProgressHandler.setHandler(sqlConnection, PROGRESS_INTERVAL, new ProgressHandler() {
+				@Override
+				protected int progress() throws SQLException {
+					return Thread.currentThread().isInterrupted() ? 1 : 0;
+				}
+			});
+			runBackgroundTasks();
+		} catch (SQLException e) {
+			log.log(Level.WARNING, "Could not run background tasks", e);
+		} finally {
+			boolean closeConnection;
+			synchronized (READS_LOCK) {
+				backgroundThread = null;
+				closeConnection = closed;
+				if (closed) {
+					// clear the interrupt of close()
+					Thread.interrupted();
+				}
+			}
+			if (closeConnection) {
+				// map file has been closed while running
+				closeMaintenanceConnection();
+			} else {
+				try {
+					ProgressHandler.clearHandler(sqlConnection);
+				} catch (SQLException e) {
+				}
+				updateFingerprint();
+			}
+		}
+	}
+
+	/**
+	 * Takes over the fingerprint of the MBTiles file after the own writes of the background tasks (like created indices), so they will not be reported as change. A file that
+	 * has been replaced in the meantime keeps the old fingerprint.
+	 */
+	private void updateFingerprint() {
+		List<Object> current = readFingerprint();
+		List<Object> old = fingerprint;
+		if (current != null && old != null && Objects.equals(current.get(0), old.get(0))) {
+			fingerprint = current;
+		}
+	}
+
+	/**
+	 * Reads the fingerprint of the MBTiles file.
+	 *
+	 * @return file key, size and modification timestamp or <code>null</code> if the file could not be read
+	 */
+	private List<Object> readFingerprint() {
+		try {
+			BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+			return Arrays.asList(attributes.fileKey(), attributes.size(), attributes.lastModifiedTime().toMillis());
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.packsam.carpi.service.MapFile#isChangedOnDisk()
+	 */
+	@Override
+	public boolean isChangedOnDisk() {
+		List<Object> current = readFingerprint();
+		List<Object> own = fingerprint;
+		if (current == null || own == null) {
+			return true;
+		}
+		synchronized (READS_LOCK) {
+			if (backgroundThread != null) {
+				// the background tasks are still writing, only a replaced file can be detected
+				return !Objects.equals(current.get(0), own.get(0));
+			}
+		}
+		return !current.equals(own);
+	}
+
+	/**
+	 * Creates missing indices and builds the tile index.
+	 */
+	private void runBackgroundTasks() {
+		if (!isReady()) {
+			// create missing indices without blocking the start of the application
+			if (!hasZoomIndex) {
+				log.log(Level.INFO, "Index for zoom level not found. Creating new...");
+				hasZoomIndex = createIndex("CREATE INDEX IF NOT EXISTS idx_tiles_zoom_level ON tiles (zoom_level)");
+			}
+			setState(MapFileStatus.State.INDEXING, 1.0 / 3.0);
+			if (!hasTileIndex && !Thread.currentThread().isInterrupted()) {
+				log.log(Level.INFO, "Index for tiles not found. Creating new...");
+				hasTileIndex = createIndex("CREATE UNIQUE INDEX IF NOT EXISTS idx_tiles_tile ON tiles (zoom_level, tile_column, tile_row)");
+			}
+			setState(MapFileStatus.State.INDEXING, 2.0 / 3.0);
+			if (Thread.currentThread().isInterrupted()) {
+				return;
+			}
+			readMinMaxValues();
+
+			// serve tiles even if an index could not be created
+			setState(MapFileStatus.State.READY, 1);
+		}
+
+		if (tileIndex == null && !Thread.currentThread().isInterrupted()) {
+			buildTileIndex();
+		}
+	}
+
+	/**
+	 * Opens a new read only connection to the MBTiles file.
+	 *
+	 * @return tile reader
+	 * @throws SQLException
+	 */
+	private TileReader openTileReader() throws SQLException {
+		SQLiteConfig sqliteConfig = new SQLiteConfig();
+		sqliteConfig.setReadOnly(true);
+
+		TileReader reader = new TileReader();
+		reader.sqlConnection = DriverManager.getConnection("jdbc:sqlite:" + file.getPath(), sqliteConfig.toProperties());
+		Statement stmt = null;
+		try {
+			stmt = reader.sqlConnection.createStatement();
+			stmt.executeUpdate("PRAGMA mmap_size = " + config.getMBTilesSQLiteMmapSize());
+			stmt.executeUpdate("PRAGMA cache_size = " + config.getMBTilesSQLiteCacheSize());
+			stmt.executeUpdate("PRAGMA query_only = " + (config.isMBTilesSQLiteQueryOnly() ? "ON" : "OFF"));
+			reader.psTileData = reader.sqlConnection.prepareStatement("SELECT tile_data FROM tiles WHERE zoom_level = ? AND tile_column = ? AND tile_row = ?");
+		} catch (SQLException e) {
+			closeTileReader(reader);
+			throw e;
+		} finally {
+			if (stmt != null) {
+				try {
+					stmt.close();
+				} catch (SQLException e) {
+				}
+			}
+		}
+		return reader;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.packsam.carpi.service.MapFile#close()
+	 */
+	@Override
+	public void close() {
+		boolean idle;
+		boolean backgroundTaskRunning;
+		synchronized (READS_LOCK) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			idle = runningReads == 0;
+			backgroundTaskRunning = backgroundThread != null;
+			if (backgroundTaskRunning) {
+				// cancel the background tasks, they close the maintenance connection when finished
+				backgroundThread.interrupt();
+			}
+		}
+		if (idle) {
+			closeTileReaders();
+		}
+		if (!backgroundTaskRunning) {
+			closeMaintenanceConnection();
+		}
+	}
+
+	/**
+	 * Closes the connection for maintenance tasks.
+	 */
+	private void closeMaintenanceConnection() {
+		if (sqlConnection != null) {
+			try {
+				sqlConnection.close();
+			} catch (SQLException e) {
+			}
+		}
+	}
+
+	/**
+	 * Closes the connections of all tile readers in the pool.
+	 */
+	private void closeTileReaders() {
+		if (tileReaders != null) {
+			TileReader reader;
+			while ((reader = tileReaders.poll()) != null) {
+				closeTileReader(reader);
+			}
+		}
+	}
+
+	/**
+	 * Closes the connection of the given tile reader.
+	 *
+	 * @param reader
+	 *            tile reader to close
+	 */
+	private void closeTileReader(TileReader reader) {
+		if (reader.psTileData != null) {
+			try {
+				reader.psTileData.close();
+			} catch (SQLException e) {
+			}
+		}
+		if (reader.sqlConnection != null) {
+			try {
+				reader.sqlConnection.close();
+			} catch (SQLException e) {
+			}
+		}
+	}
+
+	/**
+	 * Takes over the metadata, the zoom levels and the tile index from the given sidecar.
+	 *
+	 * @param sidecar
+	 *            sidecar of the MBTiles file
+	 */
+	private void applySidecar(MBTilesSidecar sidecar) {
+		formatValue = sidecar.getFormat();
+		boundsValue = sidecar.getBounds();
+		setTilesFormat(formatValue);
+		setBounds(boundsValue);
+
+		TileIndex index = sidecar.getTileIndex();
+		if (index.getMinZ() >= 0) {
+			minZ = index.getMinZ();
+			maxZ = index.getMaxZ();
+		}
+		tileIndex = index;
+
+		// sidecars will only be written for files with all indices
+		hasZoomIndex = true;
+		hasTileIndex = true;
+	}
+
+	/**
+	 * Builds the tile index and stores it with the metadata in the sidecar file.
+	 */
+	private void buildTileIndex() {
+		log.log(Level.INFO, "Building tile index for {0}...", file.getName());
+		long start = System.currentTimeMillis();
+		TileIndex index;
+		try {
+			index = TileIndex.build(sqlConnection);
+		} catch (SQLException e) {
+			log.log(Thread.currentThread().isInterrupted() ? Level.FINE : Level.WARNING, "Could not build tile index", e);
+			return;
+		}
+		tileIndex = index;
+		long end = System.currentTimeMillis();
+		log.log(Level.INFO, "Building tile index took {0}s", (double) (end - start) / 1000.0);
+
+		if (!hasZoomIndex || !hasTileIndex || Thread.currentThread().isInterrupted()) {
+			// check again on next start
+			return;
+		}
+		try {
+			new MBTilesSidecar(formatValue, boundsValue, index).write(file);
+		} catch (IOException e) {
+			log.log(Level.WARNING, "Could not write MBTiles sidecar", e);
+		}
+	}
+
+	/**
+	 * Checks if the map file has the suggested indizes.
+	 */
+	private void checkIndices() {
+		Statement stmt = null;
+		ResultSet rs = null;
+		try {
+			stmt = sqlConnection.createStatement();
+			rs = stmt.executeQuery("SELECT sql FROM sqlite_master WHERE type='index' AND tbl_name='tiles'");
+			while (rs.next()) {
+				String sql = rs.getString(1);
+				Matcher m = INDEX_COLUMNS.matcher(sql);
+				if (m.matches()) {
+					Set<String> columns = Arrays.asList(m.group(1).split(",")).stream().map(StringUtils::trim).collect(Collectors.toSet());
+					if (columns.size() == 1 && columns.contains("zoom_level")) {
+						hasZoomIndex = true;
+					} else if (columns.size() == 3 && columns.containsAll(Arrays.asList("zoom_level", "tile_row", "tile_column"))) {
+						hasTileIndex = true;
+					}
+				}
+			}
+		} catch (SQLException e) {
+			log.log(Level.WARNING, "Cold not load tiles indices", e);
+		} finally {
+			if (rs != null) {
+				try {
+					rs.close();
+				} catch (SQLException e) {
+				}
+			}
+			if (stmt != null) {
+				try {
+					stmt.close();
+				} catch (SQLException e) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates the index with the given SQL. The statement will be aborted by the progress handler of the background tasks if the current thread has been interrupted.
+	 *
+	 * @param sql
+	 *            create SQL for index
+	 * @return <code>true</code> if the index has been created
+	 */
+	private boolean createIndex(String sql) {
+		long start = System.currentTimeMillis();
+		Statement stmt = null;
+		boolean created = false;
+		try {
+			stmt = sqlConnection.createStatement();
+			stmt.executeUpdate(sql);
+			created = true;
+		} catch (SQLException e) {
+			log.log(Thread.currentThread().isInterrupted() ? Level.FINE : Level.WARNING, "Cold not create tiles index", e);
+		} finally {
+			if (stmt != null) {
+				try {
+					stmt.close();
+				} catch (SQLException e) {
+				}
+			}
+		}
+		long end = System.currentTimeMillis();
+		log.log(Level.INFO, "Creating index took {0}s", (double) (end - start) / 1000.0);
+		return created;
+	}
+
+	/**
+	 * Reads the tiles format, the bounds and the zoom levels from the metadata table.
+	 */
+	private void readMetadata() {
+		Statement stmt = null;
+		String format = null;
+		String bounds = null;
+		ResultSet rs = null;
+		try {
+			stmt = sqlConnection.createStatement();
+			rs = stmt.executeQuery("SELECT name, value FROM metadata WHERE name IN ('format', 'bounds', 'minzoom', 'maxzoom')");
+			while (rs.next()) {
+				String name = rs.getString(1);
+				String value = StringUtils.trimToEmpty(rs.getString(2));
+				if ("format".equals(name)) {
+					format = value;
+				} else if ("bounds".equals(name)) {
+					bounds = value;
+				} else if (value.matches("\\d+")) {
+					// provisional zoom levels until the tiles table has been checked
+					if ("minzoom".equals(name)) {
+						minZ = Integer.parseInt(value);
+					} else {
+						maxZ = Integer.parseInt(value);
+					}
+				}
+			}
+		} catch (SQLException e) {
+			log.log(Level.WARNING, "Cold not load tiles metadata", e);
+		} finally {
+			if (rs != null) {
+				try {
+					rs.close();
+				} catch (SQLException e) {
+				}
+			}
+			if (stmt != null) {
+				try {
+					stmt.close();
+				} catch (SQLException e) {
+				}
+			}
+		}
+
+		formatValue = format;
+		boundsValue = bounds;
+		setTilesFormat(format);
+		setBounds(bounds);
+	}
+
+	/**
+	 * Reads the min and max values from the database.
+	 */
+	private void readMinMaxValues() {
+		PreparedStatement stmt = null;
+		ResultSet rs = null;
+		try {
+			stmt = sqlConnection.prepareStatement("SELECT min(zoom_level), max(zoom_level) FROM tiles");
+			rs = stmt.executeQuery();
+			if (rs.next()) {
+				minZ = rs.getInt(1);
+				maxZ = rs.getInt(2);
+			}
+		} catch (SQLException e) {
+			log.log(Level.WARNING, "Cold not load min/max values", e);
+		} finally {
+			if (rs != null) {
+				try {
+					rs.close();
+				} catch (SQLException e) {
+				}
+			}
+			if (stmt != null) {
+				try {
+					stmt.close();
+				} catch (SQLException e) {
+				}
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.packsam.carpi.service.MapFile#mightContainTile(int, int, int)
+	 */
+	@Override
+	public boolean mightContainTile(int z, int x, int y) {
+		if (z < minZ || z > maxZ || !isReady() || !isInBounds(z, x, y)) {
+			return false;
+		}
+		TileIndex index = tileIndex;
+		return index == null || index.mightContain(z, x, toTMS(z, y));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.packsam.carpi.service.MapFile#readTileData(int, int, int)
+	 */
+	@Override
+	public ByteBuffer readTileData(int z, int x, int y) throws IOException {
+		synchronized (READS_LOCK) {
+			if (tileReaders == null || closed) {
+				throw new IOException("Map file " + file.getName() + " has been closed");
+			}
+			runningReads++;
+		}
+		try {
+			return queryTileData(z, x, toTMS(z, y));
+		} finally {
+			boolean closeReaders;
+			synchronized (READS_LOCK) {
+				runningReads--;
+				closeReaders = closed && runningReads == 0;
+			}
+			if (closeReaders) {
+				// last running read after closing the map file
+				closeTileReaders();
+			}
+		}
+	}
+
+	/**
+	 * Queries the given tile with a connection of the pool.
+	 *
+	 * @param z
+	 *            zoom level
+	 * @param x
+	 *            x position
+	 * @param tmsY
+	 *            y position (TMS)
+	 * @return tile data or <code>null</code> if the tile does not exist
+	 * @throws IOException
+	 */
+	private ByteBuffer queryTileData(int z, int x, int tmsY) throws IOException {
+		TileReader reader;
+		long start = System.nanoTime();
+		try {
+			reader = tileReaders.poll(READER_TIMEOUT, TimeUnit.SECONDS);
+			lockWaits.record(System.nanoTime() - start);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for a read connection");
+		}
+		if (reader == null) {
+			// all readers are stuck
+			throw new IOException("No free read connection for map file " + file.getName());
+		}
+
+		ResultSet rs = null;
+		try {
+			reader.psTileData.setInt(1, z);
+			reader.psTileData.setInt(2, x);
+			reader.psTileData.setInt(3, tmsY);
+			rs = reader.psTileData.executeQuery();
+			if (rs.next()) {
+				return ByteBuffer.wrap(rs.getBytes(1));
+			}
+			return null;
+		} catch (SQLException e) {
+			throw new IOException("Could not load tile data from " + file.getName(), e);
+		} finally {
+			if (rs != null) {
+				try {
+					rs.close();
+				} catch (SQLException e) {
+				}
+			}
+			tileReaders.offer(reader);
+		}
+	}
+
+	/**
+	 * Converts the y position from the XYZ scheme to the TMS scheme used by MBTiles.
+	 *
+	 * @param z
+	 *            zoom level
+	 * @param y
+	 *            y position (XYZ)
+	 * @return y position (TMS)
+	 */
+	static int toTMS(int z, int y) {
+		return (1 << z) - y - 1;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.packsam.carpi.service.MapFile#getLockWaitStatistics()
+	 */
+	@Override
+	public LatencyStatistics getLockWaitStatistics() {
+		return lockWaits.toStatistics();
+	}
+
+	/**
+	 * Model wrapper for a read connection to the map file.
+	 *
+	 * @author osterrath
+	 *
+	 */
+	private static class TileReader {
+		/**
+		 * Read only SQL connection to MBTiles file.
+		 */
+		private Connection sqlConnection;
+
+		/**
+		 * Prepared statement for loading tile data.
+		 */
+		private PreparedStatement psTileData;
+	}
+}
@@ -0,0 +1,173 @@
+package net.packsam.carpi.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Sidecar file next to a MBTiles file that holds everything needed for serving tiles: tiles format, bounds and the {@link TileIndex} with the tile ranges and counts of every
+ * zoom level. The sidecar is bound to a fingerprint (size and modification timestamp) of the MBTiles file, so opening an unchanged MBTiles file does not need to scan the
+ * tiles table again. A sidecar will only be written for MBTiles files with all suggested indices.
+ *
+ * @author osterrath
+ *
+ */
+class MBTilesSidecar {
+	/**
+	 * Magic number of sidecar files.
+	 */
+	private static final int MAGIC = 0x43505449; // "CPTI"
+
+	/**
+	 * Version of the sidecar file format.
+	 */
+	private static final int VERSION = 2;
+
+	/**
+	 * Tiles format from the metadata table or <code>null</code>.
+	 */
+	private final String format;
+
+	/**
+	 * Bounds from the metadata table or <code>null</code>.
+	 */
+	private final String bounds;
+
+	/**
+	 * Index of existing tiles.
+	 */
+	private final TileIndex tileIndex;
+
+	/**
+	 * Ctor.
+	 *
+	 * @param format
+	 *            tiles format from the metadata table
+	 * @param bounds
+	 *            bounds from the metadata table
+	 * @param tileIndex
+	 *            index of existing tiles
+	 */
+	MBTilesSidecar(String format, String bounds, TileIndex tileIndex) {
+		super();
+		this.format = format;
+		this.bounds = bounds;
+		this.tileIndex = tileIndex;
+	}
+
+	/**
+	 * Reads the sidecar of the given MBTiles file. If the sidecar file does not exist or has been created for another version of the MBTiles file, <code>null</code> will be
+	 * returned.
+	 *
+	 * @param mbTilesFile
+	 *            MBTiles file
+	 * @return sidecar or <code>null</code>
+	 * @throws IOException
+	 */
+	static MBTilesSidecar read(File mbTilesFile) throws IOException {
+		File sidecarFile = getSidecarFile(mbTilesFile);
+		if (!sidecarFile.isFile()) {
+			return null;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(sidecarFile))))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != mbTilesFile.length() || in.readLong() != mbTilesFile.lastModified()) {
+				return null;
+			}
+			String format = readString(in);
+			String bounds = readString(in);
+			return new MBTilesSidecar(format, bounds, TileIndex.read(in));
+		}
+	}
+
+	/**
+	 * Writes the sidecar for the given MBTiles file.
+	 *
+	 * @param mbTilesFile
+	 *            MBTiles file
+	 * @throws IOException
+	 */
+	void write(File mbTilesFile) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(getSidecarFile(mbTilesFile)))))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(mbTilesFile.length());
+			out.writeLong(mbTilesFile.lastModified());
+			writeString(out, format);
+			writeString(out, bounds);
+			tileIndex.write(out);
+		}
+	}
+
+	/**
+	 * Reads an optional string.
+	 *
+	 * @param in
+	 *            input stream
+	 * @return string or <code>null</code>
+	 * @throws IOException
+	 */
+	private static String readString(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	/**
+	 * Writes an optional string.
+	 *
+	 * @param out
+	 *            output stream
+	 * @param value
+	 *            string or <code>null</code>
+	 * @throws IOException
+	 */
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeUTF(value);
+		}
+	}
+
+	/**
+	 * Returns the sidecar file for the given MBTiles file.
+	 *
+	 * @param mbTilesFile
+	 *            MBTiles file
+	 * @return sidecar file
+	 */
+	static File getSidecarFile(File mbTilesFile) {
+		return new File(mbTilesFile.getParentFile(), mbTilesFile.getName() + ".idx");
+	}
+
+	/**
+	 * Getter method for the field "format".
+	 *
+	 * @return the format
+	 */
+	String getFormat() {
+		return format;
+	}
+
+	/**
+	 * Getter method for the field "bounds".
+	 *
+	 * @return the bounds
+	 */
+	String getBounds() {
+		return bounds;
+	}
+
+	/**
+	 * Getter method for the field "tileIndex".
+	 *
+	 * @return the tileIndex
+	 */
+	TileIndex getTileIndex() {
+		return tileIndex;
+	}
+}
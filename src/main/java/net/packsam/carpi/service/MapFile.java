@@ -0,0 +1,153 @@
+package net.packsam.carpi.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Date;
+
+import net.packsam.carpi.model.LatencyStatistics;
+import net.packsam.carpi.model.MapFileStatus;
+
+/**
+ * Interface for a map file that contains map tiles. All tile coordinates use the XYZ scheme of the client.
+ * 
+ * @author osterrath
+ *
+ */
+interface MapFile {
+	/**
+	 * MIME type of vector tiles.
+	 */
+	String VECTOR_TILES_MIME_TYPE = "application/vnd.mapbox-vector-tile";
+
+	/**
+	 * Opens the map file. This should only read what is needed for serving tiles, expensive tasks should be done in {@link #openInBackground()}.
+	 * 
+	 * @throws IOException
+	 */
+	void open() throws IOException;
+
+	/**
+	 * Runs expensive tasks of opening the map file (like building indices). This will be called in a background thread after {@link #open()}. Map files that are not
+	 * {@link #isReady() ready} after {@link #open()} have to become ready here.
+	 */
+	default void openInBackground() {
+	}
+
+	/**
+	 * Closes the map file without waiting for running tile reads. Tile reads after closing will fail with an {@link IOException}.
+	 */
+	void close();
+
+	/**
+	 * Returns if the file on disk has been changed by others since it has been opened. Changes written by the map file itself (like created indices) must not be reported.
+	 *
+	 * @return <code>true</code> if the file should be reloaded
+	 */
+	default boolean isChangedOnDisk() {
+		return true;
+	}
+
+	/**
+	 * Returns the file on disk.
+	 * 
+	 * @return file
+	 */
+	File getFile();
+
+	/**
+	 * Returns the date when the map file has been created.
+	 * 
+	 * @return creation date
+	 */
+	Date getMapFileDate();
+
+	/**
+	 * Returns the mime type of the tiles.
+	 * 
+	 * @return mime type
+	 */
+	String getTilesMimeType();
+
+	/**
+	 * Returns the file extension of the tiles.
+	 * 
+	 * @return file extension
+	 */
+	String getTilesFileExtension();
+
+	/**
+	 * Returns the minimum zoom level.
+	 * 
+	 * @return minimum zoom level
+	 */
+	int getMinZ();
+
+	/**
+	 * Returns the maximum zoom level.
+	 * 
+	 * @return maximum zoom level
+	 */
+	int getMaxZ();
+
+	/**
+	 * Checks if the map file may contain the given tile. If this method returns <code>false</code> the tile is definitely not available.
+	 * 
+	 * @param z
+	 *            zoom level
+	 * @param x
+	 *            x position
+	 * @param y
+	 *            y position
+	 * @return <code>true</code> if the tile may exist
+	 */
+	boolean mightContainTile(int z, int x, int y);
+
+	/**
+	 * Reads the given tile. If the map file does not contain this tile it will return <code>null</code>. The returned buffer may be a read-only view on memory mapped data, so
+	 * it must not be modified and should be duplicated before changing its position.
+	 * 
+	 * @param z
+	 *            zoom level
+	 * @param x
+	 *            x position
+	 * @param y
+	 *            y position
+	 * @return tile data or <code>null</code> if the map file does not contain the tile
+	 * @throws IOException
+	 *             if the tile could not be read, so it is unknown if the map file contains the tile
+	 */
+	ByteBuffer readTileData(int z, int x, int y) throws IOException;
+
+	/**
+	 * Returns if tiles of this map file should be kept in the in-memory tiles cache.
+	 * 
+	 * @return <code>true</code> if tiles should be cached
+	 */
+	default boolean isCacheable() {
+		return true;
+	}
+
+	/**
+	 * Returns if the map file is ready for serving tiles. Map files that are not ready will not contain any tile.
+	 * 
+	 * @return <code>true</code> if the map file is ready
+	 */
+	boolean isReady();
+
+	/**
+	 * Returns the current loading status of the map file.
+	 * 
+	 * @return loading status
+	 */
+	MapFileStatus getStatus();
+
+	/**
+	 * Returns the statistics of the time tile reads had to wait for a lock or a free connection.
+	 * 
+	 * @return lock wait statistics or <code>null</code> if reads do not need a lock
+	 */
+	default LatencyStatistics getLockWaitStatistics() {
+		return null;
+	}
+}
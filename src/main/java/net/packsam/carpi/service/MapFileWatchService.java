@@ -0,0 +1,243 @@
+package net.packsam.carpi.service;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.context.Initialized;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+
+import net.packsam.carpi.config.CarpiConfiguration;
+import net.packsam.carpi.threading.MapLoading;
+import net.packsam.carpi.threading.MapWatch;
+
+/**
+ * Service for watching the configured map files and GeoJson files. Changed files will be reloaded by the {@link MapService} without restarting the application. A file will
+ * only be reloaded after it has not been changed for the configured delay, so files that are still being copied will not be opened. Files should be replaced atomically (copy
+ * to a temporary file and move it afterwards) anyway. Map files are reloaded by the map loading executor, changes written by the application itself (like created indices) do
+ * not reload a map file.
+ *
+ * @author osterrath
+ *
+ */
+@ApplicationScoped
+public class MapFileWatchService {
+	/**
+	 * Watch service for the directories of the configured files.
+	 */
+	private WatchService watchService;
+
+	/**
+	 * Configured map file names by their absolute path.
+	 */
+	private final Map<Path, String> mapFiles = new HashMap<>();
+
+	/**
+	 * Absolute paths of the configured GeoJson files.
+	 */
+	private final Set<Path> geoJsonFiles = new HashSet<>();
+
+	/**
+	 * Time in ms a changed file must stay unchanged before it will be reloaded.
+	 */
+	private long delay;
+
+	/**
+	 * Service for reading map tiles.
+	 */
+	@Inject
+	private MapService mapService;
+
+	/**
+	 * Executor service for watching the files.
+	 */
+	@Inject
+	@MapWatch
+	private ExecutorService executorService;
+
+	/**
+	 * Executor service for reloading map files, so opening them does not block watching.
+	 */
+	@Inject
+	@MapLoading
+	private ExecutorService loadingExecutorService;
+
+	/**
+	 * Class logger.
+	 */
+	@Inject
+	private Logger log;
+
+	/**
+	 * Application configuration.
+	 */
+	@Inject
+	private CarpiConfiguration config;
+
+	/**
+	 * Initializes the watch service.
+	 */
+	@PostConstruct
+	private void initialize() {
+		if (!config.isMapWatch()) {
+			return;
+		}
+		delay = Math.max(0, config.getMapWatchDelay());
+		mapService.getMapFileNames().forEach(fileName -> mapFiles.put(toPath(fileName), fileName));
+		mapService.getGeoJsonFileNames().forEach(fileName -> geoJsonFiles.add(toPath(fileName)));
+
+		Set<Path> directories = new HashSet<>();
+		mapFiles.keySet().forEach(p -> directories.add(p.getParent()));
+		geoJsonFiles.forEach(p -> directories.add(p.getParent()));
+		if (directories.isEmpty()) {
+			return;
+		}
+
+		try {
+			watchService = FileSystems.getDefault().newWatchService();
+			for (Path directory : directories) {
+				directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+			}
+		} catch (IOException e) {
+			log.log(Level.WARNING, "Could not watch map files", e);
+			shutdown();
+			return;
+		}
+		executorService.execute(this::watch);
+	}
+
+	/**
+	 * Shuts down the service.
+	 */
+	@PreDestroy
+	private void shutdown() {
+		if (watchService != null) {
+			try {
+				watchService.close();
+			} catch (IOException e) {
+			}
+			watchService = null;
+		}
+	}
+
+	/**
+	 * Converts the given file name to a normalized absolute path.
+	 *
+	 * @param fileName
+	 *            file name
+	 * @return absolute path
+	 */
+	private static Path toPath(String fileName) {
+		return Paths.get(fileName).toAbsolutePath().normalize();
+	}
+
+	/**
+	 * Waits for changes of the watched files and reloads them after they have not been changed for the configured delay.
+	 */
+	private void watch() {
+		WatchService ws = watchService;
+		if (ws == null) {
+			return;
+		}
+
+		// changed files with the time of their last change
+		Map<Path, Long> pending = new HashMap<>();
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				WatchKey key = pending.isEmpty() ? ws.take() : ws.poll(delay, TimeUnit.MILLISECONDS);
+				if (key != null) {
+					Path directory = (Path) key.watchable();
+					for (WatchEvent<?> event : key.pollEvents()) {
+						if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+							// events have been lost -> reload all files
+							mapFiles.keySet().forEach(p -> pending.put(p, System.currentTimeMillis()));
+							geoJsonFiles.forEach(p -> pending.put(p, System.currentTimeMillis()));
+							continue;
+						}
+						Path path = directory.resolve((Path) event.context()).normalize();
+						if (mapFiles.containsKey(path) || geoJsonFiles.contains(path)) {
+							pending.put(path, System.currentTimeMillis());
+						}
+					}
+					key.reset();
+				}
+
+				reloadFiles(pending);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ClosedWatchServiceException e) {
+			// service has been shut down
+		}
+	}
+
+	/**
+	 * Reloads the pending files that have not been changed for the configured delay.
+	 *
+	 * @param pending
+	 *            changed files with the time of their last change
+	 */
+	private void reloadFiles(Map<Path, Long> pending) {
+		long now = System.currentTimeMillis();
+		boolean geoJsonChanged = false;
+		for (Iterator<Map.Entry<Path, Long>> it = pending.entrySet().iterator(); it.hasNext();) {
+			Map.Entry<Path, Long> entry = it.next();
+			if (now - entry.getValue() < delay) {
+				continue;
+			}
+			it.remove();
+
+			Path path = entry.getKey();
+			String mapFileName = mapFiles.get(path);
+			if (mapFileName != null) {
+				log.log(Level.FINE, "Map file {0} has been changed", path.getFileName());
+				loadingExecutorService.execute(() -> {
+					try {
+						mapService.reloadMapFile(mapFileName);
+					} catch (RuntimeException e) {
+						log.log(Level.WARNING, "Could not reload map file", e);
+					}
+				});
+			}
+			if (geoJsonFiles.contains(path)) {
+				log.log(Level.INFO, "GeoJson file {0} has been changed", path.getFileName());
+				geoJsonChanged = true;
+			}
+		}
+		if (geoJsonChanged) {
+			try {
+				mapService.reloadGeoJsonFiles();
+			} catch (RuntimeException e) {
+				log.log(Level.WARNING, "Could not reload GeoJson files", e);
+			}
+		}
+	}
+
+	/**
+	 * Method for implementing @Startup with CDI 1.2.
+	 *
+	 * @param init
+	 *            init object
+	 */
+	void onInitApp(@Observes @Initialized(ApplicationScoped.class) Object init) {
+	}
+}
@@ -1,45 +1,62 @@
 package net.packsam.carpi.service;
 
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.sql.Statement;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Event;
+import javax.imageio.ImageIO;
 import javax.inject.Inject;
 
 import org.apache.commons.lang3.StringUtils;
-import org.geojson.Feature;
 import org.geojson.FeatureCollection;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import net.packsam.carpi.config.CarpiConfiguration;
+import net.packsam.carpi.event.MapConfigurationChangeEvent;
+import net.packsam.carpi.model.LatencyStatistics;
 import net.packsam.carpi.model.MapConfiguration;
 import net.packsam.carpi.model.MapConfiguration.TilesType;
+import net.packsam.carpi.model.MapFileStatus;
 import net.packsam.carpi.model.StreamedResource;
+import net.packsam.carpi.model.TileStatistics;
+import net.packsam.carpi.threading.MapLoading;
+import net.packsam.carpi.threading.MapMaintenance;
 
 /**
- * Service for reading tiles of a map from an MBTiles file.<br/>
+ * Service for reading tiles of a map from MBTiles files or tile archives.<br/>
  * You can download your MBTiles files with vector data from <a href="https://openmaptiles.org/downloads/">https://openmaptiles.org/downloads/</a>.
  * 
  * @author osterrath
@@ -48,11 +65,6 @@ import net.packsam.carpi.model.StreamedResource;
 @ApplicationScoped
 public class MapService {
 
-	/**
-	 * Regexp pattern to extract index columns.
-	 */
-	private final Pattern INDEX_COLUMNS = Pattern.compile(".+ ON .+ \\((.+)\\).*", Pattern.CASE_INSENSITIVE);
-
 	/**
 	 * Object mapper for parsing / creating GeoJson data.
 	 */
@@ -64,24 +76,124 @@ public class MapService {
 	private final Object LAST_MATCHED_MAP_FILE_LOCK = new Object();
 
 	/**
-	 * List of used map files.
+	 * Lock object for replacing {@link MapService#mapFiles}.
+	 */
+	private final Object MAP_FILES_LOCK = new Object();
+
+	/**
+	 * Lock object for reloading map files one after another.
+	 */
+	private final Object RELOAD_LOCK = new Object();
+
+	/**
+	 * Configured map file names.
+	 */
+	private List<String> mapFileNames = Collections.emptyList();
+
+	/**
+	 * Configured GeoJson file names.
+	 */
+	private List<String> geoJsonFileNames = Collections.emptyList();
+
+	/**
+	 * List of used map files. The list will not be modified, it will only be replaced as a whole.
+	 */
+	private volatile List<MapFile> mapFiles = Collections.emptyList();
+
+	/**
+	 * Names of map files that could not be opened.
+	 */
+	private volatile List<String> failedMapFiles = Collections.emptyList();
+
+	/**
+	 * Generation of {@link MapService#mapFiles}, will be incremented after a map file has been replaced. Tiles read before will not be put into the caches anymore.
 	 */
-	private List<MapFile> mapFiles;
+	private volatile long mapFilesGeneration;
 
 	/**
 	 * Last used map file to speed up map file search.
 	 */
 	private MapFile lastMatchedMapFile;
 
+	/**
+	 * In-memory cache for recently used tiles.
+	 */
+	private TileCache<Tile> tileCache;
+
+	/**
+	 * Cache for tiles that are not contained in any map file.
+	 */
+	private NegativeTileCache negativeTileCache;
+
+	/**
+	 * Cache for raster tiles that have been synthesized above the max zoom level of the map files.
+	 */
+	private TileCache<Tile> overzoomCache;
+
+	/**
+	 * Cache for generated GeoJson tiles as serialized JSON.
+	 */
+	private TileCache<byte[]> geoJsonTileCache;
+
+	/**
+	 * Number of zoom levels raster tiles will be synthesized above the max zoom level of the map files.
+	 */
+	private int overzoomLevels;
+
+	/**
+	 * Zoom level of the last requested tile or -1 if no tile has been requested yet.
+	 */
+	private volatile int lastRequestedZoom = -1;
+
+	/**
+	 * Number of tiles loaded into the cache by prefetching.
+	 */
+	private final AtomicLong prefetchedTiles = new AtomicLong();
+
+	/**
+	 * Number of prefetched tiles that have been requested by a client.
+	 */
+	private final AtomicLong prefetchHits = new AtomicLong();
+
+	/**
+	 * Metrics of tile requests.
+	 */
+	private final TileMetrics metrics = new TileMetrics();
+
 	/**
 	 * Map configuration for client.
 	 */
-	private MapConfiguration mapConfig;
+	private volatile MapConfiguration mapConfig;
 
 	/**
-	 * Optional GeoJson feature collection.
+	 * Spatial index of the optional GeoJson feature collection.
 	 */
-	private FeatureCollection geoJsonFeatures;
+	private volatile GeoJsonIndex geoJsonIndex;
+
+	/**
+	 * Serialized feature collection of the optional GeoJson files.
+	 */
+	private volatile GeoJsonResource geoJsonResource;
+
+	/**
+	 * Executor service for map maintenance tasks.
+	 */
+	@Inject
+	@MapMaintenance
+	private ExecutorService maintenanceExecutorService;
+
+	/**
+	 * Executor service for opening map files in parallel.
+	 */
+	@Inject
+	@MapLoading
+	private ExecutorService loadingExecutorService;
+
+	/**
+	 * Event when the map configuration has been changed.
+	 */
+	@Inject
+	private Event<MapConfigurationChangeEvent> mapConfigurationChangeEvent;
 
 	/**
 	 * Class logger.
@@ -100,240 +212,327 @@ public class MapService {
 	 */
 	@PostConstruct
 	void initialize() {
-		// open tiles files
-		this.mapFiles = Arrays.asList(config.getMBTilesFiles().split(",")).stream() //
-				.map(StringUtils::trimToNull) //
-				.filter(Objects::nonNull) //
-				.map(this::openMBTilesFile) //
-				.filter(Objects::nonNull) //
+		tileCache = new TileCache<>(config.getMBTilesCacheSize());
+		negativeTileCache = new NegativeTileCache(config.getMBTilesNegativeCacheSize());
+		overzoomCache = new TileCache<>(config.getMBTilesOverzoomCacheSize());
+		geoJsonTileCache = new TileCache<>(config.getGeoJsonTilesCacheSize());
+		overzoomLevels = Math.max(0, config.getMBTilesOverzoomLevels());
+
+		// open tiles files in parallel, expensive tasks will be done in background
+		List<String> fileNames = splitFileNames(config.getMBTilesFiles());
+		mapFileNames = Collections.unmodifiableList(fileNames);
+		List<Future<MapFile>> openedFiles = fileNames.stream() //
+				.map(fileName -> loadingExecutorService.submit(() -> openMapFile(fileName))) //
 				.collect(Collectors.toList());
 
-		String geoJsonFiles = config.getGeoJsonFiles();
-		if (StringUtils.isNotEmpty(geoJsonFiles)) {
-			// read all GeoJson files and merge their features into a single feature collection
-			List<Feature> features = Arrays.asList(geoJsonFiles.split(",")).stream() //
-					.map(StringUtils::trimToNull) //
-					.filter(Objects::nonNull) //
-					.map(this::openGeoJsonFile) //
-					.filter(Objects::nonNull) //
-					.map(FeatureCollection::getFeatures) //
-					.flatMap(List::stream) //
-					.collect(Collectors.toList());
-			this.geoJsonFeatures = new FeatureCollection();
-			this.geoJsonFeatures.addAll(features);
+		geoJsonFileNames = Collections.unmodifiableList(splitFileNames(config.getGeoJsonFiles()));
+		this.geoJsonIndex = readGeoJsonFiles();
+		this.geoJsonResource = createGeoJsonResource(geoJsonIndex);
+
+		List<MapFile> files = new ArrayList<>();
+		List<String> failedFiles = new ArrayList<>();
+		for (int i = 0; i < fileNames.size(); i++) {
+			MapFile mf = null;
+			try {
+				mf = openedFiles.get(i).get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				log.log(Level.WARNING, "Could not open map file", e.getCause());
+			}
+			if (mf != null) {
+				files.add(mf);
+			} else {
+				failedFiles.add(new File(fileNames.get(i)).getName());
+			}
 		}
+		this.mapFiles = Collections.unmodifiableList(files);
+		this.failedMapFiles = Collections.unmodifiableList(failedFiles);
 
 		// create map configuration
 		this.mapConfig = createMapConfig();
+
+		// run expensive tasks in background, files that are ready first
+		files.stream() //
+				.sorted(Comparator.comparing(mf -> !mf.isReady())) //
+				.forEach(mf -> maintenanceExecutorService.execute(() -> openMapFileInBackground(mf)));
 	}
 
 	/**
-	 * Opens the MBTiles file with the given name.
+	 * Splits the comma separated list of file names.
 	 * 
-	 * @param fileName
-	 *            MBTile file name
-	 * @return map tiles wrapper object
+	 * @param fileNames
+	 *            comma separated file names, may be <code>null</code>
+	 * @return file names
 	 */
-	private MapFile openMBTilesFile(String fileName) {
-		File tilesFile = new File(fileName);
-		if (tilesFile.exists() && tilesFile.canRead() && tilesFile.isFile()) {
-			try {
-				Class.forName("org.sqlite.JDBC");
-			} catch (ClassNotFoundException e) {
-				log.log(Level.SEVERE, "JDBC driver not found", e);
-				return null;
-			}
-
-			MapFile mapFile = new MapFile();
-			try {
-				mapFile.sqlConnection = DriverManager.getConnection("jdbc:sqlite:" + fileName);
-				mapFile.psTileData = mapFile.sqlConnection.prepareStatement("SELECT tile_data FROM tiles WHERE zoom_level = ? AND tile_column = ? AND tile_row = ?");
+	private static List<String> splitFileNames(String fileNames) {
+		if (StringUtils.isEmpty(fileNames)) {
+			return new ArrayList<>();
+		}
+		return Arrays.asList(fileNames.split(",")).stream() //
+				.map(StringUtils::trimToNull) //
+				.filter(Objects::nonNull) //
+				.collect(Collectors.toList());
+	}
 
-				// check indices
-				checkIndices(mapFile);
+	/**
+	 * Reads all configured GeoJson files into a packed feature store and builds the spatial index.
+	 * 
+	 * @return index of features or <code>null</code> if there are no GeoJson files configured
+	 */
+	private GeoJsonIndex readGeoJsonFiles() {
+		if (geoJsonFileNames.isEmpty()) {
+			return null;
+		}
+		long start = System.currentTimeMillis();
+		GeoJsonStore store = new GeoJsonStore(GEO_JSON_MAPPER.getFactory());
+		geoJsonFileNames.forEach(fileName -> openGeoJsonFile(store, fileName));
+		store.compact();
+		log.log(Level.INFO, "Reading {0} GeoJson features with {1} coordinates took {2}ms",
+				new Object[] { store.size(), store.getCoordinateCount(), System.currentTimeMillis() - start });
 
-				// read tiles type from metadata table
-				readTilesFormat(mapFile);
+		start = System.currentTimeMillis();
+		GeoJsonIndex index = new GeoJsonIndex(store);
+		log.log(Level.INFO, "Indexing {0} GeoJson features took {1}ms", new Object[] { store.size(), System.currentTimeMillis() - start });
+		return index;
+	}
 
-				// read min and max values from tiles table
-				readMinMaxValues(mapFile);
+	/**
+	 * Serializes all GeoJson features once, so requests for the whole feature collection can be answered without encoding it again. The JSON will be kept uncompressed and
+	 * gzip compressed, the entity tag is a hash of the JSON.
+	 * 
+	 * @param index
+	 *            index of features or <code>null</code>
+	 * @return serialized feature collection or <code>null</code> if there are no GeoJson files configured or the features could not be serialized
+	 */
+	private GeoJsonResource createGeoJsonResource(GeoJsonIndex index) {
+		if (index == null) {
+			return null;
+		}
+		long start = System.currentTimeMillis();
+		GeoJsonStore store = index.getStore();
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			try (JsonGenerator generator = GEO_JSON_MAPPER.getFactory().createGenerator(out)) {
+				// write features one by one to avoid creating all of them at once
+				generator.writeStartObject();
+				generator.writeStringField("type", "FeatureCollection");
+				generator.writeArrayFieldStart("features");
+				for (int i = 0; i < store.size(); i++) {
+					GEO_JSON_MAPPER.writeValue(generator, store.getFeature(i));
+				}
+				generator.writeEndArray();
+				generator.writeEndObject();
+			}
+			byte[] data = out.toByteArray();
 
-				// get creation data
-				mapFile.mapFileDate = new Date(tilesFile.lastModified());
+			ByteArrayOutputStream gzipOut = new ByteArrayOutputStream(data.length / 4);
+			try (GZIPOutputStream gzip = new GZIPOutputStream(gzipOut)) {
+				gzip.write(data);
+			}
+			byte[] gzipData = gzipOut.toByteArray();
 
-				return mapFile;
-			} catch (SQLException e) {
-				log.log(Level.WARNING, "Could not open MBTiles file", e);
+			StringBuilder eTag = new StringBuilder();
+			for (byte b : MessageDigest.getInstance("SHA-1").digest(data)) {
+				eTag.append(String.format("%02x", b));
 			}
-		} else {
-			log.log(Level.WARNING, "Could not open MBTiles file {0}", fileName);
+
+			log.log(Level.INFO, "Serializing GeoJson features to {0} bytes ({1} bytes compressed) took {2}ms",
+					new Object[] { data.length, gzipData.length, System.currentTimeMillis() - start });
+			return new GeoJsonResource(ByteBuffer.wrap(data), ByteBuffer.wrap(gzipData), eTag.toString());
+		} catch (IOException | NoSuchAlgorithmException e) {
+			log.log(Level.WARNING, "Could not serialize GeoJson features", e);
+			return null;
 		}
+	}
 
-		return null;
+	/**
+	 * Returns the configured map file names.
+	 * 
+	 * @return map file names
+	 */
+	public List<String> getMapFileNames() {
+		return mapFileNames;
 	}
 
 	/**
-	 * Checks if the map file has the suggested indizes and creates them if not.
+	 * Returns the configured GeoJson file names.
 	 * 
-	 * @param mapFile
-	 *            map file to validate
+	 * @return GeoJson file names
 	 */
-	private void checkIndices(MapFile mapFile) {
-		Statement stmt = null;
-		ResultSet rs = null;
-		boolean hasZoomIndex = false;
-		boolean hasTileIndex = false;
-		try {
-			stmt = mapFile.sqlConnection.createStatement();
-			rs = stmt.executeQuery("SELECT sql FROM sqlite_master WHERE type='index' AND tbl_name='tiles'");
-			while (rs.next()) {
-				String sql = rs.getString(1);
-				Matcher m = INDEX_COLUMNS.matcher(sql);
-				if (m.matches()) {
-					Set<String> columns = Arrays.asList(m.group(1).split(",")).stream().map(StringUtils::trim).collect(Collectors.toSet());
-					if (columns.size() == 1 && columns.contains("zoom_level")) {
-						hasZoomIndex = true;
-					} else if (columns.size() == 3 && columns.containsAll(Arrays.asList("zoom_level", "tile_row", "tile_column"))) {
-						hasTileIndex = true;
+	public List<String> getGeoJsonFileNames() {
+		return geoJsonFileNames;
+	}
+
+	/**
+	 * Checks if the configured map file with the given name has been changed on disk by others since it has been opened. Changes of the map file itself (like created indices)
+	 * will be ignored.
+	 * 
+	 * @param fileName
+	 *            configured map file name
+	 * @return <code>true</code> if the map file should be reloaded
+	 */
+	private boolean isMapFileChanged(String fileName) {
+		File file = new File(fileName);
+		return mapFiles.stream() //
+				.filter(mf -> mf.getFile().equals(file)) //
+				.findFirst() //
+				.map(MapFile::isChangedOnDisk) //
+				.orElse(true);
+	}
+
+	/**
+	 * Reopens the configured map file with the given name after it has been changed on disk. The new file will be opened completely before it replaces the old one, so
+	 * requests will be served by the old file until then. Afterwards the old file will be closed when its running reads are finished. Files will be reloaded one after another,
+	 * changes written by the map file itself (like created indices) will not reload the file.
+	 * 
+	 * @param fileName
+	 *            configured map file name
+	 */
+	public void reloadMapFile(String fileName) {
+		if (!mapFileNames.contains(fileName)) {
+			return;
+		}
+		synchronized (RELOAD_LOCK) {
+			File file = new File(fileName);
+			if (!isMapFileChanged(fileName)) {
+				log.log(Level.FINE, "Ignoring own changes of map file {0}", file.getName());
+				return;
+			}
+
+			MapFile newMapFile = openMapFile(fileName);
+			if (newMapFile != null) {
+				newMapFile.openInBackground();
+			}
+
+			MapFile oldMapFile;
+			synchronized (MAP_FILES_LOCK) {
+				oldMapFile = mapFiles.stream().filter(mf -> mf.getFile().equals(file)).findFirst().orElse(null);
+				if (oldMapFile == null && newMapFile == null) {
+					return;
+				}
+
+				// keep the configured order of the map files
+				List<MapFile> files = new ArrayList<>();
+				List<String> failedFiles = new ArrayList<>();
+				for (String name : mapFileNames) {
+					File f = new File(name);
+					MapFile mf = name.equals(fileName) ? newMapFile : mapFiles.stream().filter(m -> m.getFile().equals(f)).findFirst().orElse(null);
+					if (mf != null) {
+						files.add(mf);
+					} else {
+						failedFiles.add(f.getName());
 					}
 				}
+				this.mapFiles = Collections.unmodifiableList(files);
+				this.failedMapFiles = Collections.unmodifiableList(failedFiles);
+
+				// running reads of the old file must not fill the caches again
+				mapFilesGeneration++;
+				tileCache.clear();
+				overzoomCache.clear();
+				negativeTileCache.clear();
 			}
-		} catch (SQLException e) {
-			log.log(Level.WARNING, "Cold not load tiles indices", e);
-		} finally {
-			if (rs != null) {
-				try {
-					rs.close();
-				} catch (SQLException e) {
-				}
+
+			synchronized (LAST_MATCHED_MAP_FILE_LOCK) {
+				lastMatchedMapFile = null;
 			}
-			if (stmt != null) {
-				try {
-					stmt.close();
-				} catch (SQLException e) {
-				}
+			onMapFilesChanged();
+			log.log(Level.INFO, "Reloaded map file {0}", file.getName());
+
+			if (oldMapFile != null) {
+				oldMapFile.close();
 			}
 		}
+	}
 
-		if (!hasZoomIndex) {
-			log.log(Level.INFO, "Index for zoom level not found. Creating new...");
-			createIndex("CREATE INDEX IF NOT EXISTS idx_tiles_zoom_level ON tiles (zoom_level)", mapFile);
-		}
-		if (!hasTileIndex) {
-			log.log(Level.INFO, "Index for tiles not found. Creating new...");
-			createIndex("CREATE UNIQUE INDEX IF NOT EXISTS idx_tiles_tile ON tiles (zoom_level, tile_column, tile_row)", mapFile);
+	/**
+	 * Rereads all configured GeoJson files after one of them has been changed on disk.
+	 */
+	public void reloadGeoJsonFiles() {
+		GeoJsonIndex index = readGeoJsonFiles();
+		GeoJsonResource resource = createGeoJsonResource(index);
+		synchronized (geoJsonTileCache) {
+			this.geoJsonIndex = index;
+			this.geoJsonResource = resource;
+			geoJsonTileCache.clear();
 		}
+		log.log(Level.INFO, "Reloaded GeoJson files");
+		onMapFilesChanged();
 	}
 
 	/**
-	 * Creates the index with the given SQL in the given map file.
+	 * Runs the expensive tasks of opening the given map file. If the map file becomes ready by this, the map configuration will be updated.
 	 * 
-	 * @param sql
-	 *            create SQL for index
 	 * @param mapFile
 	 *            map file
 	 */
-	private void createIndex(String sql, MapFile mapFile) {
-		long start = System.currentTimeMillis();
-		Statement stmt = null;
-		try {
-			stmt = mapFile.sqlConnection.createStatement();
-			stmt.executeUpdate(sql);
-		} catch (SQLException e) {
-			log.log(Level.WARNING, "Cold not create tiles index", e);
-		} finally {
-			if (stmt != null) {
-				try {
-					stmt.close();
-				} catch (SQLException e) {
-				}
-			}
+	private void openMapFileInBackground(MapFile mapFile) {
+		boolean wasReady = mapFile.isReady();
+		mapFile.openInBackground();
+		if (!wasReady && mapFile.isReady()) {
+			onMapFilesChanged();
 		}
-		long end = System.currentTimeMillis();
-		log.log(Level.INFO, "Creating index took {0}s", (double) (end - start) / 1000.0);
 	}
 
 	/**
-	 * Reads the tiles format from the database.
+	 * Updates the map configuration after the available map files have been changed and informs the clients.
+	 */
+	private void onMapFilesChanged() {
+		MapConfiguration c;
+		synchronized (MAP_FILES_LOCK) {
+			negativeTileCache.clear();
+			c = createMapConfig();
+			this.mapConfig = c;
+		}
+		mapConfigurationChangeEvent.fire(new MapConfigurationChangeEvent(c));
+	}
+
+	/**
+	 * Opens the map file with the given name. Files with the extension {@value TileArchiveMapFile#FILE_EXTENSION} will be opened as tile archive, all other files as MBTiles
+	 * file.
 	 * 
-	 * @param mapFile
-	 *            map file to read
+	 * @param fileName
+	 *            map file name
+	 * @return map tiles wrapper object
 	 */
-	private void readTilesFormat(MapFile mapFile) {
-		Statement stmt = null;
-		String format = null;
-		ResultSet rs = null;
-		try {
-			stmt = mapFile.sqlConnection.createStatement();
-			rs = stmt.executeQuery("SELECT value FROM metadata WHERE name = 'format'");
-			if (rs.next()) {
-				format = rs.getString(1);
-			}
-		} catch (SQLException e) {
-			log.log(Level.WARNING, "Cold not load tiles format", e);
-		} finally {
-			if (rs != null) {
-				try {
-					rs.close();
-				} catch (SQLException e) {
-				}
+	private MapFile openMapFile(String fileName) {
+		File tilesFile = new File(fileName);
+		if (tilesFile.exists() && tilesFile.canRead() && tilesFile.isFile()) {
+			MapFile mapFile;
+			if (StringUtils.endsWithIgnoreCase(fileName, TileArchiveMapFile.FILE_EXTENSION)) {
+				mapFile = new TileArchiveMapFile(tilesFile);
+			} else {
+				mapFile = new MBTilesMapFile(tilesFile, config);
 			}
-			if (stmt != null) {
-				try {
-					stmt.close();
-				} catch (SQLException e) {
-				}
+			try {
+				mapFile.open();
+				return mapFile;
+			} catch (IOException e) {
+				log.log(Level.WARNING, "Could not open map file", e);
+				mapFile.close();
 			}
-		}
-
-		if (StringUtils.equalsIgnoreCase(format, "png")) {
-			mapFile.tilesMimeType = "image/png";
-			mapFile.tilesFileExtension = ".png";
-		} else if (StringUtils.equalsAnyIgnoreCase(format, "jpg", "jpeg")) {
-			mapFile.tilesMimeType = "image/jpeg";
-			mapFile.tilesFileExtension = ".jpg";
-		} else if (StringUtils.equalsIgnoreCase(format, "pbf")) {
-			mapFile.tilesMimeType = "application/octet-stream";
-			mapFile.tilesFileExtension = ".pbf";
 		} else {
-			log.log(Level.WARNING, "Unknown MBTiles format: {0}", format);
-			mapFile.tilesMimeType = "application/octet-stream";
-			mapFile.tilesFileExtension = "";
+			log.log(Level.WARNING, "Could not open map file {0}", fileName);
 		}
+
+		return null;
 	}
 
 	/**
-	 * Reads the min and max values from the database.
+	 * Returns the loading status of all configured map files.
 	 * 
-	 * @param mapFile
-	 *            map file to read
+	 * @return loading status of map files
 	 */
-	private void readMinMaxValues(MapFile mapFile) {
-		PreparedStatement stmt = null;
-		ResultSet rs = null;
-		try {
-			stmt = mapFile.sqlConnection.prepareStatement("SELECT min(zoom_level), max(zoom_level) FROM tiles");
-			rs = stmt.executeQuery();
-			if (rs.next()) {
-				mapFile.minZ = rs.getInt(1);
-				mapFile.maxZ = rs.getInt(2);
-			}
-		} catch (SQLException e) {
-			log.log(Level.WARNING, "Cold not load min/max values", e);
-		} finally {
-			if (rs != null) {
-				try {
-					rs.close();
-				} catch (SQLException e) {
-				}
-			}
-			if (stmt != null) {
-				try {
-					stmt.close();
-				} catch (SQLException e) {
-				}
-			}
-		}
+	public List<MapFileStatus> getMapFileStatus() {
+		List<MapFileStatus> status = mapFiles.stream().map(MapFile::getStatus).collect(Collectors.toList());
+		failedMapFiles.forEach(fileName -> {
+			MapFileStatus s = new MapFileStatus();
+			s.setFileName(fileName);
+			s.setState(MapFileStatus.State.FAILED);
+			status.add(s);
+		});
+		return status;
 	}
 
 	/**
@@ -342,14 +541,16 @@ public class MapService {
 	 * @return map configuration
 	 */
 	private MapConfiguration createMapConfig() {
+		List<MapFile> mapFiles = this.mapFiles;
 		if (mapFiles == null || mapFiles.isEmpty()) {
 			return null;
 		}
 
 		MapConfiguration c = new MapConfiguration();
 		mapFiles.forEach(mf -> {
-			c.setMinZoom(c.getMinZoom() > 0 ? Math.min(c.getMinZoom(), mf.minZ) : mf.minZ);
-			c.setMaxZoom(c.getMaxZoom() > 0 ? Math.max(c.getMaxZoom(), mf.maxZ) : mf.maxZ);
+			c.setMinZoom(c.getMinZoom() > 0 ? Math.min(c.getMinZoom(), mf.getMinZ()) : mf.getMinZ());
+			int maxZ = mf.getMaxZ() + (isRasterMapFile(mf) ? overzoomLevels : 0);
+			c.setMaxZoom(c.getMaxZoom() > 0 ? Math.max(c.getMaxZoom(), maxZ) : maxZ);
 			MapConfiguration.TilesType t = getTitlesType(mf);
 			if (c.getType() == null) {
 				c.setType(t);
@@ -360,7 +561,8 @@ public class MapService {
 			}
 		});
 
-		c.setWithGeoJson(this.geoJsonFeatures != null && !this.geoJsonFeatures.getFeatures().isEmpty());
+		GeoJsonIndex geoJsonIndex = this.geoJsonIndex;
+		c.setWithGeoJson(geoJsonIndex != null && geoJsonIndex.getStore().size() > 0);
 
 		return c;
 	}
@@ -373,11 +575,11 @@ public class MapService {
 	 * @return tiles type
 	 */
 	private MapConfiguration.TilesType getTitlesType(MapFile mf) {
-		if (StringUtils.endsWithIgnoreCase(mf.tilesFileExtension, "jpeg") || StringUtils.endsWithIgnoreCase(mf.tilesFileExtension, "jpg")) {
+		if (StringUtils.endsWithIgnoreCase(mf.getTilesFileExtension(), "jpeg") || StringUtils.endsWithIgnoreCase(mf.getTilesFileExtension(), "jpg")) {
 			return TilesType.JPEG;
-		} else if (StringUtils.endsWithIgnoreCase(mf.tilesFileExtension, "png")) {
+		} else if (StringUtils.endsWithIgnoreCase(mf.getTilesFileExtension(), "png")) {
 			return TilesType.PNG;
-		} else if (StringUtils.endsWithIgnoreCase(mf.tilesFileExtension, "pbf")) {
+		} else if (StringUtils.endsWithIgnoreCase(mf.getTilesFileExtension(), "pbf")) {
 			return TilesType.VECTOR;
 		} else {
 			return null;
@@ -389,20 +591,15 @@ public class MapService {
 	 */
 	@PreDestroy
 	void destroy() {
-		mapFiles.forEach(mapFile -> {
-			if (mapFile.psTileData != null) {
-				try {
-					mapFile.psTileData.close();
-				} catch (SQLException e) {
-				}
-			}
-			if (mapFile.sqlConnection != null) {
-				try {
-					mapFile.sqlConnection.close();
-				} catch (SQLException e) {
-				}
-			}
-		});
+		tileCache.clear();
+		log.log(Level.INFO, "Tiles cache: {0} hits, {1} misses, {2} evictions", new Object[] { tileCache.getHits(), tileCache.getMisses(), tileCache.getEvictions() });
+		log.log(Level.INFO, "Tiles prefetch: {0} prefetched, {1} served", new Object[] { prefetchedTiles.get(), prefetchHits.get() });
+		log.log(Level.INFO, "Missing tiles: {0} known, {1} requests answered", new Object[] { negativeTileCache.getCount(), negativeTileCache.getHits() });
+		negativeTileCache.clear();
+		overzoomCache.clear();
+		geoJsonTileCache.clear();
+
+		mapFiles.forEach(MapFile::close);
 	}
 
 	/**
@@ -415,16 +612,60 @@ public class MapService {
 	}
 
 	/**
-	 * Returns the GeoJson features.
+	 * Returns the serialized GeoJson feature collection. It contains the features of all GeoJson files and will be recreated when the files change.
+	 * 
+	 * @return GeoJson feature collection or <code>null</code>
+	 */
+	public StreamedResource getGeoJson() {
+		return geoJsonResource;
+	}
+
+	/**
+	 * Returns the store of the GeoJson features. A new store will be returned after the GeoJson files have been reloaded.
 	 * 
+	 * @return GeoJson features or <code>null</code>
+	 */
+	GeoJsonStore getGeoJsonStore() {
+		GeoJsonIndex index = geoJsonIndex;
+		return index != null ? index.getStore() : null;
+	}
+
+	/**
+	 * Returns the GeoJson features intersecting the given bounding box. If a zoom level is given, features with a <code>minzoom</code> or <code>maxzoom</code> property outside
+	 * of this zoom level will be skipped.
+	 * 
+	 * @param minLon
+	 *            minimum longitude
+	 * @param minLat
+	 *            minimum latitude
+	 * @param maxLon
+	 *            maximum longitude
+	 * @param maxLat
+	 *            maximum latitude
+	 * @param zoom
+	 *            zoom level or <code>null</code>
 	 * @return GeoJson features or null
 	 */
-	public FeatureCollection getGeoJsonFeatures() {
-		return geoJsonFeatures;
+	public FeatureCollection getGeoJsonFeatures(double minLon, double minLat, double maxLon, double maxLat, Integer zoom) {
+		GeoJsonIndex index = geoJsonIndex;
+		if (index == null) {
+			return null;
+		}
+
+		FeatureCollection fc = new FeatureCollection();
+		GeoJsonStore store = index.getStore();
+		for (int i : index.query(minLon, minLat, maxLon, maxLat)) {
+			if (zoom == null || store.isVisible(i, zoom)) {
+				fc.add(store.getFeature(i));
+			}
+		}
+		return fc;
 	}
 
 	/**
-	 * Loads the tile with the given coordinates and zoom level as streamed resource.
+	 * Returns the GeoJson tile for the given coordinates and zoom level as streamed resource. The features will be clipped to the tile and simplified for the zoom level, so the
+	 * size of a tile does not depend on the size of the GeoJson files. The entity tag of all tiles is the one of the whole feature collection, so clients can revalidate tiles
+	 * before they are generated.
 	 * 
 	 * @param z
 	 *            zoom level
@@ -432,126 +673,59 @@ public class MapService {
 	 *            x position
 	 * @param y
 	 *            y position
-	 * @return streamed resource
+	 * @return streamed resource or <code>null</code> if there are no GeoJson files or the tile coordinates are invalid
 	 */
-	public StreamedResource getTile(int z, int x, int y) {
-		// calculate adapted y from MBTiles
-		int ay = (int) (Math.pow(2, z) - y - 1);
-
-		byte[] imageData = null;
-
-		// try lst map file first
-		MapFile mapFile = null;
-		MapFile lastMapFile = null;
-		synchronized (LAST_MATCHED_MAP_FILE_LOCK) {
-			if (lastMatchedMapFile != null) {
-				lastMapFile = lastMatchedMapFile;
-			}
-		}
-		if (lastMapFile != null) {
-			imageData = readTileData(lastMapFile, z, x, ay);
+	public StreamedResource getGeoJsonTile(int z, int x, int y) {
+		GeoJsonIndex index;
+		GeoJsonResource resource;
+		synchronized (geoJsonTileCache) {
+			index = geoJsonIndex;
+			resource = geoJsonResource;
 		}
-
-		if (imageData != null) {
-			mapFile = lastMapFile;
-		} else {
-			// search other map files
-			List<MapFile> mapFiles = getMatchingMapFiles(z, x, ay);
-			for (MapFile mf : mapFiles) {
-				if (mf == lastMapFile) {
-					// already tried
-					continue;
-				}
-				imageData = readTileData(mf, z, x, ay);
-				if (imageData != null) {
-					// found match
-					mapFile = mf;
-					synchronized (LAST_MATCHED_MAP_FILE_LOCK) {
-						lastMatchedMapFile = mf;
-					}
-					break;
-				}
-			}
+		if (index == null || resource == null || z < 0 || z > GeoJsonTiler.MAX_ZOOM || x < 0 || y < 0 || x >= 1 << z || y >= 1 << z) {
+			return null;
 		}
-
-		// create streamed resource
-		final byte[] imageDataFinal = imageData;
-		final MapFile mapFileFinal = mapFile;
-		return new StreamedResource() {
-			@Override
-			public InputStream getInputStream() throws IOException {
-				if (imageDataFinal != null) {
-					return new ByteArrayInputStream(imageDataFinal);
-				} else {
-					throw new FileNotFoundException();
-				}
-			}
-
-			@Override
-			public Integer getMaxCachingAge() {
-				return 24 * 3600; // 1d
-			}
-
-			@Override
-			public Date getLastModified() {
-				return mapFileFinal != null ? mapFileFinal.mapFileDate : null;
-			}
-
-			@Override
-			public String getMimeType() {
-				return mapFileFinal != null ? mapFileFinal.tilesMimeType : null;
-			}
-
-			@Override
-			public String getFileName() {
-				return mapFileFinal != null ? z + "_" + x + "_" + y + mapFileFinal.tilesFileExtension : null;
-			}
-		};
+		return new GeoJsonTileResource(index, resource.getETag(), z, x, y);
 	}
 
 	/**
-	 * Tries to read the given tile from the given map file. If the map file does not contain this tile it will return <code>null</<code>.
+	 * Returns the serialized GeoJson tile for the given coordinates and zoom level. Tiles will be generated on first request and cached as serialized JSON.
 	 * 
-	 * @param mapFile
-	 *            map file
+	 * @param index
+	 *            index of the features
 	 * @param z
 	 *            zoom level
 	 * @param x
 	 *            x position
 	 * @param y
 	 *            y position
-	 * @return tile data or <code>null</code>
+	 * @return GeoJson feature collection as JSON or <code>null</code> if the tile could not be serialized
 	 */
-	private byte[] readTileData(MapFile mapFile, int z, int x, int y) {
-		if (mapFile != null && mapFile.psTileData != null) {
-			synchronized (mapFile.psTileData) {
-				ResultSet rs = null;
-				try {
-					mapFile.psTileData.setInt(1, z);
-					mapFile.psTileData.setInt(2, x);
-					mapFile.psTileData.setInt(3, y);
-					rs = mapFile.psTileData.executeQuery();
-					if (rs.next()) {
-						return rs.getBytes(1);
-					}
-				} catch (SQLException e) {
-					log.log(Level.WARNING, "Cold not load tile data", e);
-				} finally {
-					if (rs != null) {
-						try {
-							rs.close();
-						} catch (SQLException e) {
-						}
-					}
-				}
+	private byte[] getGeoJsonTileData(GeoJsonIndex index, int z, int x, int y) {
+		long cacheKey = TileArchiveMapFile.tileId(z, x, y);
+		byte[] data = geoJsonTileCache.get(cacheKey);
+		if (data != null) {
+			return data;
+		}
+
+		FeatureCollection fc = new GeoJsonTiler(index, config.getGeoJsonTilesTolerance()).getTile(z, x, y);
+		try {
+			data = GEO_JSON_MAPPER.writeValueAsBytes(fc);
+		} catch (JsonProcessingException e) {
+			log.log(Level.WARNING, "Could not serialize GeoJson tile", e);
+			return null;
+		}
+		synchronized (geoJsonTileCache) {
+			// do not cache tiles of GeoJson files that have been reloaded meanwhile
+			if (index == geoJsonIndex) {
+				geoJsonTileCache.put(cacheKey, data, data.length);
 			}
 		}
-		return null;
+		return data;
 	}
 
 	/**
-	 * Searches the map file that contains the given tile. If multiple map files contain this tile any of these will be used. If no map file contains this tile, <code>null</code>
-	 * will be returned.
+	 * Loads the tile with the given coordinates and zoom level as streamed resource.
 	 * 
 	 * @param z
 	 *            zoom level
@@ -559,77 +733,908 @@ public class MapService {
 	 *            x position
 	 * @param y
 	 *            y position
-	 * @return map file or <code>null</code>
+	 * @return streamed resource or <code>null</code> if the tile is known to be missing
 	 */
-	private List<MapFile> getMatchingMapFiles(int z, int x, int y) {
-		return mapFiles.stream() //
-				.filter(mf -> mf.minZ <= z && mf.maxZ >= z) //
-				.collect(Collectors.toList());
-	}
+	public StreamedResource getTile(int z, int x, int y) {
+		long start = System.nanoTime();
+		metrics.recordRequest();
+		lastRequestedZoom = z;
+		if (isTileMissing(z, x, y)) {
+			metrics.recordLatency(TileMetrics.RESULT_NEGATIVE, System.nanoTime() - start);
+			return null;
+		}
+		return new TileResource(z, x, y);
+	}
+
+	/**
+	 * Returns the statistics of the tile requests and caches.
+	 * 
+	 * @return tile statistics
+	 */
+	public TileStatistics getTileStatistics() {
+		TileStatistics s = metrics.toStatistics();
+		s.setCacheHits(tileCache.getHits());
+		s.setCacheMisses(tileCache.getMisses());
+		s.setCacheEvictions(tileCache.getEvictions());
+		s.setCacheSize(tileCache.getSize());
+		s.setNegativeHits(negativeTileCache.getHits());
+		s.setPrefetchedTiles(prefetchedTiles.get());
+		s.setPrefetchHits(prefetchHits.get());
+
+		Map<String, LatencyStatistics> lockWaits = new TreeMap<>();
+		mapFiles.forEach(mf -> {
+			LatencyStatistics ls = mf.getLockWaitStatistics();
+			if (ls != null) {
+				lockWaits.put(mf.getFile().getName(), ls);
+			}
+		});
+		s.setLockWaits(lockWaits);
+		return s;
+	}
+
+	/**
+	 * Checks if the given tile is known to be missing without reading any map file.
+	 * 
+	 * @param z
+	 *            zoom level
+	 * @param x
+	 *            x position
+	 * @param y
+	 *            y position
+	 * @return <code>true</code> if the tile is definitely not available
+	 */
+	private boolean isTileMissing(int z, int x, int y) {
+		return negativeTileCache.isMissing(TileArchiveMapFile.tileId(z, x, y)) || mapFiles.stream().noneMatch(mf -> mf.mightContainTile(z, x, y) || canOverzoom(mf, z, x, y));
+	}
 
 	/**
-	 * Opens the GeoJson file and parses it.
+	 * Loads the tile with the given coordinates and zoom level into the tiles cache if it is not cached yet.
 	 * 
+	 * @param z
+	 *            zoom level
+	 * @param x
+	 *            x position
+	 * @param y
+	 *            y position
+	 * @return number of bytes put into the caches or -1 if the tile has not been read from the map files because it is already cached or known to be missing
+	 */
+	public int prefetchTile(int z, int x, int y) {
+		long cacheKey = TileArchiveMapFile.tileId(z, x, y);
+		if (tileCache.contains(cacheKey) || isTileMissing(z, x, y)) {
+			return -1;
+		}
+		long generation = mapFilesGeneration;
+		Tile tile;
+		try {
+			tile = loadTile(z, x, y, true);
+			if (tile == null) {
+				Tile overzoomedTile = getOverzoomedTile(z, x, y, generation);
+				if (overzoomedTile == null) {
+					addMissingTile(cacheKey, generation);
+					return 0;
+				}
+				return overzoomedTile.data.remaining();
+			}
+		} catch (IOException e) {
+			// try again on next request
+			log.log(Level.FINE, "Could not prefetch tile", e);
+			return 0;
+		}
+		if (!tile.mapFile.isCacheable()) {
+			return 0;
+		}
+		tile.prefetched = true;
+		if (!putTile(tileCache, cacheKey, tile, generation)) {
+			return 0;
+		}
+		prefetchedTiles.incrementAndGet();
+		return tile.data.remaining();
+	}
+
+	/**
+	 * Returns the zoom level of the last requested tile.
+	 * 
+	 * @return zoom level or -1 if no tile has been requested yet
+	 */
+	public int getLastRequestedZoom() {
+		return lastRequestedZoom;
+	}
+
+	/**
+	 * Returns the tile with the given coordinates and zoom level from the tiles cache or loads it from the map files.
+	 * 
+	 * @param z
+	 *            zoom level
+	 * @param x
+	 *            x position
+	 * @param y
+	 *            y position
+	 * @return found tile or <code>null</code>
+	 */
+	private Tile getCachedTile(int z, int x, int y) {
+		long start = System.nanoTime();
+		long cacheKey = TileArchiveMapFile.tileId(z, x, y);
+		Tile tile = tileCache.get(cacheKey);
+		if (tile != null) {
+			if (tile.prefetched) {
+				tile.prefetched = false;
+				prefetchHits.incrementAndGet();
+			}
+			metrics.recordLatency(TileMetrics.RESULT_HIT, System.nanoTime() - start);
+			return tile;
+		}
+
+		try {
+			tile = loadCachedTile(z, x, y, true);
+		} catch (IOException e) {
+			log.log(Level.WARNING, "Could not load tile {0}/{1}/{2}: {3}", new Object[] { z, x, y, e.getMessage() });
+		}
+		metrics.recordLatency(TileMetrics.RESULT_MISS, System.nanoTime() - start);
+		return tile;
+	}
+
+	/**
+	 * Returns the ancestor tile of an overzoomed tile from the tiles cache or loads it from the map files. The lookup is part of the request for the overzoomed tile, so it will
+	 * not be recorded as request on its own.
+	 * 
+	 * @param z
+	 *            zoom level
+	 * @param x
+	 *            x position
+	 * @param y
+	 *            y position
+	 * @return found tile or <code>null</code> if the tile does not exist
+	 * @throws IOException
+	 *             if the tile could not be read
+	 */
+	private Tile getAncestorTile(int z, int x, int y) throws IOException {
+		Tile tile = tileCache.get(TileArchiveMapFile.tileId(z, x, y));
+		return tile != null ? tile : loadCachedTile(z, x, y, false);
+	}
+
+	/**
+	 * Loads the tile with the given coordinates and zoom level from the map files and puts it into the tiles cache. The tile will only be remembered as missing if no map file
+	 * contains it, tiles that could not be read will be read again on the next request.
+	 * 
+	 * @param z
+	 *            zoom level
+	 * @param x
+	 *            x position
+	 * @param y
+	 *            y position
+	 * @param recordMetrics
+	 *            flag if the number of probed map files should be recorded
+	 * @return found tile or <code>null</code> if the tile does not exist
+	 * @throws IOException
+	 *             if the tile could not be read
+	 */
+	private Tile loadCachedTile(int z, int x, int y, boolean recordMetrics) throws IOException {
+		long cacheKey = TileArchiveMapFile.tileId(z, x, y);
+		long generation = mapFilesGeneration;
+		Tile tile = loadTile(z, x, y, recordMetrics);
+		if (tile == null) {
+			tile = getOverzoomedTile(z, x, y, generation);
+			if (tile == null) {
+				addMissingTile(cacheKey, generation);
+			}
+		} else if (tile.mapFile.isCacheable()) {
+			putTile(tileCache, cacheKey, tile, generation);
+		}
+		return tile;
+	}
+
+	/**
+	 * Puts the given tile into the given cache if the map files have not been replaced since the tile has been read.
+	 * 
+	 * @param cache
+	 *            tiles cache
+	 * @param cacheKey
+	 *            tile ID
+	 * @param tile
+	 *            tile to put
+	 * @param generation
+	 *            generation of the map files before reading the tile
+	 * @return <code>true</code> if the tile has been put into the cache
+	 */
+	private boolean putTile(TileCache<Tile> cache, long cacheKey, Tile tile, long generation) {
+		synchronized (MAP_FILES_LOCK) {
+			if (generation != mapFilesGeneration) {
+				return false;
+			}
+			cache.put(cacheKey, tile, tile.data.remaining());
+			return true;
+		}
+	}
+
+	/**
+	 * Remembers the given tile as missing if the map files have not been replaced since the tile has been searched.
+	 * 
+	 * @param cacheKey
+	 *            tile ID
+	 * @param generation
+	 *            generation of the map files before searching the tile
+	 */
+	private void addMissingTile(long cacheKey, long generation) {
+		synchronized (MAP_FILES_LOCK) {
+			if (generation == mapFilesGeneration) {
+				negativeTileCache.add(cacheKey);
+			}
+		}
+	}
+
+	/**
+	 * Returns the newest modification date of all map files that may contain tiles for the given zoom level. This is used as cache validator for tiles without loading the tile
+	 * data. The date is not taken from the map file serving the tile, as finding it would need the tile lookup that conditional requests should avoid. So replacing any map
+	 * file of the zoom level invalidates all cached tiles of the zoom level, but a tile will never be validated against an outdated map file.
+	 * 
+	 * @param z
+	 *            zoom level
+	 * @return modification date or <code>null</code> if there is no matching map file
+	 */
+	private Date getTilesLastModified(int z) {
+		Date lastModified = null;
+		for (MapFile mf : mapFiles) {
+			int maxZ = mf.getMaxZ() + (isRasterMapFile(mf) ? overzoomLevels : 0);
+			if (mf.getMinZ() <= z && maxZ >= z && (lastModified == null || mf.getMapFileDate().after(lastModified))) {
+				lastModified = mf.getMapFileDate();
+			}
+		}
+		return lastModified;
+	}
+
+	/**
+	 * Searches the map files for the tile with the given coordinates and zoom level.
+	 * 
+	 * @param z
+	 *            zoom level
+	 * @param x
+	 *            x position
+	 * @param y
+	 *            y position
+	 * @param recordMetrics
+	 *            flag if the number of probed map files should be recorded
+	 * @return found tile or <code>null</code> if no map file contains the tile
+	 * @throws IOException
+	 *             if the tile has not been found and could not be read from at least one map file
+	 */
+	private Tile loadTile(int z, int x, int y, boolean recordMetrics) throws IOException {
+		int probed = 0;
+		try {
+			ByteBuffer imageData = null;
+			IOException failure = null;
+			List<MapFile> files = mapFiles;
+
+			// try lst map file first
+			MapFile lastMapFile = null;
+			synchronized (LAST_MATCHED_MAP_FILE_LOCK) {
+				if (lastMatchedMapFile != null) {
+					lastMapFile = lastMatchedMapFile;
+				}
+			}
+			if (lastMapFile != null && lastMapFile.mightContainTile(z, x, y)) {
+				probed++;
+				try {
+					imageData = readTileData(lastMapFile, z, x, y);
+				} catch (IOException e) {
+					failure = e;
+				}
+			}
+
+			if (imageData != null) {
+				return new Tile(lastMapFile, imageData);
+			}
+
+			// search other map files
+			boolean reloaded = false;
+			while (true) {
+				for (MapFile mf : getMatchingMapFiles(files, z, x, y)) {
+					if (mf == lastMapFile && !reloaded) {
+						// already tried
+						continue;
+					}
+					probed++;
+					try {
+						imageData = readTileData(mf, z, x, y);
+					} catch (IOException e) {
+						failure = e;
+						continue;
+					}
+					if (imageData != null) {
+						// found match, a map file that has been removed while reading must not be used again
+						synchronized (LAST_MATCHED_MAP_FILE_LOCK) {
+							if (mapFiles.contains(mf)) {
+								lastMatchedMapFile = mf;
+							}
+						}
+						return new Tile(mf, imageData);
+					}
+				}
+
+				if (failure == null || files == mapFiles) {
+					break;
+				}
+				// map files have been reloaded while reading (e.g. a closed map file has been read) -> search the current map files
+				files = mapFiles;
+				failure = null;
+				reloaded = true;
+			}
+
+			if (failure != null) {
+				throw failure;
+			}
+			return null;
+		} finally {
+			if (recordMetrics) {
+				metrics.recordFilesProbed(probed);
+			}
+		}
+	}
+
+	/**
+	 * Reads the tile data from the given map file and records the latency.
+	 * 
+	 * @param mapFile
+	 *            map file
+	 * @param z
+	 *            zoom level
+	 * @param x
+	 *            x position
+	 * @param y
+	 *            y position
+	 * @return tile data or <code>null</code> if the map file does not contain the tile
+	 * @throws IOException
+	 *             if the tile could not be read from the map file
+	 */
+	private ByteBuffer readTileData(MapFile mapFile, int z, int x, int y) throws IOException {
+		long start = System.nanoTime();
+		try {
+			return mapFile.readTileData(z, x, y);
+		} finally {
+			metrics.recordFileLatency(mapFile, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Checks if the given raster map file is the source for synthesizing the given tile above its max zoom level.
+	 * 
+	 * @param mf
+	 *            map file
+	 * @param z
+	 *            zoom level
+	 * @param x
+	 *            x position
+	 * @param y
+	 *            y position
+	 * @return <code>true</code> if the map file may contain the ancestor tile on its max zoom level
+	 */
+	private boolean canOverzoom(MapFile mf, int z, int x, int y) {
+		int dz = z - mf.getMaxZ();
+		return dz > 0 && dz <= overzoomLevels && isRasterMapFile(mf) && mf.mightContainTile(mf.getMaxZ(), x >> dz, y >> dz);
+	}
+
+	/**
+	 * Checks if the given map file contains raster tiles.
+	 * 
+	 * @param mf
+	 *            map file
+	 * @return <code>true</code> for PNG and JPEG tiles
+	 */
+	private boolean isRasterMapFile(MapFile mf) {
+		TilesType t = getTitlesType(mf);
+		return t == TilesType.PNG || t == TilesType.JPEG;
+	}
+
+	/**
+	 * Synthesizes a raster tile above the max zoom level of the map files by cropping and upscaling the ancestor tile of the max zoom level. Synthesized tiles will be cached,
+	 * so every tile will only be decoded and encoded once.
+	 * 
+	 * @param z
+	 *            zoom level
+	 * @param x
+	 *            x position
+	 * @param y
+	 *            y position
+	 * @param generation
+	 *            generation of the map files before searching the tile
+	 * @return synthesized tile or <code>null</code> if there is no ancestor tile
+	 * @throws IOException
+	 *             if an ancestor tile could not be read
+	 */
+	private Tile getOverzoomedTile(int z, int x, int y, long generation) throws IOException {
+		if (overzoomLevels <= 0) {
+			return null;
+		}
+		long cacheKey = TileArchiveMapFile.tileId(z, x, y);
+		Tile tile = overzoomCache.get(cacheKey);
+		if (tile != null) {
+			return tile;
+		}
+
+		for (MapFile mf : mapFiles) {
+			if (!canOverzoom(mf, z, x, y)) {
+				continue;
+			}
+			int dz = z - mf.getMaxZ();
+			Tile ancestor = getAncestorTile(mf.getMaxZ(), x >> dz, y >> dz);
+			if (ancestor != null && isRasterMapFile(ancestor.mapFile)) {
+				tile = scaleTile(ancestor, dz, x, y);
+				if (tile != null) {
+					putTile(overzoomCache, cacheKey, tile, generation);
+					return tile;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Crops the part of the given descendant tile from the ancestor tile and scales it up to the full tile size.
+	 * 
+	 * @param ancestor
+	 *            ancestor tile
+	 * @param dz
+	 *            zoom level difference between ancestor and descendant
+	 * @param x
+	 *            x position of descendant
+	 * @param y
+	 *            y position of descendant
+	 * @return synthesized tile or <code>null</code> if the ancestor tile could not be decoded
+	 */
+	private Tile scaleTile(Tile ancestor, int dz, int x, int y) {
+		boolean jpeg = getTitlesType(ancestor.mapFile) == TilesType.JPEG;
+		try (InputStream in = toInputStream(ancestor.data.duplicate())) {
+			BufferedImage src = ImageIO.read(in);
+			if (src == null) {
+				return null;
+			}
+			int width = src.getWidth();
+			int height = src.getHeight();
+			int n = 1 << dz;
+			int subWidth = width / n;
+			int subHeight = height / n;
+			if (subWidth < 1 || subHeight < 1) {
+				return null;
+			}
+			int sx = (x & (n - 1)) * subWidth;
+			int sy = (y & (n - 1)) * subHeight;
+
+			BufferedImage dst = new BufferedImage(width, height, jpeg ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+			Graphics2D g = dst.createGraphics();
+			try {
+				g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+				g.drawImage(src, 0, 0, width, height, sx, sy, sx + subWidth, sy + subHeight, null);
+			} finally {
+				g.dispose();
+			}
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			if (!ImageIO.write(dst, jpeg ? "jpeg" : "png", out)) {
+				return null;
+			}
+			return new Tile(ancestor.mapFile, ByteBuffer.wrap(out.toByteArray()));
+		} catch (IOException e) {
+			log.log(Level.WARNING, "Could not scale tile", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Creates an input stream for the given buffer without changing the buffer position.
+	 * 
+	 * @param data
+	 *            buffer
+	 * @return input stream
+	 */
+	private static InputStream toInputStream(ByteBuffer data) {
+		if (data.hasArray()) {
+			return new ByteArrayInputStream(data.array(), data.arrayOffset() + data.position(), data.remaining());
+		}
+		byte[] bytes = new byte[data.remaining()];
+		data.duplicate().get(bytes);
+		return new ByteArrayInputStream(bytes);
+	}
+
+	/**
+	 * Searches the map file that contains the given tile. If multiple map files contain this tile any of these will be used. If no map file contains this tile, <code>null</code>
+	 * will be returned.
+	 * 
+	 * @param mapFiles
+	 *            map files to search
+	 * @param z
+	 *            zoom level
+	 * @param x
+	 *            x position
+	 * @param y
+	 *            y position
+	 * @return map file or <code>null</code>
+	 */
+	private List<MapFile> getMatchingMapFiles(List<MapFile> mapFiles, int z, int x, int y) {
+		return mapFiles.stream() //
+				.filter(mf -> mf.mightContainTile(z, x, y)) //
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * Detects the compression of the given vector tile data. Vector tiles in MBTiles files are usually stored gzip compressed, some generators use zlib instead.
+	 * 
+	 * @param data
+	 *            tile data
+	 * @return <code>gzip</code>, <code>deflate</code> or <code>null</code> if the data is not compressed
+	 */
+	private static String getContentEncoding(ByteBuffer data) {
+		if (data.remaining() < 2) {
+			return null;
+		}
+		int b0 = data.get(data.position()) & 0xFF;
+		int b1 = data.get(data.position() + 1) & 0xFF;
+		if (b0 == 0x1F && b1 == 0x8B) {
+			return "gzip";
+		} else if ((b0 & 0x0F) == 8 && (b0 << 8 | b1) % 31 == 0) {
+			return "deflate";
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * Opens the GeoJson file and reads its features into the given store.
+	 * 
+	 * @param store
+	 *            feature store
 	 * @param fileName
 	 *            file name to read
-	 * @return featre collection of GeoJson file
 	 */
-	private FeatureCollection openGeoJsonFile(String fileName) {
+	private void openGeoJsonFile(GeoJsonStore store, String fileName) {
 		File geoJsonFile = new File(fileName);
 		if (geoJsonFile.exists() && geoJsonFile.canRead() && geoJsonFile.isFile()) {
-			FeatureCollection featureCollection;
 			try {
-				featureCollection = GEO_JSON_MAPPER.readValue(geoJsonFile, FeatureCollection.class);
-				return featureCollection;
+				store.read(geoJsonFile);
 			} catch (IOException e) {
 				log.log(Level.WARNING, "Could not read GeoJson file", e);
 			}
 		} else {
 			log.log(Level.WARNING, "Could not open GeoJson file {0}", fileName);
 		}
-		return null;
 	}
 
 	/**
-	 * Model wrapper for the connection to a map file.
+	 * Model wrapper for a loaded tile.
+	 * 
+	 * @author osterrath
+	 *
+	 */
+	private class Tile {
+		/**
+		 * Map file that contains the tile.
+		 */
+		private final MapFile mapFile;
+
+		/**
+		 * Tile data. The buffer is shared between all requests of this tile, so it must be duplicated before reading it.
+		 */
+		private final ByteBuffer data;
+
+		/**
+		 * Content coding the tile data is stored with or <code>null</code>.
+		 */
+		private final String contentEncoding;
+
+		/**
+		 * Flag if the tile has been prefetched and not been requested yet.
+		 */
+		private volatile boolean prefetched;
+
+		/**
+		 * Ctor.
+		 *
+		 * @param mapFile
+		 *            map file that contains the tile
+		 * @param data
+		 *            tile data
+		 */
+		private Tile(MapFile mapFile, ByteBuffer data) {
+			super();
+			this.mapFile = mapFile;
+			this.data = data;
+			this.contentEncoding = MapFile.VECTOR_TILES_MIME_TYPE.equals(mapFile.getTilesMimeType()) ? getContentEncoding(data) : null;
+		}
+	}
+
+	/**
+	 * Streamed resource for a single tile. The tile data will only be loaded when the content is requested so that conditional requests can be answered without reading the
+	 * map files.
+	 * 
+	 * @author osterrath
+	 *
+	 */
+	private class TileResource implements StreamedResource {
+		/**
+		 * Zoom level.
+		 */
+		private final int z;
+
+		/**
+		 * X position.
+		 */
+		private final int x;
+
+		/**
+		 * Y position.
+		 */
+		private final int y;
+
+		/**
+		 * Cache validator of the tile, the newest modification date of the map files of the zoom level.
+		 */
+		private final Date lastModified;
+
+		/**
+		 * Loaded tile.
+		 */
+		private Tile tile;
+
+		/**
+		 * Flag if the tile has already been loaded.
+		 */
+		private boolean loaded;
+
+		/**
+		 * Ctor.
+		 *
+		 * @param z
+		 *            zoom level
+		 * @param x
+		 *            x position
+		 * @param y
+		 *            y position
+		 */
+		private TileResource(int z, int x, int y) {
+			super();
+			this.z = z;
+			this.x = x;
+			this.y = y;
+			this.lastModified = getTilesLastModified(z);
+		}
+
+		/**
+		 * Loads the tile on first access.
+		 * 
+		 * @return tile or <code>null</code>
+		 */
+		private synchronized Tile getTile() {
+			if (!loaded) {
+				tile = getCachedTile(z, x, y);
+				loaded = true;
+			}
+			return tile;
+		}
+
+		@Override
+		public InputStream getInputStream() throws IOException {
+			return toInputStream(getContent());
+		}
+
+		@Override
+		public ByteBuffer getContent() throws IOException {
+			Tile t = getTile();
+			if (t != null) {
+				metrics.recordBytesServed(t.data.remaining());
+				return t.data.duplicate();
+			} else {
+				throw new FileNotFoundException();
+			}
+		}
+
+		@Override
+		public String getContentEncoding() throws IOException {
+			Tile t = getTile();
+			return t != null ? t.contentEncoding : null;
+		}
+
+		@Override
+		public Integer getMaxCachingAge() {
+			return 24 * 3600; // 1d
+		}
+
+		@Override
+		public Date getLastModified() {
+			return lastModified;
+		}
+
+		@Override
+		public String getMimeType() {
+			Tile t = getTile();
+			return t != null ? t.mapFile.getTilesMimeType() : null;
+		}
+
+		@Override
+		public String getFileName() {
+			Tile t = getTile();
+			return t != null ? z + "_" + x + "_" + y + t.mapFile.getTilesFileExtension() : null;
+		}
+	}
+
+	/**
+	 * Streamed resource for a single GeoJson tile. The tile will only be generated when the content is requested so that conditional requests can be answered without clipping
+	 * the features.
 	 * 
 	 * @author osterrath
 	 *
 	 */
-	private class MapFile {
+	private class GeoJsonTileResource implements StreamedResource {
+		/**
+		 * Index of the features.
+		 */
+		private final GeoJsonIndex index;
+
+		/**
+		 * Entity tag of the feature collection.
+		 */
+		private final String eTag;
+
 		/**
-		 * SQL connection to MBTiles file.
+		 * Zoom level.
 		 */
-		private Connection sqlConnection;
+		private final int z;
 
 		/**
-		 * Prepared statement for loading tile data.
+		 * X position.
 		 */
-		private PreparedStatement psTileData;
+		private final int x;
 
 		/**
-		 * Date when the map file has been created.
+		 * Y position.
 		 */
-		private Date mapFileDate;
+		private final int y;
 
 		/**
-		 * Mime type of tiles.
+		 * Ctor.
+		 *
+		 * @param index
+		 *            index of the features
+		 * @param eTag
+		 *            entity tag of the feature collection
+		 * @param z
+		 *            zoom level
+		 * @param x
+		 *            x position
+		 * @param y
+		 *            y position
 		 */
-		private String tilesMimeType;
+		private GeoJsonTileResource(GeoJsonIndex index, String eTag, int z, int x, int y) {
+			super();
+			this.index = index;
+			this.eTag = eTag;
+			this.z = z;
+			this.x = x;
+			this.y = y;
+		}
+
+		@Override
+		public InputStream getInputStream() throws IOException {
+			return toInputStream(getContent());
+		}
+
+		@Override
+		public ByteBuffer getContent() throws IOException {
+			byte[] data = getGeoJsonTileData(index, z, x, y);
+			if (data == null) {
+				throw new FileNotFoundException();
+			}
+			return ByteBuffer.wrap(data);
+		}
+
+		@Override
+		public String getETag() {
+			return eTag;
+		}
+
+		@Override
+		public Integer getMaxCachingAge() {
+			// always revalidate as the files may change
+			return 0;
+		}
+
+		@Override
+		public Date getLastModified() {
+			return null;
+		}
+
+		@Override
+		public String getMimeType() {
+			return "application/json";
+		}
+
+		@Override
+		public String getFileName() {
+			return z + "_" + x + "_" + y + ".geojson";
+		}
+	}
 
+	/**
+	 * Streamed resource for the serialized GeoJson feature collection. The content is kept uncompressed and gzip compressed, so no client has to wait for encoding or decoding.
+	 * 
+	 * @author osterrath
+	 *
+	 */
+	private static class GeoJsonResource implements StreamedResource {
 		/**
-		 * File extension of tiles.
+		 * Uncompressed JSON.
 		 */
-		private String tilesFileExtension;
+		private final ByteBuffer data;
 
 		/**
-		 * Minimum value of Z in tiles file.
+		 * Gzip compressed JSON.
 		 */
-		private int minZ;
+		private final ByteBuffer gzipData;
 
 		/**
-		 * Maximum value of Z in tiles file.
+		 * Hash of the JSON as entity tag.
 		 */
-		private int maxZ;
+		private final String eTag;
+
+		/**
+		 * Ctor.
+		 *
+		 * @param data
+		 *            uncompressed JSON
+		 * @param gzipData
+		 *            gzip compressed JSON
+		 * @param eTag
+		 *            hash of the JSON
+		 */
+		private GeoJsonResource(ByteBuffer data, ByteBuffer gzipData, String eTag) {
+			super();
+			this.data = data;
+			this.gzipData = gzipData;
+			this.eTag = eTag;
+		}
+
+		@Override
+		public InputStream getInputStream() throws IOException {
+			// encoded like the content, see StreamedResource#getInputStream()
+			return toInputStream(gzipData);
+		}
+
+		@Override
+		public ByteBuffer getContent() throws IOException {
+			return gzipData.duplicate();
+		}
+
+		@Override
+		public ByteBuffer getDecodedContent() throws IOException {
+			return data.duplicate();
+		}
+
+		@Override
+		public String getContentEncoding() throws IOException {
+			return "gzip";
+		}
+
+		@Override
+		public String getETag() {
+			return eTag;
+		}
+
+		@Override
+		public Integer getMaxCachingAge() {
+			// always revalidate as the files may change
+			return 0;
+		}
+
+		@Override
+		public Date getLastModified() {
+			return null;
+		}
+
+		@Override
+		public String getMimeType() {
+			return "application/json";
+		}
+
+		@Override
+		public String getFileName() {
+			return "carpi.geojson";
+		}
 	}
 }
@@ -0,0 +1,92 @@
+package net.packsam.carpi.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of tiles that are known to be missing in all map files. Tiles outside the map coverage would otherwise query every map file on each request. The least
+ * recently requested tiles will be evicted first.
+ *
+ * @author osterrath
+ *
+ */
+class NegativeTileCache {
+	/**
+	 * Keys of missing tiles in access order.
+	 */
+	private final LinkedHashMap<Long, Boolean> missingTiles;
+
+	/**
+	 * Number of requests answered from this cache.
+	 */
+	private long hits;
+
+	/**
+	 * Ctor.
+	 *
+	 * @param maxCount
+	 *            maximum number of missing tiles to remember, 0 disables the cache
+	 */
+	NegativeTileCache(int maxCount) {
+		super();
+		int max = Math.max(0, maxCount);
+		this.missingTiles = new LinkedHashMap<Long, Boolean>(256, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+				return size() > max;
+			}
+		};
+	}
+
+	/**
+	 * Checks if the tile with the given key is known to be missing.
+	 *
+	 * @param key
+	 *            cache key (see {@link TileArchiveMapFile#tileId(int, int, int)})
+	 * @return <code>true</code> if the tile is missing
+	 */
+	synchronized boolean isMissing(long key) {
+		if (missingTiles.get(key) != null) {
+			hits++;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Remembers the tile with the given key as missing.
+	 *
+	 * @param key
+	 *            cache key (see {@link TileArchiveMapFile#tileId(int, int, int)})
+	 */
+	synchronized void add(long key) {
+		missingTiles.put(key, Boolean.TRUE);
+	}
+
+	/**
+	 * Forgets all missing tiles, e.g. when the map files have changed.
+	 */
+	synchronized void clear() {
+		missingTiles.clear();
+	}
+
+	/**
+	 * Returns the number of requests answered from this cache.
+	 *
+	 * @return cache hits
+	 */
+	synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of remembered missing tiles.
+	 *
+	 * @return number of tiles
+	 */
+	synchronized int getCount() {
+		return missingTiles.size();
+	}
+}
@@ -0,0 +1,231 @@
+package net.packsam.carpi.service;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Grid index over GeoJson point features for searching the points near a position. The points are sorted by grid cell (rows of latitude, columns of longitude), so all points
+ * of a grid row within a longitude range can be found by a single binary search. Searching needs no objects, so it can be done for every GPS fix.
+ *
+ * @author osterrath
+ *
+ */
+class PointIndex {
+	/**
+	 * Size of a grid cell in degrees (approx. 1km in latitude).
+	 */
+	private static final double CELL_SIZE = 0.01;
+
+	/**
+	 * Number of grid columns.
+	 */
+	private static final int COLUMNS = (int) Math.ceil(360 / CELL_SIZE) + 1;
+
+	/**
+	 * Length of a degree latitude in m.
+	 */
+	private static final double METERS_PER_DEGREE = 111320;
+
+	/**
+	 * Grid cells of the points in ascending order.
+	 */
+	private final int[] cells;
+
+	/**
+	 * Latitudes of the points.
+	 */
+	private final double[] latitudes;
+
+	/**
+	 * Longitudes of the points.
+	 */
+	private final double[] longitudes;
+
+	/**
+	 * Feature numbers of the points.
+	 */
+	private final int[] features;
+
+	/**
+	 * Ctor.
+	 *
+	 * @param store
+	 *            GeoJson features
+	 * @param filter
+	 *            filter for the feature numbers of the points to index
+	 */
+	PointIndex(GeoJsonStore store, IntPredicate filter) {
+		super();
+		IntList points = new IntList();
+		for (int i = 0; i < store.size(); i++) {
+			if (store.isPoint(i) && filter.test(i)) {
+				points.add(i);
+			}
+		}
+
+		int n = points.size();
+		long[] sorted = new long[n];
+		double[][] positions = new double[n][];
+		for (int i = 0; i < n; i++) {
+			positions[i] = store.getBounds(points.get(i));
+			sorted[i] = ((long) getCell(positions[i][1], positions[i][0]) << 32) | i;
+		}
+		Arrays.sort(sorted);
+
+		cells = new int[n];
+		latitudes = new double[n];
+		longitudes = new double[n];
+		features = new int[n];
+		for (int i = 0; i < n; i++) {
+			int p = (int) sorted[i];
+			cells[i] = (int) (sorted[i] >>> 32);
+			latitudes[i] = positions[p][1];
+			longitudes[i] = positions[p][0];
+			features[i] = points.get(p);
+		}
+	}
+
+	/**
+	 * Returns the number of indexed points.
+	 *
+	 * @return number of points
+	 */
+	int size() {
+		return features.length;
+	}
+
+	/**
+	 * Returns the feature number of the given point.
+	 *
+	 * @param point
+	 *            point number
+	 * @return feature number
+	 */
+	int getFeature(int point) {
+		return features[point];
+	}
+
+	/**
+	 * Returns the distance from the given position to the given point.
+	 *
+	 * @param point
+	 *            point number
+	 * @param latitude
+	 *            latitude of the position
+	 * @param longitude
+	 *            longitude of the position
+	 * @return distance in m
+	 */
+	double getDistance(int point, double latitude, double longitude) {
+		double dx = (longitudes[point] - longitude) * Math.cos(Math.toRadians(latitude)) * METERS_PER_DEGREE;
+		double dy = (latitudes[point] - latitude) * METERS_PER_DEGREE;
+		return Math.sqrt(dx * dx + dy * dy);
+	}
+
+	/**
+	 * Searches the points within the given distance of the given position. If a heading is given, only points whose direction differs from the heading by at most the given
+	 * angle will be found. Distances and directions are calculated on an equirectangular projection, which is exact enough for a few km.
+	 *
+	 * @param latitude
+	 *            latitude of the position
+	 * @param longitude
+	 *            longitude of the position
+	 * @param distance
+	 *            maximum distance in m
+	 * @param heading
+	 *            heading in degrees or <code>NaN</code> for searching in all directions
+	 * @param angle
+	 *            maximum angle in degrees between heading and direction to a point
+	 * @param result
+	 *            receives the numbers of the found points, will be cleared before
+	 */
+	void search(double latitude, double longitude, double distance, double heading, double angle, IntList result) {
+		result.truncate(0);
+		if (features.length == 0) {
+			return;
+		}
+		double cos = Math.cos(Math.toRadians(latitude));
+		double dLat = distance / METERS_PER_DEGREE;
+		double dLon = dLat / Math.max(cos, 0.01);
+		int minRow = getRow(latitude - dLat);
+		int maxRow = getRow(latitude + dLat);
+		int minColumn = getColumn(longitude - dLon);
+		int maxColumn = getColumn(longitude + dLon);
+		double sqDistance = distance * distance;
+
+		for (int row = minRow; row <= maxRow; row++) {
+			int lastCell = row * COLUMNS + maxColumn;
+			for (int i = findFirst(row * COLUMNS + minColumn); i < cells.length && cells[i] <= lastCell; i++) {
+				double dx = (longitudes[i] - longitude) * cos * METERS_PER_DEGREE;
+				double dy = (latitudes[i] - latitude) * METERS_PER_DEGREE;
+				if (dx * dx + dy * dy > sqDistance) {
+					continue;
+				}
+				if (!Double.isNaN(heading)) {
+					double direction = Math.toDegrees(Math.atan2(dx, dy));
+					double diff = Math.abs(((direction - heading) % 360 + 540) % 360 - 180);
+					if (diff > angle) {
+						continue;
+					}
+				}
+				result.add(i);
+			}
+		}
+	}
+
+	/**
+	 * Searches the first point in a cell greater or equal to the given one.
+	 *
+	 * @param cell
+	 *            grid cell
+	 * @return index of the first point or the number of points if there is none
+	 */
+	private int findFirst(int cell) {
+		int low = 0;
+		int high = cells.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (cells[mid] < cell) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Calculates the grid cell of the given position.
+	 *
+	 * @param latitude
+	 *            latitude
+	 * @param longitude
+	 *            longitude
+	 * @return grid cell
+	 */
+	private static int getCell(double latitude, double longitude) {
+		return getRow(latitude) * COLUMNS + getColumn(longitude);
+	}
+
+	/**
+	 * Calculates the grid row of the given latitude.
+	 *
+	 * @param latitude
+	 *            latitude
+	 * @return grid row
+	 */
+	private static int getRow(double latitude) {
+		return (int) ((Math.max(-90, Math.min(90, latitude)) + 90) / CELL_SIZE);
+	}
+
+	/**
+	 * Calculates the grid column of the given longitude.
+	 *
+	 * @param longitude
+	 *            longitude
+	 * @return grid column
+	 */
+	private static int getColumn(double longitude) {
+		return (int) ((Math.max(-180, Math.min(180, longitude)) + 180) / CELL_SIZE);
+	}
+}
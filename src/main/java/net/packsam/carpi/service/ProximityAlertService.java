@@ -0,0 +1,229 @@
+package net.packsam.carpi.service;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Event;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+
+import org.apache.commons.lang3.StringUtils;
+
+import net.packsam.carpi.config.CarpiConfiguration;
+import net.packsam.carpi.event.GPSPositionChangeEvent;
+import net.packsam.carpi.event.ProximityAlertEvent;
+import net.packsam.carpi.model.GPSPosition;
+
+/**
+ * Service for raising alerts when the vehicle approaches GeoJson point features (e.g. speed cameras or POIs). The alert distance grows with the speed, so an alert will be
+ * raised the configured time before reaching the feature. While moving, only features ahead within the configured angle around the heading will be alerted. Each feature will
+ * be alerted once until the vehicle has left its surrounding again.
+ * 
+ * @author osterrath
+ *
+ */
+@ApplicationScoped
+public class ProximityAlertService {
+	/**
+	 * Minimum speed in m/s for using the GPS course as heading.
+	 */
+	private static final double MIN_SPEED = 2;
+
+	/**
+	 * Factor of the maximum alert distance a feature must be left behind before it will be alerted again. The radius does not depend on the speed, so braking near an alerted
+	 * feature does not alert it again.
+	 */
+	private static final double REARM_FACTOR = 1.5;
+
+	/**
+	 * Time in s the alert should be raised before reaching a feature.
+	 */
+	private double time;
+
+	/**
+	 * Minimum alert distance in m.
+	 */
+	private double minDistance;
+
+	/**
+	 * Maximum alert distance in m.
+	 */
+	private double maxDistance;
+
+	/**
+	 * Maximum angle in degrees between heading and direction to a feature.
+	 */
+	private double angle;
+
+	/**
+	 * Property key of the features to alert or <code>null</code> for all point features.
+	 */
+	private String filterKey;
+
+	/**
+	 * Property value of the features to alert or <code>null</code> for any value.
+	 */
+	private String filterValue;
+
+	/**
+	 * Feature store the point index has been built for.
+	 */
+	private GeoJsonStore indexedStore;
+
+	/**
+	 * Index of the point features to alert.
+	 */
+	private PointIndex pointIndex;
+
+	/**
+	 * Point numbers found near the current position, reused for every position.
+	 */
+	private final IntList found = new IntList(16);
+
+	/**
+	 * Point numbers that have already been alerted.
+	 */
+	private final IntList alerted = new IntList(16);
+
+	/**
+	 * Service for reading map tiles.
+	 */
+	@Inject
+	private MapService mapService;
+
+	/**
+	 * Event when a feature is approached.
+	 */
+	@Inject
+	private Event<ProximityAlertEvent> proximityAlertEvent;
+
+	/**
+	 * Class logger.
+	 */
+	@Inject
+	private Logger log;
+
+	/**
+	 * Application configuration.
+	 */
+	@Inject
+	private CarpiConfiguration config;
+
+	/**
+	 * Initializes the service.
+	 */
+	@PostConstruct
+	private void initialize() {
+		time = Math.max(0, config.getProximityTime());
+		minDistance = Math.max(0, config.getProximityDistanceMin());
+		maxDistance = Math.max(minDistance, config.getProximityDistanceMax());
+		angle = config.getProximityAngle();
+
+		String filter = StringUtils.trimToNull(config.getProximityFilter());
+		if (filter != null) {
+			filterKey = StringUtils.trim(StringUtils.substringBefore(filter, "="));
+			filterValue = filter.contains("=") ? StringUtils.trim(StringUtils.substringAfter(filter, "=")) : null;
+		}
+	}
+
+	/**
+	 * Returns the index of the point features to alert. The index will be rebuilt after the GeoJson files have been reloaded.
+	 * 
+	 * @return point index or <code>null</code> if there are no GeoJson files
+	 */
+	private PointIndex getPointIndex() {
+		GeoJsonStore store = mapService.getGeoJsonStore();
+		if (store != indexedStore) {
+			long start = System.currentTimeMillis();
+			pointIndex = store != null ? new PointIndex(store, feature -> matchesFilter(store, feature)) : null;
+			indexedStore = store;
+			alerted.truncate(0);
+			if (pointIndex != null) {
+				log.log(Level.INFO, "Indexing {0} GeoJson points for proximity alerts took {1}ms", new Object[] { pointIndex.size(), System.currentTimeMillis() - start });
+			}
+		}
+		return pointIndex;
+	}
+
+	/**
+	 * Checks if the given feature matches the configured filter.
+	 * 
+	 * @param store
+	 *            GeoJson features
+	 * @param feature
+	 *            feature number
+	 * @return <code>true</code> if the feature should be alerted
+	 */
+	private boolean matchesFilter(GeoJsonStore store, int feature) {
+		if (filterKey == null) {
+			return true;
+		}
+		Object value = store.getProperty(feature, filterKey);
+		if (filterValue == null) {
+			return value != null && !Boolean.FALSE.equals(value);
+		}
+		return value != null && filterValue.equals(value.toString());
+	}
+
+	/**
+	 * Event handler when a new GPS position has been received.
+	 *
+	 * @param event
+	 *            event
+	 */
+	synchronized void onGPSPositionReceived(@Observes GPSPositionChangeEvent event) {
+		if (time <= 0) {
+			return;
+		}
+		GPSPosition location = event.getLocation();
+		Double latitude = location.getLatitude();
+		Double longitude = location.getLongitude();
+		if (latitude == null || longitude == null) {
+			return;
+		}
+		PointIndex index = getPointIndex();
+		if (index == null || index.size() == 0) {
+			return;
+		}
+
+		double speed = location.getSpeed() != null ? location.getSpeed() : 0;
+		double distance = Math.max(minDistance, Math.min(maxDistance, speed * time));
+		double heading = speed >= MIN_SPEED && location.getCourse() != null ? location.getCourse() : Double.NaN;
+
+		// re-arm features that have been left behind
+		double rearmDistance = maxDistance * REARM_FACTOR;
+		for (int i = alerted.size() - 1; i >= 0; i--) {
+			if (index.getDistance(alerted.get(i), latitude, longitude) > rearmDistance) {
+				alerted.set(i, alerted.get(alerted.size() - 1));
+				alerted.pop();
+			}
+		}
+
+		index.search(latitude, longitude, distance, heading, angle, found);
+		for (int i = 0; i < found.size(); i++) {
+			int point = found.get(i);
+			if (!isAlerted(point)) {
+				alerted.add(point);
+				proximityAlertEvent.fire(new ProximityAlertEvent(indexedStore.getFeature(index.getFeature(point)), index.getDistance(point, latitude, longitude)));
+			}
+		}
+	}
+
+	/**
+	 * Checks if the given point has already been alerted.
+	 * 
+	 * @param point
+	 *            point number
+	 * @return <code>true</code> if the point has been alerted
+	 */
+	private boolean isAlerted(int point) {
+		for (int i = 0; i < alerted.size(); i++) {
+			if (alerted.get(i) == point) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
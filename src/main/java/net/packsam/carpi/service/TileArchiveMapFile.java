@@ -0,0 +1,265 @@
+package net.packsam.carpi.service;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Level;
+
+import net.packsam.carpi.model.MapFileStatus;
+
+/**
+ * Map file that reads the tiles from a tile archive. A tile archive is a single file with a fixed size header, a sorted index of all tiles and the tile data:
+ * <ul>
+ * <li>header ({@value #HEADER_SIZE} bytes): magic, version, min zoom, max zoom, number of tiles, max tile size, index offset, data offset and the MBTiles format name</li>
+ * <li>index ({@value #INDEX_ENTRY_SIZE} bytes per tile, sorted by tile ID): tile ID, absolute offset and length of tile data</li>
+ * <li>tile data: contiguous tile blobs, identical tiles are only stored once</li>
+ * </ul>
+ * The file will be memory mapped, so reading a tile neither needs a lock nor a database. If the file can not be mapped (e.g. not enough address space on 32 bit systems),
+ * the tiles will be read with positional reads from the file channel.<br/>
+ * Tile archives can be created from MBTiles files with {@link net.packsam.carpi.tools.TileArchiveConverter}.
+ *
+ * @author osterrath
+ *
+ */
+public class TileArchiveMapFile extends AbstractMapFile {
+	/**
+	 * File extension of tile archives.
+	 */
+	public static final String FILE_EXTENSION = ".cta";
+
+	/**
+	 * Magic number of tile archives.
+	 */
+	public static final int MAGIC = 0x43505441; // "CPTA"
+
+	/**
+	 * Version of the tile archive format.
+	 */
+	public static final int VERSION = 1;
+
+	/**
+	 * Size of the header in bytes.
+	 */
+	public static final int HEADER_SIZE = 128;
+
+	/**
+	 * Size of an index entry in bytes.
+	 */
+	public static final int INDEX_ENTRY_SIZE = 20;
+
+	/**
+	 * Size of a single memory mapped data chunk.
+	 */
+	private static final long CHUNK_SIZE = 256L * 1024 * 1024;
+
+	/**
+	 * File channel of the archive.
+	 */
+	private FileChannel channel;
+
+	/**
+	 * Memory mapped index.
+	 */
+	private MappedByteBuffer index;
+
+	/**
+	 * Memory mapped tile data chunks or <code>null</code> if the data could not be mapped. Each chunk overlaps the next one by the max tile size so every tile is contained
+	 * completely in a single chunk.
+	 */
+	private MappedByteBuffer[] dataChunks;
+
+	/**
+	 * Number of tiles in the archive.
+	 */
+	private int tileCount;
+
+	/**
+	 * Offset of the tile data.
+	 */
+	private long dataOffset;
+
+	/**
+	 * Ctor.
+	 *
+	 * @param file
+	 *            tile archive file
+	 */
+	TileArchiveMapFile(File file) {
+		super(file);
+	}
+
+	/**
+	 * Creates the tile ID for the given tile. Sorting by tile ID sorts by zoom level, x and y position.
+	 *
+	 * @param z
+	 *            zoom level
+	 * @param x
+	 *            x position
+	 * @param y
+	 *            y position (XYZ)
+	 * @return tile ID
+	 */
+	public static long tileId(int z, int x, int y) {
+		return ((long) z << 58) | (((long) x & 0x1FFFFFFFL) << 29) | ((long) y & 0x1FFFFFFFL);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.packsam.carpi.service.MapFile#open()
+	 */
+	@Override
+	public void open() throws IOException {
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+		// read header
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+		}
+		header.flip();
+		if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != VERSION) {
+			throw new IOException("Not a tile archive: " + file.getPath());
+		}
+		minZ = header.getInt();
+		maxZ = header.getInt();
+		long count = header.getLong();
+		int maxTileSize = header.getInt();
+		long indexOffset = header.getLong();
+		dataOffset = header.getLong();
+		byte[] format = new byte[header.getShort()];
+		header.get(format);
+		setTilesFormat(new String(format, StandardCharsets.UTF_8));
+
+		if (count * INDEX_ENTRY_SIZE > Integer.MAX_VALUE) {
+			throw new IOException("Tile archive index too large: " + file.getPath());
+		}
+		tileCount = (int) count;
+		index = channel.map(MapMode.READ_ONLY, indexOffset, count * INDEX_ENTRY_SIZE);
+
+		// map tile data
+		long dataSize = channel.size() - dataOffset;
+		int chunks = (int) ((dataSize + CHUNK_SIZE - 1) / CHUNK_SIZE);
+		try {
+			MappedByteBuffer[] mapped = new MappedByteBuffer[chunks];
+			for (int i = 0; i < chunks; i++) {
+				long start = i * CHUNK_SIZE;
+				long size = Math.min(dataSize - start, CHUNK_SIZE + maxTileSize);
+				mapped[i] = channel.map(MapMode.READ_ONLY, dataOffset + start, size);
+			}
+			dataChunks = mapped;
+		} catch (IOException e) {
+			log.log(Level.INFO, "Could not map tile data of {0}, using file reads", file.getName());
+		}
+		setState(MapFileStatus.State.READY, 1);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.packsam.carpi.service.MapFile#close()
+	 */
+	@Override
+	public void close() {
+		index = null;
+		dataChunks = null;
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.packsam.carpi.service.MapFile#mightContainTile(int, int, int)
+	 */
+	@Override
+	public boolean mightContainTile(int z, int x, int y) {
+		return z >= minZ && z <= maxZ && isReady();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.packsam.carpi.service.MapFile#readTileData(int, int, int)
+	 */
+	@Override
+	public ByteBuffer readTileData(int z, int x, int y) throws IOException {
+		MappedByteBuffer idx = index;
+		if (idx == null) {
+			throw new IOException("Tile archive " + file.getName() + " has been closed");
+		}
+		int entry = findEntry(idx, tileId(z, x, y));
+		if (entry < 0) {
+			return null;
+		}
+		long offset = idx.getLong(entry * INDEX_ENTRY_SIZE + 8);
+		int length = idx.getInt(entry * INDEX_ENTRY_SIZE + 16);
+
+		MappedByteBuffer[] chunks = dataChunks;
+		if (chunks != null) {
+			// return a view on the mapped data without copying it
+			long relOffset = offset - dataOffset;
+			int chunk = (int) (relOffset / CHUNK_SIZE);
+			int position = (int) (relOffset - chunk * CHUNK_SIZE);
+			ByteBuffer b = chunks[chunk].duplicate();
+			b.limit(position + length);
+			b.position(position);
+			return b.slice();
+		}
+
+		ByteBuffer b = ByteBuffer.allocate(length);
+		while (b.hasRemaining()) {
+			if (channel.read(b, offset + b.position()) < 0) {
+				throw new EOFException("Tile data exceeds tile archive " + file.getName());
+			}
+		}
+		b.flip();
+		return b;
+	}
+
+	/**
+	 * Searches the index entry of the given tile ID.
+	 *
+	 * @param idx
+	 *            index buffer
+	 * @param tileId
+	 *            tile ID
+	 * @return entry number or -1 if tile is not contained
+	 */
+	private int findEntry(ByteBuffer idx, long tileId) {
+		int low = 0;
+		int high = tileCount - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			long midId = idx.getLong(mid * INDEX_ENTRY_SIZE);
+			if (midId < tileId) {
+				low = mid + 1;
+			} else if (midId > tileId) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.packsam.carpi.service.MapFile#isCacheable()
+	 */
+	@Override
+	public boolean isCacheable() {
+		// memory mapped data is already cached by the OS
+		return dataChunks == null;
+	}
+}
@@ -0,0 +1,270 @@
+package net.packsam.carpi.service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Byte budgeted in-memory cache for map tiles. The cache uses a segmented LRU eviction: new tiles are put into a probation segment and will be promoted into the protected
+ * segment on their second hit. So tiles that are only requested once (e.g. while zooming through) will not push out the tiles that are requested over and over again while
+ * panning.
+ *
+ * @author osterrath
+ *
+ * @param <T>
+ *            type of cached tiles
+ */
+class TileCache<T> {
+	/**
+	 * Share of the byte budget for the protected segment.
+	 */
+	private static final double PROTECTED_SHARE = 0.8;
+
+	/**
+	 * Maximum size in bytes of all cached tiles.
+	 */
+	private final long maxSize;
+
+	/**
+	 * Maximum size in bytes of the protected segment.
+	 */
+	private final long maxProtectedSize;
+
+	/**
+	 * Probation segment in access order.
+	 */
+	private final LinkedHashMap<Long, Entry<T>> probation = new LinkedHashMap<>(256, 0.75f, true);
+
+	/**
+	 * Protected segment in access order.
+	 */
+	private final LinkedHashMap<Long, Entry<T>> protectedSegment = new LinkedHashMap<>(256, 0.75f, true);
+
+	/**
+	 * Current size in bytes of the probation segment.
+	 */
+	private long probationSize;
+
+	/**
+	 * Current size in bytes of the protected segment.
+	 */
+	private long protectedSize;
+
+	/**
+	 * Number of cache hits.
+	 */
+	private long hits;
+
+	/**
+	 * Number of cache misses.
+	 */
+	private long misses;
+
+	/**
+	 * Number of evicted tiles.
+	 */
+	private long evictions;
+
+	/**
+	 * Ctor.
+	 *
+	 * @param maxSize
+	 *            maximum size in bytes of all cached tiles, 0 disables the cache
+	 */
+	TileCache(long maxSize) {
+		super();
+		this.maxSize = Math.max(0, maxSize);
+		this.maxProtectedSize = (long) (this.maxSize * PROTECTED_SHARE);
+	}
+
+	/**
+	 * Returns the cached tile for the given key or <code>null</code> if the tile is not cached.
+	 *
+	 * @param key
+	 *            cache key
+	 * @return cached tile or <code>null</code>
+	 */
+	synchronized T get(long key) {
+		Entry<T> e = protectedSegment.get(key);
+		if (e != null) {
+			hits++;
+			return e.value;
+		}
+
+		e = probation.remove(key);
+		if (e != null) {
+			// second hit -> promote to protected segment
+			probationSize -= e.size;
+			protectedSegment.put(key, e);
+			protectedSize += e.size;
+			evict();
+			hits++;
+			return e.value;
+		}
+
+		misses++;
+		return null;
+	}
+
+	/**
+	 * Checks if the tile with the given key is cached. This neither counts as hit or miss nor changes the eviction order.
+	 *
+	 * @param key
+	 *            cache key
+	 * @return <code>true</code> if the tile is cached
+	 */
+	synchronized boolean contains(long key) {
+		return probation.containsKey(key) || protectedSegment.containsKey(key);
+	}
+
+	/**
+	 * Puts the given tile into the cache. Tiles larger than the whole budget will not be cached.
+	 *
+	 * @param key
+	 *            cache key
+	 * @param value
+	 *            tile
+	 * @param size
+	 *            size of tile in bytes
+	 */
+	synchronized void put(long key, T value, int size) {
+		if (size > maxSize) {
+			return;
+		}
+
+		remove(key);
+		probation.put(key, new Entry<>(value, size));
+		probationSize += size;
+		evict();
+	}
+
+	/**
+	 * Removes the tile with the given key from the cache.
+	 *
+	 * @param key
+	 *            cache key
+	 */
+	synchronized void remove(long key) {
+		Entry<T> e = probation.remove(key);
+		if (e != null) {
+			probationSize -= e.size;
+		}
+		e = protectedSegment.remove(key);
+		if (e != null) {
+			protectedSize -= e.size;
+		}
+	}
+
+	/**
+	 * Removes all tiles from the cache.
+	 */
+	synchronized void clear() {
+		probation.clear();
+		protectedSegment.clear();
+		probationSize = 0;
+		protectedSize = 0;
+	}
+
+	/**
+	 * Evicts tiles until both segments fit into their budget.
+	 */
+	private void evict() {
+		// demote least recently used protected tiles back into probation
+		Iterator<Map.Entry<Long, Entry<T>>> it = protectedSegment.entrySet().iterator();
+		while (protectedSize > maxProtectedSize && it.hasNext()) {
+			Map.Entry<Long, Entry<T>> me = it.next();
+			it.remove();
+			protectedSize -= me.getValue().size;
+			probation.put(me.getKey(), me.getValue());
+			probationSize += me.getValue().size;
+		}
+
+		// drop least recently used probation tiles
+		it = probation.entrySet().iterator();
+		while (probationSize + protectedSize > maxSize && it.hasNext()) {
+			Map.Entry<Long, Entry<T>> me = it.next();
+			it.remove();
+			probationSize -= me.getValue().size;
+			evictions++;
+		}
+	}
+
+	/**
+	 * Returns the number of cache hits.
+	 *
+	 * @return cache hits
+	 */
+	synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of cache misses.
+	 *
+	 * @return cache misses
+	 */
+	synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Returns the number of evicted tiles.
+	 *
+	 * @return evicted tiles
+	 */
+	synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Returns the number of cached tiles.
+	 *
+	 * @return number of tiles
+	 */
+	synchronized int getCount() {
+		return probation.size() + protectedSegment.size();
+	}
+
+	/**
+	 * Returns the size in bytes of all cached tiles.
+	 *
+	 * @return size in bytes
+	 */
+	synchronized long getSize() {
+		return probationSize + protectedSize;
+	}
+
+	/**
+	 * Cache entry.
+	 *
+	 * @author osterrath
+	 *
+	 * @param <T>
+	 *            type of cached tile
+	 */
+	private static class Entry<T> {
+		/**
+		 * Cached tile.
+		 */
+		private final T value;
+
+		/**
+		 * Size of tile in bytes.
+		 */
+		private final int size;
+
+		/**
+		 * Ctor.
+		 *
+		 * @param value
+		 *            cached tile
+		 * @param size
+		 *            size in bytes
+		 */
+		private Entry(T value, int size) {
+			super();
+			this.value = value;
+			this.size = size;
+		}
+	}
+}
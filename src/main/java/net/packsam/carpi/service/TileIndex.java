@@ -0,0 +1,257 @@
+package net.packsam.carpi.service;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compact index of all tiles that exist in a MBTiles file. For every zoom level it holds the tile range, the number of tiles and a bitmap with one bit per tile in this range. Zoom levels whose
+ * bitmap would be too large will only be checked against the range.
+ *
+ * @author osterrath
+ *
+ */
+class TileIndex {
+	/**
+	 * Maximum number of bits of a single zoom level bitmap.
+	 */
+	private static final long MAX_BITMAP_BITS = 1L << 24;
+
+	/**
+	 * Index entries by zoom level.
+	 */
+	private final TreeMap<Integer, Level> levels = new TreeMap<>();
+
+	/**
+	 * Ctor.
+	 */
+	private TileIndex() {
+		super();
+	}
+
+	/**
+	 * Checks if the MBTiles file may contain the given tile. If this method returns <code>false</code> the tile is definitely not available.
+	 *
+	 * @param z
+	 *            zoom level
+	 * @param x
+	 *            tile column
+	 * @param y
+	 *            tile row (TMS)
+	 * @return <code>true</code> if the tile may exist
+	 */
+	boolean mightContain(int z, int x, int y) {
+		Level l = levels.get(z);
+		if (l == null || x < l.minX || x > l.maxX || y < l.minY || y > l.maxY) {
+			return false;
+		}
+		return l.bitmap == null || l.bitmap.get(l.bitIndex(x, y));
+	}
+
+	/**
+	 * Builds the index from the tiles table of the given MBTiles connection.
+	 *
+	 * @param sqlConnection
+	 *            SQL connection to MBTiles file
+	 * @return tile index
+	 * @throws SQLException
+	 */
+	static TileIndex build(Connection sqlConnection) throws SQLException {
+		TileIndex index = new TileIndex();
+
+		// read ranges of all zoom levels
+		try (Statement stmt = sqlConnection.createStatement();
+				ResultSet rs = stmt.executeQuery("SELECT zoom_level, min(tile_column), max(tile_column), min(tile_row), max(tile_row), count(*) FROM tiles GROUP BY zoom_level")) {
+			while (rs.next()) {
+				Level l = new Level(rs.getInt(2), rs.getInt(3), rs.getInt(4), rs.getInt(5), rs.getLong(6));
+				index.levels.put(rs.getInt(1), l);
+			}
+		}
+
+		// fill bitmaps
+		try (PreparedStatement ps = sqlConnection.prepareStatement("SELECT tile_column, tile_row FROM tiles WHERE zoom_level = ?")) {
+			for (Map.Entry<Integer, Level> e : index.levels.entrySet()) {
+				Level l = e.getValue();
+				long bits = (long) l.width() * (long) (l.maxY - l.minY + 1);
+				if (bits > MAX_BITMAP_BITS) {
+					// too large -> range check only
+					continue;
+				}
+				l.bitmap = new BitSet((int) bits);
+				ps.setInt(1, e.getKey());
+				try (ResultSet rs = ps.executeQuery()) {
+					while (rs.next()) {
+						l.bitmap.set(l.bitIndex(rs.getInt(1), rs.getInt(2)));
+					}
+				}
+			}
+		}
+
+		return index;
+	}
+
+	/**
+	 * Reads the index from the given stream.
+	 *
+	 * @param in
+	 *            input stream
+	 * @return tile index
+	 * @throws IOException
+	 */
+	static TileIndex read(DataInputStream in) throws IOException {
+		TileIndex index = new TileIndex();
+		int count = in.readInt();
+		for (int i = 0; i < count; i++) {
+			int z = in.readInt();
+			Level l = new Level(in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readLong());
+			int words = in.readInt();
+			if (words >= 0) {
+				long[] data = new long[words];
+				for (int w = 0; w < words; w++) {
+					data[w] = in.readLong();
+				}
+				l.bitmap = BitSet.valueOf(data);
+			}
+			index.levels.put(z, l);
+		}
+		return index;
+	}
+
+	/**
+	 * Writes the index to the given stream.
+	 *
+	 * @param out
+	 *            output stream
+	 * @throws IOException
+	 */
+	void write(DataOutputStream out) throws IOException {
+		out.writeInt(levels.size());
+		for (Map.Entry<Integer, Level> e : levels.entrySet()) {
+			Level l = e.getValue();
+			out.writeInt(e.getKey());
+			out.writeInt(l.minX);
+			out.writeInt(l.maxX);
+			out.writeInt(l.minY);
+			out.writeInt(l.maxY);
+			out.writeLong(l.count);
+			if (l.bitmap != null) {
+				long[] data = l.bitmap.toLongArray();
+				out.writeInt(data.length);
+				for (long w : data) {
+					out.writeLong(w);
+				}
+			} else {
+				out.writeInt(-1);
+			}
+		}
+	}
+
+	/**
+	 * Returns the minimum zoom level that contains tiles.
+	 *
+	 * @return minimum zoom level or -1 if the index is empty
+	 */
+	int getMinZ() {
+		return levels.isEmpty() ? -1 : levels.firstKey();
+	}
+
+	/**
+	 * Returns the maximum zoom level that contains tiles.
+	 *
+	 * @return maximum zoom level or -1 if the index is empty
+	 */
+	int getMaxZ() {
+		return levels.isEmpty() ? -1 : levels.lastKey();
+	}
+
+	/**
+	 * Index entry for a single zoom level.
+	 *
+	 * @author osterrath
+	 *
+	 */
+	private static class Level {
+		/**
+		 * Minimum tile column.
+		 */
+		private final int minX;
+
+		/**
+		 * Maximum tile column.
+		 */
+		private final int maxX;
+
+		/**
+		 * Minimum tile row.
+		 */
+		private final int minY;
+
+		/**
+		 * Maximum tile row.
+		 */
+		private final int maxY;
+
+		/**
+		 * Number of tiles.
+		 */
+		private final long count;
+
+		/**
+		 * Bitmap of existing tiles or <code>null</code> if only the range should be checked.
+		 */
+		private BitSet bitmap;
+
+		/**
+		 * Ctor.
+		 *
+		 * @param minX
+		 *            minimum tile column
+		 * @param maxX
+		 *            maximum tile column
+		 * @param minY
+		 *            minimum tile row
+		 * @param maxY
+		 *            maximum tile row
+		 * @param count
+		 *            number of tiles
+		 */
+		private Level(int minX, int maxX, int minY, int maxY, long count) {
+			super();
+			this.minX = minX;
+			this.maxX = maxX;
+			this.minY = minY;
+			this.maxY = maxY;
+			this.count = count;
+		}
+
+		/**
+		 * Returns the number of tile columns.
+		 *
+		 * @return number of columns
+		 */
+		private int width() {
+			return maxX - minX + 1;
+		}
+
+		/**
+		 * Returns the bit index of the given tile.
+		 *
+		 * @param x
+		 *            tile column
+		 * @param y
+		 *            tile row
+		 * @return bit index
+		 */
+		private int bitIndex(int x, int y) {
+			return (y - minY) * width() + (x - minX);
+		}
+	}
+}
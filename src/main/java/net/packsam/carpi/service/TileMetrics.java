@@ -0,0 +1,199 @@
+package net.packsam.carpi.service;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import net.packsam.carpi.model.LatencyStatistics;
+import net.packsam.carpi.model.TileStatistics;
+
+/**
+ * Collector for the metrics of tile requests. All methods are lock free so they can be called for every tile request.
+ *
+ * @author osterrath
+ *
+ */
+class TileMetrics {
+	/**
+	 * Result of a tile request that has been served from the tiles cache.
+	 */
+	static final String RESULT_HIT = "hit";
+
+	/**
+	 * Result of a tile request that had to be read from the map files.
+	 */
+	static final String RESULT_MISS = "miss";
+
+	/**
+	 * Result of a tile request that has been answered by the known missing tiles.
+	 */
+	static final String RESULT_NEGATIVE = "negative";
+
+	/**
+	 * Size of the time window in s for calculating the request rate.
+	 */
+	private static final int RATE_WINDOW = 60;
+
+	/**
+	 * Number of entries in the files probed histogram.
+	 */
+	private static final int MAX_FILES_PROBED = 8;
+
+	/**
+	 * Date when the metrics have been started.
+	 */
+	private final Date since = new Date();
+
+	/**
+	 * Number of tile requests.
+	 */
+	private final AtomicLong requests = new AtomicLong();
+
+	/**
+	 * Number of tile requests per second of the rate window.
+	 */
+	private final AtomicLongArray rateCounts = new AtomicLongArray(RATE_WINDOW);
+
+	/**
+	 * Second of each slot in {@link TileMetrics#rateCounts}.
+	 */
+	private final AtomicLongArray rateSeconds = new AtomicLongArray(RATE_WINDOW);
+
+	/**
+	 * Number of served tile bytes.
+	 */
+	private final AtomicLong bytesServed = new AtomicLong();
+
+	/**
+	 * Latency histograms by request result.
+	 */
+	private final ConcurrentMap<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+
+	/**
+	 * Latency histograms of tile reads by map file name.
+	 */
+	private final ConcurrentMap<String, LatencyHistogram> fileLatencies = new ConcurrentHashMap<>();
+
+	/**
+	 * Number of tile loads by number of probed map files.
+	 */
+	private final AtomicLongArray filesProbed = new AtomicLongArray(MAX_FILES_PROBED + 1);
+
+	/**
+	 * Records a tile request.
+	 */
+	void recordRequest() {
+		requests.incrementAndGet();
+
+		long second = System.currentTimeMillis() / 1000;
+		int slot = (int) (second % RATE_WINDOW);
+		long slotSecond = rateSeconds.get(slot);
+		if (slotSecond != second && rateSeconds.compareAndSet(slot, slotSecond, second)) {
+			// slot is reused for a new second
+			rateCounts.set(slot, 0);
+		}
+		rateCounts.incrementAndGet(slot);
+	}
+
+	/**
+	 * Records the latency of a tile request. Conditional requests answered with "not modified" never look up the tile, so they are only counted as requests and have no latency.
+	 *
+	 * @param result
+	 *            request result, one of the <code>RESULT_*</code> constants
+	 * @param nanos
+	 *            latency in ns
+	 */
+	void recordLatency(String result, long nanos) {
+		latencies.computeIfAbsent(result, r -> new LatencyHistogram()).record(nanos);
+	}
+
+	/**
+	 * Records the latency of reading a tile from the given map file.
+	 *
+	 * @param mapFile
+	 *            map file
+	 * @param nanos
+	 *            latency in ns
+	 */
+	void recordFileLatency(MapFile mapFile, long nanos) {
+		fileLatencies.computeIfAbsent(mapFile.getFile().getName(), f -> new LatencyHistogram()).record(nanos);
+	}
+
+	/**
+	 * Records the number of map files that have been probed to load a tile.
+	 *
+	 * @param count
+	 *            number of probed map files
+	 */
+	void recordFilesProbed(int count) {
+		filesProbed.incrementAndGet(Math.min(count, MAX_FILES_PROBED));
+	}
+
+	/**
+	 * Records served tile bytes.
+	 *
+	 * @param bytes
+	 *            number of bytes
+	 */
+	void recordBytesServed(long bytes) {
+		bytesServed.addAndGet(bytes);
+	}
+
+	/**
+	 * Creates a snapshot of the collected metrics.
+	 *
+	 * @return tile statistics
+	 */
+	TileStatistics toStatistics() {
+		TileStatistics s = new TileStatistics();
+		s.setSince(since);
+		s.setRequests(requests.get());
+		s.setRequestRate(getRequestRate());
+		s.setBytesServed(bytesServed.get());
+		s.setBucketLimits(LatencyHistogram.getBucketLimits());
+		s.setLatencies(toStatistics(latencies));
+		s.setFileLatencies(toStatistics(fileLatencies));
+
+		long[] probed = new long[filesProbed.length()];
+		for (int i = 0; i < probed.length; i++) {
+			probed[i] = filesProbed.get(i);
+		}
+		s.setFilesProbed(probed);
+		return s;
+	}
+
+	/**
+	 * Calculates the request rate of the last complete seconds in the rate window.
+	 *
+	 * @return requests per second
+	 */
+	private double getRequestRate() {
+		long now = System.currentTimeMillis() / 1000;
+		long count = 0;
+		for (int i = 0; i < RATE_WINDOW; i++) {
+			long second = rateSeconds.get(i);
+			if (second < now && second >= now - RATE_WINDOW) {
+				count += rateCounts.get(i);
+			}
+		}
+		long window = Math.min(RATE_WINDOW, Math.max(1, now - since.getTime() / 1000));
+		return (double) count / window;
+	}
+
+	/**
+	 * Creates snapshots of the given histograms.
+	 *
+	 * @param histograms
+	 *            histograms by name
+	 * @return latency statistics by name
+	 */
+	private static Map<String, LatencyStatistics> toStatistics(Map<String, LatencyHistogram> histograms) {
+		Map<String, LatencyStatistics> statistics = new TreeMap<>();
+		histograms.forEach((name, h) -> statistics.put(name, h.toStatistics()));
+		return statistics;
+	}
+}
@@ -0,0 +1,512 @@
+package net.packsam.carpi.service;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.context.Initialized;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+
+import org.apache.commons.lang3.StringUtils;
+import org.gavaghan.geodesy.Ellipsoid;
+import org.gavaghan.geodesy.GeodeticCalculator;
+import org.gavaghan.geodesy.GlobalCoordinates;
+
+import net.packsam.carpi.config.CarpiConfiguration;
+import net.packsam.carpi.event.GPSPositionChangeEvent;
+import net.packsam.carpi.model.GPSPosition;
+import net.packsam.carpi.threading.MapPrefetch;
+
+/**
+ * Service for prefetching the map tiles the client will need next. It predicts the position of the vehicle from its current speed and course and loads the tiles along this
+ * way into the tiles cache. Besides the zoom level currently shown by the client, the neighbouring zoom levels will be loaded for zooming in or out while driving.<br/>
+ * The last position will be stored on shutdown, so the tiles around it can be loaded into the tiles cache at the next startup before the GPS receiver has a fix.
+ *
+ * @author osterrath
+ *
+ */
+@ApplicationScoped
+public class TilePrefetchService {
+	/**
+	 * Equatorial circumference of the earth in m.
+	 */
+	private static final double EARTH_CIRCUMFERENCE = 40075016.686;
+
+	/**
+	 * Minimum speed in m/s for prefetching tiles.
+	 */
+	private static final double MIN_SPEED = 2.0;
+
+	/**
+	 * Interval in ms for storing the last position while driving, so it will survive a power loss.
+	 */
+	private static final long POSITION_SAVE_INTERVAL = 300000;
+
+	/**
+	 * Key of the latitude in the position file.
+	 */
+	private static final String KEY_LATITUDE = "latitude";
+
+	/**
+	 * Key of the longitude in the position file.
+	 */
+	private static final String KEY_LONGITUDE = "longitude";
+
+	/**
+	 * Key of the last requested zoom level in the position file.
+	 */
+	private static final String KEY_ZOOM = "zoom";
+
+	/**
+	 * Calculator for geo calculations.
+	 */
+	private final GeodeticCalculator geoCalculator = new GeodeticCalculator();
+
+	/**
+	 * Flag if a prefetch run is currently active.
+	 */
+	private final AtomicBoolean running = new AtomicBoolean();
+
+	/**
+	 * Time in s to look ahead.
+	 */
+	private int lookAheadTime;
+
+	/**
+	 * Maximum number of tiles to read per prefetch run.
+	 */
+	private int maxTiles;
+
+	/**
+	 * Maximum duration in ms of a prefetch run.
+	 */
+	private long maxDuration;
+
+	/**
+	 * File to store the last position in.
+	 */
+	private File positionFile;
+
+	/**
+	 * Last known position as array of latitude and longitude or <code>null</code>.
+	 */
+	private volatile double[] lastPosition;
+
+	/**
+	 * Last requested zoom level or -1.
+	 */
+	private volatile int lastZoom = -1;
+
+	/**
+	 * Time when the last position has been stored.
+	 */
+	private volatile long lastPositionSaved;
+
+	/**
+	 * Service for reading map tiles.
+	 */
+	@Inject
+	private MapService mapService;
+
+	/**
+	 * Executor service for prefetching in background.
+	 */
+	@Inject
+	@MapPrefetch
+	private ExecutorService executorService;
+
+	/**
+	 * Class logger.
+	 */
+	@Inject
+	private Logger log;
+
+	/**
+	 * Application configuration.
+	 */
+	@Inject
+	private CarpiConfiguration config;
+
+	/**
+	 * Initializes the prefetch service.
+	 */
+	@PostConstruct
+	private void initialize() {
+		lookAheadTime = config.getMBTilesPrefetchTime();
+		maxTiles = config.getMBTilesPrefetchMaxTiles();
+		maxDuration = config.getMBTilesPrefetchMaxDuration();
+		lastPositionSaved = System.currentTimeMillis();
+
+		String fileName = config.getPositionFile();
+		if (StringUtils.isNotEmpty(fileName)) {
+			positionFile = new File(fileName);
+			warmupCache();
+		}
+	}
+
+	/**
+	 * Stores the last position on shutdown.
+	 */
+	@PreDestroy
+	private void shutdown() {
+		savePosition();
+	}
+
+	/**
+	 * Loads the tiles around the stored position into the tiles cache in background until the time or memory budget has been used up. The tiles of the last requested zoom
+	 * level will be loaded first, from the inside out.
+	 */
+	private void warmupCache() {
+		int radius = config.getMBTilesWarmupRadius();
+		long maxSize = config.getMBTilesWarmupMaxSize();
+		long maxWarmupDuration = config.getMBTilesWarmupMaxDuration();
+		if (radius <= 0 || maxSize <= 0 || maxWarmupDuration <= 0 || !positionFile.isFile()) {
+			return;
+		}
+
+		double latitude;
+		double longitude;
+		int zoom;
+		Properties p = new Properties();
+		try (Reader reader = new FileReader(positionFile)) {
+			p.load(reader);
+			latitude = Double.parseDouble(p.getProperty(KEY_LATITUDE));
+			longitude = Double.parseDouble(p.getProperty(KEY_LONGITUDE));
+			zoom = Integer.parseInt(p.getProperty(KEY_ZOOM, "-1"), 10);
+		} catch (IOException | RuntimeException e) {
+			log.log(Level.WARNING, "Could not read last position", e);
+			return;
+		}
+		lastPosition = new double[] { latitude, longitude };
+		lastZoom = zoom;
+
+		List<Integer> zoomLevels = getWarmupZoomLevels(zoom);
+		if (zoomLevels.isEmpty()) {
+			return;
+		}
+
+		try {
+			executorService.execute(() -> {
+				long start = System.currentTimeMillis();
+				long deadline = start + maxWarmupDuration;
+				long size = 0;
+				int loaded = 0;
+				for (int[] tile : getWarmupTiles(latitude, longitude, zoomLevels, radius)) {
+					if (size >= maxSize || System.currentTimeMillis() > deadline || Thread.currentThread().isInterrupted()) {
+						break;
+					}
+					int tileSize = mapService.prefetchTile(tile[0], tile[1], tile[2]);
+					if (tileSize >= 0) {
+						size += tileSize;
+						loaded++;
+					}
+				}
+				log.log(Level.INFO, "Loaded {0} tiles ({1} bytes) around last position in {2}ms", new Object[] { loaded, size, System.currentTimeMillis() - start });
+			});
+		} catch (RejectedExecutionException e) {
+		}
+	}
+
+	/**
+	 * Returns the zoom levels to load into the cache at startup, ordered by their distance to the last requested zoom level.
+	 *
+	 * @param zoom
+	 *            last requested zoom level or -1
+	 * @return zoom levels
+	 */
+	private List<Integer> getWarmupZoomLevels(int zoom) {
+		List<Integer> zoomLevels = new ArrayList<>();
+		String configuredLevels = config.getMBTilesWarmupZoomLevels();
+		if (StringUtils.isNotBlank(configuredLevels)) {
+			for (String level : configuredLevels.split(",")) {
+				if (StringUtils.isBlank(level)) {
+					continue;
+				}
+				try {
+					zoomLevels.add(Integer.parseInt(level.trim(), 10));
+				} catch (NumberFormatException e) {
+					log.log(Level.WARNING, "Invalid warmup zoom level " + level.trim(), e);
+				}
+			}
+		} else if (zoom >= 0) {
+			zoomLevels.addAll(getNeighbourZoomLevels(zoom));
+		}
+		zoomLevels.removeIf(z -> z < 0 || z > 30);
+		if (zoom >= 0) {
+			zoomLevels.sort(Comparator.comparing(z -> Math.abs(z - zoom)));
+		}
+		return zoomLevels;
+	}
+
+	/**
+	 * Returns the given zoom level and its neighbouring zoom levels, starting with the given zoom level.
+	 *
+	 * @param zoom
+	 *            zoom level
+	 * @return zoom levels
+	 */
+	private static List<Integer> getNeighbourZoomLevels(int zoom) {
+		List<Integer> zoomLevels = new ArrayList<>();
+		zoomLevels.add(zoom);
+		zoomLevels.add(zoom - 1);
+		zoomLevels.add(zoom + 1);
+		zoomLevels.removeIf(z -> z < 0 || z > 30);
+		return zoomLevels;
+	}
+
+	/**
+	 * Returns the tiles around the given position for all given zoom levels. The tiles of every zoom level are ordered by their distance to the center tile.
+	 *
+	 * @param latitude
+	 *            center latitude
+	 * @param longitude
+	 *            center longitude
+	 * @param zoomLevels
+	 *            zoom levels
+	 * @param radius
+	 *            radius in tiles
+	 * @return tiles, each as array of zoom level, x and y position
+	 */
+	List<int[]> getWarmupTiles(double latitude, double longitude, List<Integer> zoomLevels, int radius) {
+		List<int[]> tiles = new ArrayList<>();
+		for (int z : zoomLevels) {
+			int maxTile = (1 << z) - 1;
+			int cx = longitude2TileX(longitude, z);
+			int cy = latitude2TileY(latitude, z);
+			for (int r = 0; r <= radius; r++) {
+				for (int dy = -r; dy <= r; dy++) {
+					for (int dx = -r; dx <= r; dx++) {
+						if (Math.max(Math.abs(dx), Math.abs(dy)) != r) {
+							// inner ring, already added
+							continue;
+						}
+						int x = cx + dx;
+						int y = cy + dy;
+						if (x >= 0 && y >= 0 && x <= maxTile && y <= maxTile) {
+							tiles.add(new int[] { z, x, y });
+						}
+					}
+				}
+			}
+		}
+		return tiles;
+	}
+
+	/**
+	 * Stores the last known position and the last requested zoom level in the position file.
+	 */
+	private synchronized void savePosition() {
+		double[] position = lastPosition;
+		if (positionFile == null || position == null) {
+			return;
+		}
+
+		Properties p = new Properties();
+		p.setProperty(KEY_LATITUDE, Double.toString(position[0]));
+		p.setProperty(KEY_LONGITUDE, Double.toString(position[1]));
+		int zoom = lastZoom;
+		if (zoom >= 0) {
+			p.setProperty(KEY_ZOOM, Integer.toString(zoom));
+		}
+		// replace the file atomically, so it will never be left half written on power loss
+		File tmpFile = new File(positionFile.getPath() + ".tmp");
+		try {
+			try (FileOutputStream out = new FileOutputStream(tmpFile)) {
+				p.store(out, "Last known position");
+				out.getFD().sync();
+			}
+			Files.move(tmpFile.toPath(), positionFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			log.log(Level.WARNING, "Could not store last position", e);
+		}
+		lastPositionSaved = System.currentTimeMillis();
+	}
+
+	/**
+	 * Event handler when a new GPS position has been received.
+	 *
+	 * @param event
+	 *            event
+	 */
+	void onGPSPositionReceived(@Observes GPSPositionChangeEvent event) {
+		GPSPosition location = event.getLocation();
+		Double longitude = location.getLongitude();
+		Double latitude = location.getLatitude();
+		Double speed = location.getSpeed();
+		Double course = location.getCourse();
+		if (longitude != null && latitude != null) {
+			lastPosition = new double[] { latitude, longitude };
+			if (mapService.getLastRequestedZoom() >= 0) {
+				lastZoom = mapService.getLastRequestedZoom();
+			}
+			if (System.currentTimeMillis() - lastPositionSaved > POSITION_SAVE_INTERVAL) {
+				lastPositionSaved = System.currentTimeMillis();
+				try {
+					executorService.execute(this::savePosition);
+				} catch (RejectedExecutionException e) {
+				}
+			}
+		}
+
+		if (lookAheadTime <= 0 || maxTiles <= 0) {
+			return;
+		}
+		if (longitude == null || latitude == null || speed == null || course == null || speed < MIN_SPEED) {
+			// not moving or no valid data
+			return;
+		}
+
+		int z = mapService.getLastRequestedZoom();
+		if (z < 0) {
+			// client did not show a map yet
+			return;
+		}
+		List<Integer> zoomLevels = getNeighbourZoomLevels(z);
+
+		if (!running.compareAndSet(false, true)) {
+			// last prefetch run is still active -> skip this position
+			return;
+		}
+		try {
+			executorService.execute(() -> {
+				try {
+					prefetchTiles(predictTiles(latitude, longitude, speed * lookAheadTime, course, zoomLevels));
+				} finally {
+					running.set(false);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			running.set(false);
+		}
+	}
+
+	/**
+	 * Loads the given tiles into the tiles cache until the tiles or time budget has been used up.
+	 *
+	 * @param tiles
+	 *            tiles to prefetch, each as array of zoom level, x and y position
+	 */
+	private void prefetchTiles(List<int[]> tiles) {
+		long deadline = System.currentTimeMillis() + maxDuration;
+		int loaded = 0;
+		for (int[] tile : tiles) {
+			if (loaded >= maxTiles || System.currentTimeMillis() > deadline || Thread.currentThread().isInterrupted()) {
+				break;
+			}
+			if (mapService.prefetchTile(tile[0], tile[1], tile[2]) >= 0) {
+				loaded++;
+			}
+		}
+		log.log(Level.FINE, "Prefetched {0} tiles", loaded);
+	}
+
+	/**
+	 * Predicts the tiles along the given way. The tiles will be ordered by their distance to the start position and include the direct neighbours of every tile on the way.
+	 * At every position of the way the tiles of the zoom levels will be added in the given order.
+	 *
+	 * @param latitude
+	 *            start latitude
+	 * @param longitude
+	 *            start longitude
+	 * @param distance
+	 *            distance in m to look ahead
+	 * @param course
+	 *            course in degrees
+	 * @param zoomLevels
+	 *            zoom levels
+	 * @return tiles, each as array of zoom level, x and y position
+	 */
+	List<int[]> predictTiles(double latitude, double longitude, double distance, double course, List<Integer> zoomLevels) {
+		if (zoomLevels.isEmpty()) {
+			return new ArrayList<>();
+		}
+		// step by half of the smallest tile
+		int maxZ = zoomLevels.stream().mapToInt(Integer::intValue).max().getAsInt();
+		double tileSize = EARTH_CIRCUMFERENCE * Math.cos(Math.toRadians(latitude)) / (1 << maxZ);
+		double step = Math.max(tileSize / 2, 1);
+
+		GlobalCoordinates start = new GlobalCoordinates(latitude, longitude);
+		Set<Long> seen = new HashSet<>();
+		List<int[]> tiles = new ArrayList<>();
+		for (double d = 0; d <= distance; d += step) {
+			GlobalCoordinates c = d > 0 ? geoCalculator.calculateEndingGlobalCoordinates(Ellipsoid.WGS84, start, course, d) : start;
+			for (int z : zoomLevels) {
+				int maxTile = (1 << z) - 1;
+				int cx = longitude2TileX(c.getLongitude(), z);
+				int cy = latitude2TileY(c.getLatitude(), z);
+				for (int dy = -1; dy <= 1; dy++) {
+					for (int dx = -1; dx <= 1; dx++) {
+						int x = cx + dx;
+						int y = cy + dy;
+						if (x < 0 || y < 0 || x > maxTile || y > maxTile) {
+							continue;
+						}
+						if (seen.add(TileArchiveMapFile.tileId(z, x, y))) {
+							tiles.add(new int[] { z, x, y });
+						}
+					}
+				}
+			}
+		}
+		return tiles;
+	}
+
+	/**
+	 * Calculates the tile x position for the given longitude.
+	 *
+	 * @param longitude
+	 *            longitude in degrees
+	 * @param z
+	 *            zoom level
+	 * @return tile x position
+	 */
+	static int longitude2TileX(double longitude, int z) {
+		int n = 1 << z;
+		int x = (int) Math.floor((longitude + 180) / 360 * n);
+		return Math.max(0, Math.min(n - 1, x));
+	}
+
+	/**
+	 * Calculates the tile y position for the given latitude.
+	 *
+	 * @param latitude
+	 *            latitude in degrees
+	 * @param z
+	 *            zoom level
+	 * @return tile y position
+	 */
+	static int latitude2TileY(double latitude, int z) {
+		int n = 1 << z;
+		double latRad = Math.toRadians(latitude);
+		int y = (int) Math.floor((1 - Math.log(Math.tan(latRad) + 1 / Math.cos(latRad)) / Math.PI) / 2 * n);
+		return Math.max(0, Math.min(n - 1, y));
+	}
+
+	/**
+	 * Method for implementing @Startup with CDI 1.2.
+	 *
+	 * @param init
+	 *            init object
+	 */
+	void onInitApp(@Observes @Initialized(ApplicationScoped.class) Object init) {
+	}
+}
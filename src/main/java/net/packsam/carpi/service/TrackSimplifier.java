@@ -0,0 +1,195 @@
+package net.packsam.carpi.service;
+
+import net.packsam.carpi.model.GPSPath;
+import net.packsam.carpi.model.GPSTrack;
+
+/**
+ * Simplifies the tracked path for displaying it on a map with the given zoom level. The path will be simplified incrementally with an opening window: the last kept element is
+ * the anchor, every new element becomes the end of the current segment as long as all elements between anchor and end are within the tolerance of the segment. Otherwise the
+ * previous end will be kept and becomes the new anchor. The kept elements will never change, only the end of the current segment will be replaced by the next element.
+ *
+ * @author osterrath
+ *
+ */
+class TrackSimplifier {
+	/**
+	 * Length of a pixel at zoom level 0 at the equator in m.
+	 */
+	private static final double METERS_PER_PIXEL = 156543.03392;
+
+	/**
+	 * Length of a degree latitude in m.
+	 */
+	private static final double METERS_PER_DEGREE = 111320;
+
+	/**
+	 * Maximum number of elements between anchor and end, limits the costs for checking a segment.
+	 */
+	private static final int MAX_WINDOW = 256;
+
+	/**
+	 * Zoom level to simplify the path for.
+	 */
+	private final int zoom;
+
+	/**
+	 * Tolerance in pixels.
+	 */
+	private final double tolerance;
+
+	/**
+	 * Kept path elements.
+	 */
+	private final GPSPath path = new GPSPath();
+
+	/**
+	 * Index of the last kept element in the tracked path.
+	 */
+	private int anchor = -1;
+
+	/**
+	 * Index of the end of the current segment in the tracked path.
+	 */
+	private int end = -1;
+
+	/**
+	 * Ctor.
+	 *
+	 * @param zoom
+	 *            zoom level to simplify the path for
+	 * @param tolerance
+	 *            tolerance in pixels
+	 */
+	TrackSimplifier(int zoom, double tolerance) {
+		super();
+		this.zoom = zoom;
+		this.tolerance = tolerance;
+	}
+
+	/**
+	 * Getter method for the field "zoom".
+	 *
+	 * @return the zoom
+	 */
+	int getZoom() {
+		return zoom;
+	}
+
+	/**
+	 * Adds the last element of the tracked path to the simplified path.
+	 *
+	 * @param trackedPath
+	 *            snapshot of the tracked path
+	 * @return simplified track containing the changed elements
+	 */
+	GPSTrack append(GPSPath trackedPath) {
+		int seq = path.size();
+		int last = trackedPath.size() - 1;
+		if (anchor < 0) {
+			keep(trackedPath, last);
+		} else if (end >= 0 && !isWithinTolerance(trackedPath, last)) {
+			keep(trackedPath, end);
+		}
+		end = last > anchor ? last : -1;
+		return createTrack(trackedPath, seq);
+	}
+
+	/**
+	 * Returns the simplified track.
+	 *
+	 * @param trackedPath
+	 *            snapshot of the tracked path
+	 * @param seq
+	 *            sequence number of the first path element to contain, the whole path will be contained if it is out of range
+	 * @return simplified track
+	 */
+	GPSTrack getTrack(GPSPath trackedPath, int seq) {
+		int size = path.size() + (end >= 0 ? 1 : 0);
+		return createTrack(trackedPath, seq > 0 && seq <= size ? seq : 0);
+	}
+
+	/**
+	 * Keeps the given element of the tracked path.
+	 *
+	 * @param trackedPath
+	 *            snapshot of the tracked path
+	 * @param index
+	 *            element index
+	 */
+	private void keep(GPSPath trackedPath, int index) {
+		// sum up distances of the removed elements
+		double distanceToLast = 0;
+		for (int i = anchor + 1; i <= index; i++) {
+			distanceToLast += trackedPath.getDistanceToLast(i);
+		}
+		path.append(trackedPath.getTimestamp(index), trackedPath.getLongitude(index), trackedPath.getLatitude(index), trackedPath.getAltitude(index), distanceToLast);
+		anchor = index;
+	}
+
+	/**
+	 * Checks if all elements between anchor and the given element are within the tolerance of the segment between anchor and the given element.
+	 *
+	 * @param trackedPath
+	 *            snapshot of the tracked path
+	 * @param index
+	 *            index of the segment end
+	 * @return <code>true</code> if the segment can replace the elements
+	 */
+	private boolean isWithinTolerance(GPSPath trackedPath, int index) {
+		if (index - anchor > MAX_WINDOW) {
+			return false;
+		}
+		double longitude = trackedPath.getLongitude(anchor);
+		double latitude = trackedPath.getLatitude(anchor);
+		double cos = Math.cos(Math.toRadians(latitude));
+		double maxDistance = tolerance * METERS_PER_PIXEL * cos / (1 << zoom);
+
+		// segment in m relative to the anchor
+		double dx = (trackedPath.getLongitude(index) - longitude) * cos * METERS_PER_DEGREE;
+		double dy = (trackedPath.getLatitude(index) - latitude) * METERS_PER_DEGREE;
+		double sqLength = dx * dx + dy * dy;
+		double sqMaxDistance = maxDistance * maxDistance;
+		for (int i = anchor + 1; i < index; i++) {
+			double px = (trackedPath.getLongitude(i) - longitude) * cos * METERS_PER_DEGREE;
+			double py = (trackedPath.getLatitude(i) - latitude) * METERS_PER_DEGREE;
+			double t = sqLength > 0 ? Math.max(0, Math.min(1, (px * dx + py * dy) / sqLength)) : 0;
+			double ex = px - t * dx;
+			double ey = py - t * dy;
+			if (ex * ex + ey * ey > sqMaxDistance) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Creates the simplified track from the given sequence number on. The distance of the track will be the distance of the tracked path.
+	 *
+	 * @param trackedPath
+	 *            snapshot of the tracked path
+	 * @param seq
+	 *            sequence number of the first path element
+	 * @return simplified track
+	 */
+	private GPSTrack createTrack(GPSPath trackedPath, int seq) {
+		GPSPath elements = new GPSPath(path.size() - seq + 1);
+		for (int i = seq; i < path.size(); i++) {
+			elements.append(path.getTimestamp(i), path.getLongitude(i), path.getLatitude(i), path.getAltitude(i), path.getDistanceToLast(i));
+		}
+		if (end >= 0 && seq <= path.size()) {
+			double distanceToLast = 0;
+			for (int i = anchor + 1; i <= end; i++) {
+				distanceToLast += trackedPath.getDistanceToLast(i);
+			}
+			elements.append(trackedPath.getTimestamp(end), trackedPath.getLongitude(end), trackedPath.getLatitude(end), trackedPath.getAltitude(end), distanceToLast);
+		}
+
+		GPSTrack track = new GPSTrack();
+		track.setStart(path.getTimestamp(0));
+		track.setDistance(Math.round(trackedPath.getDistance()));
+		track.setSeq(seq);
+		track.setZoom(zoom);
+		track.setPath(elements);
+		return track;
+	}
+}
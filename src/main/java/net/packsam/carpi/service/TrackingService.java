@@ -7,12 +7,13 @@ import java.nio.charset.StandardCharsets;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.TreeMap;
 import java.util.concurrent.ExecutorService;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 
 import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
@@ -37,7 +38,7 @@ import io.jenetics.jpx.WayPoint;
 import net.packsam.carpi.config.CarpiConfiguration;
 import net.packsam.carpi.event.GPSPositionChangeEvent;
 import net.packsam.carpi.event.GPSTrackChangeEvent;
-import net.packsam.carpi.model.GPSPathElement;
+import net.packsam.carpi.model.GPSPath;
 import net.packsam.carpi.model.GPSPosition;
 import net.packsam.carpi.model.GPSTrack;
 import net.packsam.carpi.threading.GPSTracking;
@@ -65,6 +66,11 @@ public class TrackingService {
 	 */
 	private final DateFormat TRACK_TITLE_DATE_FORMAT = new SimpleDateFormat("dd.MMMM.yyyy HH:mm");
 
+	/**
+	 * Zoom levels to simplify the track for. Maps with a higher zoom level get the whole track.
+	 */
+	private static final int[] SIMPLIFIED_ZOOM_LEVELS = { 6, 8, 10, 12, 14 };
+
 	/**
 	 * Calculator for geo calculations.
 	 */
@@ -73,7 +79,12 @@ public class TrackingService {
 	/**
 	 * Currently tracked path.
 	 */
-	private final List<GPSPathElement> currentPath = Collections.synchronizedList(new ArrayList<>());
+	private final GPSPath currentPath = new GPSPath();
+
+	/**
+	 * Simplified versions of the current path by zoom level.
+	 */
+	private final NavigableMap<Integer, TrackSimplifier> simplifiedPaths = new TreeMap<>();
 
 	/**
 	 * Threshold in m for longitude or latitude error values so that we only track "good" values.
@@ -155,6 +166,10 @@ public class TrackingService {
 		} else {
 			targetDir = new File(System.getProperty("user.dir"));
 		}
+		double simplificationTolerance = config.getTrackSimplificationTolerance();
+		for (int zoom : SIMPLIFIED_ZOOM_LEVELS) {
+			simplifiedPaths.put(zoom, new TrackSimplifier(zoom, simplificationTolerance));
+		}
 	}
 
 	/**
@@ -190,6 +205,8 @@ public class TrackingService {
 
 		long tsLong = epoch2Timestamp(timestamp);
 		boolean newTrackingFile = false;
+		GPSPath path;
+		NavigableMap<Integer, GPSTrack> simplifiedTracks = new TreeMap<>();
 		synchronized (currentPath) {
 			// detect pause / no movement
 			double distanceToLast = 0;
@@ -206,16 +223,15 @@ public class TrackingService {
 			lastPosition = currentPosition;
 			lastPositionTimestamp = tsLong;
 
-			GPSPathElement el = new GPSPathElement();
-			el.setLongitude(longitude);
-			el.setLatitude(latitude);
-			el.setAltitude(altitude);
-			el.setTimestamp(tsLong);
-			el.setDistanceToLast(distanceToLast);
-			currentPath.add(el);
+			currentPath.append(tsLong, longitude, latitude, altitude, distanceToLast);
+			path = currentPath.snapshot();
+			for (TrackSimplifier simplifier : simplifiedPaths.values()) {
+				simplifiedTracks.put(simplifier.getZoom(), simplifier.append(path));
+			}
 		}
 
-		gpsTrackChangeEvent.fire(new GPSTrackChangeEvent(currentPath));
+		// send only the appended element
+		gpsTrackChangeEvent.fire(new GPSTrackChangeEvent(path, path.size() - 1, simplifiedTracks));
 
 		// append to tracking file async
 		final boolean newTFFinal = newTrackingFile;
@@ -253,17 +269,14 @@ public class TrackingService {
 	 *            track
 	 * @return KML object
 	 */
-	private Kml createKMLObject(List<GPSPathElement> track) {
+	private Kml createKMLObject(GPSPath track) {
 		String name;
 		if (track.size() == 1) {
-			GPSPathElement el = track.get(0);
-			long date = el.getTimestamp();
+			long date = track.getTimestamp(0);
 			name = TRACK_TITLE_DATE_FORMAT.format(date);
 		} else {
-			GPSPathElement firstEl = track.get(0);
-			GPSPathElement lastEl = track.get(track.size() - 1);
-			long firstDate = firstEl.getTimestamp();
-			long lastDate = lastEl.getTimestamp();
+			long firstDate = track.getTimestamp(0);
+			long lastDate = track.getTimestamp(track.size() - 1);
 			name = String.format("%s - %s", TRACK_TITLE_DATE_FORMAT.format(firstDate), TRACK_TITLE_DATE_FORMAT.format(lastDate));
 		}
 
@@ -271,7 +284,7 @@ public class TrackingService {
 		Placemark placemark = kml.createAndSetPlacemark();
 		placemark.setName(name);
 		LineString lineString = placemark.createAndSetLineString();
-		track.stream().forEachOrdered(pe -> lineString.addToCoordinates(pe.getLongitude(), pe.getLatitude(), pe.getAltitude()));
+		track.forEach(0, track.size(), (timestamp, longitude, latitude, altitude) -> lineString.addToCoordinates(longitude, latitude, altitude));
 		return kml;
 	}
 
@@ -282,30 +295,20 @@ public class TrackingService {
 	 *            track
 	 * @return GPX object
 	 */
-	private GPX createGPXObject(List<GPSPathElement> track) {
+	private GPX createGPXObject(GPSPath track) {
 		String name;
 		if (track.size() == 1) {
-			GPSPathElement el = track.get(0);
-			long date = el.getTimestamp();
+			long date = track.getTimestamp(0);
 			name = TRACK_TITLE_DATE_FORMAT.format(date);
 		} else {
-			GPSPathElement firstEl = track.get(0);
-			GPSPathElement lastEl = track.get(track.size() - 1);
-			long firstDate = firstEl.getTimestamp();
-			long lastDate = lastEl.getTimestamp();
+			long firstDate = track.getTimestamp(0);
+			long lastDate = track.getTimestamp(track.size() - 1);
 			name = String.format("%s - %s", TRACK_TITLE_DATE_FORMAT.format(firstDate), TRACK_TITLE_DATE_FORMAT.format(lastDate));
 		}
 
-		TrackSegment segment = TrackSegment.of( //
-				track.stream()//
-						.map(pe -> WayPoint.of( //
-								pe.getLatitude(), //
-								pe.getLongitude(), //
-								pe.getAltitude(), //
-								pe.getTimestamp() //
-						)) //
-						.collect(Collectors.toList()) //
-		);
+		List<WayPoint> points = new ArrayList<>(track.size());
+		track.forEach(0, track.size(), (timestamp, longitude, latitude, altitude) -> points.add(WayPoint.of(latitude, longitude, altitude, timestamp)));
+		TrackSegment segment = TrackSegment.of(points);
 		Track t = Track.builder() //
 				.name(name) //
 				.addSegment(segment) //
@@ -324,8 +327,39 @@ public class TrackingService {
 	 * @return the currentPath
 	 */
 	public GPSTrack getCurrentPath() {
+		return new GPSTrack(currentPath.snapshot());
+	}
+
+	/**
+	 * Returns the current path starting at the given sequence number. The whole path will be returned if the sequence number is out of range, e.g. if the client has
+	 * a path from before a restart.
+	 *
+	 * @param seq
+	 *            sequence number of the first path element
+	 * @return the currentPath starting at the sequence number
+	 */
+	public GPSTrack getCurrentPath(int seq) {
+		return new GPSTrack(currentPath.snapshot(), seq);
+	}
+
+	/**
+	 * Returns the current path simplified for the given map zoom level starting at the given sequence number. The sequence numbers of a simplified path differ from the
+	 * whole path.
+	 *
+	 * @param zoom
+	 *            zoom level of the map
+	 * @param seq
+	 *            sequence number of the first path element
+	 * @return the currentPath simplified for the zoom level
+	 */
+	public GPSTrack getCurrentPath(int zoom, int seq) {
 		synchronized (currentPath) {
-			return new GPSTrack(currentPath);
+			Entry<Integer, TrackSimplifier> e = simplifiedPaths.ceilingEntry(zoom);
+			GPSPath path = currentPath.snapshot();
+			if (e == null || path.isEmpty()) {
+				return new GPSTrack(path, seq);
+			}
+			return e.getValue().getTrack(path, seq);
 		}
 	}
 
@@ -337,7 +371,7 @@ public class TrackingService {
 	 * @throws IOException
 	 */
 	public void writeCurrentPathAsKMLToStream(OutputStream os) throws IOException {
-		createKMLObject(currentPath).marshal(os);
+		createKMLObject(currentPath.snapshot()).marshal(os);
 	}
 
 	/**
@@ -348,7 +382,7 @@ public class TrackingService {
 	 * @throws IOException
 	 */
 	public void writeCurrentPathAsGPXToStream(OutputStream os) throws IOException {
-		GPX gpx = createGPXObject(currentPath);
+		GPX gpx = createGPXObject(currentPath.snapshot());
 		GPX.write(gpx, os);
 	}
 
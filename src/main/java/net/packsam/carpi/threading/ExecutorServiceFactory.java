@@ -4,6 +4,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.inject.Disposes;
@@ -109,4 +110,101 @@ public class ExecutorServiceFactory {
 	public void disposeCarDataMonitorExecutorService(@Disposes @CarMonitor ScheduledExecutorService es) {
 		es.shutdown();
 	}
+
+	/**
+	 * Creates the executor service for map maintenance tasks.
+	 * 
+	 * @return executor service
+	 */
+	@Produces
+	@MapMaintenance
+	@ApplicationScoped
+	public ExecutorService createMapMaintenanceExecutorService() {
+		ExecutorService es = Executors.newSingleThreadExecutor();
+		return es;
+	}
+
+	/**
+	 * Shuts down the executor service for map maintenance tasks.
+	 * 
+	 * @param es
+	 *            executor service
+	 */
+	public void disposeMapMaintenanceExecutorService(@Disposes @MapMaintenance ExecutorService es) {
+		es.shutdownNow();
+	}
+
+	/**
+	 * Creates the executor service for opening map files in parallel.
+	 * 
+	 * @return executor service
+	 */
+	@Produces
+	@MapLoading
+	@ApplicationScoped
+	public ExecutorService createMapLoadingExecutorService() {
+		ExecutorService es = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		return es;
+	}
+
+	/**
+	 * Shuts down the executor service for opening map files.
+	 * 
+	 * @param es
+	 *            executor service
+	 */
+	public void disposeMapLoadingExecutorService(@Disposes @MapLoading ExecutorService es) {
+		es.shutdownNow();
+	}
+
+	/**
+	 * Creates the executor service for watching map files.
+	 * 
+	 * @return executor service
+	 */
+	@Produces
+	@MapWatch
+	@ApplicationScoped
+	public ExecutorService createMapWatchExecutorService() {
+		ExecutorService es = Executors.newSingleThreadExecutor();
+		return es;
+	}
+
+	/**
+	 * Shuts down the executor service for watching map files.
+	 * 
+	 * @param es
+	 *            executor service
+	 */
+	public void disposeMapWatchExecutorService(@Disposes @MapWatch ExecutorService es) {
+		es.shutdownNow();
+	}
+
+	/**
+	 * Creates the executor service for prefetching map tiles. The thread runs with low priority so it does not slow down serving requests.
+	 * 
+	 * @return executor service
+	 */
+	@Produces
+	@MapPrefetch
+	@ApplicationScoped
+	public ExecutorService createMapPrefetchExecutorService() {
+		ThreadFactory defaultThreadFactory = Executors.defaultThreadFactory();
+		ExecutorService es = Executors.newSingleThreadExecutor(r -> {
+			Thread t = defaultThreadFactory.newThread(r);
+			t.setPriority(Thread.MIN_PRIORITY);
+			return t;
+		});
+		return es;
+	}
+
+	/**
+	 * Shuts down the executor service for prefetching map tiles.
+	 * 
+	 * @param es
+	 *            executor service
+	 */
+	public void disposeMapPrefetchExecutorService(@Disposes @MapPrefetch ExecutorService es) {
+		es.shutdownNow();
+	}
 }
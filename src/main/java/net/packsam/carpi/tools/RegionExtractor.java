@@ -0,0 +1,554 @@
+package net.packsam.carpi.tools;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.gavaghan.geodesy.Ellipsoid;
+import org.gavaghan.geodesy.GeodeticCalculator;
+import org.gavaghan.geodesy.GlobalCoordinates;
+
+import io.jenetics.jpx.GPX;
+import io.jenetics.jpx.WayPoint;
+
+/**
+ * Command line tool for extracting a region from one or more MBTiles files into a new, smaller MBTiles file. The region is either a bounding box or a corridor with the given
+ * buffer around a track (GPX file or tracking file of the {@link net.packsam.carpi.service.TrackingService}).<br/>
+ * Every input tile will be read at most once. If several input files contain the same tile, the tile of the first file wins, just like the map service does. The created file
+ * already contains the indices the map service needs, so it can be used without any indexing on the device. It will be written to a temporary file first and moved to the
+ * target afterwards, so it can replace a watched map file while the application is running.<br/>
+ * Usage:
+ * <code>java -cp "WEB-INF/classes:WEB-INF/lib/*" net.packsam.carpi.tools.RegionExtractor (--bbox minLon,minLat,maxLon,maxLat | --track track.gpx --buffer 2000) --zoom 5-16 output.mbtiles input.mbtiles...</code>
+ *
+ * @author osterrath
+ *
+ */
+public class RegionExtractor {
+	/**
+	 * Equatorial circumference of the earth in m.
+	 */
+	private static final double EARTH_CIRCUMFERENCE = 40075016.686;
+
+	/**
+	 * Maximum latitude of the web mercator projection.
+	 */
+	private static final double MAX_LATITUDE = 85.0511;
+
+	/**
+	 * Number of tiles to insert per transaction.
+	 */
+	private static final int BATCH_SIZE = 1000;
+
+	/**
+	 * Default buffer in m around a track.
+	 */
+	private static final double DEFAULT_BUFFER = 2000;
+
+	/**
+	 * Metadata that will be calculated for the extracted region instead of copied from the input files.
+	 */
+	private static final Set<String> CALCULATED_METADATA = new HashSet<>(Arrays.asList("bounds", "center", "minzoom", "maxzoom"));
+
+	/**
+	 * Calculator for geo calculations.
+	 */
+	private final GeodeticCalculator geoCalculator = new GeodeticCalculator();
+
+	/**
+	 * Bounding box of the region as array of min longitude, min latitude, max longitude and max latitude.
+	 */
+	private final double[] bounds;
+
+	/**
+	 * Track lines of the corridor, each point as array of latitude and longitude, or <code>null</code> if the region is a bounding box.
+	 */
+	private final List<List<double[]>> trackLines;
+
+	/**
+	 * Buffer in m around the track lines.
+	 */
+	private final double buffer;
+
+	/**
+	 * Ctor.
+	 *
+	 * @param bounds
+	 *            bounding box as array of min longitude, min latitude, max longitude and max latitude
+	 * @param trackLines
+	 *            track lines of the corridor or <code>null</code> for the bounding box only
+	 * @param buffer
+	 *            buffer in m around the track lines
+	 */
+	public RegionExtractor(double[] bounds, List<List<double[]>> trackLines, double buffer) {
+		super();
+		this.bounds = bounds;
+		this.trackLines = trackLines;
+		this.buffer = buffer;
+	}
+
+	/**
+	 * Main method.
+	 *
+	 * @param args
+	 *            command line arguments
+	 */
+	public static void main(String[] args) {
+		double[] bbox = null;
+		File trackFile = null;
+		double buffer = DEFAULT_BUFFER;
+		int[] zoomRange = null;
+		List<File> files = new ArrayList<>();
+		try {
+			for (int i = 0; i < args.length; i++) {
+				switch (args[i]) {
+				case "--bbox":
+					String[] values = args[++i].split(",");
+					if (values.length != 4) {
+						throw new IllegalArgumentException("Invalid bounding box: " + args[i]);
+					}
+					bbox = new double[4];
+					for (int j = 0; j < 4; j++) {
+						bbox[j] = Double.parseDouble(values[j].trim());
+					}
+					break;
+				case "--track":
+					trackFile = new File(args[++i]);
+					break;
+				case "--buffer":
+					buffer = Double.parseDouble(args[++i]);
+					break;
+				case "--zoom":
+					String[] levels = args[++i].split("-");
+					int minZoom = Integer.parseInt(levels[0].trim(), 10);
+					int maxZoom = levels.length > 1 ? Integer.parseInt(levels[1].trim(), 10) : minZoom;
+					zoomRange = new int[] { minZoom, maxZoom };
+					break;
+				default:
+					files.add(new File(args[i]));
+				}
+			}
+		} catch (RuntimeException e) {
+			System.err.println(e.getMessage());
+			files.clear();
+		}
+		if ((bbox == null) == (trackFile == null) || zoomRange == null || zoomRange[0] < 0 || zoomRange[1] < zoomRange[0] || files.size() < 2) {
+			System.err.println(
+					"Usage: RegionExtractor (--bbox <minLon,minLat,maxLon,maxLat> | --track <track.gpx|track.csv> [--buffer <m>]) --zoom <min-max> <output.mbtiles> <input.mbtiles>...");
+			System.exit(1);
+		}
+
+		try {
+			long start = System.currentTimeMillis();
+			RegionExtractor extractor;
+			if (trackFile != null) {
+				List<List<double[]>> lines = readTrack(trackFile);
+				extractor = new RegionExtractor(getTrackBounds(lines, buffer), lines, buffer);
+			} else {
+				extractor = new RegionExtractor(bbox, null, 0);
+			}
+			long tiles = extractor.extract(files.subList(1, files.size()), files.get(0), zoomRange[0], zoomRange[1]);
+			long end = System.currentTimeMillis();
+			System.out.println(String.format("Extracted %d tiles in %.1fs", tiles, (double) (end - start) / 1000.0));
+		} catch (IOException | SQLException e) {
+			e.printStackTrace();
+			System.exit(2);
+		}
+	}
+
+	/**
+	 * Reads the track lines from the given GPX file or tracking file.
+	 *
+	 * @param trackFile
+	 *            GPX file or CSV tracking file
+	 * @return track lines, each point as array of latitude and longitude
+	 * @throws IOException
+	 */
+	static List<List<double[]>> readTrack(File trackFile) throws IOException {
+		List<List<double[]>> lines = new ArrayList<>();
+		if (StringUtils.endsWithIgnoreCase(trackFile.getName(), ".csv")) {
+			// tracking file: timestamp;longitude;latitude;altitude
+			List<double[]> line = new ArrayList<>();
+			for (String l : FileUtils.readLines(trackFile, StandardCharsets.UTF_8)) {
+				String[] values = l.split(";");
+				if (values.length >= 3) {
+					// the tracking file is written with the default locale, so the decimal separator may be a comma
+					line.add(new double[] { Double.parseDouble(values[2].replace(',', '.')), Double.parseDouble(values[1].replace(',', '.')) });
+				}
+			}
+			lines.add(line);
+		} else {
+			GPX gpx;
+			try (InputStream in = new FileInputStream(trackFile)) {
+				gpx = GPX.read(in);
+			}
+			gpx.tracks() //
+					.flatMap(t -> t.segments()) //
+					.map(s -> s.points().map(RegionExtractor::toPoint).collect(Collectors.toList())) //
+					.forEach(lines::add);
+			gpx.routes() //
+					.map(r -> r.points().map(RegionExtractor::toPoint).collect(Collectors.toList())) //
+					.forEach(lines::add);
+		}
+		lines.removeIf(List::isEmpty);
+		if (lines.isEmpty()) {
+			throw new IOException("No track points found in " + trackFile.getPath());
+		}
+		return lines;
+	}
+
+	/**
+	 * Converts the given way point into an array of latitude and longitude.
+	 *
+	 * @param wp
+	 *            way point
+	 * @return array of latitude and longitude
+	 */
+	private static double[] toPoint(WayPoint wp) {
+		return new double[] { wp.getLatitude().doubleValue(), wp.getLongitude().doubleValue() };
+	}
+
+	/**
+	 * Calculates the bounding box of the given track lines including the buffer.
+	 *
+	 * @param lines
+	 *            track lines
+	 * @param buffer
+	 *            buffer in m
+	 * @return bounding box as array of min longitude, min latitude, max longitude and max latitude
+	 */
+	static double[] getTrackBounds(List<List<double[]>> lines, double buffer) {
+		double[] b = new double[] { 180, 90, -180, -90 };
+		for (List<double[]> line : lines) {
+			for (double[] p : line) {
+				double dLat = buffer / EARTH_CIRCUMFERENCE * 360;
+				double dLon = dLat / Math.max(0.01, Math.cos(Math.toRadians(p[0])));
+				b[0] = Math.max(-180, Math.min(b[0], p[1] - dLon));
+				b[1] = Math.max(-90, Math.min(b[1], p[0] - dLat));
+				b[2] = Math.min(180, Math.max(b[2], p[1] + dLon));
+				b[3] = Math.min(90, Math.max(b[3], p[0] + dLat));
+			}
+		}
+		return b;
+	}
+
+	/**
+	 * Extracts the region from the given MBTiles files into a new MBTiles file.
+	 *
+	 * @param inputFiles
+	 *            MBTiles files to read in order of priority
+	 * @param outputFile
+	 *            MBTiles file to create
+	 * @param minZoom
+	 *            minimum zoom level
+	 * @param maxZoom
+	 *            maximum zoom level
+	 * @return number of extracted tiles
+	 * @throws IOException
+	 * @throws SQLException
+	 */
+	public long extract(List<File> inputFiles, File outputFile, int minZoom, int maxZoom) throws IOException, SQLException {
+		try {
+			Class.forName("org.sqlite.JDBC");
+		} catch (ClassNotFoundException e) {
+			throw new SQLException("JDBC driver not found", e);
+		}
+		for (File f : inputFiles) {
+			if (!f.isFile()) {
+				throw new IOException("MBTiles file not found: " + f.getPath());
+			}
+			if (f.getCanonicalFile().equals(outputFile.getCanonicalFile())) {
+				throw new IOException("Output file must not be an input file: " + f.getPath());
+			}
+		}
+
+		File tmpFile = new File(outputFile.getPath() + ".tmp");
+		Files.deleteIfExists(tmpFile.toPath());
+
+		long written = 0;
+		int writtenMinZ = -1;
+		int writtenMaxZ = -1;
+		try (Connection out = DriverManager.getConnection("jdbc:sqlite:" + tmpFile.getPath())) {
+			try (Statement stmt = out.createStatement()) {
+				stmt.execute("PRAGMA page_size = 4096");
+				stmt.execute("PRAGMA journal_mode = OFF");
+				stmt.execute("PRAGMA synchronous = OFF");
+				stmt.execute("CREATE TABLE metadata (name TEXT, value TEXT)");
+				stmt.execute("CREATE TABLE tiles (zoom_level INTEGER, tile_column INTEGER, tile_row INTEGER, tile_data BLOB)");
+				// needed for skipping duplicate tiles, also used by the map service
+				stmt.execute("CREATE UNIQUE INDEX idx_tiles_tile ON tiles (zoom_level, tile_column, tile_row)");
+			}
+			out.setAutoCommit(false);
+
+			List<Connection> inputs = new ArrayList<>();
+			try {
+				for (File f : inputFiles) {
+					inputs.add(DriverManager.getConnection("jdbc:sqlite:" + f.getPath()));
+				}
+
+				try (PreparedStatement psInsert = out.prepareStatement("INSERT OR IGNORE INTO tiles (zoom_level, tile_column, tile_row, tile_data) VALUES (?, ?, ?, ?)")) {
+					int batch = 0;
+					for (int z = minZoom; z <= maxZoom; z++) {
+						Set<Long> corridor = trackLines != null ? getCorridorTiles(z) : null;
+						int minX = longitude2TileX(bounds[0], z);
+						int maxX = longitude2TileX(bounds[2], z);
+						int minY = latitude2TileY(bounds[3], z);
+						int maxY = latitude2TileY(bounds[1], z);
+						long zoomTiles = 0;
+
+						for (Connection in : inputs) {
+							try (PreparedStatement ps = in.prepareStatement(
+									"SELECT tile_column, tile_row, tile_data FROM tiles WHERE zoom_level = ? AND tile_column BETWEEN ? AND ? AND tile_row BETWEEN ? AND ?")) {
+								ps.setInt(1, z);
+								ps.setInt(2, minX);
+								ps.setInt(3, maxX);
+								ps.setInt(4, toTMS(z, maxY));
+								ps.setInt(5, toTMS(z, minY));
+								try (ResultSet rs = ps.executeQuery()) {
+									while (rs.next()) {
+										int x = rs.getInt(1);
+										int row = rs.getInt(2);
+										if (corridor != null && !corridor.contains(key(x, toTMS(z, row)))) {
+											continue;
+										}
+
+										psInsert.setInt(1, z);
+										psInsert.setInt(2, x);
+										psInsert.setInt(3, row);
+										psInsert.setBytes(4, rs.getBytes(3));
+										zoomTiles += psInsert.executeUpdate();
+										if (++batch >= BATCH_SIZE) {
+											out.commit();
+											batch = 0;
+										}
+									}
+								}
+							}
+						}
+						out.commit();
+						batch = 0;
+
+						System.out.println(String.format("Zoom level %d: %d tiles", z, zoomTiles));
+						if (zoomTiles > 0) {
+							writtenMinZ = writtenMinZ < 0 ? z : writtenMinZ;
+							writtenMaxZ = z;
+						}
+						written += zoomTiles;
+					}
+				}
+
+				writeMetadata(inputs, out, writtenMinZ, writtenMaxZ);
+				out.commit();
+			} finally {
+				for (Connection in : inputs) {
+					try {
+						in.close();
+					} catch (SQLException e) {
+					}
+				}
+			}
+
+			out.setAutoCommit(true);
+			try (Statement stmt = out.createStatement()) {
+				stmt.execute("CREATE INDEX idx_tiles_zoom_level ON tiles (zoom_level)");
+				stmt.execute("ANALYZE");
+			}
+		} catch (SQLException | RuntimeException e) {
+			Files.deleteIfExists(tmpFile.toPath());
+			throw e;
+		}
+
+		Files.move(tmpFile.toPath(), outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return written;
+	}
+
+	/**
+	 * Copies the metadata of the first input file that has any and adds the values for the extracted region.
+	 *
+	 * @param inputs
+	 *            input connections
+	 * @param out
+	 *            output connection
+	 * @param minZ
+	 *            minimum written zoom level
+	 * @param maxZ
+	 *            maximum written zoom level
+	 * @throws SQLException
+	 */
+	private void writeMetadata(List<Connection> inputs, Connection out, int minZ, int maxZ) throws SQLException {
+		Map<String, String> metadata = new LinkedHashMap<>();
+		for (Connection in : inputs) {
+			try (Statement stmt = in.createStatement(); ResultSet rs = stmt.executeQuery("SELECT name, value FROM metadata")) {
+				while (rs.next()) {
+					if (!CALCULATED_METADATA.contains(rs.getString(1))) {
+						metadata.put(rs.getString(1), rs.getString(2));
+					}
+				}
+			}
+			if (!metadata.isEmpty()) {
+				break;
+			}
+		}
+
+		metadata.put("bounds", String.format(Locale.US, "%f,%f,%f,%f", bounds[0], bounds[1], bounds[2], bounds[3]));
+		if (minZ >= 0) {
+			metadata.put("center", String.format(Locale.US, "%f,%f,%d", (bounds[0] + bounds[2]) / 2, (bounds[1] + bounds[3]) / 2, minZ));
+			metadata.put("minzoom", Integer.toString(minZ));
+			metadata.put("maxzoom", Integer.toString(maxZ));
+		}
+
+		try (PreparedStatement ps = out.prepareStatement("INSERT INTO metadata (name, value) VALUES (?, ?)")) {
+			for (Map.Entry<String, String> e : metadata.entrySet()) {
+				ps.setString(1, e.getKey());
+				ps.setString(2, e.getValue());
+				ps.executeUpdate();
+			}
+		}
+	}
+
+	/**
+	 * Calculates the tiles of the corridor around the track lines for the given zoom level. Every tile within the buffer around a track point will be included, the track lines
+	 * will be sampled in steps of half a tile.
+	 *
+	 * @param z
+	 *            zoom level
+	 * @return tiles as keys of x and y position (XYZ)
+	 */
+	Set<Long> getCorridorTiles(int z) {
+		Set<Long> tiles = new HashSet<>();
+		for (List<double[]> line : trackLines) {
+			double[] last = null;
+			for (double[] p : line) {
+				if (last == null) {
+					addCorridorTiles(tiles, p[0], p[1], z);
+				} else {
+					double distance = geoCalculator
+							.calculateGeodeticCurve(Ellipsoid.WGS84, new GlobalCoordinates(last[0], last[1]), new GlobalCoordinates(p[0], p[1]))
+							.getEllipsoidalDistance();
+					double step = Math.max(1, getTileSize(Math.max(Math.abs(last[0]), Math.abs(p[0])), z) / 2);
+					int steps = Math.max(1, (int) Math.ceil(distance / step));
+					for (int i = 1; i <= steps; i++) {
+						double f = (double) i / steps;
+						addCorridorTiles(tiles, last[0] + (p[0] - last[0]) * f, last[1] + (p[1] - last[1]) * f, z);
+					}
+				}
+				last = p;
+			}
+		}
+		return tiles;
+	}
+
+	/**
+	 * Adds all tiles within the buffer around the given point.
+	 *
+	 * @param tiles
+	 *            tiles to add to
+	 * @param latitude
+	 *            latitude of point
+	 * @param longitude
+	 *            longitude of point
+	 * @param z
+	 *            zoom level
+	 */
+	private void addCorridorTiles(Set<Long> tiles, double latitude, double longitude, int z) {
+		int maxTile = (1 << z) - 1;
+		int cx = longitude2TileX(longitude, z);
+		int cy = latitude2TileY(latitude, z);
+		int r = (int) Math.ceil(buffer / getTileSize(latitude, z));
+		for (int y = Math.max(0, cy - r); y <= Math.min(maxTile, cy + r); y++) {
+			for (int x = Math.max(0, cx - r); x <= Math.min(maxTile, cx + r); x++) {
+				tiles.add(key(x, y));
+			}
+		}
+	}
+
+	/**
+	 * Calculates the width in m of a tile at the given latitude.
+	 *
+	 * @param latitude
+	 *            latitude
+	 * @param z
+	 *            zoom level
+	 * @return tile width in m
+	 */
+	private static double getTileSize(double latitude, int z) {
+		return EARTH_CIRCUMFERENCE * Math.max(0.01, Math.cos(Math.toRadians(latitude))) / (1 << z);
+	}
+
+	/**
+	 * Creates the key of a tile on a single zoom level.
+	 *
+	 * @param x
+	 *            x position
+	 * @param y
+	 *            y position
+	 * @return tile key
+	 */
+	private static long key(int x, int y) {
+		return ((long) x << 32) | (y & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Converts the y position between the XYZ scheme and the TMS scheme used by MBTiles.
+	 *
+	 * @param z
+	 *            zoom level
+	 * @param y
+	 *            y position
+	 * @return converted y position
+	 */
+	private static int toTMS(int z, int y) {
+		return (1 << z) - y - 1;
+	}
+
+	/**
+	 * Calculates the tile x position for the given longitude.
+	 *
+	 * @param longitude
+	 *            longitude in degrees
+	 * @param z
+	 *            zoom level
+	 * @return tile x position
+	 */
+	private static int longitude2TileX(double longitude, int z) {
+		int n = 1 << z;
+		int x = (int) Math.floor((longitude + 180) / 360 * n);
+		return Math.max(0, Math.min(n - 1, x));
+	}
+
+	/**
+	 * Calculates the tile y position for the given latitude.
+	 *
+	 * @param latitude
+	 *            latitude in degrees
+	 * @param z
+	 *            zoom level
+	 * @return tile y position
+	 */
+	private static int latitude2TileY(double latitude, int z) {
+		int n = 1 << z;
+		double latRad = Math.toRadians(Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, latitude)));
+		int y = (int) Math.floor((1 - Math.log(Math.tan(latRad) + 1 / Math.cos(latRad)) / Math.PI) / 2 * n);
+		return Math.max(0, Math.min(n - 1, y));
+	}
+}
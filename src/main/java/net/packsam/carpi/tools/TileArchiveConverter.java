@@ -0,0 +1,221 @@
+package net.packsam.carpi.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.packsam.carpi.service.TileArchiveMapFile;
+
+/**
+ * Command line tool for converting a MBTiles file into a tile archive. See {@link TileArchiveMapFile} for the format.<br/>
+ * Usage: <code>java -cp "WEB-INF/classes:WEB-INF/lib/*" net.packsam.carpi.tools.TileArchiveConverter input.mbtiles output.cta</code>
+ *
+ * @author osterrath
+ *
+ */
+public class TileArchiveConverter {
+	/**
+	 * Maximum size of tiles that will be deduplicated. Duplicates are mostly small tiles like empty sea or land tiles.
+	 */
+	private static final int MAX_DEDUPLICATION_SIZE = 4096;
+
+	/**
+	 * Maximum number of tile hashes to remember for deduplication. The least recently matched hashes will be forgotten, frequent tiles like empty sea tiles stay.
+	 */
+	private static final int MAX_DEDUPLICATION_ENTRIES = 65536;
+
+	/**
+	 * Maximum length of the UTF-8 encoded format name: header size minus the fixed header fields and the length of the format name.
+	 */
+	private static final int MAX_FORMAT_LENGTH = TileArchiveMapFile.HEADER_SIZE - 46;
+
+	/**
+	 * Size of the buffer for writing index entries.
+	 */
+	private static final int INDEX_BUFFER_SIZE = 4096 * TileArchiveMapFile.INDEX_ENTRY_SIZE;
+
+	/**
+	 * Main method.
+	 *
+	 * @param args
+	 *            command line arguments
+	 */
+	public static void main(String[] args) {
+		if (args.length != 2) {
+			System.err.println("Usage: TileArchiveConverter <input.mbtiles> <output" + TileArchiveMapFile.FILE_EXTENSION + ">");
+			System.exit(1);
+		}
+
+		try {
+			long start = System.currentTimeMillis();
+			long tiles = convert(new File(args[0]), new File(args[1]));
+			long end = System.currentTimeMillis();
+			System.out.println(String.format("Converted %d tiles in %.1fs", tiles, (double) (end - start) / 1000.0));
+		} catch (IOException | SQLException e) {
+			e.printStackTrace();
+			System.exit(2);
+		}
+	}
+
+	/**
+	 * Converts the given MBTiles file into a tile archive.
+	 *
+	 * @param mbTilesFile
+	 *            MBTiles file to read
+	 * @param archiveFile
+	 *            tile archive to create
+	 * @return number of converted tiles
+	 * @throws IOException
+	 * @throws SQLException
+	 */
+	public static long convert(File mbTilesFile, File archiveFile) throws IOException, SQLException {
+		try {
+			Class.forName("org.sqlite.JDBC");
+		} catch (ClassNotFoundException e) {
+			throw new SQLException("JDBC driver not found", e);
+		}
+		if (!mbTilesFile.isFile()) {
+			throw new IOException("MBTiles file not found: " + mbTilesFile.getPath());
+		}
+
+		try (Connection sqlConnection = DriverManager.getConnection("jdbc:sqlite:" + mbTilesFile.getPath());
+				Statement stmt = sqlConnection.createStatement();
+				RandomAccessFile raf = new RandomAccessFile(archiveFile, "rw")) {
+			// read meta data
+			String format = "";
+			try (ResultSet rs = stmt.executeQuery("SELECT value FROM metadata WHERE name = 'format'")) {
+				if (rs.next()) {
+					format = rs.getString(1);
+				}
+			}
+			byte[] formatBytes = format.getBytes(StandardCharsets.UTF_8);
+			if (formatBytes.length > MAX_FORMAT_LENGTH) {
+				throw new IOException("Format name too long: " + format);
+			}
+			long count;
+			int minZ;
+			int maxZ;
+			int maxTileSize;
+			try (ResultSet rs = stmt.executeQuery("SELECT count(*), min(zoom_level), max(zoom_level), max(length(tile_data)) FROM tiles")) {
+				rs.next();
+				count = rs.getLong(1);
+				minZ = rs.getInt(2);
+				maxZ = rs.getInt(3);
+				maxTileSize = rs.getInt(4);
+			}
+
+			raf.setLength(0);
+			FileChannel channel = raf.getChannel();
+			long indexOffset = TileArchiveMapFile.HEADER_SIZE;
+			long dataOffset = indexOffset + count * TileArchiveMapFile.INDEX_ENTRY_SIZE;
+
+			// write tiles in tile ID order (XYZ rows are inverted TMS rows)
+			MessageDigest digest = MessageDigest.getInstance("MD5");
+			Map<ByteBuffer, long[]> writtenTiles = new LinkedHashMap<ByteBuffer, long[]>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<ByteBuffer, long[]> eldest) {
+					return size() > MAX_DEDUPLICATION_ENTRIES;
+				}
+			};
+			ByteBuffer indexBuffer = ByteBuffer.allocate(INDEX_BUFFER_SIZE);
+			long indexPosition = indexOffset;
+			long dataPosition = dataOffset;
+			long written = 0;
+			try (ResultSet rs = stmt.executeQuery("SELECT zoom_level, tile_column, tile_row, tile_data FROM tiles ORDER BY zoom_level, tile_column, tile_row DESC")) {
+				while (rs.next()) {
+					int z = rs.getInt(1);
+					int x = rs.getInt(2);
+					int y = (1 << z) - rs.getInt(3) - 1;
+					byte[] data = rs.getBytes(4);
+
+					long[] location = null;
+					ByteBuffer hash = null;
+					if (data.length <= MAX_DEDUPLICATION_SIZE) {
+						hash = ByteBuffer.wrap(digest.digest(data));
+						location = writtenTiles.get(hash);
+					}
+					if (location == null) {
+						location = new long[] { dataPosition, data.length };
+						ByteBuffer b = ByteBuffer.wrap(data);
+						while (b.hasRemaining()) {
+							dataPosition += channel.write(b, dataPosition);
+						}
+						if (hash != null) {
+							writtenTiles.put(hash, location);
+						}
+					}
+
+					indexBuffer.putLong(TileArchiveMapFile.tileId(z, x, y));
+					indexBuffer.putLong(location[0]);
+					indexBuffer.putInt((int) location[1]);
+					if (!indexBuffer.hasRemaining()) {
+						indexPosition = writeBuffer(channel, indexBuffer, indexPosition);
+					}
+
+					written++;
+					if (written % 100000 == 0) {
+						System.out.println(String.format("%d / %d tiles", written, count));
+					}
+				}
+			}
+			writeBuffer(channel, indexBuffer, indexPosition);
+			if (written != count) {
+				throw new IOException("Tiles table changed while converting");
+			}
+
+			// write header
+			ByteBuffer header = ByteBuffer.allocate(TileArchiveMapFile.HEADER_SIZE);
+			header.putInt(TileArchiveMapFile.MAGIC);
+			header.putInt(TileArchiveMapFile.VERSION);
+			header.putInt(minZ);
+			header.putInt(maxZ);
+			header.putLong(count);
+			header.putInt(maxTileSize);
+			header.putLong(indexOffset);
+			header.putLong(dataOffset);
+			header.putShort((short) formatBytes.length);
+			header.put(formatBytes);
+			header.position(header.capacity());
+			writeBuffer(channel, header, 0);
+
+			return written;
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException("MD5 not available", e);
+		}
+	}
+
+	/**
+	 * Writes the content of the given buffer (from start to current position) at the given file position and clears the buffer.
+	 *
+	 * @param channel
+	 *            target channel
+	 * @param buffer
+	 *            buffer to write
+	 * @param position
+	 *            file position
+	 * @return file position after the written data
+	 * @throws IOException
+	 */
+	private static long writeBuffer(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+		buffer.clear();
+		return position;
+	}
+}
@@ -4,7 +4,7 @@ import {Dialog} from 'material-ui';
 import IconError from 'material-ui/svg-icons/alert/error';
 
 import * as styles from './App.scss';
-import {loadInitialData, subscribeEvent, unsubscribeEvent} from './actions/actions';
+import {loadInitialData, restoreGpsTrackZoom, subscribeEvent, unsubscribeEvent} from './actions/actions';
 import {AppState as GlobalAppState, getMapConfig, isWebSocketConnected} from './reducers/reducers';
 import MapConfiguration from './api/model/MapConfiguration';
 import MainNavigation from './components/mainNavigation/MainNavigation';
@@ -15,13 +15,17 @@ import Obd2Screen from './screens/obd2Screen/Obd2Screen';
 import HealthScreen from './screens/healthScreen/HealthScreen';
 import {EVENT_NAME as GPSMetaInfoChangeEventName} from './api/model/GPSMetaInfoChangeEvent';
 import {EVENT_NAME as HealthStatusChangeEventName} from './api/model/HealthStatusChangeEvent';
+import {EVENT_NAME as MapConfigurationChangeEventName} from './api/model/MapConfigurationChangeEvent';
 
 interface ContainerDispatchProps {
     loadInitialData: () => void;
+    restoreTrackZoom: () => void;
     subscribeGpsMeta: () => void;
     unsubscribeGpsMeta: () => void;
     subscribeHealthStatus: () => void;
     unsubscribeHealthStatus: () => void;
+    subscribeMapConfig: () => void;
+    unsubscribeMapConfig: () => void;
 }
 
 interface ContainerStateProps {
@@ -55,6 +59,7 @@ class App extends React.Component<AppProps, AppState> {
     componentWillUnmount() {
         this.props.unsubscribeGpsMeta();
         this.props.unsubscribeHealthStatus();
+        this.props.unsubscribeMapConfig();
     }
 
     componentWillReceiveProps(newProps: AppProps) {
@@ -63,8 +68,10 @@ class App extends React.Component<AppProps, AppState> {
                 clearInterval(this.connectInterval);
                 this.connectInterval = undefined;
             }
+            this.props.restoreTrackZoom();
             this.props.subscribeGpsMeta();
             this.props.subscribeHealthStatus();
+            this.props.subscribeMapConfig();
         } else if (!newProps.websocketConnected && this.props.websocketConnected) {
             if (this.connectInterval !== undefined) {
                 clearInterval(this.connectInterval);
@@ -134,10 +141,13 @@ const App$$ = connect<ContainerStateProps, ContainerDispatchProps, ContainerOwnP
     }),
     (dispatch, ownProps: ContainerOwnProps): ContainerDispatchProps => ({
         loadInitialData: () => dispatch(loadInitialData()),
+        restoreTrackZoom: () => dispatch(restoreGpsTrackZoom()),
         subscribeGpsMeta: () => dispatch(subscribeEvent(GPSMetaInfoChangeEventName)),
         unsubscribeGpsMeta: () => dispatch(unsubscribeEvent(GPSMetaInfoChangeEventName)),
         subscribeHealthStatus: () => dispatch(subscribeEvent(HealthStatusChangeEventName)),
         unsubscribeHealthStatus: () => dispatch(unsubscribeEvent(HealthStatusChangeEventName)),
+        subscribeMapConfig: () => dispatch(subscribeEvent(MapConfigurationChangeEventName)),
+        unsubscribeMapConfig: () => dispatch(unsubscribeEvent(MapConfigurationChangeEventName)),
     })
 )(App);
 
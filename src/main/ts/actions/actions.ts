@@ -8,6 +8,7 @@ import MapConfiguration from '../api/model/MapConfiguration';
 import EventMessage from '../api/model/EventMessage';
 import GPSData from '../api/model/GPSData';
 import GPSPosition from '../api/model/GPSPosition';
+import GPSTrack from '../api/model/GPSTrack';
 
 const mapEndpoint: MapEndpoint = new MapEndpoint();
 const gpsEndpoint: GPSEndpoint = new GPSEndpoint();
@@ -22,6 +23,9 @@ const Actions = {
     RECEIVE_GPS_DATA: 'gps/RECEIVE_DATA',
     REQUEST_GPS_POSITION: 'gps/REQUEST_POSITION',
     RECEIVE_GPS_POSITION: 'gps/RECEIVE_POSITION',
+    REQUEST_GPS_TRACK: 'gps/REQUEST_TRACK',
+    RECEIVE_GPS_TRACK: 'gps/RECEIVE_TRACK',
+    CHANGE_GPS_TRACK_ZOOM: 'gps/CHANGE_TRACK_ZOOM',
     WEBSOCKET_CONNECT: 'websocket/CONNECT',
     WEBSOCKET_CONNECTED: 'websocket/CONNECTED',
     WEBSOCKET_DISCONNECT: 'websocket/DISCONNECT',
@@ -38,18 +42,19 @@ const loadMapConfig = () => (dispatch: Dispatch<AppState>): Promise<void> => {
     dispatch(requestMapConfig());
     mapEndpoint.getMapConfig().then(response => {
         dispatch(receiveMapConfig(response));
-        if (response.withGeoJson) {
-            dispatch(loadMapGeoJson());
-        }
     });
     return Promise.resolve();
 };
 
 const requestMapGeoJson = createAction(Actions.REQUEST_MAP_GEO_JSON);
 const receiveMapGeoJson = createAction<GeoJSONGeoJsonObject, GeoJSONGeoJsonObject>(Actions.RECEIVE_MAP_GEO_JSON, (geoJson: GeoJSONGeoJsonObject) => geoJson);
-const loadMapGeoJson = () => (dispatch: Dispatch<AppState>): Promise<void> => {
+const loadMapGeoJson = (bbox?: string, zoom?: number) => (dispatch: Dispatch<AppState>, getState: () => AppState): Promise<void> => {
+    const mapConfig = getState().mapConfig;
+    if (!mapConfig || !mapConfig.withGeoJson) {
+        return Promise.resolve();
+    }
     dispatch(requestMapGeoJson);
-    mapEndpoint.getGeoJson().then(response => {
+    mapEndpoint.getGeoJson(bbox, zoom).then(response => {
         dispatch(receiveMapGeoJson(response));
     });
     return Promise.resolve();
@@ -57,9 +62,9 @@ const loadMapGeoJson = () => (dispatch: Dispatch<AppState>): Promise<void> => {
 
 const requestGpsData = createAction(Actions.REQUEST_GPS_DATA);
 const receiveGpsData = createAction<GPSData, GPSData>(Actions.RECEIVE_GPS_DATA, (data: GPSData) => data);
-const loadGpsData = () => (dispatch: Dispatch<AppState>): Promise<void> => {
+const loadGpsData = () => (dispatch: Dispatch<AppState>, getState: () => AppState): Promise<void> => {
     dispatch(requestGpsData());
-    gpsEndpoint.getCurrentData().then(response => {
+    gpsEndpoint.getCurrentData(getState().trackZoom).then(response => {
         dispatch(receiveGpsData(response));
     });
     return Promise.resolve();
@@ -75,6 +80,16 @@ const loadGpsPosition = () => (dispatch: Dispatch<AppState>): Promise<void> => {
     return Promise.resolve();
 };
 
+const requestGpsTrack = createAction(Actions.REQUEST_GPS_TRACK);
+const receiveGpsTrack = createAction<GPSTrack, GPSTrack>(Actions.RECEIVE_GPS_TRACK, (track: GPSTrack) => track);
+const loadGpsTrack = (sinceSeq?: number) => (dispatch: Dispatch<AppState>, getState: () => AppState): Promise<void> => {
+    dispatch(requestGpsTrack());
+    gpsEndpoint.getCurrentTrack(sinceSeq, getState().trackZoom).then(response => {
+        dispatch(receiveGpsTrack(response));
+    });
+    return Promise.resolve();
+};
+
 const connectWebsocket = createAction(Actions.WEBSOCKET_CONNECT);
 const websocketConnected = createAction(Actions.WEBSOCKET_CONNECTED);
 const disconnectWebsocket = createAction(Actions.WEBSOCKET_DISCONNECT);
@@ -91,6 +106,25 @@ const unsubscribeEvent = (event: string) => (dispatch: Dispatch<AppState>): Prom
     return Promise.resolve();
 };
 
+const changeGpsTrackZoom = createAction<number, number>(Actions.CHANGE_GPS_TRACK_ZOOM, (zoom: number) => zoom);
+const setGpsTrackZoom = (zoom: number) => (dispatch: Dispatch<AppState>, getState: () => AppState): Promise<void> => {
+    if (getState().trackZoom === zoom) {
+        return Promise.resolve();
+    }
+    dispatch(changeGpsTrackZoom(zoom));
+    dispatch(sendWebsocket({TRACK_ZOOM: String(zoom)}));
+    dispatch(loadGpsTrack());
+    return Promise.resolve();
+};
+const restoreGpsTrackZoom = () => (dispatch: Dispatch<AppState>, getState: () => AppState): Promise<void> => {
+    // a new websocket session sends the whole track until it knows the zoom level
+    const zoom = getState().trackZoom;
+    if (zoom !== undefined) {
+        dispatch(sendWebsocket({TRACK_ZOOM: String(zoom)}));
+    }
+    return Promise.resolve();
+};
+
 const loadInitialData = () => (dispatch: Dispatch<AppState>): Promise<void> => {
     dispatch(loadMapConfig());
     dispatch(connectWebsocket());
@@ -116,6 +150,13 @@ export {
     receiveGpsPosition,
     loadGpsPosition,
 
+    requestGpsTrack,
+    receiveGpsTrack,
+    loadGpsTrack,
+    changeGpsTrackZoom,
+    setGpsTrackZoom,
+    restoreGpsTrackZoom,
+
     connectWebsocket,
     websocketConnected,
     disconnectWebsocket,
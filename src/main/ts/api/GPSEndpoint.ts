@@ -4,8 +4,9 @@ import GPSMetaInfo from './model/GPSMetaInfo';
 import GPSTrack from './model/GPSTrack';
 
 class GPSEndpoint {
-    public getCurrentData(): Promise<GPSData> {
-        return fetch('/api/gps').then(response => response.json());
+    public getCurrentData(zoom?: number): Promise<GPSData> {
+        const url = '/api/gps' + (zoom !== undefined ? '?zoom=' + zoom : '');
+        return fetch(url).then(response => response.json());
     }
 
     public getCurrentPosition(): Promise<GPSPosition> {
@@ -16,8 +17,16 @@ class GPSEndpoint {
         return fetch('/api/gps/meta').then(response => response.json());
     }
 
-    public getCurrentTrack(): Promise<GPSTrack> {
-        return fetch('/api/gps/track').then(response => response.json());
+    public getCurrentTrack(sinceSeq?: number, zoom?: number): Promise<GPSTrack> {
+        const params: string[] = [];
+        if (sinceSeq !== undefined) {
+            params.push('sinceSeq=' + sinceSeq);
+        }
+        if (zoom !== undefined) {
+            params.push('zoom=' + zoom);
+        }
+        const url = '/api/gps/track' + (params.length ? '?' + params.join('&') : '');
+        return fetch(url).then(response => response.json());
     }
 }
 
@@ -1,12 +1,74 @@
 import MapConfiguration from './model/MapConfiguration';
+import MapFileStatus from './model/MapFileStatus';
+import TileBatchRequest from './model/TileBatchRequest';
+import TileBundleEntry, {TileBundleStatus} from './model/TileBundleEntry';
+
+const BUNDLE_STATUS: Array<TileBundleStatus> = ['OK', 'NOT_MODIFIED', 'NOT_FOUND'];
 
 class MapEndpoint {
     public getMapConfig(): Promise<MapConfiguration> {
         return fetch('/api/map/config').then(response => response.json());
     }
 
-    public getGeoJson(): Promise<GeoJSONGeoJsonObject> {
-        return fetch('/api/map/geojson').then(response => response.json());
+    public getMapFileStatus(): Promise<Array<MapFileStatus>> {
+        return fetch('/api/map/status').then(response => response.json());
+    }
+
+    public getGeoJson(bbox?: string, zoom?: number): Promise<GeoJSONGeoJsonObject> {
+        let url = '/api/map/geojson';
+        if (bbox) {
+            url += '?bbox=' + encodeURIComponent(bbox) + (zoom !== undefined ? '&zoom=' + zoom : '');
+        }
+        return fetch(url).then(response => response.json());
+    }
+
+    public getGeoJsonTile(z: number, x: number, y: number): Promise<GeoJSONFeatureCollection<GeoJSONGeometryObject>> {
+        return fetch('/api/map/geojson/' + z + '/' + x + '/' + y).then(response => response.json());
+    }
+
+    public getTiles(batch: TileBatchRequest): Promise<Array<TileBundleEntry>> {
+        return fetch('/api/map/tiles', {
+            method: 'POST',
+            headers: {'Content-Type': 'application/json'},
+            body: JSON.stringify(batch),
+        })
+            .then(response => response.arrayBuffer())
+            .then(buffer => MapEndpoint.parseTileBundle(buffer));
+    }
+
+    private static parseTileBundle(buffer: ArrayBuffer): Array<TileBundleEntry> {
+        const view = new DataView(buffer);
+        const decoder = new TextDecoder('utf-8');
+        let pos = 0;
+        const readString = (): string => {
+            const length = view.getUint16(pos);
+            const value = decoder.decode(new Uint8Array(buffer, pos + 2, length));
+            pos += 2 + length;
+            return value;
+        };
+
+        const count = view.getInt32(pos);
+        pos += 4;
+        const entries: Array<TileBundleEntry> = [];
+        for (let i = 0; i < count; i++) {
+            const entry: TileBundleEntry = {
+                z: view.getUint8(pos),
+                x: view.getInt32(pos + 1),
+                y: view.getInt32(pos + 5),
+                status: BUNDLE_STATUS[view.getUint8(pos + 9)],
+            };
+            pos += 10;
+            if (entry.status === 'OK') {
+                entry.etag = readString();
+                entry.mimeType = readString();
+                entry.contentEncoding = readString() || undefined;
+                const length = view.getInt32(pos);
+                entry.data = new Uint8Array(buffer, pos + 4, length);
+                pos += 4 + length;
+            }
+            entries.push(entry);
+        }
+        return entries;
     }
 }
 
@@ -9,6 +9,7 @@ interface GPSPosition {
     climbRate: number;
     speedError: number;
     climbRateError: number;
+    course?: number;
     timestamp: number;
 }
 
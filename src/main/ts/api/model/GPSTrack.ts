@@ -8,6 +8,8 @@ interface Element {
 interface GPSTrack {
     start: number;
     distance: number;
+    seq: number;
+    zoom?: number;
     path: Array<Element>;
 
 }
@@ -0,0 +1,13 @@
+import MapConfiguration from './MapConfiguration';
+
+const EVENT_NAME = 'MapConfigurationChangeEvent';
+
+interface MapConfigurationChangeEvent {
+    configuration: MapConfiguration;
+}
+
+export {
+    EVENT_NAME,
+};
+
+export default MapConfigurationChangeEvent;
@@ -0,0 +1,7 @@
+interface MapFileStatus {
+    fileName: string;
+    state: 'OPENING'|'INDEXING'|'READY'|'FAILED';
+    progress: number;
+}
+
+export default MapFileStatus;
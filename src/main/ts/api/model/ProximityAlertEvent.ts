@@ -0,0 +1,12 @@
+const EVENT_NAME = 'ProximityAlertEvent';
+
+interface ProximityAlertEvent {
+    feature: GeoJSONFeature<GeoJSONPoint>;
+    distance: number;
+}
+
+export {
+    EVENT_NAME,
+};
+
+export default ProximityAlertEvent;
@@ -0,0 +1,22 @@
+interface TileReference {
+    z: number;
+    x: number;
+    y: number;
+    etag?: string;
+}
+
+interface TileBatchRequest {
+    tiles?: Array<TileReference>;
+    z?: number;
+    minX?: number;
+    minY?: number;
+    maxX?: number;
+    maxY?: number;
+    etag?: string;
+}
+
+export {
+    TileReference,
+};
+
+export default TileBatchRequest;
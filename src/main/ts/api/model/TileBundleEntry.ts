@@ -0,0 +1,18 @@
+type TileBundleStatus = 'OK'|'NOT_MODIFIED'|'NOT_FOUND';
+
+interface TileBundleEntry {
+    z: number;
+    x: number;
+    y: number;
+    status: TileBundleStatus;
+    etag?: string;
+    mimeType?: string;
+    contentEncoding?: string;
+    data?: Uint8Array;
+}
+
+export {
+    TileBundleStatus,
+};
+
+export default TileBundleEntry;
@@ -0,0 +1,156 @@
+import MapEndpoint from '../../api/MapEndpoint';
+
+const DEFAULT_COLOR = '#3388ff';
+const DEFAULT_WEIGHT = 3;
+const DEFAULT_FILL_OPACITY = 0.2;
+const MAX_LATITUDE = 85.0511287798;
+
+type Position = Array<number>;
+
+interface TileGeometry {
+    type: string;
+    coordinates?: Position | Array<Position> | Array<Array<Position>> | Array<Array<Array<Position>>>;
+    geometries?: Array<TileGeometry>;
+}
+
+type GeoJsonStyle = (feature?: GeoJSONFeature<GeoJSONGeometryObject>) => L.PathOptions;
+
+const isPoint = (geometry: GeoJSONGeometryObject): boolean => geometry.type === 'Point' || geometry.type === 'MultiPoint';
+
+/**
+ * Grid layer for the GeoJSON tiles. Every tile is drawn on its own canvas, so the features clipped to a tile and its buffer are cut at the tile border and are neither drawn
+ * twice nor stroked along the clip edges. Points will be added to the map as GeoJSON layer of their tile, so they stay interactive.
+ */
+class GeoJsonTileLayer extends L.GridLayer {
+    private mapEndpoint: MapEndpoint = new MapEndpoint();
+    private style: GeoJsonStyle;
+    private pointOptions: L.GeoJSONOptions;
+    private pointLayers: Map<HTMLElement, L.GeoJSON> = new Map<HTMLElement, L.GeoJSON>();
+    private leafletMap?: L.Map;
+
+    constructor(style: GeoJsonStyle, pointOptions: L.GeoJSONOptions, options?: L.GridLayerOptions) {
+        super(options);
+        this.style = style;
+        this.pointOptions = pointOptions;
+        this.on('tileunload', this.onTileUnload);
+    }
+
+    onAdd(map: L.Map): this {
+        this.leafletMap = map;
+        return super.onAdd(map);
+    }
+
+    createTile(coords: L.Coords, done: L.DoneCallback): HTMLElement {
+        const tile = document.createElement('canvas');
+        const size = this.getTileSize();
+        const ratio = window.devicePixelRatio || 1;
+        tile.width = size.x * ratio;
+        tile.height = size.y * ratio;
+
+        this.mapEndpoint.getGeoJsonTile(coords.z, coords.x, coords.y)
+            .then(collection => {
+                if (tile.parentNode) {
+                    this.drawTile(tile, coords, collection.features.filter(f => !isPoint(f.geometry)), ratio);
+                    this.addPoints(tile, collection.features.filter(f => isPoint(f.geometry)));
+                }
+                done(undefined, tile);
+            })
+            .catch((error: Error) => done(error, tile));
+        return tile;
+    }
+
+    private onTileUnload = (e: L.TileEvent): void => {
+        this.removePoints(e.tile);
+    };
+
+    private addPoints(tile: HTMLElement, points: Array<GeoJSONFeature<GeoJSONGeometryObject>>): void {
+        if (points.length > 0 && this.leafletMap) {
+            const collection = {type: 'FeatureCollection', features: points} as GeoJSONFeatureCollection<GeoJSONGeometryObject>;
+            this.pointLayers.set(tile, L.geoJSON(collection, this.pointOptions).addTo(this.leafletMap));
+        }
+    }
+
+    private removePoints(tile: HTMLElement): void {
+        const layer = this.pointLayers.get(tile);
+        if (layer) {
+            layer.remove();
+            this.pointLayers.delete(tile);
+        }
+    }
+
+    private drawTile(tile: HTMLCanvasElement, coords: L.Coords, features: Array<GeoJSONFeature<GeoJSONGeometryObject>>, ratio: number): void {
+        const ctx = tile.getContext('2d');
+        if (!ctx) {
+            return;
+        }
+        const size = this.getTileSize();
+        const worldSize = size.x * Math.pow(2, coords.z);
+        const project = (position: Position): Position => {
+            const sin = Math.sin(Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, position[1])) * Math.PI / 180);
+            return [
+                (position[0] + 180) / 360 * worldSize - coords.x * size.x,
+                (0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI)) * worldSize - coords.y * size.y,
+            ];
+        };
+
+        ctx.scale(ratio, ratio);
+        ctx.lineCap = 'round';
+        ctx.lineJoin = 'round';
+        features.forEach(feature => this.drawGeometry(ctx, feature.geometry as TileGeometry, this.style(feature), project));
+    }
+
+    private drawGeometry(ctx: CanvasRenderingContext2D, geometry: TileGeometry, style: L.PathOptions, project: (position: Position) => Position): void {
+        switch (geometry.type) {
+            case 'LineString':
+                this.drawPath(ctx, [geometry.coordinates as Array<Position>], false, style, project);
+                break;
+            case 'MultiLineString':
+                this.drawPath(ctx, geometry.coordinates as Array<Array<Position>>, false, style, project);
+                break;
+            case 'Polygon':
+                this.drawPath(ctx, geometry.coordinates as Array<Array<Position>>, true, style, project);
+                break;
+            case 'MultiPolygon':
+                this.drawPath(ctx, (geometry.coordinates as Array<Array<Array<Position>>>).reduce((rings, polygon) => rings.concat(polygon), [] as Array<Array<Position>>), true, style, project);
+                break;
+            case 'GeometryCollection':
+                (geometry.geometries || []).forEach(g => this.drawGeometry(ctx, g, style, project));
+                break;
+            default:
+                // points are added as layers
+                break;
+        }
+    }
+
+    private drawPath(ctx: CanvasRenderingContext2D, lines: Array<Array<Position>>, closed: boolean, style: L.PathOptions, project: (position: Position) => Position): void {
+        ctx.beginPath();
+        lines.forEach(line => {
+            line.forEach((position, i) => {
+                const p = project(position);
+                if (i === 0) {
+                    ctx.moveTo(p[0], p[1]);
+                } else {
+                    ctx.lineTo(p[0], p[1]);
+                }
+            });
+            if (closed) {
+                ctx.closePath();
+            }
+        });
+
+        const color = style.color || DEFAULT_COLOR;
+        if (closed && style.fill !== false) {
+            ctx.globalAlpha = style.fillOpacity !== undefined ? style.fillOpacity : DEFAULT_FILL_OPACITY;
+            ctx.fillStyle = style.fillColor || color;
+            ctx.fill('evenodd');
+        }
+        if (style.stroke !== false) {
+            ctx.globalAlpha = style.opacity !== undefined ? style.opacity : 1;
+            ctx.strokeStyle = color;
+            ctx.lineWidth = style.weight !== undefined ? style.weight : DEFAULT_WEIGHT;
+            ctx.stroke();
+        }
+    }
+}
+
+export default GeoJsonTileLayer;
@@ -5,6 +5,8 @@ import 'leaflet/dist/leaflet-src.js';
 import '!style-loader!css-loader!resolve-url-loader!leaflet/dist/leaflet.css';
 
 import * as styles from './Map.scss';
+import TileBundleLayer from './TileBundleLayer';
+import GeoJsonTileLayer from './GeoJsonTileLayer';
 
 import MapConfiguration from '../../api/model/MapConfiguration';
 import GPSPosition from '../../api/model/GPSPosition';
@@ -13,6 +15,7 @@ import GPSTrack, {Element as TrackElement} from '../../api/model/GPSTrack';
 import {AppState, getMapConfig} from '../../reducers/reducers';
 
 const MAX_ZOOM = 17;
+const VIEWPORT_PADDING = 0.5;
 const CLASS_DISABLED = 'leaflet-disabled';
 
 interface PointDetails {
@@ -25,9 +28,9 @@ interface MapComponentProps {
     disableZoom?: boolean;
     position?: GPSPosition;
     track?: GPSTrack;
-    geoJson?: GeoJSONGeoJsonObject;
     showScale?: boolean;
     onShowDetails?: (details: PointDetails) => void;
+    onViewportChange?: (bbox: string, zoom: number) => void;
 }
 
 interface ContainerDispatchProps {
@@ -45,7 +48,8 @@ class Map extends React.Component<MapProps, {}> {
     map: LeafletMap;
     tiles: L.TileLayer;
     path?: L.Polyline;
-    geoJson?: L.GeoJSON;
+    geoJsonTiles?: GeoJsonTileLayer;
+    geoJsonConfig?: MapConfiguration;
     marker: L.Marker;
     circle: L.CircleMarker;
     zoomButtons: L.Control;
@@ -58,6 +62,8 @@ class Map extends React.Component<MapProps, {}> {
     positionBeforeDragging?: L.LatLng = undefined;
     dragging: boolean = false;
     zooming: boolean = false;
+    viewport?: L.LatLngBounds;
+    viewportZoom?: number;
 
     constructor(props: MapProps) {
         super(props);
@@ -84,8 +90,8 @@ class Map extends React.Component<MapProps, {}> {
             if (this.scale) {
                 this.map.removeControl(this.scale);
             }
-            if (this.geoJson) {
-                this.map.removeLayer(this.geoJson);
+            if (this.geoJsonTiles) {
+                this.map.removeLayer(this.geoJsonTiles);
             }
             this.map.remove();
         }
@@ -149,12 +155,16 @@ class Map extends React.Component<MapProps, {}> {
                     this.path = undefined;
                 }
             } else if (this.props.track !== undefined && nextTrack !== undefined) {
-                if (this.props.track.path.length !== nextTrack.path.length) {
-                    if (!this.path || this.props.track.start !== nextTrack.start) {
+                const prevPath = this.props.track.path;
+                const nextPath = nextTrack.path;
+                if (prevPath !== nextPath) {
+                    // simplified tracks may replace the last element
+                    const isAppended = nextPath.length >= prevPath.length && (prevPath.length === 0 || nextPath[prevPath.length - 1] === prevPath[prevPath.length - 1]);
+                    if (!this.path || this.props.track.start !== nextTrack.start || !isAppended) {
                         this.createPath();
                         nextTrack.path.map(this.addToPath);
                     } else {
-                        nextTrack.path.slice(this.props.track.path.length).map(this.addToPath);
+                        nextTrack.path.slice(prevPath.length).map(this.addToPath);
                     }
                 } else if (!this.path) {
                     this.createPath();
@@ -162,19 +172,11 @@ class Map extends React.Component<MapProps, {}> {
                 }
             }
 
-            const nextGeoJson = nextProps.geoJson;
-            if (this.props.geoJson === undefined && nextGeoJson !== undefined) {
-                this.geoJson = this.createGeoJsonLayer();
-            } else if (this.props.geoJson !== undefined && nextGeoJson === undefined) {
-                if (this.geoJson) {
-                    this.map.removeLayer(this.geoJson);
-                    this.geoJson = undefined;
-                }
-            } else if (this.props.geoJson !== undefined && nextGeoJson !== undefined && this.props.geoJson !== nextGeoJson) {
-                if (this.geoJson) {
-                    this.map.removeLayer(this.geoJson);
-                }
-                this.geoJson = this.createGeoJsonLayer();
+            if (nextProps.mapConfig !== this.props.mapConfig) {
+                // map files or GeoJSON files have been changed
+                this.updateGeoJsonTiles(nextProps.mapConfig);
+                this.viewport = undefined;
+                this.updateViewport();
             }
         }
     }
@@ -205,8 +207,9 @@ class Map extends React.Component<MapProps, {}> {
             this.map.on('dragend', this.onDragEnd);
             this.map.on('zoomstart', this.onZoomStart);
             this.map.on('zoomend', this.onZoomEnd);
+            this.map.on('moveend', this.onMoveEnd);
 
-            this.tiles = L.tileLayer('/api/map/{z}/{x}/{y}', {
+            this.tiles = new TileBundleLayer({
                 // attribution: '&copy; <a href="http://osm.org/copyright">OpenStreetMap</a> contributors'
                 maxNativeZoom: Math.min(MAX_ZOOM, props.mapConfig.maxZoom),
                 minNativeZoom: props.mapConfig.minZoom,
@@ -216,9 +219,8 @@ class Map extends React.Component<MapProps, {}> {
                 this.scale = L.control.scale().addTo(this.map);
             }
 
-            if (this.props.geoJson) {
-                this.geoJson = this.createGeoJsonLayer();
-            }
+            this.updateGeoJsonTiles(props.mapConfig);
+            this.updateViewport();
 
             if (!this.props.disableZoom) {
                 // add zoom buttons
@@ -369,6 +371,25 @@ class Map extends React.Component<MapProps, {}> {
         this.updateControls();
     };
 
+    private onMoveEnd = (e: Event) => {
+        this.updateViewport();
+    };
+
+    private updateViewport() {
+        // report a padded viewport, so data depending on it will only be reloaded after leaving it
+        if (!this.props.onViewportChange) {
+            return;
+        }
+        const zoom = this.map.getZoom();
+        const bounds = this.map.getBounds();
+        if (this.viewport && this.viewportZoom === zoom && this.viewport.contains(bounds)) {
+            return;
+        }
+        this.viewport = bounds.pad(VIEWPORT_PADDING);
+        this.viewportZoom = zoom;
+        this.props.onViewportChange(this.viewport.toBBoxString(), zoom);
+    }
+
     private updateControls() {
         if (this.followButton) {
             const c = this.followButton.getContainer();
@@ -448,15 +469,31 @@ class Map extends React.Component<MapProps, {}> {
         }
     };
 
-    private createGeoJsonLayer(): L.GeoJSON {
-        return L.geoJSON(
-            this.props.geoJson,
-            {
-                style: this.getGeoJsonStyle,
-                pointToLayer: this.getGeoJsonPointLayer,
-                onEachFeature: this.handleGeoJsonFeature,
+    private updateGeoJsonTiles(mapConfig?: MapConfiguration) {
+        if (mapConfig === this.geoJsonConfig) {
+            return;
+        }
+        this.geoJsonConfig = mapConfig;
+        if (mapConfig && mapConfig.withGeoJson) {
+            if (this.geoJsonTiles) {
+                // tiles will be revalidated
+                this.geoJsonTiles.redraw();
+            } else {
+                this.geoJsonTiles = new GeoJsonTileLayer(
+                    this.getGeoJsonStyle,
+                    {
+                        pointToLayer: this.getGeoJsonPointLayer,
+                        onEachFeature: this.handleGeoJsonFeature,
+                    },
+                    {
+                        zIndex: 2,
+                    }
+                ).addTo(this.map);
             }
-        ).addTo(this.map);
+        } else if (this.geoJsonTiles) {
+            this.map.removeLayer(this.geoJsonTiles);
+            this.geoJsonTiles = undefined;
+        }
     }
 
     private getGeoJsonStyle = (feature?: GeoJSONFeature<GeoJSONGeometryObject>): L.PathOptions => {
@@ -0,0 +1,86 @@
+import MapEndpoint from '../../api/MapEndpoint';
+import TileBundleEntry from '../../api/model/TileBundleEntry';
+
+const MAX_BUNDLE_TILES = 256;
+
+interface TileCoords {
+    z: number;
+    x: number;
+    y: number;
+}
+
+interface PendingTile {
+    coords: L.Coords;
+    tile: HTMLImageElement;
+    done: L.DoneCallback;
+}
+
+const getTileKey = (coords: TileCoords): string => coords.z + '/' + coords.x + '/' + coords.y;
+
+/**
+ * Tile layer that loads the tiles in bundles instead of requesting every tile on its own. Leaflet creates all tiles of an update in one pass, so they are collected and
+ * requested together as soon as the pass is finished.
+ */
+class TileBundleLayer extends L.TileLayer {
+    private mapEndpoint: MapEndpoint = new MapEndpoint();
+    private pendingTiles: Array<PendingTile> = [];
+    private loadTimeout?: number;
+
+    constructor(options?: L.TileLayerOptions) {
+        super('/api/map/{z}/{x}/{y}', options);
+    }
+
+    createTile(coords: L.Coords, done: L.DoneCallback): HTMLElement {
+        const tile = document.createElement('img');
+        tile.alt = '';
+        tile.setAttribute('role', 'presentation');
+        tile.onload = () => {
+            URL.revokeObjectURL(tile.src);
+            done(undefined, tile);
+        };
+        tile.onerror = () => {
+            URL.revokeObjectURL(tile.src);
+            done(new Error('Could not display tile ' + getTileKey(coords)), tile);
+        };
+
+        this.pendingTiles.push({coords, tile, done});
+        if (this.loadTimeout === undefined) {
+            this.loadTimeout = window.setTimeout(this.loadPendingTiles, 0);
+        }
+        return tile;
+    }
+
+    private loadPendingTiles = (): void => {
+        const pendingTiles = this.pendingTiles;
+        this.pendingTiles = [];
+        this.loadTimeout = undefined;
+        for (let i = 0; i < pendingTiles.length; i += MAX_BUNDLE_TILES) {
+            this.loadTiles(pendingTiles.slice(i, i + MAX_BUNDLE_TILES));
+        }
+    };
+
+    private loadTiles(pendingTiles: Array<PendingTile>): void {
+        const tiles = pendingTiles.map(p => ({z: p.coords.z, x: p.coords.x, y: p.coords.y}));
+        this.mapEndpoint.getTiles({tiles})
+            .then(entries => {
+                const entriesByKey: { [key: string]: TileBundleEntry } = {};
+                entries.forEach(entry => entriesByKey[getTileKey(entry)] = entry);
+                pendingTiles.forEach(p => this.showTile(p, entriesByKey[getTileKey(p.coords)]));
+            })
+            .catch((error: Error) => pendingTiles.forEach(p => p.done(error, p.tile)));
+    }
+
+    private showTile(pendingTile: PendingTile, entry?: TileBundleEntry): void {
+        if (!pendingTile.tile.parentNode) {
+            // tile has already been removed by Leaflet
+            return;
+        }
+        if (!entry || entry.status !== 'OK' || !entry.data || entry.contentEncoding) {
+            pendingTile.done(new Error('Tile not found: ' + getTileKey(pendingTile.coords)), pendingTile.tile);
+            return;
+        }
+        pendingTile.tile.src = URL.createObjectURL(new Blob([entry.data], {type: entry.mimeType}));
+    }
+}
+
+export default TileBundleLayer;
@@ -0,0 +1,27 @@
+import GPSTrack from '../api/model/GPSTrack';
+
+/**
+ * Appends the path elements of a track change to the track. Returns undefined if the change does not continue the track, so the track must be reloaded. This includes
+ * changes of a track simplified for another zoom level, as the sequence numbers of the zoom levels differ.
+ */
+const mergeTrack = (track: GPSTrack|undefined, change: GPSTrack): GPSTrack|undefined => {
+    const path = change.path || [];
+    if (change.seq === 0) {
+        return {
+            ...change,
+            path,
+        };
+    }
+    if (!track || track.zoom !== change.zoom || track.start !== change.start || change.seq > track.path.length) {
+        return undefined;
+    }
+    return {
+        ...change,
+        seq: 0,
+        path: track.path.slice(0, change.seq).concat(path),
+    };
+};
+
+export {
+    mergeTrack,
+};
@@ -4,20 +4,27 @@ import {Actions} from '../actions/actions';
 import MapConfiguration from '../api/model/MapConfiguration';
 import GPSData from '../api/model/GPSData';
 import GPSPosition from '../api/model/GPSPosition';
+import GPSTrack from '../api/model/GPSTrack';
 import EventMessage from '../api/model/EventMessage';
 import GPSPositionChangeEvent, {EVENT_NAME as GPSPositionChangeEventName} from '../api/model/GPSPositionChangeEvent';
 import GPSMetaInfoChangeEvent, {EVENT_NAME as GPSMetaInfoChangeEventName} from '../api/model/GPSMetaInfoChangeEvent';
 import GPSTrackChangeEvent, {EVENT_NAME as GPSTrackChangeEventName} from '../api/model/GPSTrackChangeEvent';
 import HealthStatusChangeEvent, {EVENT_NAME as HealthStatusChangeEventName} from '../api/model/HealthStatusChangeEvent';
+import MapConfigurationChangeEvent, {EVENT_NAME as MapConfigurationChangeEventName} from '../api/model/MapConfigurationChangeEvent';
+import ProximityAlertEvent, {EVENT_NAME as ProximityAlertEventName} from '../api/model/ProximityAlertEvent';
 import GPSMetaInfo from '../api/model/GPSMetaInfo';
 import HealthStatus from '../api/model/HealthStatus';
 import * as HealthStatusUtils from '../helpers/HeathStatusUtils';
+import * as GPSTrackUtils from '../helpers/GPSTrackUtils';
 
 interface AppState extends Readonly<{}> {
     mapConfig?: MapConfiguration;
     gpsData?: GPSData;
     geoJson?: GeoJSONGeoJsonObject;
     healthStatus?: HealthStatus;
+    proximityAlert?: ProximityAlertEvent;
+    trackResyncSeq?: number;
+    trackZoom?: number;
     websocketConnected: boolean;
     healthIsOk: boolean;
 }
@@ -72,6 +79,38 @@ const reducers = handleActions<AppState, {}>(
             };
         },
 
+        [Actions.RECEIVE_GPS_TRACK]: (state: AppState, action: Action<GPSTrack>) => {
+            if (action.error || !action.payload) {
+                return state;
+            }
+            const track = GPSTrackUtils.mergeTrack(state.gpsData ? state.gpsData.track : undefined, action.payload);
+            if (!track) {
+                // track has been restarted or simplified for another zoom level -> reload whole track
+                return {
+                    ...state,
+                    trackResyncSeq: 0,
+                };
+            }
+            return {
+                ...state,
+                gpsData: {
+                    ...state.gpsData,
+                    track,
+                },
+                trackResyncSeq: undefined,
+            };
+        },
+
+        [Actions.CHANGE_GPS_TRACK_ZOOM]: (state: AppState, action: Action<number>) => {
+            if (action.error || action.payload === undefined) {
+                return state;
+            }
+            return {
+                ...state,
+                trackZoom: action.payload,
+            };
+        },
+
         [Actions.WEBSOCKET_CONNECTED]: (state: AppState, action: Action<{}>) => {
             return {
                 ...state,
@@ -110,12 +149,21 @@ const reducers = handleActions<AppState, {}>(
                     };
                 case GPSTrackChangeEventName:
                     const e3: GPSTrackChangeEvent = action.payload.event as GPSTrackChangeEvent;
+                    const currentTrack = state.gpsData ? state.gpsData.track : undefined;
+                    const nextTrack = GPSTrackUtils.mergeTrack(currentTrack, e3.track);
+                    if (!nextTrack) {
+                        // missed track changes -> reload missing part of track
+                        return {
+                            ...state,
+                            trackResyncSeq: currentTrack && currentTrack.start === e3.track.start && currentTrack.zoom === e3.track.zoom ? currentTrack.path.length : 0,
+                        };
+                    }
                     return {
                         ...state,
                         gpsData: {
                             ...state.gpsData,
-                            track: e3.track,
-                        }
+                            track: nextTrack,
+                        },
                     };
                 case HealthStatusChangeEventName:
                     const e4: HealthStatusChangeEvent = action.payload.event as HealthStatusChangeEvent;
@@ -135,6 +183,21 @@ const reducers = handleActions<AppState, {}>(
                         healthStatus,
                         healthIsOk,
                     };
+                case MapConfigurationChangeEventName:
+                    const e5: MapConfigurationChangeEvent = action.payload.event as MapConfigurationChangeEvent;
+                    if (!e5.configuration) {
+                        return state;
+                    }
+                    return {
+                        ...state,
+                        mapConfig: e5.configuration,
+                    };
+                case ProximityAlertEventName:
+                    const e6: ProximityAlertEvent = action.payload.event as ProximityAlertEvent;
+                    return {
+                        ...state,
+                        proximityAlert: e6,
+                    };
                 default:
                     console.log('Received unknown message type ' + action.payload.type);
                     return state;
@@ -176,6 +239,14 @@ function getCurrentHealthStatus(state: AppState): HealthStatus|undefined {
     return state.healthStatus;
 }
 
+function getTrackResyncSeq(state: AppState): number|undefined {
+    return state.trackResyncSeq;
+}
+
+function getProximityAlert(state: AppState): ProximityAlertEvent|undefined {
+    return state.proximityAlert;
+}
+
 export {
     AppState,
 
@@ -187,6 +258,8 @@ export {
     getCurrentGPSPosition,
     getCurrentGPSMetaInfo,
     getCurrentHealthStatus,
+    getTrackResyncSeq,
+    getProximityAlert,
 };
 
 export default reducers;
\ No newline at end of file
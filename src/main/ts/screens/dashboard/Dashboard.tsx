@@ -13,13 +13,15 @@ import Map, {PointDetails} from '../../components/map/Map';
 import MapPointDetails from '../../components/mapPointDetails/MapPointDetails';
 
 import GPSData from '../../api/model/GPSData';
-import {AppState, getCurrentGPSData, getGeoJson} from '../../reducers/reducers';
-import {loadGpsData, subscribeEvent, unsubscribeEvent} from '../../actions/actions';
+import {AppState, getCurrentGPSData, getTrackResyncSeq} from '../../reducers/reducers';
+import {loadGpsData, loadGpsTrack, setGpsTrackZoom, subscribeEvent, unsubscribeEvent} from '../../actions/actions';
 import {EVENT_NAME as GPSPositionChangeEventName} from '../../api/model/GPSPositionChangeEvent';
 import {EVENT_NAME as GPSTrackChangeEventName} from '../../api/model/GPSTrackChangeEvent';
 
 interface ContainerDispatchProps {
     loadGpsData: () => void;
+    loadGpsTrack: (sinceSeq: number) => void;
+    setTrackZoom: (zoom: number) => void;
     subscribeGpsPosition: () => void;
     unsubscribeGpsPosition: () => void;
     subscribeGpsTrack: () => void;
@@ -28,7 +30,7 @@ interface ContainerDispatchProps {
 
 interface ContainerStateProps {
     gpsData?: GPSData;
-    geoJson?: GeoJSONGeoJsonObject;
+    trackResyncSeq?: number;
 }
 
 type ContainerOwnProps = ProviderProps;
@@ -57,6 +59,12 @@ class Dashboard extends React.Component<DashboardProps, DashboardState> {
         this.props.unsubscribeGpsTrack();
     }
 
+    componentWillReceiveProps(nextProps: DashboardProps) {
+        if (nextProps.trackResyncSeq !== undefined && nextProps.trackResyncSeq !== this.props.trackResyncSeq) {
+            this.props.loadGpsTrack(nextProps.trackResyncSeq);
+        }
+    }
+
     render() {
         let speed = 0;
         let distance = 0;
@@ -134,15 +142,20 @@ class Dashboard extends React.Component<DashboardProps, DashboardState> {
                     <Map
                         position={this.props.gpsData ? this.props.gpsData.position : undefined}
                         track={this.props.gpsData ? this.props.gpsData.track : undefined}
-                        geoJson={this.props.geoJson}
                         showScale={true}
                         onShowDetails={this.showMapPointDetails}
+                        onViewportChange={this.onViewportChange}
                     />
                 </Paper>
             </div>
         );
     }
 
+    private onViewportChange = (bbox: string, zoom: number): void => {
+        // the track is shared with the map screen, so it follows the zoom level of the visible map
+        this.props.setTrackZoom(zoom);
+    };
+
     private showMapPointDetails = (details: PointDetails): void => {
         this.setState({
             ...this.state,
@@ -161,10 +174,12 @@ class Dashboard extends React.Component<DashboardProps, DashboardState> {
 const Dashboard$$ = connect<ContainerStateProps, ContainerDispatchProps, ContainerOwnProps>(
     (state: AppState, ownProps: ContainerOwnProps): ContainerStateProps => ({
         gpsData: getCurrentGPSData(state),
-        geoJson: getGeoJson(state),
+        trackResyncSeq: getTrackResyncSeq(state),
     }),
     (dispatch, ownProps: ContainerOwnProps): ContainerDispatchProps => ({
         loadGpsData: () => dispatch(loadGpsData()),
+        loadGpsTrack: (sinceSeq: number) => dispatch(loadGpsTrack(sinceSeq)),
+        setTrackZoom: (zoom: number) => dispatch(setGpsTrackZoom(zoom)),
         subscribeGpsPosition: () => dispatch(subscribeEvent(GPSPositionChangeEventName)),
         unsubscribeGpsPosition: () => dispatch(unsubscribeEvent(GPSPositionChangeEventName)),
         subscribeGpsTrack: () => dispatch(subscribeEvent(GPSTrackChangeEventName)),
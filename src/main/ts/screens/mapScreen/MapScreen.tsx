@@ -5,23 +5,29 @@ import * as styles from './MapScreen.scss';
 import Map, {PointDetails} from '../../components/map/Map';
 import MapPointDetails from '../../components/mapPointDetails/MapPointDetails';
 
-import {AppState, getCurrentGPSData, getGeoJson} from '../../reducers/reducers';
+import {AppState, getCurrentGPSData, getProximityAlert, getTrackResyncSeq} from '../../reducers/reducers';
 import GPSData from '../../api/model/GPSData';
-import {loadGpsData, subscribeEvent, unsubscribeEvent} from '../../actions/actions';
+import {loadGpsData, loadGpsTrack, setGpsTrackZoom, subscribeEvent, unsubscribeEvent} from '../../actions/actions';
 import {EVENT_NAME as GPSPositionChangeEventName} from '../../api/model/GPSPositionChangeEvent';
 import {EVENT_NAME as GPSTrackChangeEventName} from '../../api/model/GPSTrackChangeEvent';
+import ProximityAlertEvent, {EVENT_NAME as ProximityAlertEventName} from '../../api/model/ProximityAlertEvent';
 
 interface ContainerDispatchProps {
     loadGpsData: () => void;
+    loadGpsTrack: (sinceSeq: number) => void;
+    setTrackZoom: (zoom: number) => void;
     subscribeGpsPosition: () => void;
     unsubscribeGpsPosition: () => void;
     subscribeGpsTrack: () => void;
     unsubscribeGpsTrack: () => void;
+    subscribeProximityAlert: () => void;
+    unsubscribeProximityAlert: () => void;
 }
 
 interface ContainerStateProps {
     gpsData?: GPSData;
-    geoJson?: GeoJSONGeoJsonObject;
+    proximityAlert?: ProximityAlertEvent;
+    trackResyncSeq?: number;
 }
 
 type ContainerOwnProps = ProviderProps;
@@ -43,11 +49,31 @@ class MapScreen extends React.Component<MapScreenProps, MapScreenState> {
         this.props.loadGpsData();
         this.props.subscribeGpsPosition();
         this.props.subscribeGpsTrack();
+        this.props.subscribeProximityAlert();
     }
 
     componentWillUnmount() {
         this.props.unsubscribeGpsPosition();
         this.props.unsubscribeGpsTrack();
+        this.props.unsubscribeProximityAlert();
+    }
+
+    componentWillReceiveProps(nextProps: MapScreenProps) {
+        if (nextProps.trackResyncSeq !== undefined && nextProps.trackResyncSeq !== this.props.trackResyncSeq) {
+            this.props.loadGpsTrack(nextProps.trackResyncSeq);
+        }
+
+        const alert = nextProps.proximityAlert;
+        if (alert && alert !== this.props.proximityAlert) {
+            // show approached feature
+            const properties = alert.feature.properties || {};
+            /* tslint:disable:no-string-literal */
+            const name = properties['name'] || properties['Name'] || '';
+            const description = Math.round(alert.distance) + ' m' + (properties['description'] ? ' - ' + properties['description'] : '');
+            /* tslint:enable:no-string-literal */
+            const coordinates = alert.feature.geometry.coordinates;
+            this.showMapPointDetails({name, description, position: new L.LatLng(coordinates[1], coordinates[0])});
+        }
     }
 
     render() {
@@ -58,14 +84,18 @@ class MapScreen extends React.Component<MapScreenProps, MapScreenState> {
                 <Map
                     position={this.props.gpsData ? this.props.gpsData.position : undefined}
                     track={this.props.gpsData ? this.props.gpsData.track : undefined}
-                    geoJson={this.props.geoJson}
                     showScale={true}
                     onShowDetails={this.showMapPointDetails}
+                    onViewportChange={this.onViewportChange}
                 />
             </div>
         );
     }
 
+    private onViewportChange = (bbox: string, zoom: number): void => {
+        this.props.setTrackZoom(zoom);
+    };
+
     private showMapPointDetails = (details: PointDetails): void => {
         this.setState({
             ...this.state,
@@ -84,14 +114,19 @@ class MapScreen extends React.Component<MapScreenProps, MapScreenState> {
 const MapScreen$$ = connect<ContainerStateProps, ContainerDispatchProps, ContainerOwnProps>(
     (state: AppState, ownProps: ContainerOwnProps): ContainerStateProps => ({
         gpsData: getCurrentGPSData(state),
-        geoJson: getGeoJson(state),
+        proximityAlert: getProximityAlert(state),
+        trackResyncSeq: getTrackResyncSeq(state),
     }),
     (dispatch, ownProps: ContainerOwnProps): ContainerDispatchProps => ({
         loadGpsData: () => dispatch(loadGpsData()),
+        loadGpsTrack: (sinceSeq: number) => dispatch(loadGpsTrack(sinceSeq)),
+        setTrackZoom: (zoom: number) => dispatch(setGpsTrackZoom(zoom)),
         subscribeGpsPosition: () => dispatch(subscribeEvent(GPSPositionChangeEventName)),
         unsubscribeGpsPosition: () => dispatch(unsubscribeEvent(GPSPositionChangeEventName)),
         subscribeGpsTrack: () => dispatch(subscribeEvent(GPSTrackChangeEventName)),
         unsubscribeGpsTrack: () => dispatch(unsubscribeEvent(GPSTrackChangeEventName)),
+        subscribeProximityAlert: () => dispatch(subscribeEvent(ProximityAlertEventName)),
+        unsubscribeProximityAlert: () => dispatch(unsubscribeEvent(ProximityAlertEventName)),
     })
 )(MapScreen);
 
@@ -100,12 +100,14 @@ public class MockGPSService implements GPSService {
 				lastPosition.setAltitude(getJitter(100, 10));
 				lastPosition.setSpeed(0.0);
 				lastPosition.setClimbRate(0.0);
+				lastPosition.setCourse(Math.random() * 360);
 			} else {
 				lastPosition.setLongitude(getJitter(lastPosition.getLongitude(), 0.00025));
 				lastPosition.setLatitude(getJitter(lastPosition.getLatitude(), 0.00025));
 				lastPosition.setAltitude(Math.max(0, getJitter(lastPosition.getAltitude(), 0.5)));
 				lastPosition.setSpeed(Math.max(0, getJitter(lastPosition.getSpeed(), 2.0 / 3.6)));
 				lastPosition.setClimbRate(Math.max(0, getJitter(lastPosition.getClimbRate(), 0.5 / 3.6)));
+				lastPosition.setCourse((getJitter(lastPosition.getCourse(), 10) + 360) % 360);
 			}
 			lastPosition.setLongitudeError(20 * Math.random());
 			lastPosition.setLatitudeError(20 * Math.random());
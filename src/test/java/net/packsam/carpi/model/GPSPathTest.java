@@ -0,0 +1,139 @@
+package net.packsam.carpi.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Tests for the columnar GPS path.
+ *
+ * @author osterrath
+ *
+ */
+public class GPSPathTest {
+	/**
+	 * Appended elements are kept while the path grows.
+	 */
+	@Test
+	public void appendsBeyondCapacity() {
+		GPSPath path = createPath(2, 10);
+		assertEquals(10, path.size());
+		for (int i = 0; i < 10; i++) {
+			assertEquals(1000L * i, path.getTimestamp(i));
+			assertEquals(i, path.getLongitude(i), 0);
+			assertEquals(-i, path.getLatitude(i), 0);
+			assertEquals(i + 0.5, path.getAltitude(i), 0);
+			assertEquals(i, path.getDistanceToLast(i), 0);
+		}
+		assertEquals(45, path.getDistance(), 0);
+	}
+
+	/**
+	 * Snapshots keep their elements while the path is appended to and grows.
+	 */
+	@Test
+	public void snapshotsAreStable() {
+		GPSPath path = createPath(2, 2);
+		GPSPath snapshot = path.snapshot();
+		for (int i = 2; i < 10; i++) {
+			path.append(1000L * i, i, -i, i + 0.5, i);
+		}
+		assertEquals(2, snapshot.size());
+		assertEquals(1, snapshot.getLongitude(1), 0);
+		assertEquals(1, snapshot.getDistance(), 0);
+		assertEquals(10, path.snapshot().size());
+	}
+
+	/**
+	 * Snapshots starting at an element have relative indices and the distance of their elements.
+	 */
+	@Test
+	public void snapshotsFromElement() {
+		GPSPath path = createPath(4, 10);
+		GPSPath part = path.snapshot(6);
+		assertEquals(4, part.size());
+		assertEquals(6, part.getLongitude(0), 0);
+		assertEquals(6 + 7 + 8 + 9, part.getDistance(), 0);
+
+		GPSPath subPart = part.snapshot(2);
+		assertEquals(2, subPart.size());
+		assertEquals(8, subPart.getLongitude(0), 0);
+		assertEquals(8 + 9, subPart.getDistance(), 0);
+
+		assertTrue(path.snapshot(10).isEmpty());
+	}
+
+	/**
+	 * Elements of a range are passed to the consumer.
+	 */
+	@Test
+	public void passesRangeToConsumer() {
+		GPSPath part = createPath(4, 10).snapshot(2);
+		List<Double> longitudes = new ArrayList<>();
+		part.forEach(1, 4, (timestamp, longitude, latitude, altitude) -> longitudes.add(longitude));
+		assertEquals(3, longitudes.size());
+		assertEquals(3, longitudes.get(0), 0);
+		assertEquals(5, longitudes.get(2), 0);
+	}
+
+	/**
+	 * Snapshots can not be appended to.
+	 */
+	@Test(expected = UnsupportedOperationException.class)
+	public void snapshotsAreReadOnly() {
+		createPath(4, 2).snapshot().append(0, 0, 0, 0, 0);
+	}
+
+	/**
+	 * Elements outside of a snapshot can not be read.
+	 */
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void checksIndices() {
+		GPSPath path = createPath(4, 2);
+		GPSPath snapshot = path.snapshot();
+		path.append(0, 0, 0, 0, 0);
+		snapshot.getLongitude(2);
+	}
+
+	/**
+	 * Invalid snapshot starts are rejected.
+	 */
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void checksSnapshotStart() {
+		createPath(4, 2).snapshot(3);
+	}
+
+	/**
+	 * The path is serialized as array of positions.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void serializesPositions() throws Exception {
+		String json = new ObjectMapper().writeValueAsString(createPath(4, 3).snapshot(1));
+		assertEquals("[{\"longitude\":1.0,\"latitude\":-1.0,\"altitude\":1.5},{\"longitude\":2.0,\"latitude\":-2.0,\"altitude\":2.5}]", json);
+	}
+
+	/**
+	 * Creates a path with the given number of elements.
+	 *
+	 * @param capacity
+	 *            initial capacity of the path
+	 * @param size
+	 *            number of elements
+	 * @return path
+	 */
+	private static GPSPath createPath(int capacity, int size) {
+		GPSPath path = new GPSPath(capacity);
+		for (int i = 0; i < size; i++) {
+			path.append(1000L * i, i, -i, i + 0.5, i);
+		}
+		return path;
+	}
+}
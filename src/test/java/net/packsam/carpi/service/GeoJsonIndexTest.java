@@ -0,0 +1,152 @@
+package net.packsam.carpi.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Tests for the R-tree of GeoJson features.
+ *
+ * @author osterrath
+ *
+ */
+public class GeoJsonIndexTest {
+	/**
+	 * Folder for the test files.
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Random bounding box queries return the same features as checking every feature.
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void matchesBruteForce() throws IOException {
+		Random random = new Random(42);
+		StringBuilder features = new StringBuilder();
+		for (int i = 0; i < 2000; i++) {
+			double lon = random.nextDouble() * 358 - 179;
+			double lat = random.nextDouble() * 170 - 85;
+			if (i % 3 == 0) {
+				appendFeature(features, "Point", String.format(Locale.ROOT, "[%f, %f]", lon, lat));
+			} else {
+				appendFeature(features, "LineString", String.format(Locale.ROOT, "[[%f, %f], [%f, %f]]", lon, lat, lon + random.nextDouble(), lat + random.nextDouble()));
+			}
+		}
+		GeoJsonIndex index = new GeoJsonIndex(createStore(features));
+
+		for (int q = 0; q < 500; q++) {
+			double minLon = random.nextDouble() * 360 - 180;
+			double minLat = random.nextDouble() * 180 - 90;
+			double maxLon = q % 5 == 0 ? random.nextDouble() * 360 - 180 : Math.min(180, minLon + random.nextDouble() * 20);
+			double maxLat = Math.min(90, minLat + random.nextDouble() * 20);
+			assertArrayEquals("query " + q, bruteForce(index.getStore(), minLon, minLat, maxLon, maxLat), index.query(minLon, minLat, maxLon, maxLat));
+		}
+	}
+
+	/**
+	 * A feature spanning both parts of a bounding box crossing the antimeridian is only returned once.
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void crossesAntimeridian() throws IOException {
+		StringBuilder features = new StringBuilder();
+		appendFeature(features, "LineString", "[[-179.5, 0], [179.5, 1]]");
+		appendFeature(features, "Point", "[179.8, 0.5]");
+		appendFeature(features, "Point", "[-179.8, 0.5]");
+		appendFeature(features, "Point", "[0, 0.5]");
+		GeoJsonIndex index = new GeoJsonIndex(createStore(features));
+
+		assertArrayEquals(new int[] { 0, 1, 2 }, index.query(179, 0, -179, 1));
+		assertArrayEquals(new int[] { 0, 3 }, index.query(-1, 0, 1, 1));
+	}
+
+	/**
+	 * An empty index finds nothing.
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void emptyIndex() throws IOException {
+		GeoJsonIndex index = new GeoJsonIndex(createStore(new StringBuilder()));
+		assertEquals(0, index.query(-180, -90, 180, 90).length);
+	}
+
+	/**
+	 * Searches the features intersecting the bounding box by checking every feature.
+	 *
+	 * @param store
+	 *            feature store
+	 * @param minLon
+	 *            minimum longitude
+	 * @param minLat
+	 *            minimum latitude
+	 * @param maxLon
+	 *            maximum longitude, less than the minimum longitude for bounding boxes crossing the antimeridian
+	 * @param maxLat
+	 *            maximum latitude
+	 * @return feature numbers in ascending order
+	 */
+	private static int[] bruteForce(GeoJsonStore store, double minLon, double minLat, double maxLon, double maxLat) {
+		IntList result = new IntList();
+		for (int i = 0; i < store.size(); i++) {
+			double[] b = store.getBounds(i);
+			boolean latitudes = b[1] <= maxLat && b[3] >= minLat;
+			boolean longitudes = minLon > maxLon ? b[2] >= minLon || b[0] <= maxLon : b[0] <= maxLon && b[2] >= minLon;
+			if (latitudes && longitudes) {
+				result.add(i);
+			}
+		}
+		return result.toArray();
+	}
+
+	/**
+	 * Appends a feature to the JSON array content.
+	 *
+	 * @param features
+	 *            features JSON
+	 * @param type
+	 *            geometry type
+	 * @param coordinates
+	 *            coordinates JSON
+	 */
+	private static void appendFeature(StringBuilder features, String type, String coordinates) {
+		if (features.length() > 0) {
+			features.append(',');
+		}
+		features.append("{\"type\": \"Feature\", \"geometry\": {\"type\": \"").append(type).append("\", \"coordinates\": ").append(coordinates).append("}, \"properties\": {}}");
+	}
+
+	/**
+	 * Creates a store with the given features.
+	 *
+	 * @param features
+	 *            features JSON
+	 * @return feature store
+	 * @throws IOException
+	 */
+	private GeoJsonStore createStore(StringBuilder features) throws IOException {
+		File file = folder.newFile();
+		String json = "{\"type\": \"FeatureCollection\", \"features\": [" + features + "]}";
+		Files.write(file.toPath(), json.getBytes(StandardCharsets.UTF_8));
+		GeoJsonStore store = new GeoJsonStore(new ObjectMapper().getFactory());
+		store.read(file);
+		store.compact();
+		return store;
+	}
+}
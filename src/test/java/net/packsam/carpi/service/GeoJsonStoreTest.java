@@ -0,0 +1,151 @@
+package net.packsam.carpi.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.geojson.FeatureCollection;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Tests for the packed GeoJson feature store.
+ *
+ * @author osterrath
+ *
+ */
+public class GeoJsonStoreTest {
+	/**
+	 * Feature collection with all geometry types.
+	 */
+	private static final String ALL_TYPES = "{'type': 'FeatureCollection', 'features': [" //
+			+ "{'type': 'Feature', 'id': 'point', 'geometry': {'type': 'Point', 'coordinates': [11.5820803, 48.1351253]}, 'properties': {'name': 'Munich', 'minzoom': 10}}," //
+			+ "{'type': 'Feature', 'geometry': {'type': 'MultiPoint', 'coordinates': [[1, 2], [3, 4]]}, 'properties': {'name': 'points', 'tags': ['a', 'b']}}," //
+			+ "{'type': 'Feature', 'geometry': {'type': 'LineString', 'coordinates': [[-0.1, 51.5], [2.35, 48.8566]]}, 'properties': {'nested': {'a': 1}}}," //
+			+ "{'type': 'Feature', 'geometry': {'type': 'MultiLineString', 'coordinates': [[[0, 0], [1, 1]], [[2, 2], [3, 3], [4, 4]]]}, 'properties': {}}," //
+			+ "{'type': 'Feature', 'geometry': {'type': 'Polygon', 'coordinates': [[[0, 0], [10, 0], [10, 10], [0, 0]], [[1, 1], [2, 1], [2, 2], [1, 1]]]}, 'properties': {'maxzoom': 5}}," //
+			+ "{'type': 'Feature', 'geometry': {'type': 'MultiPolygon', 'coordinates': [[[[0, 0], [1, 0], [1, 1], [0, 0]]], [[[5, 5], [6, 5], [6, 6], [5, 5]]]]}, 'properties': {'name': 'points'}}," //
+			+ "{'type': 'Feature', 'geometry': {'type': 'GeometryCollection', 'geometries': [{'type': 'Point', 'coordinates': [7, 8]}, {'type': 'LineString', 'coordinates': [[7, 8], [9, 10]]}]}, 'properties': {}}," //
+			+ "{'type': 'Feature', 'geometry': null, 'properties': {'empty': null}}" //
+			+ "]}";
+
+	/**
+	 * Mapper for the expected features.
+	 */
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	/**
+	 * Folder for the test files.
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Stored features are returned like parsed by Jackson.
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void roundTrip() throws IOException {
+		File file = createFile(ALL_TYPES);
+		GeoJsonStore store = new GeoJsonStore(mapper.getFactory());
+		store.read(file);
+		store.compact();
+
+		FeatureCollection expected = mapper.readValue(file, FeatureCollection.class);
+		assertEquals(expected.getFeatures().size(), store.size());
+		for (int i = 0; i < store.size(); i++) {
+			assertEquals("feature " + i, expected.getFeatures().get(i), store.getFeature(i));
+		}
+		assertEquals(1 + 2 + 2 + 5 + 8 + 8 + 3, store.getCoordinateCount());
+	}
+
+	/**
+	 * Points, bounding boxes, properties and zoom visibility are answered from the packed data.
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void answersFeatureQueries() throws IOException {
+		GeoJsonStore store = new GeoJsonStore(mapper.getFactory());
+		store.read(createFile(ALL_TYPES));
+
+		assertTrue(store.isPoint(0));
+		assertFalse(store.isPoint(1));
+		assertFalse(store.isPoint(7));
+		assertArrayEquals(new double[] { -0.1, 48.8566, 2.35, 51.5 }, store.getBounds(2), 1e-7);
+		assertTrue(store.getBounds(7)[0] > store.getBounds(7)[2]);
+		assertEquals("Munich", store.getProperty(0, "name"));
+		assertNull(store.getProperty(0, "unknown"));
+		assertNull(store.getGeometry(7));
+
+		assertFalse(store.isVisible(0, 9));
+		assertTrue(store.isVisible(0, 10));
+		assertTrue(store.isVisible(4, 5));
+		assertFalse(store.isVisible(4, 6));
+		assertTrue(store.isVisible(1, 0));
+	}
+
+	/**
+	 * A file that could not be read adds none of its features, the features of other files stay.
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void rollsBackInvalidFile() throws IOException {
+		GeoJsonStore store = new GeoJsonStore(mapper.getFactory());
+		store.read(createFile(ALL_TYPES));
+
+		File truncated = createFile("{'type': 'FeatureCollection', 'features': [" //
+				+ "{'type': 'Feature', 'id': 'new', 'geometry': {'type': 'LineString', 'coordinates': [[1, 1], [2, 2]]}, 'properties': {'new': true}}," //
+				+ "{'type': 'Feature', 'geometry': {'type': 'LineString', 'coordinates': [[1, 1], [2");
+		try {
+			store.read(truncated);
+			fail("truncated file has been read");
+		} catch (IOException e) {
+		}
+		File noCollection = createFile("{'type': 'Feature', 'features': [{'type': 'Feature', 'geometry': {'type': 'Point', 'coordinates': [1, 1]}, 'properties': {}}]}");
+		try {
+			store.read(noCollection);
+			fail("feature has been read as collection");
+		} catch (IOException e) {
+		}
+		assertEquals(8, store.size());
+		assertEquals(29, store.getCoordinateCount());
+
+		store.read(createFile("{'type': 'FeatureCollection', 'features': [{'type': 'Feature', 'id': 'last', 'geometry': {'type': 'Point', 'coordinates': [3, 4]}, 'properties': {'name': 'last'}}]}"));
+		FeatureCollection expected = mapper.readValue(createFile(ALL_TYPES), FeatureCollection.class);
+		assertEquals(9, store.size());
+		for (int i = 0; i < 8; i++) {
+			assertEquals("feature " + i, expected.getFeatures().get(i), store.getFeature(i));
+		}
+		assertEquals("last", store.getFeature(8).getId());
+		assertEquals("last", store.getProperty(8, "name"));
+		assertArrayEquals(new double[] { 3, 4, 3, 4 }, store.getBounds(8), 0);
+	}
+
+	/**
+	 * Writes a GeoJson file.
+	 *
+	 * @param json
+	 *            JSON with single quotes
+	 * @return created file
+	 * @throws IOException
+	 */
+	private File createFile(String json) throws IOException {
+		File file = folder.newFile();
+		Files.write(file.toPath(), json.replace('\'', '"').getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+}
@@ -0,0 +1,169 @@
+package net.packsam.carpi.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.geojson.Feature;
+import org.geojson.FeatureCollection;
+import org.geojson.LineString;
+import org.geojson.LngLatAlt;
+import org.geojson.MultiLineString;
+import org.geojson.Point;
+import org.geojson.Polygon;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Tests for cutting GeoJson features into tiles.
+ *
+ * @author osterrath
+ *
+ */
+public class GeoJsonTilerTest {
+	/**
+	 * Buffer around a tile of zoom level 1 in degrees of longitude.
+	 */
+	private static final double BUFFER_Z1 = 16.0 / 512 * 360;
+
+	/**
+	 * Allowed difference of the rounded coordinates in degrees.
+	 */
+	private static final double DELTA = 0.01;
+
+	/**
+	 * Folder for the test files.
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Tiler under test.
+	 */
+	private GeoJsonTiler tiler;
+
+	/**
+	 * Creates the tiler for the test features.
+	 *
+	 * @throws IOException
+	 */
+	@Before
+	public void createTiler() throws IOException {
+		File file = folder.newFile();
+		String json = "{'type': 'FeatureCollection', 'features': [" //
+				+ "{'type': 'Feature', 'id': 'line', 'geometry': {'type': 'LineString', 'coordinates': [[-90, 45], [90, 45]]}, 'properties': {'name': 'line'}}," //
+				+ "{'type': 'Feature', 'id': 'edge', 'geometry': {'type': 'Point', 'coordinates': [0, 45]}, 'properties': {}}," //
+				+ "{'type': 'Feature', 'id': 'area', 'geometry': {'type': 'Polygon', 'coordinates': [[[-170, -80], [170, -80], [170, 80], [-170, 80], [-170, -80]]]}, 'properties': {}}," //
+				+ "{'type': 'Feature', 'id': 'detour', 'geometry': {'type': 'LineString', 'coordinates': [[45, 30], [45, -30], [60, -30], [60, 30]]}, 'properties': {}}," //
+				+ "{'type': 'Feature', 'id': 'detail', 'geometry': {'type': 'Point', 'coordinates': [45, 30]}, 'properties': {'minzoom': 2}}" //
+				+ "]}";
+		Files.write(file.toPath(), json.replace('\'', '"').getBytes(StandardCharsets.UTF_8));
+		GeoJsonStore store = new GeoJsonStore(new ObjectMapper().getFactory());
+		store.read(file);
+		store.compact();
+		tiler = new GeoJsonTiler(new GeoJsonIndex(store), 0);
+	}
+
+	/**
+	 * Lines are cut at the tile border extended by the buffer, properties and ids stay.
+	 */
+	@Test
+	public void clipsLinesAtBufferedEdges() {
+		Feature east = getFeature(tiler.getTile(1, 1, 0), "line");
+		List<LngLatAlt> coordinates = ((LineString) east.getGeometry()).getCoordinates();
+		assertEquals(2, coordinates.size());
+		assertEquals(-BUFFER_Z1, coordinates.get(0).getLongitude(), DELTA);
+		assertEquals(45, coordinates.get(0).getLatitude(), DELTA);
+		assertEquals(90, coordinates.get(1).getLongitude(), DELTA);
+		assertEquals("line", east.getProperties().get("name"));
+
+		Feature west = getFeature(tiler.getTile(1, 0, 0), "line");
+		coordinates = ((LineString) west.getGeometry()).getCoordinates();
+		assertEquals(-90, coordinates.get(0).getLongitude(), DELTA);
+		assertEquals(BUFFER_Z1, coordinates.get(1).getLongitude(), DELTA);
+
+		assertNull(getFeature(tiler.getTile(1, 0, 1), "line"));
+	}
+
+	/**
+	 * A line leaving and entering the tile again is split into parts.
+	 */
+	@Test
+	public void splitsLinesLeavingTheTile() {
+		Feature f = getFeature(tiler.getTile(2, 2, 1), "detour");
+		List<List<LngLatAlt>> lines = ((MultiLineString) f.getGeometry()).getCoordinates();
+		assertEquals(2, lines.size());
+		assertEquals(45, lines.get(0).get(0).getLongitude(), DELTA);
+		assertEquals(30, lines.get(0).get(0).getLatitude(), DELTA);
+		assertTrue(lines.get(0).get(1).getLatitude() < 0);
+		assertEquals(60, lines.get(1).get(1).getLongitude(), DELTA);
+		assertEquals(30, lines.get(1).get(1).getLatitude(), DELTA);
+	}
+
+	/**
+	 * Polygons covering the tile are cut to the buffered tile.
+	 */
+	@Test
+	public void clipsPolygons() {
+		Feature f = getFeature(tiler.getTile(1, 1, 0), "area");
+		List<LngLatAlt> ring = ((Polygon) f.getGeometry()).getExteriorRing();
+		double minLon = Double.POSITIVE_INFINITY;
+		double maxLon = Double.NEGATIVE_INFINITY;
+		double minLat = Double.POSITIVE_INFINITY;
+		double maxLat = Double.NEGATIVE_INFINITY;
+		for (LngLatAlt c : ring) {
+			minLon = Math.min(minLon, c.getLongitude());
+			maxLon = Math.max(maxLon, c.getLongitude());
+			minLat = Math.min(minLat, c.getLatitude());
+			maxLat = Math.max(maxLat, c.getLatitude());
+		}
+		assertEquals(-BUFFER_Z1, minLon, DELTA);
+		assertEquals(170, maxLon, DELTA);
+		assertTrue(minLat < 0);
+		assertEquals(80, maxLat, DELTA);
+	}
+
+	/**
+	 * Points on a tile border belong to a single tile only.
+	 */
+	@Test
+	public void addsPointsToOneTile() {
+		Feature f = getFeature(tiler.getTile(1, 1, 0), "edge");
+		LngLatAlt c = ((Point) f.getGeometry()).getCoordinates();
+		assertEquals(0, c.getLongitude(), DELTA);
+		assertEquals(45, c.getLatitude(), DELTA);
+		assertNull(getFeature(tiler.getTile(1, 0, 0), "edge"));
+	}
+
+	/**
+	 * Features are skipped below their minimum zoom level.
+	 */
+	@Test
+	public void skipsFeaturesByZoom() {
+		assertNull(getFeature(tiler.getTile(1, 1, 0), "detail"));
+		assertEquals("detail", getFeature(tiler.getTile(2, 2, 1), "detail").getId());
+	}
+
+	/**
+	 * Returns the feature with the given id from the tile.
+	 *
+	 * @param tile
+	 *            tile features
+	 * @param id
+	 *            feature id
+	 * @return feature or <code>null</code>
+	 */
+	private static Feature getFeature(FeatureCollection tile, String id) {
+		return tile.getFeatures().stream().filter(f -> id.equals(f.getId())).findFirst().orElse(null);
+	}
+}
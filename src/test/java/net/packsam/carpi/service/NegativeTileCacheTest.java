@@ -0,0 +1,59 @@
+package net.packsam.carpi.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests for the cache of known missing tiles.
+ *
+ * @author osterrath
+ *
+ */
+public class NegativeTileCacheTest {
+	/**
+	 * Known missing tiles are answered and counted as hits.
+	 */
+	@Test
+	public void answersKnownMissingTiles() {
+		NegativeTileCache cache = new NegativeTileCache(10);
+		cache.add(1);
+		assertTrue(cache.isMissing(1));
+		assertFalse(cache.isMissing(2));
+		assertEquals(1, cache.getHits());
+
+		cache.clear();
+		assertFalse(cache.isMissing(1));
+		assertEquals(0, cache.getCount());
+	}
+
+	/**
+	 * The least recently requested tiles are dropped when the cache is full.
+	 */
+	@Test
+	public void evictsLeastRecentlyUsed() {
+		NegativeTileCache cache = new NegativeTileCache(3);
+		cache.add(1);
+		cache.add(2);
+		cache.add(3);
+		cache.isMissing(1);
+		cache.add(4);
+		assertEquals(3, cache.getCount());
+		assertTrue(cache.isMissing(1));
+		assertFalse(cache.isMissing(2));
+		assertTrue(cache.isMissing(4));
+	}
+
+	/**
+	 * A cache without entries never answers.
+	 */
+	@Test
+	public void zeroSizeDisablesCache() {
+		NegativeTileCache cache = new NegativeTileCache(0);
+		cache.add(1);
+		assertFalse(cache.isMissing(1));
+		assertEquals(0, cache.getCount());
+	}
+}
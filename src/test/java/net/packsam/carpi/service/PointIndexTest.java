@@ -0,0 +1,166 @@
+package net.packsam.carpi.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Tests for the grid index of GeoJson points.
+ *
+ * @author osterrath
+ *
+ */
+public class PointIndexTest {
+	/**
+	 * Folder for the test files.
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Radius searches find the same points as checking the distance of every point.
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void matchesBruteForce() throws IOException {
+		Random random = new Random(42);
+		StringBuilder features = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			appendFeature(features, "Point", String.format(Locale.ROOT, "[%f, %f]", 11.5 + random.nextDouble() * 0.2, 48 + random.nextDouble() * 0.2));
+		}
+		PointIndex index = new PointIndex(createStore(features), feature -> true);
+		assertEquals(5000, index.size());
+
+		IntList result = new IntList();
+		for (int q = 0; q < 200; q++) {
+			double latitude = 48 + random.nextDouble() * 0.2;
+			double longitude = 11.5 + random.nextDouble() * 0.2;
+			double distance = 100 + random.nextDouble() * 3000;
+			index.search(latitude, longitude, distance, Double.NaN, 0, result);
+
+			IntList expected = new IntList();
+			for (int p = 0; p < index.size(); p++) {
+				if (index.getDistance(p, latitude, longitude) <= distance) {
+					expected.add(p);
+				}
+			}
+			assertArrayEquals("query " + q, toSortedFeatures(index, expected), toSortedFeatures(index, result));
+		}
+	}
+
+	/**
+	 * With a heading only points in front of the position are found.
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void filtersByHeading() throws IOException {
+		StringBuilder features = new StringBuilder();
+		appendFeature(features, "Point", "[11.5, 48.005]");
+		appendFeature(features, "Point", "[11.5, 47.995]");
+		appendFeature(features, "Point", "[11.507, 48]");
+		appendFeature(features, "Point", "[11.504, 48.004]");
+		PointIndex index = new PointIndex(createStore(features), feature -> true);
+
+		IntList result = new IntList();
+		index.search(48, 11.5, 1000, Double.NaN, 0, result);
+		assertArrayEquals(new int[] { 0, 1, 2, 3 }, toSortedFeatures(index, result));
+
+		// heading north
+		index.search(48, 11.5, 1000, 0, 50, result);
+		assertArrayEquals(new int[] { 0, 3 }, toSortedFeatures(index, result));
+
+		// heading east, the direction wraps around north
+		index.search(48, 11.5, 1000, 90, 10, result);
+		assertArrayEquals(new int[] { 2 }, toSortedFeatures(index, result));
+		index.search(48, 11.5, 1000, 350, 10, result);
+		assertArrayEquals(new int[] { 0 }, toSortedFeatures(index, result));
+	}
+
+	/**
+	 * Only points matching the filter are indexed, other geometries are ignored.
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void indexesFilteredPoints() throws IOException {
+		StringBuilder features = new StringBuilder();
+		appendFeature(features, "Point", "[11.5, 48]");
+		appendFeature(features, "LineString", "[[11.5, 48], [11.6, 48]]");
+		appendFeature(features, "Point", "[11.5, 48.001]");
+		appendFeature(features, "Point", "[11.5, 48.002]");
+		PointIndex index = new PointIndex(createStore(features), feature -> feature != 2);
+		assertEquals(2, index.size());
+
+		IntList result = new IntList();
+		index.search(48, 11.5, 1000, Double.NaN, 0, result);
+		assertArrayEquals(new int[] { 0, 3 }, toSortedFeatures(index, result));
+	}
+
+	/**
+	 * Converts the found points to their sorted feature numbers.
+	 *
+	 * @param index
+	 *            point index
+	 * @param points
+	 *            found points
+	 * @return feature numbers in ascending order
+	 */
+	private static int[] toSortedFeatures(PointIndex index, IntList points) {
+		int[] features = new int[points.size()];
+		for (int i = 0; i < features.length; i++) {
+			features[i] = index.getFeature(points.get(i));
+		}
+		Arrays.sort(features);
+		return features;
+	}
+
+	/**
+	 * Appends a feature to the JSON array content.
+	 *
+	 * @param features
+	 *            features JSON
+	 * @param type
+	 *            geometry type
+	 * @param coordinates
+	 *            coordinates JSON
+	 */
+	private static void appendFeature(StringBuilder features, String type, String coordinates) {
+		if (features.length() > 0) {
+			features.append(',');
+		}
+		features.append("{\"type\": \"Feature\", \"geometry\": {\"type\": \"").append(type).append("\", \"coordinates\": ").append(coordinates).append("}, \"properties\": {}}");
+	}
+
+	/**
+	 * Creates a store with the given features.
+	 *
+	 * @param features
+	 *            features JSON
+	 * @return feature store
+	 * @throws IOException
+	 */
+	private GeoJsonStore createStore(StringBuilder features) throws IOException {
+		File file = folder.newFile();
+		String json = "{\"type\": \"FeatureCollection\", \"features\": [" + features + "]}";
+		Files.write(file.toPath(), json.getBytes(StandardCharsets.UTF_8));
+		GeoJsonStore store = new GeoJsonStore(new ObjectMapper().getFactory());
+		store.read(file);
+		store.compact();
+		return store;
+	}
+}
@@ -0,0 +1,155 @@
+package net.packsam.carpi.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.packsam.carpi.tools.TileArchiveConverter;
+
+/**
+ * Tests for tile archives created by the {@link TileArchiveConverter}.
+ *
+ * @author osterrath
+ *
+ */
+public class TileArchiveMapFileTest {
+	/**
+	 * Zoom level of the test tiles.
+	 */
+	private static final int ZOOM = 3;
+
+	/**
+	 * Folder for the test files.
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Every tile of the MBTiles file can be read from the tile archive with XYZ coordinates.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void roundTrip() throws Exception {
+		File mbTilesFile = createMBTiles("png");
+		File archiveFile = folder.newFile("test" + TileArchiveMapFile.FILE_EXTENSION);
+		assertEquals(64, TileArchiveConverter.convert(mbTilesFile, archiveFile));
+
+		TileArchiveMapFile mapFile = new TileArchiveMapFile(archiveFile);
+		mapFile.open();
+		try {
+			assertTrue(mapFile.isReady());
+			assertEquals(ZOOM, mapFile.getMinZ());
+			assertEquals(ZOOM, mapFile.getMaxZ());
+			assertEquals("image/png", mapFile.getTilesMimeType());
+			for (int x = 0; x < 8; x++) {
+				for (int y = 0; y < 8; y++) {
+					ByteBuffer data = mapFile.readTileData(ZOOM, x, y);
+					byte[] bytes = new byte[data.remaining()];
+					data.get(bytes);
+					assertArrayEquals("tile " + x + "/" + y, createTileData(x, (1 << ZOOM) - 1 - y), bytes);
+				}
+			}
+			assertNull(mapFile.readTileData(ZOOM + 1, 0, 0));
+			assertNull(mapFile.readTileData(ZOOM, 8, 0));
+		} finally {
+			mapFile.close();
+		}
+	}
+
+	/**
+	 * Identical tiles are stored only once.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void deduplicatesTiles() throws Exception {
+		File mbTilesFile = createMBTiles("png");
+		File archiveFile = folder.newFile("test" + TileArchiveMapFile.FILE_EXTENSION);
+		TileArchiveConverter.convert(mbTilesFile, archiveFile);
+
+		// 32 distinct tiles of 100 bytes and 32 copies of the same tile
+		long maxSize = TileArchiveMapFile.HEADER_SIZE + 64 * TileArchiveMapFile.INDEX_ENTRY_SIZE + 33 * 100;
+		assertTrue(archiveFile.length() <= maxSize);
+	}
+
+	/**
+	 * Format names not fitting into the header are rejected.
+	 *
+	 * @throws Exception
+	 */
+	@Test(expected = IOException.class)
+	public void rejectsLongFormat() throws Exception {
+		char[] format = new char[TileArchiveMapFile.HEADER_SIZE];
+		Arrays.fill(format, 'a');
+		TileArchiveConverter.convert(createMBTiles(new String(format)), folder.newFile("test" + TileArchiveMapFile.FILE_EXTENSION));
+	}
+
+	/**
+	 * Creates a MBTiles file with all tiles of the test zoom level. Tiles in even columns are distinct, tiles in odd columns are all the same.
+	 *
+	 * @param format
+	 *            tiles format
+	 * @return MBTiles file
+	 * @throws IOException
+	 * @throws SQLException
+	 */
+	private File createMBTiles(String format) throws IOException, SQLException {
+		File file = folder.newFile("test.mbtiles");
+		try (Connection sqlConnection = DriverManager.getConnection("jdbc:sqlite:" + file.getPath()); Statement stmt = sqlConnection.createStatement()) {
+			stmt.executeUpdate("CREATE TABLE metadata (name text, value text)");
+			stmt.executeUpdate("CREATE TABLE tiles (zoom_level integer, tile_column integer, tile_row integer, tile_data blob)");
+			try (PreparedStatement ps = sqlConnection.prepareStatement("INSERT INTO metadata VALUES ('format', ?)")) {
+				ps.setString(1, format);
+				ps.executeUpdate();
+			}
+			try (PreparedStatement ps = sqlConnection.prepareStatement("INSERT INTO tiles VALUES (?, ?, ?, ?)")) {
+				for (int x = 0; x < 8; x++) {
+					for (int row = 0; row < 8; row++) {
+						ps.setInt(1, ZOOM);
+						ps.setInt(2, x);
+						ps.setInt(3, row);
+						ps.setBytes(4, createTileData(x, row));
+						ps.executeUpdate();
+					}
+				}
+			}
+		}
+		return file;
+	}
+
+	/**
+	 * Creates the data of a test tile.
+	 *
+	 * @param x
+	 *            tile column
+	 * @param row
+	 *            tile row (TMS)
+	 * @return tile data
+	 */
+	private static byte[] createTileData(int x, int row) {
+		byte[] data = new byte[100];
+		if (x % 2 == 0) {
+			data[0] = (byte) x;
+			data[1] = (byte) row;
+		} else {
+			Arrays.fill(data, (byte) 0xFF);
+		}
+		return data;
+	}
+}
@@ -0,0 +1,120 @@
+package net.packsam.carpi.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests for the segmented LRU tile cache.
+ *
+ * @author osterrath
+ *
+ */
+public class TileCacheTest {
+	/**
+	 * Cache with a budget of 1000 bytes, 800 bytes of them for the protected segment.
+	 */
+	private final TileCache<String> cache = new TileCache<>(1000);
+
+	/**
+	 * Tiles exceeding the budget evict the least recently used tiles.
+	 */
+	@Test
+	public void evictsByBytes() {
+		for (long key = 0; key < 4; key++) {
+			cache.put(key, "tile " + key, 300);
+		}
+		assertFalse(cache.contains(0));
+		assertTrue(cache.contains(1));
+		assertTrue(cache.contains(3));
+		assertEquals(3, cache.getCount());
+		assertEquals(900, cache.getSize());
+		assertEquals(1, cache.getEvictions());
+	}
+
+	/**
+	 * A tile requested twice survives a scan of tiles that are only requested once.
+	 */
+	@Test
+	public void promotesOnSecondHit() {
+		cache.put(0, "tile 0", 100);
+		assertEquals("tile 0", cache.get(0));
+
+		for (long key = 1; key <= 20; key++) {
+			cache.put(key, "tile " + key, 100);
+		}
+		assertEquals("tile 0", cache.get(0));
+		assertFalse(cache.contains(1));
+		assertTrue(cache.contains(20));
+		assertEquals(1000, cache.getSize());
+		assertEquals(11, cache.getEvictions());
+	}
+
+	/**
+	 * Promoted tiles exceeding the protected budget are demoted back into probation instead of being dropped.
+	 */
+	@Test
+	public void demotesFromProtectedSegment() {
+		for (long key = 0; key < 9; key++) {
+			cache.put(key, "tile " + key, 100);
+			cache.get(key);
+		}
+		assertEquals(9, cache.getCount());
+		assertEquals(0, cache.getEvictions());
+
+		// the demoted tile is the least recently used one of probation now
+		cache.put(9, "tile 9", 100);
+		cache.put(10, "tile 10", 100);
+		assertFalse(cache.contains(0));
+		assertTrue(cache.contains(1));
+		assertTrue(cache.contains(10));
+		assertEquals(1000, cache.getSize());
+	}
+
+	/**
+	 * Tiles larger than the whole budget are not cached, replacing a tile updates the size.
+	 */
+	@Test
+	public void tracksSizes() {
+		cache.put(0, "too large", 1001);
+		assertFalse(cache.contains(0));
+
+		cache.put(1, "tile", 200);
+		cache.put(1, "replaced tile", 300);
+		assertEquals("replaced tile", cache.get(1));
+		assertEquals(300, cache.getSize());
+
+		cache.remove(1);
+		assertEquals(0, cache.getSize());
+		assertEquals(0, cache.getCount());
+	}
+
+	/**
+	 * Hits and misses are counted, checking for a tile counts neither.
+	 */
+	@Test
+	public void countsHitsAndMisses() {
+		cache.put(0, "tile 0", 100);
+		cache.get(0);
+		cache.get(0);
+		assertNull(cache.get(1));
+		cache.contains(0);
+		cache.contains(1);
+		assertEquals(2, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+
+	/**
+	 * A cache without budget never keeps tiles.
+	 */
+	@Test
+	public void zeroSizeDisablesCache() {
+		TileCache<String> disabled = new TileCache<>(0);
+		disabled.put(0, "tile 0", 1);
+		assertNull(disabled.get(0));
+		assertEquals(0, disabled.getSize());
+	}
+}
@@ -0,0 +1,164 @@
+package net.packsam.carpi.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the index of existing MBTiles tiles.
+ *
+ * @author osterrath
+ *
+ */
+public class TileIndexTest {
+	/**
+	 * In-memory MBTiles database.
+	 */
+	private Connection sqlConnection;
+
+	/**
+	 * Creates the tiles table.
+	 *
+	 * @throws SQLException
+	 */
+	@Before
+	public void createDatabase() throws SQLException {
+		sqlConnection = DriverManager.getConnection("jdbc:sqlite::memory:");
+		try (Statement stmt = sqlConnection.createStatement()) {
+			stmt.executeUpdate("CREATE TABLE tiles (zoom_level integer, tile_column integer, tile_row integer, tile_data blob)");
+		}
+	}
+
+	/**
+	 * Closes the database.
+	 *
+	 * @throws SQLException
+	 */
+	@After
+	public void closeDatabase() throws SQLException {
+		sqlConnection.close();
+	}
+
+	/**
+	 * Small zoom levels are indexed by a bitmap, so missing tiles within the range are detected.
+	 *
+	 * @throws SQLException
+	 */
+	@Test
+	public void detectsMissingTilesByBitmap() throws SQLException {
+		addTile(3, 1, 2);
+		addTile(3, 4, 6);
+		addTile(5, 10, 10);
+		TileIndex index = TileIndex.build(sqlConnection);
+
+		assertTrue(index.mightContain(3, 1, 2));
+		assertTrue(index.mightContain(3, 4, 6));
+		assertFalse(index.mightContain(3, 2, 2));
+		assertFalse(index.mightContain(3, 4, 5));
+		assertFalse(index.mightContain(3, 0, 2));
+		assertFalse(index.mightContain(4, 1, 2));
+		assertTrue(index.mightContain(5, 10, 10));
+		assertEquals(3, index.getMinZ());
+		assertEquals(5, index.getMaxZ());
+	}
+
+	/**
+	 * Zoom levels too large for a bitmap fall back to the range check.
+	 *
+	 * @throws SQLException
+	 */
+	@Test
+	public void fallsBackToRange() throws SQLException {
+		addTile(14, 0, 0);
+		addTile(14, 5000, 5000);
+		TileIndex index = TileIndex.build(sqlConnection);
+
+		assertTrue(index.mightContain(14, 0, 0));
+		assertTrue(index.mightContain(14, 2500, 2500));
+		assertFalse(index.mightContain(14, 5001, 0));
+		assertFalse(index.mightContain(14, 0, -1));
+	}
+
+	/**
+	 * Written indices are read back with the same tiles.
+	 *
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	@Test
+	public void roundTrip() throws SQLException, IOException {
+		addTile(3, 1, 2);
+		addTile(3, 4, 6);
+		addTile(14, 0, 0);
+		addTile(14, 5000, 5000);
+		TileIndex index = TileIndex.build(sqlConnection);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			index.write(out);
+		}
+		TileIndex read;
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			read = TileIndex.read(in);
+		}
+
+		for (int x = 0; x < 8; x++) {
+			for (int y = 0; y < 8; y++) {
+				assertEquals(index.mightContain(3, x, y), read.mightContain(3, x, y));
+			}
+		}
+		assertTrue(read.mightContain(14, 2500, 2500));
+		assertFalse(read.mightContain(14, 5001, 5001));
+		assertEquals(3, read.getMinZ());
+		assertEquals(14, read.getMaxZ());
+	}
+
+	/**
+	 * An index without tiles contains nothing.
+	 *
+	 * @throws SQLException
+	 */
+	@Test
+	public void emptyIndex() throws SQLException {
+		TileIndex index = TileIndex.build(sqlConnection);
+		assertFalse(index.mightContain(0, 0, 0));
+		assertEquals(-1, index.getMinZ());
+		assertEquals(-1, index.getMaxZ());
+	}
+
+	/**
+	 * Adds a tile to the tiles table.
+	 *
+	 * @param z
+	 *            zoom level
+	 * @param x
+	 *            tile column
+	 * @param y
+	 *            tile row
+	 * @throws SQLException
+	 */
+	private void addTile(int z, int x, int y) throws SQLException {
+		try (PreparedStatement ps = sqlConnection.prepareStatement("INSERT INTO tiles VALUES (?, ?, ?, ?)")) {
+			ps.setInt(1, z);
+			ps.setInt(2, x);
+			ps.setInt(3, y);
+			ps.setBytes(4, new byte[] { 1 });
+			ps.executeUpdate();
+		}
+	}
+}
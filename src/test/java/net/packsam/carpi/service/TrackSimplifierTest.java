@@ -0,0 +1,219 @@
+package net.packsam.carpi.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import net.packsam.carpi.model.GPSPath;
+import net.packsam.carpi.model.GPSTrack;
+
+/**
+ * Tests for the incremental track simplification.
+ *
+ * @author osterrath
+ *
+ */
+public class TrackSimplifierTest {
+	/**
+	 * Zoom level of the tests, a pixel is about 9.5 m at the equator.
+	 */
+	private static final int ZOOM = 14;
+
+	/**
+	 * Step between two elements in degrees, about 111 m at the equator.
+	 */
+	private static final double STEP = 0.001;
+
+	/**
+	 * Tracked path.
+	 */
+	private final GPSPath trackedPath = new GPSPath();
+
+	/**
+	 * Simplifier under test.
+	 */
+	private final TrackSimplifier simplifier = new TrackSimplifier(ZOOM, 1);
+
+	/**
+	 * Changes returned for the appended elements.
+	 */
+	private final List<GPSTrack> changes = new ArrayList<>();
+
+	/**
+	 * Collinear elements only keep the first element, the end of the segment is replaced by every new element.
+	 */
+	@Test
+	public void replacesEndOfStraightSegment() {
+		append(0, 0);
+		assertTrack(changes.get(0), 0, 0, 0);
+
+		append(STEP, 0);
+		assertTrack(changes.get(1), 1, STEP, 0);
+
+		for (int i = 2; i < 10; i++) {
+			append(i * STEP, 0);
+			assertTrack(changes.get(i), 1, i * STEP, 0);
+		}
+		assertTrack(simplifier.getTrack(trackedPath.snapshot(), 0), 0, 0, 0, 9 * STEP, 0);
+	}
+
+	/**
+	 * Leaving the tolerance keeps the previous end as new anchor.
+	 */
+	@Test
+	public void keepsEndWhenLeavingTolerance() {
+		for (int i = 0; i < 10; i++) {
+			append(i * STEP, 0);
+		}
+		// turn north
+		append(9 * STEP, STEP);
+		assertTrack(changes.get(10), 1, 9 * STEP, 0, 9 * STEP, STEP);
+
+		for (int i = 2; i < 10; i++) {
+			append(9 * STEP, i * STEP);
+			assertTrack(changes.get(changes.size() - 1), 2, 9 * STEP, i * STEP);
+		}
+		assertTrack(simplifier.getTrack(trackedPath.snapshot(), 0), 0, 0, 0, 9 * STEP, 0, 9 * STEP, 9 * STEP);
+	}
+
+	/**
+	 * Small deviations within the tolerance are removed.
+	 */
+	@Test
+	public void removesDeviationsWithinTolerance() {
+		append(0, 0);
+		append(STEP, 0.00003);
+		append(2 * STEP, -0.00003);
+		append(3 * STEP, 0);
+		assertTrack(simplifier.getTrack(trackedPath.snapshot(), 0), 0, 0, 0, 3 * STEP, 0);
+	}
+
+	/**
+	 * A segment never covers more than the maximum window, even if all elements are collinear.
+	 */
+	@Test
+	public void limitsWindow() {
+		for (int i = 0; i < 300; i++) {
+			append(i * STEP / 100, 0);
+		}
+		assertTrack(simplifier.getTrack(trackedPath.snapshot(), 0), 0, 0, 0, 256 * STEP / 100, 0, 299 * STEP / 100, 0);
+	}
+
+	/**
+	 * The kept elements carry the summed distances of the removed elements, the track carries the distance of the tracked path.
+	 */
+	@Test
+	public void sumsDistances() {
+		append(0, 0, 5);
+		for (int i = 1; i < 10; i++) {
+			append(i * STEP, 0, i);
+		}
+		append(9 * STEP, STEP, 100);
+		append(9 * STEP, 2 * STEP, 200);
+
+		GPSTrack track = simplifier.getTrack(trackedPath.snapshot(), 0);
+		GPSPath path = track.getPath();
+		assertEquals(3, path.size());
+		assertEquals(5, path.getDistanceToLast(0), 0);
+		assertEquals(45, path.getDistanceToLast(1), 0);
+		assertEquals(300, path.getDistanceToLast(2), 0);
+		assertEquals(350, track.getDistance());
+		assertEquals(Integer.valueOf(ZOOM), track.getZoom());
+	}
+
+	/**
+	 * Merging the changes like a client does results in the simplified track, and the track can be requested from every sequence number.
+	 */
+	@Test
+	public void changesContinueTrack() {
+		Random random = new Random(42);
+		double longitude = 0;
+		double latitude = 0;
+		double course = 0;
+		List<double[]> merged = new ArrayList<>();
+		for (int i = 0; i < 2000; i++) {
+			course += (random.nextDouble() - 0.5) * 0.6;
+			longitude += Math.cos(course) * STEP / 4;
+			latitude += Math.sin(course) * STEP / 4;
+			append(longitude, latitude);
+
+			GPSTrack change = changes.get(i);
+			assertTrue("sequence number " + change.getSeq() + " does not continue " + merged.size() + " elements", change.getSeq() <= merged.size());
+			merged.subList(change.getSeq(), merged.size()).clear();
+			for (int j = 0; j < change.getPath().size(); j++) {
+				merged.add(new double[] { change.getPath().getLongitude(j), change.getPath().getLatitude(j) });
+			}
+		}
+
+		GPSTrack track = simplifier.getTrack(trackedPath.snapshot(), 0);
+		assertTrue(track.getPath().size() < trackedPath.size() / 4);
+		assertEquals(track.getPath().size(), merged.size());
+		for (int i = 0; i < merged.size(); i++) {
+			assertEquals(track.getPath().getLongitude(i), merged.get(i)[0], 0);
+			assertEquals(track.getPath().getLatitude(i), merged.get(i)[1], 0);
+		}
+
+		for (int seq = 1; seq < merged.size(); seq++) {
+			GPSTrack part = simplifier.getTrack(trackedPath.snapshot(), seq);
+			assertEquals(seq, part.getSeq());
+			assertEquals(merged.size() - seq, part.getPath().size());
+			assertEquals(merged.get(seq)[0], part.getPath().getLongitude(0), 0);
+		}
+
+		// out of range -> whole track
+		assertEquals(0, simplifier.getTrack(trackedPath.snapshot(), merged.size() + 1).getSeq());
+		assertEquals(0, simplifier.getTrack(trackedPath.snapshot(), -1).getSeq());
+	}
+
+	/**
+	 * Appends an element with the distance to the last element of 1 m.
+	 *
+	 * @param longitude
+	 *            longitude in degrees
+	 * @param latitude
+	 *            latitude in degrees
+	 */
+	private void append(double longitude, double latitude) {
+		append(longitude, latitude, 1);
+	}
+
+	/**
+	 * Appends an element to the tracked path and the simplifier.
+	 *
+	 * @param longitude
+	 *            longitude in degrees
+	 * @param latitude
+	 *            latitude in degrees
+	 * @param distanceToLast
+	 *            distance to the last element in m
+	 */
+	private void append(double longitude, double latitude, double distanceToLast) {
+		trackedPath.append(trackedPath.size(), longitude, latitude, 0, distanceToLast);
+		changes.add(simplifier.append(trackedPath.snapshot()));
+	}
+
+	/**
+	 * Checks sequence number and elements of the given track.
+	 *
+	 * @param track
+	 *            track to check
+	 * @param seq
+	 *            expected sequence number
+	 * @param coordinates
+	 *            expected longitudes and latitudes of the elements
+	 */
+	private static void assertTrack(GPSTrack track, int seq, double... coordinates) {
+		assertEquals("sequence number", seq, track.getSeq());
+		GPSPath path = track.getPath();
+		assertEquals("number of elements", coordinates.length / 2, path.size());
+		for (int i = 0; i < path.size(); i++) {
+			assertEquals("longitude of element " + i, coordinates[2 * i], path.getLongitude(i), 1e-9);
+			assertEquals("latitude of element " + i, coordinates[2 * i + 1], path.getLatitude(i), 1e-9);
+		}
+	}
+}